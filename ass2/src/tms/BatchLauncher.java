@@ -0,0 +1,182 @@
+package tms;
+
+import tms.intersection.Intersection;
+import tms.network.Network;
+import tms.network.NetworkInitialiser;
+import tms.network.NetworkSnapshot;
+import tms.route.Route;
+import tms.route.TrafficLight;
+import tms.simulation.SimulationRunner;
+import tms.util.InvalidNetworkException;
+import tms.util.TimedItemManager;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point for running a simulation without the GUI.
+ * <p>
+ * Loads a network, runs a given number of ticks as fast as possible, and
+ * periodically writes the congestion, speed and traffic light signal of every
+ * route to a CSV file. Once finished, the simulation throughput and the sum
+ * of the peak usage of each heap memory pool are printed. The pools reach
+ * their peaks at different times, so the sum is an upper bound on the true
+ * peak heap usage.
+ */
+public class BatchLauncher {
+
+    /** Default number of ticks between snapshots written to the output file */
+    private static final int DEFAULT_SNAPSHOT_INTERVAL = 60;
+    /** Header line of the output file */
+    private static final String HEADER = "tick,route,congestion,speed,signal";
+    /** Signal column value for routes without a traffic light */
+    private static final String NO_SIGNAL = "NONE";
+
+    /**
+     * Runs a headless simulation.
+     * <p>
+     * Arguments: NETWORK_FILE TICKS OUTPUT_FILE [SNAPSHOT_INTERVAL]
+     *
+     * @param args from the command line.
+     */
+    public static void main(final String... args) {
+        if (args.length < 3 || args.length > 4) {
+            System.out.println("Usage: NETWORK_LOAD_FILENAME TICKS "
+                    + "OUTPUT_FILENAME [SNAPSHOT_INTERVAL]");
+            System.exit(1);
+        }
+
+        long ticks = 0;
+        int interval = DEFAULT_SNAPSHOT_INTERVAL;
+        try {
+            ticks = Long.parseLong(args[1]);
+            if (args.length == 4) {
+                interval = Integer.parseInt(args[3]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("TICKS and SNAPSHOT_INTERVAL must be integers");
+            System.exit(1);
+        }
+        if (ticks < 0 || interval < 1) {
+            System.err.println("TICKS must be >= 0 and SNAPSHOT_INTERVAL > 0");
+            System.exit(1);
+        }
+
+        Network network = null;  // Safe due to System.exit in catch block below.
+        try {
+            if (NetworkSnapshot.isSnapshot(args[0])) {
+                network = NetworkSnapshot.load(args[0]);
+            } else {
+                network = NetworkInitialiser.loadNetwork(args[0]);
+            }
+        } catch (IOException | InvalidNetworkException e) {
+            System.err.println("Error loading from file \"" + args[0]
+                    + "\": " + e.toString());
+            System.exit(1);
+        }
+
+        try {
+            run(network, ticks, interval, args[2]);
+        } catch (IOException e) {
+            System.err.println("Error writing to file \"" + args[2]
+                    + "\": " + e.toString());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the simulation of the given network, writing snapshots to the
+     * given file, then prints a summary of the run.
+     *
+     * @param network the network to simulate
+     * @param ticks number of ticks to run
+     * @param interval number of ticks between snapshots
+     * @param filename name of the file to write snapshots to
+     * @throws IOException if the output file cannot be written
+     */
+    private static void run(Network network, long ticks, int interval,
+                            String filename) throws IOException {
+        List<Route> routes = new ArrayList<>();
+        for (Intersection intersection : network.getIntersections()) {
+            routes.addAll(intersection.getConnections());
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+
+        SimulationRunner runner = new SimulationRunner(
+                TimedItemManager.getTimedItemManager(),
+                SimulationRunner.AS_FAST_AS_POSSIBLE);
+        long simulationNanos = 0;
+        long start = System.nanoTime();
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(filename))) {
+            out.write(HEADER);
+            out.newLine();
+            writeSnapshot(out, 0, routes);
+            for (long tick = 1; tick <= ticks; tick++) {
+                long tickStart = System.nanoTime();
+                runner.step();
+                simulationNanos += System.nanoTime() - tickStart;
+                if (tick % interval == 0) {
+                    writeSnapshot(out, tick, routes);
+                }
+            }
+        }
+        long totalNanos = System.nanoTime() - start;
+
+        System.out.printf("Ran %d ticks over %d routes in %.3f s%n", ticks,
+                routes.size(), totalNanos / 1e9);
+        System.out.printf("Simulation throughput: %.1f ticks/s%n",
+                simulationNanos == 0 ? 0 : ticks / (simulationNanos / 1e9));
+        System.out.printf("Heap usage (sum of pool peaks): %.1f MiB%n",
+                sumOfPoolPeaks() / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Writes one line per route describing its current state.
+     *
+     * @param out writer for the output file
+     * @param tick the current tick
+     * @param routes all routes in the network
+     * @throws IOException if the output file cannot be written
+     */
+    private static void writeSnapshot(BufferedWriter out, long tick,
+                                      List<Route> routes) throws IOException {
+        for (Route route : routes) {
+            TrafficLight light = route.getTrafficLight();
+            out.write(Long.toString(tick));
+            out.write(',');
+            out.write(route.getId());
+            out.write(',');
+            out.write(Integer.toString(route.getCongestion()));
+            out.write(',');
+            out.write(Integer.toString(route.getSpeed()));
+            out.write(',');
+            out.write(light == null ? NO_SIGNAL : light.getSignal().name());
+            out.newLine();
+        }
+    }
+
+    /**
+     * Returns the sum of the peak usage of every heap memory pool since the
+     * peaks were last reset. The pools peak at different times, so this may
+     * be more than the heap ever used at once.
+     *
+     * @return sum of the peak usage of the heap pools in bytes
+     */
+    private static long sumOfPoolPeaks() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
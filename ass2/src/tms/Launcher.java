@@ -7,6 +7,7 @@ import tms.display.MainViewModel;
 import tms.display.MainView;
 import tms.network.Network;
 import tms.network.NetworkInitialiser;
+import tms.network.NetworkSnapshot;
 import tms.util.InvalidNetworkException;
 
 import java.io.IOException;
@@ -40,6 +41,9 @@ public class Launcher extends Application {
 
     /**
      * Runs the main GUI with the parameters passed via the command line.
+     * <p>
+     * The network file may be either a text network file or a binary network
+     * snapshot (see {@link NetworkSnapshot}).
      *
      * @param theStage stage to render to
      * @ass2_given View code for A2.
@@ -51,7 +55,11 @@ public class Launcher extends Application {
 
         Network network = null;  // Safe due to System.exit in catch block below.
         try {
-            network = NetworkInitialiser.loadNetwork(params.get(0));
+            if (NetworkSnapshot.isSnapshot(params.get(0))) {
+                network = NetworkSnapshot.load(params.get(0));
+            } else {
+                network = NetworkInitialiser.loadNetwork(params.get(0));
+            }
         } catch (IOException | InvalidNetworkException e) {
             System.err.println("Error loading from file \"" + params.get(0)
                     + "\": " + e.toString());
@@ -1,16 +1,37 @@
 package tms.congestion;
 
+import tms.sensors.DemoSensor;
 import tms.sensors.Sensor;
 import java.util.List;
 
 /**
  * An implementation of a congestion calculator that calculates the average
  * congestion value from all of its sensors.
+ * <p>
+ * The calculated average is cached until one of the demo sensors reports a
+ * change in its current value or a sensor is added to the list, so repeated
+ * calculations between sensor updates cost O(1). Sensors that cannot report
+ * changes are polled on every calculation. A calculator that is no longer
+ * needed should be closed, so that its sensors stop calling and keeping it.
  */
 
 public class AveragingCongestionCalculator implements CongestionCalculator {
     /** The list of sensors to compile data from to return congestion level*/
     private List<Sensor> congestionCalculator;
+    /** The most recently calculated average congestion */
+    private int cachedCongestion;
+    /** Number of sensors in the list when the cached value was calculated,
+     * or -1 if no value has been cached */
+    private int cachedSensorCount = -1;
+    /** Whether a sensor has changed since the cached value was calculated */
+    private volatile boolean changed;
+    /** Whether every sensor reports changes, so the cache can be used */
+    private boolean cacheable = true;
+    /** Number of sensors from the start of the list that are being listened
+     * to for changes */
+    private int listenedSensorCount;
+    /** Listener registered with sensors to invalidate the cache */
+    private final Runnable invalidator = () -> changed = true;
 
     /**
      * Creates a new averaging congestion calculator for a given list of sensors
@@ -33,17 +54,65 @@ public class AveragingCongestionCalculator implements CongestionCalculator {
 
     public int calculateCongestion(){
 
+        int size = congestionCalculator.size();
+        if (cacheable && !changed && cachedSensorCount == size) {
+            return cachedCongestion;
+        }
+        changed = false;
+        listenToNewSensors(size);
+
         double total = 0;
         int average;
 
-        if (congestionCalculator.size() == 0) {
-            return 0;
-        }
-        for (Sensor c : congestionCalculator) {
+        if (size == 0) {
+            average = 0;
+        } else {
+            for (int i = 0; i < size; i++) {
 
-            total += c.getCongestion();
+                total += congestionCalculator.get(i).getCongestion();
+            }
+            average = (int) total / size;
         }
-        average = (int) total / congestionCalculator.size();
+        cachedCongestion = average;
+        cachedSensorCount = size;
         return average;
     }
+
+    /**
+     * Stops listening to the sensors for changes. The calculator still works
+     * afterwards, but polls its sensors on every calculation.
+     */
+
+    public void close() {
+
+        for (int i = 0; i < listenedSensorCount; i++) {
+            Sensor sensor = congestionCalculator.get(i);
+            if (sensor instanceof DemoSensor) {
+                ((DemoSensor) sensor).removeChangeListener(invalidator);
+            }
+        }
+        listenedSensorCount = 0;
+        cacheable = false;
+    }
+
+    /**
+     * Registers for changes with any sensors added to the list since the last
+     * calculation. If a sensor cannot report changes, caching is disabled.
+     * @param size current number of sensors in the list
+     */
+
+    private void listenToNewSensors(int size) {
+
+        if (!cacheable) {
+            return;
+        }
+        for (; listenedSensorCount < size; listenedSensorCount++) {
+            Sensor sensor = congestionCalculator.get(listenedSensorCount);
+            if (sensor instanceof DemoSensor) {
+                ((DemoSensor) sensor).addChangeListener(invalidator);
+            } else {
+                cacheable = false;
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -12,4 +12,12 @@ public interface CongestionCalculator {
      * @return calculated congestion level, 0 to 100 inclusive
      */
     int calculateCongestion();
+
+    /**
+     * Releases anything the calculator holds on to outside itself, such as
+     * listeners registered with its sensors. The calculator should no longer
+     * be used afterwards. Does nothing by default.
+     */
+    default void close() {
+    }
 }
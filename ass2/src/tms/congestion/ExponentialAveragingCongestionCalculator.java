@@ -0,0 +1,106 @@
+package tms.congestion;
+
+import tms.sensors.Sensor;
+import tms.util.ChangeBus;
+import tms.util.ChangeType;
+import tms.util.TimedItem;
+import tms.util.TimedItemManager;
+
+import java.util.List;
+
+/**
+ * A congestion calculator that smooths the average congestion of its sensors
+ * with an exponentially weighted moving average.
+ * <p>
+ * Once per second, after all sensors have been updated, the moving average is
+ * moved towards the sensors' current average congestion by a fraction given by
+ * the smoothing factor. Smaller factors give smoother, slower responding
+ * congestion levels.
+ */
+
+public class ExponentialAveragingCongestionCalculator
+        implements CongestionCalculator, TimedItem {
+    /** Calculator giving the instantaneous average congestion of the sensors */
+    private final AveragingCongestionCalculator instantaneous;
+    /** Weight given to each new value, between 0 (exclusive) and 1 */
+    private double smoothingFactor;
+    /** Current moving average of the congestion */
+    private double average;
+    /** Whether at least one value has been averaged */
+    private boolean started;
+
+    /**
+     * Creates a new exponentially weighted congestion calculator for a given
+     * list of sensors on a route, and registers it to be updated once per
+     * second.
+     * @param sensors list of sensors to use in congestion calculation
+     * @param smoothingFactor weight given to each new value, greater than 0
+     *                        and at most 1
+     * @throws IllegalArgumentException if smoothingFactor is not greater than
+     * 0 and at most 1
+     */
+
+    public ExponentialAveragingCongestionCalculator(List<Sensor> sensors,
+                                                    double smoothingFactor) {
+
+        if (!(smoothingFactor > 0 && smoothingFactor <= 1)) {
+            throw new IllegalArgumentException();
+        }
+        instantaneous = new AveragingCongestionCalculator(sensors);
+        this.smoothingFactor = smoothingFactor;
+        TimedItemManager.getTimedItemManager().registerSampler(this);
+    }
+
+    /**
+     * Moves the moving average towards the current average congestion of the
+     * sensors.
+     * <p>
+     * Publishes a {@link ChangeType#CONGESTION} change if the calculated
+     * congestion changes as a result.
+     */
+
+    @Override
+    public void oneSecond() {
+
+        int previous = calculateCongestion();
+        int value = instantaneous.calculateCongestion();
+        if (started) {
+            average += smoothingFactor * (value - average);
+        } else {
+            average = value;
+            started = true;
+        }
+        if (calculateCongestion() != previous) {
+            ChangeBus.publish(ChangeType.CONGESTION, this);
+        }
+    }
+
+    /**
+     * Returns the moving average of the congestion, rounded to the nearest
+     * integer.
+     *
+     * If no values have been averaged yet, the current average congestion of
+     * the sensors is returned.
+     * @return the smoothed congestion
+     */
+
+    @Override
+    public int calculateCongestion() {
+
+        if (!started) {
+            return instantaneous.calculateCongestion();
+        }
+        return (int) Math.round(average);
+    }
+
+    /**
+     * Closes the calculator giving the instantaneous average, so the sensors
+     * stop calling and keeping it.
+     */
+
+    @Override
+    public void close() {
+
+        instantaneous.close();
+    }
+}
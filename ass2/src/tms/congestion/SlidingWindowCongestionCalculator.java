@@ -0,0 +1,106 @@
+package tms.congestion;
+
+import tms.sensors.Sensor;
+import tms.util.ChangeBus;
+import tms.util.ChangeType;
+import tms.util.TimedItem;
+import tms.util.TimedItemManager;
+
+import java.util.List;
+
+/**
+ * A congestion calculator that smooths the average congestion of its sensors
+ * over a fixed number of the most recent seconds.
+ * <p>
+ * Once per second, after all sensors have been updated, the average
+ * congestion of the sensors is recorded in a ring buffer. The calculated
+ * congestion is the mean of the values in the buffer, maintained as a running
+ * sum so that each update and calculation costs O(1) without allocating.
+ */
+
+public class SlidingWindowCongestionCalculator implements CongestionCalculator,
+        TimedItem {
+    /** Calculator giving the instantaneous average congestion of the sensors */
+    private final AveragingCongestionCalculator instantaneous;
+    /** Ring buffer of the most recent per-second congestion values */
+    private int[] window;
+    /** Index in the window at which the next value is recorded */
+    private int next;
+    /** Number of values currently recorded in the window */
+    private int count;
+    /** Sum of the values currently recorded in the window */
+    private long sum;
+
+    /**
+     * Creates a new sliding window congestion calculator for a given list of
+     * sensors on a route, and registers it to be updated once per second.
+     * @param sensors list of sensors to use in congestion calculation
+     * @param windowSize number of seconds over which congestion is averaged
+     * @throws IllegalArgumentException if windowSize is less than one
+     */
+
+    public SlidingWindowCongestionCalculator(List<Sensor> sensors,
+                                             int windowSize) {
+
+        if (windowSize < 1) {
+            throw new IllegalArgumentException();
+        }
+        instantaneous = new AveragingCongestionCalculator(sensors);
+        window = new int[windowSize];
+        TimedItemManager.getTimedItemManager().registerSampler(this);
+    }
+
+    /**
+     * Records the current average congestion of the sensors, replacing the
+     * oldest recorded value if the window is full.
+     * <p>
+     * Publishes a {@link ChangeType#CONGESTION} change if the calculated
+     * congestion changes as a result.
+     */
+
+    @Override
+    public void oneSecond() {
+
+        int previous = calculateCongestion();
+        int value = instantaneous.calculateCongestion();
+        if (count == window.length) {
+            sum -= window[next];
+        } else {
+            count++;
+        }
+        window[next] = value;
+        sum += value;
+        next = (next + 1) % window.length;
+        if (calculateCongestion() != previous) {
+            ChangeBus.publish(ChangeType.CONGESTION, this);
+        }
+    }
+
+    /**
+     * Calculates the mean of the congestion values recorded over the window.
+     *
+     * If no values have been recorded yet, the current average congestion of
+     * the sensors is returned.
+     * @return the smoothed congestion
+     */
+
+    @Override
+    public int calculateCongestion() {
+
+        if (count == 0) {
+            return instantaneous.calculateCongestion();
+        }
+        return (int) (sum / count);
+    }
+
+    /**
+     * Closes the calculator giving the instantaneous average, so the sensors
+     * stop calling and keeping it.
+     */
+
+    @Override
+    public void close() {
+
+        instantaneous.close();
+    }
+}
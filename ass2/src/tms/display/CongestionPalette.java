@@ -0,0 +1,111 @@
+package tms.display;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Precomputed colours for each congestion level from 0 to 100, as hexadecimal colour codes, as JavaFX
+ * {@link Color}s and as complete button style strings.
+ * <p>
+ *     The colours are those described by {@link MainViewModel#getColor(int)}. Computing them once means that
+ *     drawing a route allocates nothing: congestion levels below 0 are treated as 0, and levels above 100 as
+ *     100, which gives the same colours as computing them directly.
+ * </p>
+ */
+public final class CongestionPalette {
+    // Highest congestion level with its own colour; higher levels share its colour.
+    private static final int MAX_CONGESTION = 100;
+    private static final String BUTTON_STYLE = "-fx-background-insets: 0, 1, 2;" +
+            "-fx-border-color: #000000;" + "-fx-background-radius: 5, 4, 3;";
+    private static final String SELECTED_BUTTON_STYLE = "-fx-background-insets: 0, 1, 2;" +
+            "-fx-border-color: #999999;" + "-fx-background-radius: 5, 4, 3;";
+
+    private static final String[] HEX = new String[MAX_CONGESTION + 1];
+    private static final Color[] COLORS = new Color[MAX_CONGESTION + 1];
+    private static final String[] STYLES = new String[MAX_CONGESTION + 1];
+    private static final String[] SELECTED_STYLES = new String[MAX_CONGESTION + 1];
+
+    static {
+        for (int congestion = 0; congestion <= MAX_CONGESTION; congestion++) {
+            HEX[congestion] = computeColor(congestion);
+            COLORS[congestion] = Color.web(HEX[congestion]);
+            STYLES[congestion] = "-fx-background-color: " + HEX[congestion] + ";" + BUTTON_STYLE;
+            SELECTED_STYLES[congestion] = "-fx-background-color: " + HEX[congestion] + ";" +
+                    SELECTED_BUTTON_STYLE;
+        }
+    }
+
+    /**
+     * Only static lookups are provided.
+     */
+    private CongestionPalette() {
+    }
+
+    /**
+     * Returns the hexadecimal colour code for the given congestion level, of format "#aabb00".
+     *
+     * @param congestion the congestion level
+     * @return the hex code
+     */
+    public static String hex(int congestion) {
+        return HEX[clamp(congestion)];
+    }
+
+    /**
+     * Returns the colour for the given congestion level, for drawing on a canvas.
+     *
+     * @param congestion the congestion level
+     * @return the colour
+     */
+    public static Color color(int congestion) {
+        return COLORS[clamp(congestion)];
+    }
+
+    /**
+     * Returns the complete style of a route button for the given congestion level.
+     *
+     * @param congestion the congestion level
+     * @param selected whether the button's route is selected, which gives it a lighter border
+     * @return the button style
+     */
+    public static String style(int congestion, boolean selected) {
+        return selected ? SELECTED_STYLES[clamp(congestion)] : STYLES[clamp(congestion)];
+    }
+
+    /**
+     * Returns the style of a button that has no congestion colour.
+     *
+     * @param selected whether the button's item is selected, which gives it a lighter border
+     * @return the button style
+     */
+    public static String plainStyle(boolean selected) {
+        return selected ? SELECTED_BUTTON_STYLE : BUTTON_STYLE;
+    }
+
+    /**
+     * Limits the given congestion level to the levels in the table.
+     *
+     * @param congestion the congestion level
+     * @return the level between 0 and 100 with the same colour
+     */
+    private static int clamp(int congestion) {
+        return Math.min(Math.max(congestion, 0), MAX_CONGESTION);
+    }
+
+    /**
+     * Computes the hexadecimal colour code of format "#aabb00" for the given congestion level, where aa is
+     * the hexadecimal value of the red given by min(255, congestion * 255 / 100) and bb is the hexadecimal
+     * value of the green given by max(0, 255 - congestion * 255 / 100).
+     *
+     * @param congestion the congestion level
+     * @return the hex code
+     */
+    static String computeColor(int congestion) {
+        if (congestion < 0) {
+            congestion = 0;
+        }
+        int scaledCongestion  = congestion * 255 / 100;
+        String red = String.format("%02X", Math.min(255, scaledCongestion));
+        String green = String.format("%02X", Math.max(0, 255 - scaledCongestion));
+        return "#" + red +  green + "00";
+    }
+}
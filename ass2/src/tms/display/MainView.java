@@ -7,6 +7,8 @@ import javafx.scene.Group;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextInputDialog;
 import javafx.scene.layout.HBox;
@@ -32,10 +34,10 @@ public class MainView {
     private Group rootGroup;
     private VBox mainArea;
     private StructureView structureView;
+    private MapView mapView;
 
     // Models
     private MainViewModel model;
-    private long lastTime = 0;
 
     // Button press action queue.
     private LinkedList<String> input;
@@ -232,7 +234,8 @@ public class MainView {
 
     /**
      * Creates the top-level window at the fixed width and height.
-     * Adds and creates the infoBar, structureView, bottomPanel and error message to the main window.
+     * Adds and creates the infoBar, structureView and mapView (as tabs), bottomPanel and error message to the
+     * main window.
      *
      * @ass2_given View code for A2.
      */
@@ -244,6 +247,12 @@ public class MainView {
         var infoBar = createInfoBar();
         infoBar.setId("infoBar");
         structureView = new StructureView(model);
+        mapView = new MapView(model);
+        var structureTab = new Tab("Structure", structureView.getPane());
+        var mapTab = new Tab("Map", mapView.getPane());
+        var views = new TabPane(structureTab, mapTab);
+        views.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
+        views.setMaxWidth(WINDOW_WIDTH);
         var bottomPanel = createBottomPanel();
 
         var error = new Label();
@@ -252,7 +261,7 @@ public class MainView {
         error.setTextAlignment(TextAlignment.CENTER);
         error.setAlignment(Pos.CENTER);
 
-        mainArea.getChildren().addAll(infoBar, structureView.getPane(), bottomPanel, error);
+        mainArea.getChildren().addAll(infoBar, views, bottomPanel, error);
         rootGroup.getChildren().add(mainArea);
     }
 
@@ -263,20 +272,24 @@ public class MainView {
      */
     public void update() {
         structureView.update();
+        mapView.update();
     }
 
 
     /**
-     * Ticks and updates the simulation though the ViewModel.
-     * Also processes queued user input.
+     * Starts the simulation through the ViewModel and updates the view as it
+     * runs. Also processes queued user input.
      * <p>
-     * Once per second, calls {@link MainViewModel#tick()}
+     * The simulation is ticked on its own thread (see
+     * {@link MainViewModel#startSimulation()}); each frame samples its state
+     * through {@link MainViewModel#sample(Runnable)}.
      * <p>
      * If the model registers a change, it updates the view.
      *
      * @ass2_given View code for A2.
      */
     public void run() {
+        model.startSimulation();
         new AnimationTimer() {
 
             public void handle(long currentNanoTime) {
@@ -284,14 +297,12 @@ public class MainView {
                     var key = input.pop();
                     model.accept(key);
                 }
-                if (currentNanoTime - lastTime > 1000000000) {
-                    lastTime = currentNanoTime;
-                    model.tick();
-                }
-                if (model.isChanged()) {
-                    model.notChanged();
-                    update();
-                }
+                model.sample(() -> {
+                    if (model.isChanged()) {
+                        model.notChanged();
+                        update();
+                    }
+                });
             }
         }.start();
         // Show the simulation's screen
@@ -5,8 +5,10 @@ import javafx.beans.property.*;
 import javafx.stage.Stage;
 import tms.intersection.Intersection;
 import tms.network.Network;
+import tms.network.NetworkSnapshot;
 import tms.route.Route;
 import tms.sensors.*;
+import tms.simulation.SimulationRunner;
 import tms.util.*;
 
 import java.io.BufferedWriter;
@@ -39,8 +41,9 @@ public class MainViewModel {
     private StringProperty timeElapsed = new SimpleStringProperty(
             "Seconds Elapsed: " + seconds.getValue().toString());
 
-    private Route selectedRoute;
-    private Intersection selectedIntersection;
+    // Volatile as changes to the selection are checked for on the simulation thread(s).
+    private volatile Route selectedRoute;
+    private volatile Intersection selectedIntersection;
 
     private BooleanProperty routeSelected = new SimpleBooleanProperty(false);
     private BooleanProperty intersectionSelected = new SimpleBooleanProperty(false);
@@ -49,6 +52,15 @@ public class MainViewModel {
     private StringProperty error = new SimpleStringProperty("");
     private int i = 0;
 
+    // Incremented whenever intersections or routes are added or reordered.
+    private volatile int structureVersion = 0;
+    // Set from ChangeBus events: whether anything has changed, and whether the selection's details have.
+    private volatile boolean pendingChange = false;
+    private volatile boolean detailsChanged = false;
+
+    // Advances the simulation independently of the display's frame rate.
+    private SimulationRunner runner;
+
     /**
      * Creates a model of the network to be used in the GUI.
      *
@@ -58,6 +70,100 @@ public class MainViewModel {
     public MainViewModel(Network network) {
         this.network = network;
         title.setValue("TMS Control Portal");
+        runner = new SimulationRunner(TimedItemManager.getTimedItemManager(),
+                SimulationRunner.REAL_TIME);
+        runner.setPaused(pausedProperty.get());
+        ChangeBus.getChangeBus().subscribe(this::onChange);
+    }
+
+    /**
+     * Records a change published on the {@link ChangeBus}, so that the view is redrawn and, if the change
+     * concerns the selected route or intersection, the details text recreated on the next frame.
+     * <p>
+     * May be called on any simulation thread while a tick is in progress.
+     *
+     * @param type the kind of change
+     * @param source the object that changed
+     */
+    private void onChange(ChangeType type, Object source) {
+        if (type == ChangeType.STRUCTURE) {
+            // Structure only changes through instructions, never during a tick.
+            structureVersion++;
+            detailsChanged = true;
+        } else if (!detailsChanged && concernsSelection(type, source)) {
+            detailsChanged = true;
+        }
+        if (!pendingChange) {
+            pendingChange = true;
+        }
+    }
+
+    /**
+     * Returns whether the given change affects the details text of the current selection.
+     *
+     * @param type the kind of change
+     * @param source the object that changed
+     * @return true if the details text may be out of date
+     */
+    private boolean concernsSelection(ChangeType type, Object source) {
+        Route route = selectedRoute;
+        if (route != null) {
+            return source == route || source == route.getTrafficLight()
+                    || source == route.getCongestionCalculator()
+                    || (type == ChangeType.SPEED && route.hasSpeedSign());
+        }
+        Intersection intersection = selectedIntersection;
+        return intersection != null && (source == intersection || source == intersection.getTrafficLights());
+    }
+
+    /**
+     * Starts advancing the simulation on its own thread at the current
+     * simulation speed, while it is not paused.
+     */
+    public void startSimulation() {
+        runner.start();
+    }
+
+    /**
+     * Sets the speed of the simulation in simulated seconds per real second.
+     *
+     * @param speed the new speed, from {@link SimulationRunner#REAL_TIME} up
+     *              to {@link SimulationRunner#AS_FAST_AS_POSSIBLE}
+     * @throws IllegalArgumentException if speed is not positive
+     */
+    public void setSimulationSpeed(double speed) {
+        runner.setSpeed(speed);
+    }
+
+    /**
+     * Runs the given view update against a consistent snapshot of the
+     * simulation, after bringing the time elapsed up to date with the ticks
+     * run by the simulation thread.
+     *
+     * @param viewUpdate the update to run while no tick is in progress
+     */
+    public void sample(Runnable viewUpdate) {
+        runner.sample(() -> {
+            synchroniseTime();
+            viewUpdate.run();
+        });
+    }
+
+    /**
+     * Updates the seconds elapsed to match the number of ticks run, and
+     * clears any error message if any ticks have been run since the last
+     * update. Changes to the network itself are registered through
+     * {@link ChangeBus} events, see {@link MainViewModel#isChanged()}.
+     */
+    private void synchroniseTime() {
+        int ticks = (int) runner.getTicks();
+        if (ticks != i) {
+            resetError();
+            i = ticks;
+            seconds.setValue(i);
+            timeElapsed.setValue("Seconds Elapsed: " + seconds.getValue().
+                    toString());
+        }
     }
 
     /**
@@ -65,19 +171,16 @@ public class MainViewModel {
      * "#aabb00" where aa is the hexidecimal value of the red given by min(255, congestion * 255 / 100)) and bb
      * is the hexidecimal value of the green given by max(0, 255 - congestion * 255 / 100)).
      *
+     * <p>
+     * The codes are looked up from a precomputed table, see {@link CongestionPalette}.
+     *
      * @param congestion the congestion level
      * @return the hex code in format #00ff00
      * @ass2_given View-Model code for A2.
      */
     public static String getColor(int congestion) {
         // of format"-fx-background-color: #00ff00"
-        if (congestion < 0) {
-            congestion = 0;
-        }
-        int scaledCongestion  = congestion * 255 / 100;
-        String red = String.format("%02X", Math.min(255, scaledCongestion));
-        String green = String.format("%02X", Math.max(0, 255 - scaledCongestion));
-        return "#" + red +  green + "00";
+        return CongestionPalette.hex(congestion);
     }
 
     /**
@@ -85,14 +188,22 @@ public class MainViewModel {
      * <p>
      * If an IOException occurs when opening or writing to the file, an error
      * message should be displayed to the user.
+     * <p>
+     * Filenames ending in {@link NetworkSnapshot#FILE_EXTENSION} are saved as
+     * a binary snapshot, all others in the text network format.
      *
      * @param filename path of file to which the network is saved
      * @see Network#toString()
+     * @see NetworkSnapshot#save(Network, String)
      * @ass2 View-Model code for A2.
      */
     public void save(String filename) {
 
         try {
+            if (NetworkSnapshot.isSnapshot(filename)) {
+                NetworkSnapshot.save(network, filename);
+                return;
+            }
             BufferedWriter writer = new BufferedWriter((new FileWriter(filename)
             ));
             writer.write(network.toString());
@@ -129,6 +240,7 @@ public class MainViewModel {
         if (pausedProperty.getValue()){
 
             pausedProperty.set(false);
+            runner.setPaused(false);
             pausedButtonText.setValue("Pause");
             pausedText.setValue("System Paused: " + pausedProperty.getValue().
                     toString());
@@ -137,6 +249,7 @@ public class MainViewModel {
         else {
 
             pausedProperty.set(true);
+            runner.setPaused(true);
             pausedButtonText.setValue("Unpause");
             pausedText.setValue("System Paused: " + pausedProperty.getValue().
                     toString());
@@ -144,27 +257,24 @@ public class MainViewModel {
     }
     /**
      *
-     * Tick is called by the view, approximately once per second while not paused.
+     * Advances the simulation by one tick while not paused. The simulation
+     * thread started by {@link MainViewModel#startSimulation()} ticks the
+     * simulation on its own; this method steps it manually.
      * This method invokes the {@link TimedItemManager#oneSecond()} method so
      * that it can notify all {@link tms.util.TimedItem}s.
      * <p>
      * After calling this method, {@link MainViewModel#getTimeElapsed()}
      * should return the updated time elapsed.
      *
-     * @ensures <code>{@link MainViewModel#isChanged()} == true </code>
-     *          <code>&amp;&amp; seconds</code> <em>property</em> {@code== \old(seconds) + 1}
+     * @ensures <code>seconds</code> <em>property</em> {@code== \old(seconds) + 1}
      * @ass2 View-Model code for A2.
      */
 
     public void tick() {
 
         if (!pausedProperty.get()) {
-            registerChange();
-            TimedItemManager.getTimedItemManager().oneSecond();
-            i++;
-            seconds.setValue(i);
-            timeElapsed.setValue("Seconds Elapsed: " + seconds.getValue().
-                    toString());
+            runner.step();
+            synchroniseTime();
         }
     }
 
@@ -175,6 +285,8 @@ public class MainViewModel {
      *   <tr><td>Q, q</td><td>-</td><td>Quits the portal.</td></tr>
      *   <tr><td>S, s</td><td>-</td><td>Saves the simulation's network data to
      *           the project's root directory as "DefaultSave.txt".</td></tr>
+     *   <tr><td>F, f</td><td>-</td><td>Toggles between running the simulation
+     *           in real time and as fast as possible.</td></tr>
      * </table>
      *
      * @requires input != null
@@ -191,7 +303,12 @@ public class MainViewModel {
             System.exit(1);
         }
         if (input.equals("S") || input.equals("s")){
-            save("DefaultSave.txt");
+            runner.sample(() -> save("DefaultSave.txt"));
+        }
+        if (input.equals("F") || input.equals("f")){
+            runner.setSpeed(runner.getSpeed() == SimulationRunner.REAL_TIME
+                    ? SimulationRunner.AS_FAST_AS_POSSIBLE
+                    : SimulationRunner.REAL_TIME);
         }
     }
 
@@ -217,6 +334,7 @@ public class MainViewModel {
         noSelected.setValue(false);
         selectedRoute = route;
         selectedIntersection = to;
+        changedStructureProperty.set(true);
         createDetailsText();
     }
 
@@ -241,6 +359,7 @@ public class MainViewModel {
         noSelected.setValue(false);
         selectedRoute = null;
         selectedIntersection = intersection;
+        changedStructureProperty.set(true);
         createDetailsText();
     }
 
@@ -300,6 +419,17 @@ public class MainViewModel {
             }
         }
 
+        runner.sample(() -> execute(option, args));
+    }
+
+    /**
+     * Calls the function for the given ButtonOption with the given args and
+     * recreates the details text.
+     *
+     * @param option the selected function option
+     * @param args the supplied args, none of which are empty
+     */
+    private void execute(ButtonOptions option, List<Optional<String>> args) {
         try {
             switch (option) {
                 case ADD_CONN:
@@ -343,6 +473,16 @@ public class MainViewModel {
         createDetailsText();
     }
 
+    /**
+     * Returns a number that changes whenever intersections or routes may have been added to the network or
+     * reordered, so that views can tell when to rebuild without comparing the whole network.
+     *
+     * @return the current structure version
+     */
+    public int getStructureVersion() {
+        return structureVersion;
+    }
+
     /**
      * Creates a new DemoSensor and adds it to the selected route.
      * <p>
@@ -645,13 +785,23 @@ public class MainViewModel {
     }
 
     /**
-     * gets whether a change has occurred. false by default. and creates the details text.
+     * gets whether a change has occurred. false by default.
+     * <p>
+     * Changes published on the {@link ChangeBus} since the last call are registered here, and the details text
+     * is recreated only if one of them concerns the selected route or intersection.
      *
      * @return true or false depending on whether or not a change has occurred
      * @ass2_given View-Model code for A2.
      */
     public boolean isChanged() {
-        createDetailsText();
+        if (pendingChange) {
+            pendingChange = false;
+            changedStructureProperty.set(true);
+        }
+        if (detailsChanged) {
+            detailsChanged = false;
+            createDetailsText();
+        }
         return changedStructureProperty.get();
     }
 
@@ -804,6 +954,14 @@ public class MainViewModel {
      * @ass2_given View-Model code for A2.
      */
     public void createDetailsText() {
+        runner.sample(this::writeDetailsText);
+    }
+
+    /**
+     * Creates the details text, see {@link MainViewModel#createDetailsText()}.
+     * Must be called while no tick is in progress.
+     */
+    private void writeDetailsText() {
         if (isNothingSelected().getValue()) {
             detailsText.setValue("");
             return;
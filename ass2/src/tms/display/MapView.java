@@ -0,0 +1,557 @@
+package tms.display;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+import tms.intersection.Intersection;
+import tms.route.Route;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Draws the traffic network as a map on a {@link Canvas}, with each route coloured by its congestion (see
+ * {@link MainViewModel#getColor(int)}).
+ * <p>
+ *     Intersections are drawn at their positions (see {@link Intersection#getX()}); intersections without a
+ *     position are laid out on a grid beside the positioned ones. The map can be panned by dragging, zoomed
+ *     with the scroll wheel, and an intersection selected by clicking it.
+ * </p>
+ * <p>
+ *     The map is drawn in immediate mode so that networks with hundreds of thousands of routes stay
+ *     interactive:
+ * </p>
+ * <ul>
+ *     <li>routes are grouped into a small number of congestion colours and each colour is stroked as one
+ *     path;</li>
+ *     <li>when only some routes change colour, only the screen region they cover is repainted;</li>
+ *     <li>routes outside the repainted region are culled, and routes shorter than a pixel on screen are
+ *     accumulated into a per-pixel heatmap instead of being stroked;</li>
+ *     <li>intersections are only drawn once zoomed in, and labelled once zoomed in further.</li>
+ * </ul>
+ */
+public class MapView {
+    private static final double DISPLAY_HEIGHT = 270;
+    // Congestion levels covered by each colour.
+    private static final int CONGESTION_PER_COLOUR = 5;
+    private static final int COLOURS = 100 / CONGESTION_PER_COLOUR + 1;
+    // Distance between intersections placed on the grid, in map units.
+    private static final double GRID_SPACING = 100;
+    private static final double MARGIN = 20;
+    private static final double ROUTE_WIDTH = 2;
+    private static final double INTERSECTION_RADIUS = 4;
+    // Routes shorter than this many pixels are drawn into the heatmap.
+    private static final double MIN_ROUTE_PIXELS = 1.5;
+    // Intersections are drawn at or above this zoom, and labelled at or above the next.
+    private static final double DETAIL_SCALE = 0.5;
+    private static final double LABEL_SCALE = 1.5;
+    // Repaint everything when the changed region covers more than this fraction of the map.
+    private static final double FULL_REPAINT_FRACTION = 0.5;
+    private static final double ZOOM_PER_SCROLL_PIXEL = 0.002;
+    private static final Color BACKGROUND = Color.WHITE;
+    private static final Color[] PALETTE = new Color[COLOURS];
+
+    static {
+        for (int i = 0; i < COLOURS; i++) {
+            PALETTE[i] = CongestionPalette.color(i * CONGESTION_PER_COLOUR);
+        }
+    }
+
+    private MainViewModel viewModel;
+    private Pane mapPane;
+    private Canvas canvas;
+    private GraphicsContext gc;
+
+    // Structure version of the model when the arrays below were last built, see rebuild().
+    private int structureVersion;
+    private boolean built = false;
+    private Intersection[] intersections = new Intersection[0];
+    private double[] intersectionX = new double[0];
+    private double[] intersectionY = new double[0];
+    private Route[] routes = new Route[0];
+    private int[] routeFrom = new int[0];
+    private int[] routeTo = new int[0];
+    // Whether a route has a route in the opposite direction, and so is drawn offset to one side.
+    private boolean[] routeTwoWay = new boolean[0];
+    // Colour index each route was last drawn with, -1 before it is first drawn.
+    private int[] routeColour = new int[0];
+
+    // Routes whose colour changed since the last repaint.
+    private int[] dirty = new int[0];
+    private int dirtyCount;
+    // Routes to stroke, grouped by colour, reused by every repaint.
+    private int[] batchOrder = new int[0];
+    private int[] batchStart = new int[COLOURS + 1];
+    // Highest colour index drawn into each pixel of the heatmap, -1 if none.
+    private byte[] heatmap = new byte[0];
+
+    // Screen coordinates are map coordinates multiplied by scale and then offset.
+    private double scale = 1;
+    private double offsetX;
+    private double offsetY;
+    private Intersection selected;
+    private boolean repaintAll = true;
+    // Mouse position at the last press or drag, and whether the mouse moved since the press.
+    private double dragX;
+    private double dragY;
+    private boolean dragged;
+
+    /**
+     * Creates the map for the network of the given model. The map is first drawn on
+     * {@link MapView#update()}.
+     *
+     * @param viewModel the model used to populate the view
+     */
+    public MapView(MainViewModel viewModel) {
+        this.viewModel = viewModel;
+        canvas = new Canvas(MainView.WINDOW_WIDTH, DISPLAY_HEIGHT);
+        gc = canvas.getGraphicsContext2D();
+        canvas.setOnMousePressed(this::startDrag);
+        canvas.setOnMouseDragged(this::drag);
+        canvas.setOnMouseClicked(this::select);
+        canvas.setOnScroll(this::zoom);
+        mapPane = new Pane(canvas);
+    }
+
+    /**
+     * Gets the pane displayed
+     *
+     * @return the pane holding the map
+     */
+    public Pane getPane() {
+        return mapPane;
+    }
+
+    /**
+     * Brings the map up to date with the network, repainting only the regions of routes whose colour changed,
+     * unless the network's structure or the selection changed.
+     * <p>
+     * Must be called while the simulation is not advancing, see {@link MainViewModel#sample(Runnable)}.
+     */
+    public void update() {
+        if (!built || viewModel.getStructureVersion() != structureVersion) {
+            boolean first = !built;
+            rebuild();
+            if (first) {
+                fitToView();
+            }
+            repaintAll = true;
+        }
+        Intersection nowSelected = viewModel.getSelectedIntersection();
+        if (nowSelected != selected) {
+            selected = nowSelected;
+            repaintAll = true;
+        }
+
+        dirtyCount = 0;
+        for (int i = 0; i < routes.length; i++) {
+            int colour = colourOf(routes[i].getCongestion());
+            if (colour != routeColour[i]) {
+                routeColour[i] = colour;
+                dirty[dirtyCount++] = i;
+            }
+        }
+
+        if (repaintAll) {
+            repaint(0, 0, canvas.getWidth(), canvas.getHeight());
+        } else if (dirtyCount > 0) {
+            repaintDirty();
+        }
+    }
+
+    /**
+     * Returns the colour index used for the given congestion level.
+     *
+     * @param congestion the congestion level
+     * @return index into the palette
+     */
+    private static int colourOf(int congestion) {
+        int clamped = Math.min(Math.max(congestion, 0), 100);
+        return (clamped + CONGESTION_PER_COLOUR / 2) / CONGESTION_PER_COLOUR;
+    }
+
+    /**
+     * Copies the network's intersections and routes into arrays, placing any intersections without a
+     * position on a grid to the right of those with one.
+     */
+    private void rebuild() {
+        built = true;
+        structureVersion = viewModel.getStructureVersion();
+        List<Intersection> all = viewModel.getIntersections();
+        int n = all.size();
+        intersections = all.toArray(new Intersection[0]);
+        intersectionX = new double[n];
+        intersectionY = new double[n];
+
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        int unplaced = 0;
+        for (Intersection intersection : intersections) {
+            if (intersection.hasPosition()) {
+                maxX = Math.max(maxX, intersection.getX());
+                minY = Math.min(minY, intersection.getY());
+            } else {
+                unplaced++;
+            }
+        }
+        double gridX = maxX == Double.NEGATIVE_INFINITY ? 0 : maxX + GRID_SPACING;
+        double gridY = minY == Double.POSITIVE_INFINITY ? 0 : minY;
+        int columns = Math.max(1, (int) Math.ceil(Math.sqrt(unplaced)));
+
+        Map<Intersection, Integer> indices = new IdentityHashMap<>();
+        int routeCount = 0;
+        int placed = 0;
+        for (int i = 0; i < n; i++) {
+            Intersection intersection = intersections[i];
+            indices.put(intersection, i);
+            if (intersection.hasPosition()) {
+                intersectionX[i] = intersection.getX();
+                intersectionY[i] = intersection.getY();
+            } else {
+                intersectionX[i] = gridX + GRID_SPACING * (placed % columns);
+                intersectionY[i] = gridY + GRID_SPACING * (placed / columns);
+                placed++;
+            }
+            routeCount += intersection.getConnections().size();
+        }
+
+        routes = new Route[routeCount];
+        routeFrom = new int[routeCount];
+        routeTo = new int[routeCount];
+        routeTwoWay = new boolean[routeCount];
+        int r = 0;
+        for (int i = 0; i < n; i++) {
+            for (Route route : intersections[i].getConnections()) {
+                routes[r] = route;
+                routeFrom[r] = indices.get(route.getFrom());
+                routeTo[r] = i;
+                r++;
+            }
+        }
+        // A route is two-way if the reverse of its (from, to) pair is also a route.
+        long[] pairs = new long[routeCount];
+        for (int i = 0; i < routeCount; i++) {
+            pairs[i] = (long) routeFrom[i] << 32 | routeTo[i];
+        }
+        Arrays.sort(pairs);
+        for (int i = 0; i < routeCount; i++) {
+            routeTwoWay[i] = Arrays.binarySearch(pairs, (long) routeTo[i] << 32 | routeFrom[i]) >= 0;
+        }
+
+        routeColour = new int[routeCount];
+        Arrays.fill(routeColour, -1);
+        dirty = new int[routeCount];
+        batchOrder = new int[routeCount];
+    }
+
+    /**
+     * Sets the zoom and offset so that every intersection fits on the canvas.
+     */
+    private void fitToView() {
+        if (intersections.length == 0) {
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < intersections.length; i++) {
+            minX = Math.min(minX, intersectionX[i]);
+            minY = Math.min(minY, intersectionY[i]);
+            maxX = Math.max(maxX, intersectionX[i]);
+            maxY = Math.max(maxY, intersectionY[i]);
+        }
+        double width = Math.max(maxX - minX, 1);
+        double height = Math.max(maxY - minY, 1);
+        scale = Math.min((canvas.getWidth() - 2 * MARGIN) / width,
+                (canvas.getHeight() - 2 * MARGIN) / height);
+        offsetX = (canvas.getWidth() - width * scale) / 2 - minX * scale;
+        offsetY = (canvas.getHeight() - height * scale) / 2 - minY * scale;
+    }
+
+    /**
+     * Repaints the smallest rectangle covering every route whose colour changed, or the whole map if that
+     * rectangle is large.
+     */
+    private void repaintDirty() {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int d = 0; d < dirtyCount; d++) {
+            int i = dirty[d];
+            double x1 = screenX(routeFrom[i]);
+            double y1 = screenY(routeFrom[i]);
+            double x2 = screenX(routeTo[i]);
+            double y2 = screenY(routeTo[i]);
+            minX = Math.min(minX, Math.min(x1, x2));
+            minY = Math.min(minY, Math.min(y1, y2));
+            maxX = Math.max(maxX, Math.max(x1, x2));
+            maxY = Math.max(maxY, Math.max(y1, y2));
+        }
+        double pad = 2 * ROUTE_WIDTH + INTERSECTION_RADIUS;
+        minX = Math.max(0, Math.floor(minX - pad));
+        minY = Math.max(0, Math.floor(minY - pad));
+        maxX = Math.min(canvas.getWidth(), Math.ceil(maxX + pad));
+        maxY = Math.min(canvas.getHeight(), Math.ceil(maxY + pad));
+        if (maxX <= minX || maxY <= minY) {
+            return;
+        }
+        double area = (maxX - minX) * (maxY - minY);
+        if (area > FULL_REPAINT_FRACTION * canvas.getWidth() * canvas.getHeight()) {
+            repaint(0, 0, canvas.getWidth(), canvas.getHeight());
+        } else {
+            repaint(minX, minY, maxX, maxY);
+        }
+    }
+
+    /**
+     * Clears and redraws everything within the given screen rectangle.
+     *
+     * @param minX left edge of the region
+     * @param minY top edge of the region
+     * @param maxX right edge of the region
+     * @param maxY bottom edge of the region
+     */
+    private void repaint(double minX, double minY, double maxX, double maxY) {
+        repaintAll = false;
+        gc.save();
+        gc.beginPath();
+        gc.rect(minX, minY, maxX - minX, maxY - minY);
+        gc.clip();
+        gc.setFill(BACKGROUND);
+        gc.fillRect(minX, minY, maxX - minX, maxY - minY);
+
+        drawRoutes(minX, minY, maxX, maxY);
+        if (scale >= DETAIL_SCALE) {
+            drawIntersections(minX, minY, maxX, maxY);
+        }
+        gc.restore();
+    }
+
+    /**
+     * Draws the routes that cross the given screen rectangle, one path per colour, with routes too short to
+     * see drawn into the heatmap.
+     *
+     * @param minX left edge of the region
+     * @param minY top edge of the region
+     * @param maxX right edge of the region
+     * @param maxY bottom edge of the region
+     */
+    private void drawRoutes(double minX, double minY, double maxX, double maxY) {
+        int width = (int) canvas.getWidth();
+        int height = (int) canvas.getHeight();
+        if (heatmap.length != width * height) {
+            heatmap = new byte[width * height];
+        }
+        Arrays.fill(heatmap, (byte) -1);
+        boolean heatmapUsed = false;
+
+        // Count the visible routes of each colour, then place them in colour order.
+        Arrays.fill(batchStart, 0);
+        double pad = ROUTE_WIDTH;
+        for (int i = 0; i < routes.length; i++) {
+            double x1 = screenX(routeFrom[i]);
+            double y1 = screenY(routeFrom[i]);
+            double x2 = screenX(routeTo[i]);
+            double y2 = screenY(routeTo[i]);
+            if (Math.max(x1, x2) < minX - pad || Math.min(x1, x2) > maxX + pad
+                    || Math.max(y1, y2) < minY - pad || Math.min(y1, y2) > maxY + pad) {
+                continue;
+            }
+            if (Math.abs(x2 - x1) + Math.abs(y2 - y1) < MIN_ROUTE_PIXELS) {
+                int px = (int) ((x1 + x2) / 2);
+                int py = (int) ((y1 + y2) / 2);
+                if (px >= 0 && py >= 0 && px < width && py < height) {
+                    int pixel = py * width + px;
+                    heatmap[pixel] = (byte) Math.max(heatmap[pixel], routeColour[i]);
+                    heatmapUsed = true;
+                }
+                continue;
+            }
+            batchStart[routeColour[i] + 1]++;
+        }
+        for (int c = 0; c < COLOURS; c++) {
+            batchStart[c + 1] += batchStart[c];
+        }
+        int[] next = batchStart.clone();
+        for (int i = 0; i < routes.length; i++) {
+            double x1 = screenX(routeFrom[i]);
+            double y1 = screenY(routeFrom[i]);
+            double x2 = screenX(routeTo[i]);
+            double y2 = screenY(routeTo[i]);
+            if (Math.max(x1, x2) < minX - pad || Math.min(x1, x2) > maxX + pad
+                    || Math.max(y1, y2) < minY - pad || Math.min(y1, y2) > maxY + pad
+                    || Math.abs(x2 - x1) + Math.abs(y2 - y1) < MIN_ROUTE_PIXELS) {
+                continue;
+            }
+            batchOrder[next[routeColour[i]]++] = i;
+        }
+
+        gc.setLineWidth(scale >= DETAIL_SCALE ? ROUTE_WIDTH : 1);
+        for (int c = 0; c < COLOURS; c++) {
+            if (batchStart[c] == batchStart[c + 1]) {
+                continue;
+            }
+            gc.setStroke(PALETTE[c]);
+            gc.beginPath();
+            for (int b = batchStart[c]; b < batchStart[c + 1]; b++) {
+                addRouteToPath(batchOrder[b]);
+            }
+            gc.stroke();
+        }
+
+        if (heatmapUsed) {
+            PixelWriter pixels = gc.getPixelWriter();
+            for (int py = (int) minY; py < Math.min(maxY, height); py++) {
+                for (int px = (int) minX; px < Math.min(maxX, width); px++) {
+                    int colour = heatmap[py * width + px];
+                    if (colour >= 0) {
+                        pixels.setColor(px, py, PALETTE[colour]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a line for the given route to the current path. Routes with a route in the opposite direction are
+     * shifted to their left so that both can be seen when zoomed in.
+     *
+     * @param i index of the route
+     */
+    private void addRouteToPath(int i) {
+        double x1 = screenX(routeFrom[i]);
+        double y1 = screenY(routeFrom[i]);
+        double x2 = screenX(routeTo[i]);
+        double y2 = screenY(routeTo[i]);
+        if (routeTwoWay[i] && scale >= DETAIL_SCALE) {
+            double length = Math.hypot(x2 - x1, y2 - y1);
+            double shiftX = (y2 - y1) / length * ROUTE_WIDTH;
+            double shiftY = -(x2 - x1) / length * ROUTE_WIDTH;
+            x1 += shiftX;
+            x2 += shiftX;
+            y1 += shiftY;
+            y2 += shiftY;
+        }
+        gc.moveTo(x1, y1);
+        gc.lineTo(x2, y2);
+    }
+
+    /**
+     * Draws the intersections within the given screen rectangle, and their IDs if zoomed in far enough.
+     *
+     * @param minX left edge of the region
+     * @param minY top edge of the region
+     * @param maxX right edge of the region
+     * @param maxY bottom edge of the region
+     */
+    private void drawIntersections(double minX, double minY, double maxX, double maxY) {
+        boolean labels = scale >= LABEL_SCALE;
+        gc.setFill(Color.BLACK);
+        gc.setTextAlign(TextAlignment.LEFT);
+        gc.setTextBaseline(VPos.BOTTOM);
+        double pad = INTERSECTION_RADIUS;
+        for (int i = 0; i < intersections.length; i++) {
+            double x = screenX(i);
+            double y = screenY(i);
+            if (x < minX - pad || x > maxX + pad || y < minY - pad || y > maxY + pad) {
+                continue;
+            }
+            if (intersections[i] == selected) {
+                gc.setFill(Color.web("#999999"));
+                gc.fillOval(x - 2 * pad, y - 2 * pad, 4 * pad, 4 * pad);
+                gc.setFill(Color.BLACK);
+            }
+            gc.fillOval(x - pad, y - pad, 2 * pad, 2 * pad);
+            if (labels) {
+                gc.fillText(intersections[i].getId(), x + pad, y - pad);
+            }
+        }
+    }
+
+    /**
+     * Returns the screen x coordinate of the given intersection.
+     *
+     * @param i index of the intersection
+     * @return x coordinate on the canvas
+     */
+    private double screenX(int i) {
+        return intersectionX[i] * scale + offsetX;
+    }
+
+    /**
+     * Returns the screen y coordinate of the given intersection.
+     *
+     * @param i index of the intersection
+     * @return y coordinate on the canvas
+     */
+    private double screenY(int i) {
+        return intersectionY[i] * scale + offsetY;
+    }
+
+    /**
+     * Records where a drag may start.
+     *
+     * @param event the mouse press
+     */
+    private void startDrag(MouseEvent event) {
+        dragX = event.getX();
+        dragY = event.getY();
+        dragged = false;
+    }
+
+    /**
+     * Pans the map by the distance the mouse moved.
+     *
+     * @param event the mouse drag
+     */
+    private void drag(MouseEvent event) {
+        offsetX += event.getX() - dragX;
+        offsetY += event.getY() - dragY;
+        dragX = event.getX();
+        dragY = event.getY();
+        dragged = true;
+        repaint(0, 0, canvas.getWidth(), canvas.getHeight());
+    }
+
+    /**
+     * Zooms the map in or out around the mouse position.
+     *
+     * @param event the scroll
+     */
+    private void zoom(ScrollEvent event) {
+        double factor = Math.exp(event.getDeltaY() * ZOOM_PER_SCROLL_PIXEL);
+        offsetX = event.getX() - (event.getX() - offsetX) * factor;
+        offsetY = event.getY() - (event.getY() - offsetY) * factor;
+        scale *= factor;
+        repaint(0, 0, canvas.getWidth(), canvas.getHeight());
+    }
+
+    /**
+     * Selects the intersection drawn under a click, if any, unless the click ended a drag.
+     *
+     * @param event the mouse click
+     */
+    private void select(MouseEvent event) {
+        if (dragged || scale < DETAIL_SCALE) {
+            return;
+        }
+        double limit = 2 * INTERSECTION_RADIUS;
+        for (int i = 0; i < intersections.length; i++) {
+            if (Math.abs(screenX(i) - event.getX()) <= limit
+                    && Math.abs(screenY(i) - event.getY()) <= limit) {
+                viewModel.setSelected(intersections[i]);
+                return;
+            }
+        }
+    }
+}
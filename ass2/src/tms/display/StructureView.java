@@ -3,14 +3,17 @@ package tms.display;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
-import javafx.scene.control.ScrollPane;
-import javafx.scene.control.ScrollPane.ScrollBarPolicy;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.text.TextAlignment;
 import tms.intersection.Intersection;
 import tms.route.Route;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Displays the structure of the traffic network.
  * <p>
@@ -24,18 +27,31 @@ import tms.route.Route;
  *     {@link Intersection#getId()} {@link Route#getCongestion()}, {@link Route#getSpeed()} )
  *     The intersection buttons should display the intersection id (See {@link Intersection#getId()}).
  * </p>
+ * <p>
+ *     The rows are shown in a virtualised {@link ListView}, so buttons exist only for the rows currently
+ *     visible and are reused as the list scrolls. Each update only changes the text and colour of visible
+ *     buttons whose route congestion, speed or selection changed since the previous update. The list of
+ *     intersections is only replaced when the model's structure version changes.
+ * </p>
  *
  * @ass2_given
  */
 public class StructureView {
+    private static final double INTERSECTION_DISPLAY_WIDTH = 200;
+    private static final double DISPLAY_HEIGHT = 250;
+    private static final double ROW_HEIGHT = 34;
 
     // Pane to hold the Structural Display.
     private Pane structurePane;
     private MainViewModel viewModel;
 
-    // Current scroll position of panes to use when updating display.
-    private double connectionsHPos = 0;
-    private double structurePaneVPos = 0;
+    // Virtualised list with a row for each intersection.
+    private ListView<Intersection> rowList;
+    // Every row cell created by the list, a few more than fit on screen. The list is never refreshed, which would
+    // discard these cells and create new ones.
+    private List<IntersectionCell> cells = new ArrayList<>();
+    // Structure version of the model when the list's items were last replaced.
+    private int structureVersion;
 
     /**
      * Constructor, see {@link StructureView#makeStructurePane()}.
@@ -46,39 +62,27 @@ public class StructureView {
     public StructureView(MainViewModel viewModel) {
         this.viewModel = viewModel;
         this.structurePane = makeStructurePane();
+        this.structureVersion = viewModel.getStructureVersion();
+        rowList.getItems().setAll(viewModel.getIntersections());
     }
 
     /**
-     * Update the pane by removing and repopulating all children, see
-     * {@link StructureView#makeStructurePane()}
+     * Update the pane to show the current state of the network.
+     * <p>
+     * If the network's intersections or routes may have changed, the list's items are replaced, which makes the
+     * list show each visible row again. Then only the visible buttons whose displayed values changed are updated.
      *
      * @ass2_given View code for A2.
      */
     public void update() {
-        storeScrollPositions();
-        this.structurePane.getChildren().removeAll(this.structurePane.getChildren());
-        this.structurePane.getChildren().addAll(makeStructurePane().getChildren());
-    }
-
-    /**
-     * Store the positions in which the connectionsDisplay and
-     * the structurePanel are currently in.
-     *
-     * @ass2_given View code for A2.
-     */
-    private void storeScrollPositions() {
-        try {
-            // This code is dependent on the order in which
-            // makeStructurePane adds nodes to its panes.
-            ScrollPane sp = (ScrollPane) (this.structurePane.getChildren().get(0));
-            structurePaneVPos = sp.getVvalue();
-            HBox hb = (HBox) sp.getContent();
-            ScrollPane sp2 = (ScrollPane) hb.getChildren().get(0);
-            connectionsHPos = sp2.getHvalue();
-        } catch (ClassCastException cce) {
-            // Consequence of ignoring the exception is that the scroll panes
-            // reset to the top left of the view after every update.
-            // Minimally, the error should be logged.
+        if (viewModel.getStructureVersion() != structureVersion) {
+            structureVersion = viewModel.getStructureVersion();
+            rowList.getItems().setAll(viewModel.getIntersections());
+        }
+        Intersection selectedIntersection = viewModel.getSelectedIntersection();
+        Route selectedRoute = viewModel.getSelectedRoute();
+        for (IntersectionCell cell : cells) {
+            cell.refresh(selectedIntersection, selectedRoute);
         }
     }
 
@@ -89,104 +93,32 @@ public class StructureView {
      * @ass2_given View code for A2.
      */
     private Pane makeStructurePane() {
-        final double INTERSECTION_DISPLAY_WIDTH = 200;
-        final double DISPLAY_HEIGHT = 250;
-        final double SCROLLBAR_SIZE = 15;
-
-        // structurePanel contains the scrollPane that allows this pane to scroll.
-        // structureContainer contains the panes that make up the display components.
-        // Nesting of an HBox in a ScrollPane in an HBox is needed to accommodate the
-        // other parts of the GUI that require a Pane and not a ScrollPane.
-        var structurePanel = new HBox();
-        var structureContainer = new HBox();
-        var scrollPane = new ScrollPane();
-        scrollPane.setContent(structureContainer);
-        scrollPane.setHbarPolicy(ScrollBarPolicy.NEVER);
-        scrollPane.setVbarPolicy(ScrollBarPolicy.AS_NEEDED);
-        scrollPane.setVvalue(structurePaneVPos);
-
-        // Pane that contains the buttons for the routes connecting to an intersection.
-        var connectionsDisplay = new VBox(2);
-        connectionsDisplay.setMinWidth(MainView.WINDOW_WIDTH - INTERSECTION_DISPLAY_WIDTH - SCROLLBAR_SIZE);
-        connectionsDisplay.setMinHeight(DISPLAY_HEIGHT);
-        connectionsDisplay.setBorder(new Border(new BorderStroke(Color.BLACK,
-                BorderStrokeStyle.SOLID, CornerRadii.EMPTY, BorderWidths.DEFAULT)));
-        var scrollableConnectionsDisplay = new ScrollPane();
-        scrollableConnectionsDisplay.setContent(connectionsDisplay);
-        scrollableConnectionsDisplay.setHbarPolicy(ScrollBarPolicy.AS_NEEDED);
-        scrollableConnectionsDisplay.setVbarPolicy(ScrollBarPolicy.NEVER);
-        scrollableConnectionsDisplay.setPrefSize(MainView.WINDOW_WIDTH - INTERSECTION_DISPLAY_WIDTH - SCROLLBAR_SIZE,
-                DISPLAY_HEIGHT);
-        scrollableConnectionsDisplay.setHvalue(connectionsHPos);
-
-        // Pane of all the intersection buttons.
-        var intersectionDisplay = new VBox(2);
-        intersectionDisplay.setMinWidth(INTERSECTION_DISPLAY_WIDTH);
-        intersectionDisplay.setMinHeight(DISPLAY_HEIGHT);
-        intersectionDisplay.setBorder(new Border(new BorderStroke(Color.BLACK,
-                BorderStrokeStyle.SOLID, CornerRadii.EMPTY, BorderWidths.DEFAULT)));
-
-        // Labels describing the contents of the two panes.
+        // Labels describing the contents of the two columns of each row.
         var connectionsLabel = new Label("Connections going Into: ");
-        connectionsLabel.setAlignment(Pos.TOP_RIGHT);
+        connectionsLabel.setAlignment(Pos.TOP_LEFT);
         connectionsLabel.setTextAlignment(TextAlignment.LEFT);
+        connectionsLabel.setMaxWidth(Double.MAX_VALUE);
+        HBox.setHgrow(connectionsLabel, Priority.ALWAYS);
 
         var intersectionLabel = new Label("Intersections ");
         intersectionLabel.setAlignment(Pos.TOP_LEFT);
+        intersectionLabel.setMinWidth(INTERSECTION_DISPLAY_WIDTH);
 
-        connectionsDisplay.getChildren().addAll(connectionsLabel);
-        intersectionDisplay.getChildren().addAll(intersectionLabel);
+        var labels = new HBox(connectionsLabel, intersectionLabel);
 
-        // Display details of each intersection
-        for (Intersection intersection : viewModel.getIntersections()) {
-            var intersectionButton = new Button(intersection.getId());
-            intersectionButton.setMaxWidth(INTERSECTION_DISPLAY_WIDTH - 20);
-            intersectionButton.setAlignment(Pos.TOP_LEFT);
-            intersectionButton.setOnAction(e -> viewModel.setSelected(intersection));
-            intersectionButton.setStyle("-fx-background-insets: 0, 1, 2;" +
-                    "-fx-border-color: #000000;" + "-fx-background-radius: 5, 4, 3;");
-            if (intersection.equals(viewModel.getSelectedIntersection())) {
-                intersectionButton.setStyle("-fx-background-insets: 0, 1, 2;" +
-                        "-fx-border-color: #999999;" + "-fx-background-radius: 5, 4, 3;");
-            }
-            intersectionButton.setPrefHeight(25);
-
-            // Display details of all connections going into this intersection.
-            var routeBox = new HBox(2);
-            for (Route route: intersection.getConnections()) {
-                var routeButton = new Button(route.getFrom().getId() + ", Con:" + route.getCongestion() +
-                        ", speed:" + route.getSpeed());
-
-                routeButton.setStyle("-fx-background-color: " + MainViewModel.getColor(route.getCongestion()) + ";" +
-                        "-fx-background-insets: 0, 1, 2;" + "-fx-border-color: #000000;" +
-                        "-fx-background-radius: 5, 4, 3;");
-                if (route.equals(viewModel.getSelectedRoute())) {
-                    routeButton.setStyle("-fx-background-color: " +
-                            MainViewModel.getColor(route.getCongestion()) + ";" +
-                            "-fx-background-insets: 0, 1, 2;" + "-fx-border-color: #999999;" +
-                            "-fx-background-radius: 5, 4, 3;");
-                }
-
-                // TODO: Make buttons prettier: routeButton.setStyle();
-                routeButton.setMinWidth(130);
-                routeButton.setMinHeight(30);
-                routeButton.setPrefHeight(25);
-                routeButton.setOnAction(e -> viewModel.setSelected(route, intersection));
-                routeBox.getChildren().addAll(routeButton);
-            }
-
-            routeBox.setAlignment(Pos.TOP_RIGHT);
-            routeBox.setMinHeight(30);
-            intersectionButton.setMinHeight(30);
-            intersectionDisplay.getChildren().addAll(intersectionButton);
-            connectionsDisplay.getChildren().addAll(routeBox);
-        }
+        rowList = new ListView<>();
+        rowList.setFixedCellSize(ROW_HEIGHT);
+        rowList.setPrefSize(MainView.WINDOW_WIDTH, DISPLAY_HEIGHT);
+        rowList.setCellFactory(list -> {
+            IntersectionCell cell = new IntersectionCell();
+            cells.add(cell);
+            return cell;
+        });
+        rowList.setBorder(new Border(new BorderStroke(Color.BLACK,
+                BorderStrokeStyle.SOLID, CornerRadii.EMPTY, BorderWidths.DEFAULT)));
 
-        // Empty label added to bottom of intersectionDisplay to align with
-        // space taken by scroll bar in scrollableConnectionsDisplay.
-        intersectionDisplay.getChildren().addAll(new Label());
-        structureContainer.getChildren().addAll(scrollableConnectionsDisplay, intersectionDisplay);
-        structurePanel.getChildren().addAll(scrollPane);
+        var structurePanel = new VBox(labels, rowList);
+        structurePanel.setMaxWidth(MainView.WINDOW_WIDTH);
         return structurePanel;
     }
 
@@ -199,4 +131,153 @@ public class StructureView {
     public Pane getPane() {
         return structurePane;
     }
+
+    /**
+     * A reusable row showing the buttons for the routes going into an intersection, followed by the
+     * intersection's button.
+     */
+    private class IntersectionCell extends ListCell<Intersection> {
+        private final Button intersectionButton;
+        private final HBox routeBox;
+        private final HBox row;
+        // Buttons for the displayed intersection's routes, reused as the cell shows other intersections.
+        private final List<RouteButton> routeButtons = new ArrayList<>();
+        // Number of route buttons currently in use.
+        private int routeCount;
+        // Whether the intersection button is currently styled as selected.
+        private boolean selected;
+
+        /**
+         * Creates an empty row.
+         */
+        private IntersectionCell() {
+            intersectionButton = new Button();
+            intersectionButton.setMaxWidth(INTERSECTION_DISPLAY_WIDTH - 20);
+            intersectionButton.setMinWidth(INTERSECTION_DISPLAY_WIDTH - 20);
+            intersectionButton.setAlignment(Pos.TOP_LEFT);
+            intersectionButton.setOnAction(e -> viewModel.setSelected(getItem()));
+            intersectionButton.setStyle(CongestionPalette.plainStyle(false));
+            intersectionButton.setPrefHeight(25);
+            intersectionButton.setMinHeight(30);
+
+            routeBox = new HBox(2);
+            routeBox.setAlignment(Pos.TOP_RIGHT);
+            routeBox.setMinHeight(30);
+            HBox.setHgrow(routeBox, Priority.ALWAYS);
+
+            row = new HBox(2, routeBox, intersectionButton);
+        }
+
+        /**
+         * Shows the given intersection and its routes in this row.
+         *
+         * @param intersection the intersection to show, or null if the row is empty
+         * @param empty whether the row is empty
+         */
+        @Override
+        protected void updateItem(Intersection intersection, boolean empty) {
+            super.updateItem(intersection, empty);
+            if (empty || intersection == null) {
+                setGraphic(null);
+                return;
+            }
+            intersectionButton.setText(intersection.getId());
+            List<Route> routes = intersection.getConnections();
+            routeCount = routes.size();
+            while (routeButtons.size() < routeCount) {
+                routeButtons.add(new RouteButton());
+            }
+            for (int i = 0; i < routeCount; i++) {
+                routeButtons.get(i).show(routes.get(i), intersection);
+            }
+            if (routeBox.getChildren().size() != routeCount) {
+                routeBox.getChildren().clear();
+                for (int i = 0; i < routeCount; i++) {
+                    routeBox.getChildren().add(routeButtons.get(i).button);
+                }
+            }
+            refresh(viewModel.getSelectedIntersection(), viewModel.getSelectedRoute());
+            setGraphic(row);
+        }
+
+        /**
+         * Updates the buttons in this row whose displayed values have changed.
+         *
+         * @param selectedIntersection the currently selected intersection, or null
+         * @param selectedRoute the currently selected route, or null
+         */
+        private void refresh(Intersection selectedIntersection, Route selectedRoute) {
+            Intersection intersection = getItem();
+            if (isEmpty() || intersection == null) {
+                return;
+            }
+            boolean nowSelected = intersection == selectedIntersection;
+            if (nowSelected != selected) {
+                selected = nowSelected;
+                intersectionButton.setStyle(CongestionPalette.plainStyle(selected));
+            }
+            for (int i = 0; i < routeCount; i++) {
+                routeButtons.get(i).refresh(selectedRoute);
+            }
+        }
+    }
+
+    /**
+     * The button for a route, along with the values it currently displays.
+     */
+    private class RouteButton {
+        private final Button button;
+        private Route route;
+        private Intersection to;
+        // Values currently displayed, -1 when a new route is shown.
+        private int congestion = -1;
+        private int speed = -1;
+        private boolean selected;
+
+        /**
+         * Creates a button not yet showing any route.
+         */
+        private RouteButton() {
+            button = new Button();
+            button.setMinWidth(130);
+            button.setMinHeight(30);
+            button.setPrefHeight(25);
+            button.setOnAction(e -> viewModel.setSelected(route, to));
+        }
+
+        /**
+         * Shows the given route on this button from the next refresh.
+         *
+         * @param route the route to display
+         * @param to the intersection the route goes into
+         */
+        private void show(Route route, Intersection to) {
+            if (route != this.route) {
+                this.route = route;
+                congestion = -1;
+                speed = -1;
+            }
+            this.to = to;
+        }
+
+        /**
+         * Updates the button's text and colour if the route's congestion, speed or selection have changed.
+         *
+         * @param selectedRoute the currently selected route, or null
+         */
+        private void refresh(Route selectedRoute) {
+            int newCongestion = route.getCongestion();
+            int newSpeed = route.getSpeed();
+            boolean newSelected = route == selectedRoute;
+            if (newCongestion != congestion || newSpeed != speed) {
+                button.setText(route.getFrom().getId() + ", Con:" + newCongestion + ", speed:" + newSpeed);
+            }
+            if (newCongestion != congestion || newSelected != selected) {
+                button.setStyle(CongestionPalette.style(newCongestion, newSelected));
+            }
+            congestion = newCongestion;
+            speed = newSpeed;
+            selected = newSelected;
+        }
+    }
 }
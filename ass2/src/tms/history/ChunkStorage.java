@@ -0,0 +1,38 @@
+package tms.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Holds the sealed chunks of the columns of a {@link HistoryStore}. Chunks
+ * are only ever added, and are identified by the order they were added in.
+ */
+interface ChunkStorage {
+    /**
+     * Stores a copy of the given bytes as a new chunk.
+     * @param bytes the encoded chunk
+     * @param length the number of bytes of the chunk
+     * @return the number of the new chunk
+     * @throws IOException if the chunk cannot be stored
+     */
+    int put(byte[] bytes, int length) throws IOException;
+
+    /**
+     * Returns the bytes of a chunk.
+     * @param chunk the number of a stored chunk
+     * @return a buffer whose remaining bytes are the chunk
+     */
+    ByteBuffer get(int chunk);
+
+    /**
+     * Returns the number of bytes of all the chunks stored.
+     * @return the stored size in bytes
+     */
+    long getSize();
+
+    /**
+     * Releases any file held by this storage.
+     * @throws IOException if the file cannot be closed
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,256 @@
+package tms.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An append-only column of whole numbers, compressed in chunks of
+ * {@link #CHUNK_SIZE} values.
+ * <p>
+ * Each chunk starts with its first value, followed by the differences
+ * between consecutive values. A difference equal to the one before it is
+ * not written again; instead the number of times it repeats is written as a
+ * single run. Every number is written as a zigzag varint, seven bits to a
+ * byte, so a column that changes slowly or not at all takes a byte or two per
+ * chunk rather than eight per value.
+ * <p>
+ * The last chunk is kept open and encoded as values are appended. Once it is
+ * full it is sealed and handed to the {@link ChunkStorage}. Since every chunk
+ * holds the same number of values, reading a range of values only decodes
+ * the chunks that overlap it.
+ * <p>
+ * The differences between values must fit in 62 bits. A column is not safe
+ * to read while another thread appends to it.
+ */
+
+class Column {
+
+    /** Number of values in each chunk */
+    static final int CHUNK_SIZE = 1024;
+
+    /** Holds the sealed chunks */
+    private final ChunkStorage storage;
+    /** Chunk number in the storage of each sealed chunk */
+    private int[] chunks = new int[4];
+    /** Number of sealed chunks */
+    private int sealed;
+    /** Number of values in the column */
+    private int size;
+    /** Encoded bytes of the open chunk */
+    private byte[] open = new byte[16];
+    /** Number of bytes of the open chunk */
+    private int length;
+    /** The last value appended */
+    private long last;
+    /** The last difference written in the open chunk */
+    private long delta;
+    /** Number of times the last difference has repeated since written */
+    private long run;
+
+    /**
+     * Creates an empty column.
+     * @param storage holds the sealed chunks of the column
+     */
+
+    Column(ChunkStorage storage) {
+
+        this.storage = storage;
+    }
+
+    /**
+     * Returns the number of values in the column.
+     * @return the size of the column
+     */
+
+    int size() {
+
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes of the open chunk, which are not yet in
+     * the storage.
+     * @return the size of the open chunk in bytes
+     */
+
+    int getOpenBytes() {
+
+        return length;
+    }
+
+    /**
+     * Appends a value to the end of the column, sealing the open chunk if it
+     * becomes full.
+     * @param value the value to append
+     * @throws IOException if a full chunk cannot be stored
+     */
+
+    void append(long value) throws IOException {
+
+        int index = size % CHUNK_SIZE;
+        if (index == 0) {
+            write(zigzag(value));
+        } else if (index > 1 && value - last == delta) {
+            run++;
+        } else {
+            writeRun();
+            delta = value - last;
+            write(zigzag(delta) << 1);
+        }
+        last = value;
+        size++;
+        if (size % CHUNK_SIZE == 0) {
+            writeRun();
+            if (sealed == chunks.length) {
+                chunks = Arrays.copyOf(chunks, 2 * sealed);
+            }
+            chunks[sealed++] = storage.put(open, length);
+            length = 0;
+        }
+    }
+
+    /**
+     * Reads a range of values from the column, decoding only the chunks that
+     * overlap it.
+     * @param from index of the first value to read
+     * @param to index after the last value to read
+     * @param values the array to copy the values into
+     * @param offset the index in the array of the first value
+     * @throws IndexOutOfBoundsException if the range is not within the column
+     */
+
+    void read(int from, int to, long[] values, int offset) {
+
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (from == to) {
+            return;
+        }
+        for (int chunk = from / CHUNK_SIZE; chunk * CHUNK_SIZE < to;
+             chunk++) {
+            int start = chunk * CHUNK_SIZE;
+            ByteBuffer bytes = chunk < sealed ? storage.get(chunks[chunk])
+                    : ByteBuffer.wrap(open, 0, length);
+            decode(bytes, Math.min(CHUNK_SIZE, size - start),
+                    Math.max(from, start) - start, Math.min(to, start
+                            + CHUNK_SIZE) - start, values,
+                    offset + start - from);
+        }
+    }
+
+    /**
+     * Decodes the values of one chunk in the given range.
+     * @param bytes the encoded chunk
+     * @param count the number of values in the chunk
+     * @param from index in the chunk of the first value wanted
+     * @param to index in the chunk after the last value wanted
+     * @param values the array to copy the values into
+     * @param offset index in the array of the first value of the chunk
+     */
+
+    private static void decode(ByteBuffer bytes, int count, int from, int to,
+                               long[] values, int offset) {
+
+        long value = unzigzag(readVarint(bytes));
+        if (from == 0) {
+            values[offset] = value;
+        }
+        long difference = 0;
+        int index = 1;
+        while (index < to) {
+            long repeats = 1;
+            if (!bytes.hasRemaining()) {
+                // The run still pending at the end of an open chunk
+                repeats = count - index;
+            } else {
+                long token = readVarint(bytes);
+                if ((token & 1) == 1) {
+                    repeats = token >>> 1;
+                } else {
+                    difference = unzigzag(token >>> 1);
+                }
+            }
+            for (long i = 0; i < repeats && index < to; i++) {
+                value += difference;
+                if (index >= from) {
+                    values[offset + index] = value;
+                }
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Writes the run of repeated differences pending in the open chunk, if
+     * there is one.
+     */
+
+    private void writeRun() {
+
+        if (run > 0) {
+            write(run << 1 | 1);
+            run = 0;
+        }
+    }
+
+    /**
+     * Writes a number to the end of the open chunk as a varint.
+     * @param number the number, treated as unsigned
+     */
+
+    private void write(long number) {
+
+        if (length + 10 > open.length) {
+            open = Arrays.copyOf(open, 2 * open.length);
+        }
+        while ((number & ~0x7FL) != 0) {
+            open[length++] = (byte) (number & 0x7F | 0x80);
+            number >>>= 7;
+        }
+        open[length++] = (byte) number;
+    }
+
+    /**
+     * Reads a varint from a buffer.
+     * @param bytes the buffer to read from
+     * @return the number read, treated as unsigned
+     */
+
+    private static long readVarint(ByteBuffer bytes) {
+
+        long number = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes.get();
+            number |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return number;
+    }
+
+    /**
+     * Maps a signed number to an unsigned one, so that numbers close to zero
+     * of either sign take few bytes as varints.
+     * @param number the signed number
+     * @return the zigzag encoding of the number
+     */
+
+    private static long zigzag(long number) {
+
+        return number << 1 ^ number >> 63;
+    }
+
+    /**
+     * Reverses {@link #zigzag(long)}.
+     * @param number the zigzag encoding of a number
+     * @return the signed number
+     */
+
+    private static long unzigzag(long number) {
+
+        return number >>> 1 ^ -(number & 1);
+    }
+}
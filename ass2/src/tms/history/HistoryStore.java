@@ -0,0 +1,366 @@
+package tms.history;
+
+import tms.intersection.Intersection;
+import tms.network.Network;
+import tms.route.Route;
+import tms.route.TrafficLight;
+import tms.util.ChangeBus;
+import tms.util.ChangeListener;
+import tms.util.ChangeType;
+import tms.util.IntersectionNotFoundException;
+import tms.util.RouteNotFoundException;
+import tms.util.TimedItem;
+import tms.util.TimedItemManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the congestion, speed and signal of every route of a network each
+ * tick, and answers queries for the history of a route over a range of time.
+ * <p>
+ * The history is stored in columns: one column of the times samples were
+ * recorded at, and one column for each metric of each route. Each column is
+ * compressed in chunks of a fixed number of samples by writing the
+ * differences between consecutive values as varints, with repeated
+ * differences collapsed into runs, so that a value that does not change
+ * costs almost nothing to keep. The history is only ever appended to.
+ * <p>
+ * A query first finds the samples in the range of time by a binary search
+ * over the first time of each chunk of the time column, then decodes only
+ * the chunks of the route's column that overlap those samples. Full chunks
+ * are kept on the heap, or in a memory-mapped file if one is given, so that
+ * long histories need not fit in memory.
+ * <p>
+ * The store registers itself as a sampler with the {@link TimedItemManager}
+ * and records a sample after every tick, once the timed items have advanced.
+ * Routes added to the network later are recorded from the next sample on.
+ * <p>
+ * Queries decode into buffers the store reuses, and read columns that the
+ * next sample appends to, so a store is not safe to use from several
+ * threads at once. When a {@link tms.simulation.SimulationRunner} ticks the
+ * simulation on its own thread, queries from other threads must be run
+ * through {@link tms.simulation.SimulationRunner#sample(Runnable)}.
+ */
+
+public class HistoryStore implements TimedItem {
+
+    /** Value of the signal metric for a route without a traffic light */
+    public static final int NO_SIGNAL = -1;
+
+    /** The network whose routes are recorded */
+    private final Network network;
+    /** Holds the full chunks of every column */
+    private final ChunkStorage storage;
+    /** Listens for routes added to the network */
+    private final ChangeListener listener = this::changed;
+    /** Set when routes may have been added to the network */
+    private volatile boolean structureChanged = true;
+    /** Time each sample was recorded at */
+    private final Column times;
+    /** Time of the first sample of each chunk of the time column */
+    private long[] chunkTimes = new long[16];
+    /** The routes recorded, in the order they were first seen */
+    private final List<Route> routes = new ArrayList<>();
+    /** History of each route recorded */
+    private final Map<Route, Track> tracks = new IdentityHashMap<>();
+    /** Buffer a chunk of the time column is decoded into */
+    private final long[] chunk = new long[Column.CHUNK_SIZE];
+
+    /**
+     * Creates a store that keeps the history of a network in memory, and
+     * registers it with the {@link TimedItemManager}.
+     * @param network the network whose routes are recorded
+     */
+
+    public HistoryStore(Network network) {
+
+        this(network, new MemoryChunkStorage());
+    }
+
+    /**
+     * Creates a store that keeps the history of a network in the given
+     * memory-mapped file, which is replaced if it already exists, and
+     * registers it with the {@link TimedItemManager}. Only the chunks still
+     * being filled are kept on the heap.
+     * @param network the network whose routes are recorded
+     * @param filename name of the file to keep the history in
+     * @throws IOException if the file cannot be created
+     */
+
+    public HistoryStore(Network network, String filename) throws IOException {
+
+        this(network, new MappedChunkStorage(filename));
+    }
+
+    /**
+     * Creates a store that keeps full chunks in the given storage, and
+     * registers it with the {@link TimedItemManager}.
+     * @param network the network whose routes are recorded
+     * @param storage holds the full chunks of every column
+     */
+
+    private HistoryStore(Network network, ChunkStorage storage) {
+
+        this.network = network;
+        this.storage = storage;
+        times = new Column(storage);
+        ChangeBus.getChangeBus().subscribe(listener);
+        TimedItemManager.getTimedItemManager().registerSampler(this);
+    }
+
+    /**
+     * Records a sample of every route at the current tick of the
+     * {@link TimedItemManager}.
+     * @throws UncheckedIOException if the history file cannot be extended
+     */
+
+    @Override
+    public void oneSecond() {
+
+        try {
+            record(TimedItemManager.getTimedItemManager().getTicks());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records a sample of the congestion, speed and signal of every route of
+     * the network at the given time.
+     * @param time the time of the sample in seconds
+     * @throws IllegalArgumentException if time is not after the time of the
+     * last sample
+     * @throws IOException if the history file cannot be extended
+     */
+
+    public void record(long time) throws IOException {
+
+        int sample = times.size();
+        if (sample > 0 && time <= getLastTime()) {
+            throw new IllegalArgumentException();
+        }
+        if (structureChanged) {
+            structureChanged = false;
+            findRoutes(sample);
+        }
+        if (sample % Column.CHUNK_SIZE == 0) {
+            int index = sample / Column.CHUNK_SIZE;
+            if (index == chunkTimes.length) {
+                chunkTimes = Arrays.copyOf(chunkTimes, 2 * index);
+            }
+            chunkTimes[index] = time;
+        }
+        times.append(time);
+        for (Route route : routes) {
+            Column[] columns = tracks.get(route).columns;
+            columns[Metric.CONGESTION.ordinal()].append(route.getCongestion());
+            columns[Metric.SPEED.ordinal()].append(route.getSpeed());
+            TrafficLight light = route.getTrafficLight();
+            columns[Metric.SIGNAL.ordinal()].append(light == null
+                    ? NO_SIGNAL : light.getSignal().ordinal());
+        }
+    }
+
+    /**
+     * Returns the number of samples recorded.
+     * @return the number of samples
+     */
+
+    public int getSampleCount() {
+
+        return times.size();
+    }
+
+    /**
+     * Returns the number of bytes the compressed history takes, not counting
+     * the index of chunks.
+     * @return the size of the history in bytes
+     */
+
+    public long getStoredBytes() {
+
+        long bytes = storage.getSize() + times.getOpenBytes();
+        for (Track track : tracks.values()) {
+            for (Column column : track.columns) {
+                bytes += column.getOpenBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the samples of a metric of the route between the two
+     * intersections with the given IDs, recorded within a range of time.
+     * @param from ID of the intersection at which the route originates
+     * @param to ID of the intersection at which the route ends
+     * @param metric the metric to return
+     * @param start the earliest time of a sample to return
+     * @param end the latest time of a sample to return
+     * @return the samples with times from start to end inclusive, in order
+     * @throws IntersectionNotFoundException if no intersection exists with an
+     * ID given by 'from' or 'to'
+     * @throws RouteNotFoundException if no route exists between the given
+     * intersections
+     * @throws IllegalArgumentException if the route has never been recorded
+     */
+
+    public Series query(String from, String to, Metric metric, long start,
+                        long end) throws IntersectionNotFoundException,
+            RouteNotFoundException {
+
+        return query(network.getConnection(from, to), metric, start, end);
+    }
+
+    /**
+     * Returns the samples of a metric of a route recorded within a range of
+     * time.
+     * @param route the route
+     * @param metric the metric to return
+     * @param start the earliest time of a sample to return
+     * @param end the latest time of a sample to return
+     * @return the samples with times from start to end inclusive, in order
+     * @throws IllegalArgumentException if the route has never been recorded
+     */
+
+    public Series query(Route route, Metric metric, long start, long end) {
+
+        Track track = tracks.get(route);
+        if (track == null || track.first == times.size()) {
+            throw new IllegalArgumentException();
+        }
+        int first = Math.max(track.first, indexOf(start));
+        int last = end == Long.MAX_VALUE ? times.size() : indexOf(end + 1);
+        if (last <= first) {
+            return new Series(new long[0], new int[0]);
+        }
+        long[] sampleTimes = new long[last - first];
+        times.read(first, last, sampleTimes, 0);
+        long[] values = new long[last - first];
+        track.columns[metric.ordinal()].read(first - track.first,
+                last - track.first, values, 0);
+        int[] sampleValues = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            sampleValues[i] = (int) values[i];
+        }
+        return new Series(sampleTimes, sampleValues);
+    }
+
+    /**
+     * Stops recording, removes the store from the {@link TimedItemManager}
+     * and releases the history file, if there is one. The history recorded
+     * can still be queried.
+     * @throws IOException if the history file cannot be closed
+     */
+
+    public void close() throws IOException {
+
+        ChangeBus.getChangeBus().unsubscribe(listener);
+        TimedItemManager.getTimedItemManager().removeTimedItem(this);
+        storage.close();
+    }
+
+    /**
+     * Returns the number of the first sample recorded at or after the given
+     * time, decoding a single chunk of the time column.
+     * @param time the time to search for
+     * @return the number of the sample, the number of samples if every
+     * sample is earlier
+     */
+
+    private int indexOf(long time) {
+
+        int size = times.size();
+        int chunks = (size + Column.CHUNK_SIZE - 1) / Column.CHUNK_SIZE;
+        int low = 0;
+        int high = chunks - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (chunkTimes[middle] <= time) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        // low is now the first chunk that starts after the time
+        if (low == 0) {
+            return 0;
+        }
+        int start = (low - 1) * Column.CHUNK_SIZE;
+        int count = Math.min(Column.CHUNK_SIZE, size - start);
+        times.read(start, start + count, chunk, 0);
+        int index = Arrays.binarySearch(chunk, 0, count, time);
+        return start + (index >= 0 ? index : -index - 1);
+    }
+
+    /**
+     * Returns the time of the last sample recorded.
+     * @return the time in seconds
+     */
+
+    private long getLastTime() {
+
+        int last = times.size() - 1;
+        times.read(last, last + 1, chunk, 0);
+        return chunk[0];
+    }
+
+    /**
+     * Starts recording every route of the network not yet recorded.
+     * @param sample the number of the next sample to be recorded
+     */
+
+    private void findRoutes(int sample) {
+
+        for (Intersection intersection : network.getIntersections()) {
+            for (Route route : intersection.getConnections()) {
+                if (!tracks.containsKey(route)) {
+                    tracks.put(route, new Track(sample, storage));
+                    routes.add(route);
+                }
+            }
+        }
+    }
+
+    /**
+     * Notes a change to the network that may have added routes.
+     * @param type the type of change
+     * @param source the object that changed
+     */
+
+    private void changed(ChangeType type, Object source) {
+
+        if (type == ChangeType.STRUCTURE) {
+            structureChanged = true;
+        }
+    }
+
+    /**
+     * The history of one route: a column for each metric, starting at the
+     * sample the route was first recorded in.
+     */
+    private static class Track {
+        /** Number of the first sample the route was recorded in */
+        private final int first;
+        /** Column of each metric, by ordinal */
+        private final Column[] columns;
+
+        /**
+         * Creates the empty history of a route.
+         * @param first the number of the first sample to be recorded
+         * @param storage holds the full chunks of the columns
+         */
+        private Track(int first, ChunkStorage storage) {
+            this.first = first;
+            columns = new Column[Metric.values().length];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = new Column(storage);
+            }
+        }
+    }
+}
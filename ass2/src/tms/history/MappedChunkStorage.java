@@ -0,0 +1,133 @@
+package tms.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Chunk storage that appends chunks to a memory-mapped file, so that history
+ * larger than the heap can be kept and only the chunks read by queries are
+ * paged in.
+ * <p>
+ * The file is mapped in segments of {@link #SEGMENT_SIZE} bytes as it grows.
+ * A chunk never spans two segments; a chunk that does not fit in the rest of
+ * the current segment starts the next one.
+ */
+
+class MappedChunkStorage implements ChunkStorage {
+
+    /** Number of bytes of the file mapped at once */
+    static final int SEGMENT_SIZE = 1 << 26;
+
+    /** The file chunks are written to */
+    private final FileChannel channel;
+    /** The mapped segments of the file, in order */
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    /** Offset in the file of each chunk */
+    private long[] offsets = new long[64];
+    /** Number of bytes of each chunk */
+    private int[] lengths = new int[64];
+    /** Number of chunks stored */
+    private int count;
+    /** Offset in the file at which the next chunk may start */
+    private long end;
+    /** Number of bytes of all the chunks */
+    private long size;
+
+    /**
+     * Creates chunk storage in the given file, replacing the file if it
+     * already exists.
+     * @param filename name of the file to write chunks to
+     * @throws IOException if the file cannot be created
+     */
+
+    MappedChunkStorage(String filename) throws IOException {
+
+        channel = FileChannel.open(Path.of(filename),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Appends a copy of the given bytes to the file as a new chunk.
+     * @param bytes the encoded chunk
+     * @param length the number of bytes of the chunk
+     * @return the number of the new chunk
+     * @throws IOException if the file cannot be extended
+     * @throws IllegalArgumentException if the chunk is larger than a segment
+     */
+
+    @Override
+    public int put(byte[] bytes, int length) throws IOException {
+
+        if (length > SEGMENT_SIZE) {
+            throw new IllegalArgumentException();
+        }
+        int segment = (int) (end / SEGMENT_SIZE);
+        if ((end + length - 1) / SEGMENT_SIZE != segment) {
+            segment++;
+            end = (long) segment * SEGMENT_SIZE;
+        }
+        while (segments.size() <= segment) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                    (long) segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+        }
+        segments.get(segment).put((int) (end % SEGMENT_SIZE), bytes, 0,
+                length);
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, 2 * count);
+            lengths = Arrays.copyOf(lengths, 2 * count);
+        }
+        offsets[count] = end;
+        lengths[count] = length;
+        end += length;
+        size += length;
+        return count++;
+    }
+
+    /**
+     * Returns the bytes of a chunk, read from the mapped file.
+     * @param chunk the number of a stored chunk
+     * @return a buffer whose remaining bytes are the chunk
+     */
+
+    @Override
+    public ByteBuffer get(int chunk) {
+
+        return segments.get((int) (offsets[chunk] / SEGMENT_SIZE)).slice(
+                (int) (offsets[chunk] % SEGMENT_SIZE), lengths[chunk]);
+    }
+
+    /**
+     * Returns the number of bytes of all the chunks stored.
+     * @return the stored size in bytes
+     */
+
+    @Override
+    public long getSize() {
+
+        return size;
+    }
+
+    /**
+     * Writes the mapped segments to the file and closes it. The chunks can
+     * still be read afterwards.
+     * @throws IOException if the file cannot be closed
+     */
+
+    @Override
+    public void close() throws IOException {
+
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        channel.close();
+    }
+}
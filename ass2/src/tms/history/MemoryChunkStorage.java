@@ -0,0 +1,65 @@
+package tms.history;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chunk storage that keeps every chunk as a byte array on the heap.
+ */
+
+class MemoryChunkStorage implements ChunkStorage {
+
+    /** The stored chunks, in the order they were added */
+    private final List<byte[]> chunks = new ArrayList<>();
+    /** Number of bytes of all the chunks */
+    private long size;
+
+    /**
+     * Stores a copy of the given bytes as a new chunk.
+     * @param bytes the encoded chunk
+     * @param length the number of bytes of the chunk
+     * @return the number of the new chunk
+     */
+
+    @Override
+    public int put(byte[] bytes, int length) {
+
+        byte[] chunk = new byte[length];
+        System.arraycopy(bytes, 0, chunk, 0, length);
+        chunks.add(chunk);
+        size += length;
+        return chunks.size() - 1;
+    }
+
+    /**
+     * Returns the bytes of a chunk.
+     * @param chunk the number of a stored chunk
+     * @return a buffer whose remaining bytes are the chunk
+     */
+
+    @Override
+    public ByteBuffer get(int chunk) {
+
+        return ByteBuffer.wrap(chunks.get(chunk));
+    }
+
+    /**
+     * Returns the number of bytes of all the chunks stored.
+     * @return the stored size in bytes
+     */
+
+    @Override
+    public long getSize() {
+
+        return size;
+    }
+
+    /**
+     * Does nothing, as no file is held.
+     */
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,17 @@
+package tms.history;
+
+/**
+ * The values a {@link HistoryStore} records for each route every tick.
+ */
+public enum Metric {
+    /** The route's congestion, from 0 to 100 */
+    CONGESTION,
+    /** The route's current speed limit in km/h */
+    SPEED,
+    /**
+     * The signal of the route's traffic light, as the ordinal of its
+     * {@link tms.route.TrafficSignal}, or {@link HistoryStore#NO_SIGNAL} if
+     * the route has no light
+     */
+    SIGNAL
+}
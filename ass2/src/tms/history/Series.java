@@ -0,0 +1,58 @@
+package tms.history;
+
+/**
+ * The values of one metric of one route at each tick in a range of time, as
+ * returned by a {@link HistoryStore}.
+ */
+
+public class Series {
+
+    /** Time of each sample, in increasing order */
+    private final long[] times;
+    /** Value of each sample */
+    private final int[] values;
+
+    /**
+     * Creates a series of samples.
+     * @param times the time of each sample, in increasing order
+     * @param values the value of each sample
+     */
+
+    Series(long[] times, int[] values) {
+
+        this.times = times;
+        this.values = values;
+    }
+
+    /**
+     * Returns the number of samples in the series.
+     * @return the number of samples
+     */
+
+    public int size() {
+
+        return times.length;
+    }
+
+    /**
+     * Returns the time a sample was recorded at.
+     * @param index the number of the sample, from zero
+     * @return the time of the sample in seconds
+     */
+
+    public long getTime(int index) {
+
+        return times[index];
+    }
+
+    /**
+     * Returns the value of a sample.
+     * @param index the number of the sample, from zero
+     * @return the value of the sample
+     */
+
+    public int getValue(int index) {
+
+        return values[index];
+    }
+}
@@ -0,0 +1,135 @@
+package tms.intersection;
+
+/**
+ * Settings for traffic lights that allocate green time according to the
+ * congestion on each incoming route, instead of giving every route the same
+ * fixed duration.
+ *
+ * At the start of each route's turn, the green time of a full fixed cycle is
+ * shared between the incoming routes in proportion to their congestion, as
+ * sampled by the lights at the end of the last tick, and the route is given
+ * its share, limited to between the minimum and maximum green time. A route
+ * with no congestion may have its turn skipped while other routes are
+ * congested, but never more than the given number of times in a row.
+ */
+
+public class AdaptiveTiming {
+    /** The shortest time in seconds a route's light is green in its turn */
+    private int minGreen;
+    /** The longest time in seconds a route's light is green in its turn */
+    private int maxGreen;
+    /** The number of turns in a row an uncongested route may be skipped */
+    private int maxSkips;
+
+    /**
+     * Creates new adaptive timing settings.
+     * @param minGreen the shortest time in seconds a route is green in its
+     *                 turn
+     * @param maxGreen the longest time in seconds a route is green in its turn
+     * @param maxSkips the number of turns in a row an uncongested route may be
+     *                 skipped, zero to never skip routes
+     * @throws IllegalArgumentException if minGreen < 1, maxGreen < minGreen
+     * or maxSkips < 0
+     */
+
+    public AdaptiveTiming(int minGreen, int maxGreen, int maxSkips) {
+
+        if (minGreen < 1 || maxGreen < minGreen || maxSkips < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.minGreen = minGreen;
+        this.maxGreen = maxGreen;
+        this.maxSkips = maxSkips;
+    }
+
+    /**
+     * Returns the shortest time in seconds a route's light is green in its
+     * turn.
+     * @return the minimum green time in seconds
+     */
+
+    public int getMinGreen() {
+
+        return minGreen;
+    }
+
+    /**
+     * Returns the longest time in seconds a route's light is green in its
+     * turn.
+     * @return the maximum green time in seconds
+     */
+
+    public int getMaxGreen() {
+
+        return maxGreen;
+    }
+
+    /**
+     * Returns the number of turns in a row an uncongested route may be
+     * skipped.
+     * @return the maximum number of consecutive skips
+     */
+
+    public int getMaxSkips() {
+
+        return maxSkips;
+    }
+
+    /**
+     * Chooses the route to be given the next turn, starting from the given
+     * route in the cycle order and skipping uncongested routes while another
+     * route is congested.
+     * @param congestion the congestion of each incoming route in cycle order
+     * @param candidate index of the route whose turn is next in the order
+     * @param skips number of turns in a row each route has been skipped, which
+     *              is updated for the routes passed over
+     * @return index of the route to be given the next turn
+     */
+
+    int nextRoute(int[] congestion, int candidate, int[] skips) {
+
+        boolean anyCongested = false;
+        for (int value : congestion) {
+            if (value > 0) {
+                anyCongested = true;
+                break;
+            }
+        }
+        int route = candidate;
+        if (anyCongested) {
+            while (congestion[route] == 0 && skips[route] < maxSkips) {
+                skips[route]++;
+                route = (route + 1) % congestion.length;
+            }
+        }
+        skips[route] = 0;
+        return route;
+    }
+
+    /**
+     * Returns the duration of the given route's turn: its share of the green
+     * time of a fixed cycle, followed by the yellow time and one second of
+     * all red.
+     * @param congestion the congestion of each incoming route in cycle order
+     * @param route index of the route whose turn it is
+     * @param duration the fixed duration of each route's turn
+     * @param yellowTime the yellow time of the lights
+     * @return the duration of the route's turn in seconds
+     */
+
+    int turnDuration(int[] congestion, int route, int duration,
+                     int yellowTime) {
+
+        long green = duration - yellowTime - 1;
+        long total = 0;
+        for (int value : congestion) {
+            total += value;
+        }
+        if (total > 0) {
+            green = Math.round((double) green * congestion.length
+                    * congestion[route] / total);
+        }
+        green = Math.min(Math.max(green, minGreen), maxGreen);
+        return (int) green + yellowTime + 1;
+    }
+}
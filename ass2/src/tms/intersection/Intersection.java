@@ -2,11 +2,15 @@ package tms.intersection;
 
 import tms.network.NetworkInitialiser;
 import tms.route.Route;
+import tms.util.ChangeBus;
+import tms.util.ChangeType;
 import tms.util.InvalidOrderException;
 import tms.util.RouteNotFoundException;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -21,6 +25,10 @@ public class Intersection {
     private String id;
     /** List of routes that terminate here. */
     private List<Route> incomingConnections;
+    /** Routes that terminate here, keyed by the ID of their origin. */
+    private Map<String, Route> incomingByOrigin;
+    /** List of routes that originate here, in the order they were created. */
+    private List<Route> outgoingConnections;
     /**
      * Amount by which to reduce the speed limit of speed signs on incoming
      * routes.
@@ -33,6 +41,10 @@ public class Intersection {
     private static final int SPEED_REDUCTION_CUTOFF = 50;
     /** The traffic light for the intersection, if it has one instantiated */
     private IntersectionLights trafficLight = null;
+    /** Map x coordinate of this intersection, NaN if it has no position */
+    private double x = Double.NaN;
+    /** Map y coordinate of this intersection, NaN if it has no position */
+    private double y = Double.NaN;
 
     /**
      * Creates a new intersection with the given identifier.
@@ -43,6 +55,8 @@ public class Intersection {
     public Intersection(String id) {
         this.id = id;
         this.incomingConnections = new ArrayList<>();
+        this.incomingByOrigin = new HashMap<>();
+        this.outgoingConnections = new ArrayList<>();
     }
 
     /**
@@ -69,6 +83,72 @@ public class Intersection {
         return new ArrayList<>(this.incomingConnections);
     }
 
+    /**
+     * Returns a new list containing all the routes that originate at this
+     * intersection, in the order in which they were created.
+     * <p>
+     * Adding/removing routes from this list should not affect the
+     * intersection's internal list of outgoing routes.
+     *
+     * @return list of all routes leaving this intersection
+     */
+
+    public List<Route> getOutgoingConnections() {
+
+        return new ArrayList<>(this.outgoingConnections);
+    }
+
+    /**
+     * Returns true if this intersection has been given a position on the map.
+     * @return whether this intersection has a position
+     */
+
+    public boolean hasPosition() {
+
+        return !Double.isNaN(x);
+    }
+
+    /**
+     * Returns the x coordinate of this intersection on the map, or NaN if it
+     * has no position.
+     * @return x coordinate
+     */
+
+    public double getX() {
+
+        return x;
+    }
+
+    /**
+     * Returns the y coordinate of this intersection on the map, or NaN if it
+     * has no position. The y axis points down, as on screen.
+     * @return y coordinate
+     */
+
+    public double getY() {
+
+        return y;
+    }
+
+    /**
+     * Places this intersection at the given map coordinates.
+     * <p>
+     * Positions are only used for display and are not part of the
+     * intersection's identity.
+     * @param x x coordinate
+     * @param y y coordinate, with the y axis pointing down
+     * @throws IllegalArgumentException if either coordinate is not finite
+     */
+
+    public void setPosition(double x, double y) {
+
+        if (!Double.isFinite(x) || !Double.isFinite(y)) {
+            throw new IllegalArgumentException();
+        }
+        this.x = x;
+        this.y = y;
+    }
+
     /**
      * Returns true if this intersection has a set of traffic lights;
      * false otherwise.
@@ -80,6 +160,16 @@ public class Intersection {
         return trafficLight != null;
     }
 
+    /**
+     * Returns this intersection's traffic lights, or null if it has none.
+     * @return the traffic lights at this intersection
+     */
+
+    public IntersectionLights getTrafficLights() {
+
+        return trafficLight;
+    }
+
     /**
      * Sets the duration of each green-yellow cycle for this intersection's
      * traffic lights.
@@ -122,6 +212,30 @@ public class Intersection {
     public void addTrafficLights(List<Route> order, int yellowTime, int duration)
             throws InvalidOrderException, IllegalArgumentException {
 
+        addTrafficLights(order, yellowTime, duration, null);
+    }
+
+    /**
+     * Adds traffic lights to this intersection the given route order, which
+     * allocate green time by congestion if adaptive timing settings are given.
+     *
+     * Any existing traffic lights at this intersection are replaced.
+     * @param order order of incoming routes to turn traffic lights green
+     * @param yellowTime time for which traffic lights appear yellow
+     * @param duration time for which traffic lights appear green and yellow,
+     *                 the green time of which adaptive lights share out
+     * @param adaptive settings for adaptive timing, or null for fixed timing
+     * @throws InvalidOrderException  if yellowTime < 1; or if duration <
+     * yellowTime + 1
+     * @throws IllegalArgumentException  if the given order is not a permutation
+     * or incomingRoutes; or if order is empty
+     * @see IntersectionLights#IntersectionLights(List, int, int, AdaptiveTiming)
+     */
+
+    public void addTrafficLights(List<Route> order, int yellowTime, int duration,
+                                 AdaptiveTiming adaptive)
+            throws InvalidOrderException, IllegalArgumentException {
+
         if (order.size() == 0) {
             throw new InvalidOrderException();
         }
@@ -131,12 +245,17 @@ public class Intersection {
         if (duration < yellowTime + 1) {
             throw new IllegalArgumentException();
         }
-        trafficLight = new IntersectionLights(order, yellowTime, duration);
         incomingConnections = order;
 
         for (Route route : incomingConnections) {
             route.addTrafficLight();
         }
+        if (trafficLight != null) {
+            trafficLight.unregister();
+        }
+        trafficLight = new IntersectionLights(order, yellowTime, duration,
+                adaptive);
+        ChangeBus.publish(ChangeType.STRUCTURE, this);
     }
 
     /**
@@ -186,19 +305,22 @@ public class Intersection {
         if (defaultSpeed < 0) {
             throw new IllegalArgumentException("Speed must be positive");
         }
-        if (getConnectedIntersections().contains(from)) {
+        if (incomingByOrigin.containsKey(from.getId())) {
             throw new IllegalStateException(
                     "Connection already exists from intersection: \""
                             + from.getId() + "\"");
         }
         Route newRoute = new Route(
                 from + NetworkInitialiser.LINE_INFO_SEPARATOR + id,
-                from, defaultSpeed);
+                from, this, defaultSpeed);
 
         if (from.hasTrafficLights()) {
             newRoute.addTrafficLight();
         }
         incomingConnections.add(newRoute);
+        incomingByOrigin.put(from.getId(), newRoute);
+        from.outgoingConnections.add(newRoute);
+        ChangeBus.publish(ChangeType.STRUCTURE, this);
     }
 
     /**
@@ -240,10 +362,10 @@ public class Intersection {
      */
     public Route getConnection(Intersection from)
             throws RouteNotFoundException {
-        for (Route route : incomingConnections) {
-            if (route.getFrom().equals(from)) {
-                return route;
-            }
+        Route route = incomingByOrigin.get(from.getId());
+
+        if (route != null) {
+            return route;
         }
         throw new RouteNotFoundException("Route not found from \""
                 + from.getId() + "\" to \"" + this.getId() + "\"");
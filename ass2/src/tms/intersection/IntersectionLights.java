@@ -2,10 +2,13 @@ package tms.intersection;
 
 import tms.route.Route;
 import tms.route.TrafficSignal;
+import tms.util.ChangeBus;
+import tms.util.ChangeType;
 import tms.util.TimedItem;
 import tms.util.TimedItemManager;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -16,18 +19,34 @@ import java.util.List;
  */
 
 public class IntersectionLights implements TimedItem {
+    /** The number of seconds before the current time for which past signals
+     * can be looked up */
+    public static final long SIGNAL_HISTORY = 3600;
+    /** The number of timing plans below which the history is not pruned */
+    private static final int MIN_PRUNE_SIZE = 16;
     /** The list of routes connecting to this intersection */
     private List<Route> connections;
     /** The duration of time the traffic light will remain yellow*/
     private int yellowTime;
     /** The duration of time a traffic light will be yellow + green */
     private int duration;
-    /** The real time passing of seconds in the TMS*/
-    private int secondsPassed;
-    /** The real time passing of seconds in the TMS while yellow*/
-    private int yellowSecondsPassed;
-    /** The current route having its traffic light signal changed*/
-    private int currentRoute;
+    /** The number of seconds this set of lights has been simulated for */
+    private long time;
+    /** The time at which this set of lights was created */
+    private final long created;
+    /** Timing plans in the order they took effect, the last is current */
+    private List<TimingPlan> plans;
+    /** Settings for allocating green time by congestion, null if fixed */
+    private AdaptiveTiming adaptive;
+    /** Number of turns in a row each route has been skipped, if adaptive */
+    private int[] skips;
+    /** Congestion of each incoming route at the end of the last tick, if
+     * adaptive */
+    private int[] congestion;
+    /** Samples the congestion of the incoming routes, if adaptive */
+    private final TimedItem sampler = this::sampleCongestion;
+    /** The number of timing plans at which past plans are next pruned */
+    private int pruneSize = MIN_PRUNE_SIZE;
 
     /**
      * Creates a new set of traffic lights at an intersection.
@@ -42,14 +61,56 @@ public class IntersectionLights implements TimedItem {
     public IntersectionLights(List<Route> connections, int yellowTime,
                               int duration) {
 
+        this(connections, yellowTime, duration, null);
+    }
+
+    /**
+     * Creates a new set of traffic lights at an intersection, which allocate
+     * green time to the incoming routes according to their congestion if
+     * adaptive timing settings are given.
+     *
+     * Adaptive lights choose the route and length of each turn when the
+     * previous turn ends, from the congestion of the incoming routes at the
+     * end of the last tick, or at creation before the first tick. The
+     * congestion is sampled by a sampler registered with the
+     * {@link TimedItemManager}, so the lights never read a route's sensors
+     * while the sensors are being advanced. Each turn is a timing plan of
+     * its own, so the signals of past turns can still be looked up, and
+     * advance(long) moves forward turn by turn rather than second by second.
+     * Only the plans of the last {@link #SIGNAL_HISTORY} seconds are kept. The given duration is the
+     * fixed duration of each route's turn, whose green time adaptive lights
+     * share out between the routes each cycle.
+     * @param connections a list of incoming routes, the list cannot be empty
+     * @param yellowTime time in seconds for which lights will appear yellow
+     * @param duration time in seconds for which lights will appear yellow and
+     *                 green
+     * @param adaptive settings for adaptive timing, or null for fixed timing
+     */
+    public IntersectionLights(List<Route> connections, int yellowTime,
+                              int duration, AdaptiveTiming adaptive) {
+
         this.connections = connections;
         this.yellowTime = yellowTime;
         this.duration = duration;
-        this.secondsPassed = 0;
-        this.yellowSecondsPassed = 0;
-        this.currentRoute = 0;
-        TimedItemManager.getTimedItemManager().registerTimedItem(this);
-        connections.get(currentRoute).setSignal(TrafficSignal.GREEN);
+        TimedItemManager manager = TimedItemManager.getTimedItemManager();
+        this.time = manager.getTicks();
+        this.created = time;
+        this.plans = new ArrayList<>();
+        this.adaptive = adaptive;
+        int firstTurn = duration;
+        if (adaptive != null) {
+            skips = new int[connections.size()];
+            sampleCongestion();
+            firstTurn = adaptive.turnDuration(congestion, 0, duration,
+                    yellowTime);
+        }
+        plans.add(new TimingPlan(time, time, 0, firstTurn,
+                connections.size()));
+        manager.registerTimedItem(this);
+        if (adaptive != null) {
+            manager.registerSampler(sampler);
+        }
+        connections.get(0).setSignal(TrafficSignal.GREEN);
     }
 
     /**
@@ -63,12 +124,38 @@ public class IntersectionLights implements TimedItem {
         return yellowTime;
     }
 
+    /**
+     * Returns the time in seconds for which each incoming route's light will
+     * appear green and yellow in each cycle.
+     * @return duration of each green-yellow cycle in seconds
+     */
+
+    public int getDuration() {
+
+        return duration;
+    }
+
+    /**
+     * Returns the adaptive timing settings of these lights, or null if they
+     * use fixed timing.
+     * @return the adaptive timing settings
+     */
+
+    public AdaptiveTiming getAdaptiveTiming() {
+
+        return adaptive;
+    }
+
     /**
      * Sets a new duration of each green-yellow cycle.
      *
      * The current progress of the lights cycle should be reset, such that on
      * the next call to oneSecond(), only one second of the new duration has
      * been elapsed for the incoming route that currently has a green light.
+     * A {@link ChangeType#LIGHT_TIMING} change is published.
+     *
+     * Adaptive lights keep the turn in progress, and share out the green
+     * time of the new duration from their next turn on.
      * @param duration the new light signal duration
      */
 
@@ -76,8 +163,145 @@ public class IntersectionLights implements TimedItem {
 
         if (duration > getYellowTime()) {
 
+            if (adaptive != null) {
+                this.duration = duration;
+                ChangeBus.publish(ChangeType.LIGHT_TIMING, this);
+                return;
+            }
+            TimingPlan current = plans.get(plans.size() - 1);
+            int phase = current.currentRoute(time);
+            replaceCurrentPlanAt(time);
+            plans.add(new TimingPlan(time, time, phase, duration,
+                    connections.size()));
             this.duration = duration;
-            secondsPassed = 0;
+            ChangeBus.publish(ChangeType.LIGHT_TIMING, this);
+        }
+    }
+
+    /**
+     * Returns the time in seconds of one full cycle, in which every incoming
+     * route is given green once.
+     * @return the cycle length in seconds
+     */
+
+    public int getCycleLength() {
+
+        return duration * connections.size();
+    }
+
+    /**
+     * Shifts the cycle of these lights such that the given route's green
+     * begins at the given time, or a whole number of cycles before or after
+     * it. Other routes keep their order and duration.
+     *
+     * The new timing takes effect from the next second, so the route that is
+     * green at the time of the call may have its turn cut short. A
+     * {@link ChangeType#LIGHT_TIMING} change is published.
+     * @param route an incoming route controlled by these lights
+     * @param greenStart a time at which the route's green should begin
+     * @throws IllegalArgumentException if the route is not controlled by these
+     * lights
+     * @throws IllegalStateException if these lights use adaptive timing, as
+     * their turns do not follow a fixed cycle
+     */
+
+    public void setGreenStart(Route route, long greenStart) {
+
+        int index = indexOf(route);
+        if (index < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (adaptive != null) {
+            throw new IllegalStateException();
+        }
+        long start = time - Math.floorMod(time - (greenStart - 1),
+                (long) getCycleLength());
+        replaceCurrentPlanAt(time);
+        plans.add(new TimingPlan(time, start, index, duration,
+                connections.size()));
+        ChangeBus.publish(ChangeType.LIGHT_TIMING, this);
+    }
+
+    /**
+     * Returns the number of seconds this set of lights has been simulated
+     * for. Lights start counting from the number of ticks the
+     * {@link TimedItemManager} had performed when they were created, so all
+     * lights in a network share the same clock.
+     * @return the current time of these lights in seconds
+     */
+
+    public long getTime() {
+
+        return time;
+    }
+
+    /**
+     * Returns the signal the given incoming route has, or had, at the given
+     * time.
+     *
+     * The signal is computed directly from the timing plan in effect at that
+     * time, so the cost does not depend on how far the time is from the
+     * current time. Times after the current time assume the duration is not
+     * changed in between. Each timing plan records the number of incoming
+     * routes it cycles through, so a route connected later does not change
+     * the signals of past times, and is red at times before it joined the
+     * cycle.
+     *
+     * Past signals can be looked up as far back as {@link #SIGNAL_HISTORY}
+     * seconds before the current time, and no further back than the time
+     * these lights were created. Older timing plans are discarded as the
+     * lights advance.
+     * @param route an incoming route controlled by these lights
+     * @param time the time to find the signal at, in seconds
+     * @return the signal of the route at the given time
+     * @throws IllegalArgumentException if the route is not controlled by these
+     * lights, or the time is before the earliest time that can be looked up
+     */
+
+    public TrafficSignal getSignalAt(Route route, long time) {
+
+        int index = indexOf(route);
+        if (index < 0 || time < getEarliestTime()) {
+            throw new IllegalArgumentException();
+        }
+        return signalAt(index, time);
+    }
+
+    /**
+     * Returns the earliest time at which signals can be looked up with
+     * getSignalAt(Route, long).
+     * @return the earliest time that can be looked up, in seconds
+     */
+
+    public long getEarliestTime() {
+
+        return Math.max(created, time - SIGNAL_HISTORY);
+    }
+
+    /**
+     * Moves these lights forward by the given number of seconds, as if
+     * oneSecond() had been called that many times, and sets each incoming
+     * route's signal to its signal at the new time. The cost does not depend
+     * on the number of seconds.
+     * @param seconds the number of seconds to move forward by
+     * @throws IllegalArgumentException if seconds is negative
+     */
+
+    public void advance(long seconds) {
+
+        if (seconds < 0) {
+            throw new IllegalArgumentException();
+        }
+        followConnections();
+        if (adaptive != null) {
+            allocateTurns(time + seconds);
+        }
+        time += seconds;
+        for (int i = 0; i < connections.size(); i++) {
+            connections.get(i).setSignal(signalAt(i, time));
+        }
+        if (plans.size() >= pruneSize) {
+            prunePlans();
         }
     }
 
@@ -104,32 +328,244 @@ public class IntersectionLights implements TimedItem {
     @Override
     public void oneSecond() {
 
-        if (secondsPassed == 0) {
-            connections.get(currentRoute).setSignal(TrafficSignal.GREEN);
-        }
-        secondsPassed++;
-
-        if (connections.get(currentRoute).getTrafficLight().getSignal() ==
-                TrafficSignal.YELLOW) {
-            yellowSecondsPassed++;
-
-            if (yellowSecondsPassed == getYellowTime()) {
-                connections.get(currentRoute).setSignal
-                        (TrafficSignal.RED);
-                if ((connections.size() - (currentRoute + 1)) > 0) {
-                    currentRoute++;
-                }
-                else {
-                    currentRoute = 0;
-                }
-                secondsPassed = 0;
-                yellowSecondsPassed = 0;
+        advance(1);
+    }
+
+    /**
+     * Returns the number of timing plans kept for looking up signals.
+     * @return the number of timing plans
+     */
+
+    int getPlanCount() {
+
+        return plans.size();
+    }
+
+    /**
+     * Removes these lights, and their congestion sampler if they are
+     * adaptive, from the {@link TimedItemManager}.
+     */
+
+    void unregister() {
+
+        TimedItemManager manager = TimedItemManager.getTimedItemManager();
+        manager.removeTimedItem(this);
+        manager.removeTimedItem(sampler);
+    }
+
+    /**
+     * Computes the signal of the incoming route at the given index at the
+     * given time, which must not be before these lights were created.
+     * @param index index of the route in the list of incoming routes
+     * @param time the time to find the signal at, in seconds
+     * @return the signal of the route at the given time
+     */
+
+    private TrafficSignal signalAt(int index, long time) {
+
+        if (time == created) {
+            return index == 0 ? TrafficSignal.GREEN : TrafficSignal.RED;
+        }
+        TimingPlan plan = plans.get(planBefore(time));
+        long elapsed = time - plan.start - 1;
+        int phase = (int) ((plan.anchorPhase + elapsed / plan.duration)
+                % plan.size);
+        if (phase != index) {
+            return TrafficSignal.RED;
+        }
+        long second = elapsed % plan.duration + 1;
+        if (second < plan.duration - yellowTime) {
+            return TrafficSignal.GREEN;
+        }
+        if (second < plan.duration) {
+            return TrafficSignal.YELLOW;
+        }
+        return TrafficSignal.RED;
+    }
+
+    /**
+     * Adds a timing plan for each adaptive turn that begins up to the given
+     * time, choosing the route and its green time from the last sampled
+     * congestion. Routes connected since the last sample count as
+     * uncongested.
+     * @param until the time up to which to allocate turns
+     */
+
+    private void allocateTurns(long until) {
+
+        TimingPlan plan = plans.get(plans.size() - 1);
+        long end = plan.start + ((plan.anchor - plan.start) / plan.duration + 1)
+                * plan.duration;
+        while (end <= until) {
+            if (skips.length < connections.size()) {
+                skips = Arrays.copyOf(skips, connections.size());
+                congestion = Arrays.copyOf(congestion, connections.size());
             }
+            int route = adaptive.nextRoute(congestion,
+                    plan.currentRoute(end), skips);
+            plan = new TimingPlan(end, end, route, adaptive.turnDuration(
+                    congestion, route, duration, yellowTime),
+                    connections.size());
+            plans.add(plan);
+            end += plan.duration;
+        }
+    }
+
+    /**
+     * Records the current congestion of every incoming route, for adaptive
+     * lights to allocate their next turns from. Called after every tick,
+     * once all sensors have been advanced.
+     */
+
+    private void sampleCongestion() {
+
+        if (congestion == null || congestion.length != connections.size()) {
+            congestion = new int[connections.size()];
+        }
+        for (int i = 0; i < congestion.length; i++) {
+            congestion[i] = connections.get(i).getCongestion();
+        }
+    }
+
+    /**
+     * Adds a timing plan that cycles through every incoming route if routes
+     * have been connected since the current plan took effect. The turn in
+     * progress carries on unchanged, and the new routes take their turns
+     * after the routes already in the cycle.
+     */
+
+    private void followConnections() {
+
+        TimingPlan current = plans.get(plans.size() - 1);
+        int size = connections.size();
+        if (current.size == size) {
+            return;
+        }
+        long start = time - Math.floorMod(time - current.start,
+                (long) current.duration);
+        int phase = current.currentRoute(time);
+        replaceCurrentPlanAt(time);
+        plans.add(new TimingPlan(time, start, phase, current.duration, size));
+    }
+
+    /**
+     * Discards the timing plans that no longer determine any signal that can
+     * be looked up. The next prune happens once the number of plans has
+     * doubled, so pruning takes constant time per plan on average.
+     */
+
+    private void prunePlans() {
+
+        long earliest = getEarliestTime();
+        if (earliest > plans.get(0).anchor) {
+            plans.subList(0, planBefore(earliest)).clear();
+        }
+        pruneSize = Math.max(MIN_PRUNE_SIZE, 2 * plans.size());
+    }
+
+    /**
+     * Removes the current timing plan if it took effect at the given time and
+     * is not the only plan, as it has not yet determined any signals.
+     * @param time the current time in seconds
+     */
+
+    private void replaceCurrentPlanAt(long time) {
+
+        int last = plans.size() - 1;
+        if (last > 0 && plans.get(last).anchor == time) {
+            plans.remove(last);
+        }
+    }
+
+    /**
+     * Returns the index of the given route in the list of incoming routes.
+     * @param route the route to find
+     * @return index of the route, or -1 if it is not an incoming route
+     */
+
+    private int indexOf(Route route) {
+
+        for (int i = 0; i < connections.size(); i++) {
+            if (connections.get(i) == route) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the latest timing plan that took effect before the given time,
+     * which must be after the first kept plan took effect.
+     * @param time the time to find the plan for, in seconds
+     * @return index of the plan that determines the signals at the given time
+     */
+
+    private int planBefore(long time) {
+
+        int low = 0;
+        int high = plans.size() - 1;
+        if (plans.get(high).anchor < time) {
+            return high;
+        }
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (plans.get(middle).anchor < time) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A cyclic timing plan, in effect from the second after its anchor time.
+     * From the second after its start time, each incoming route in turn is
+     * given 'duration' seconds of green, yellow and finally one second of all
+     * red, starting with the route at anchorPhase. The start time is never
+     * after the anchor time, and is before it for plans that have been
+     * shifted to line up with other lights. Only the first 'size' incoming
+     * routes take part in the cycle, those connected when the plan took
+     * effect.
+     */
+    private static final class TimingPlan {
+        /** The time at which this plan took effect */
+        private final long anchor;
+        /** The time from which the cycle of this plan is counted */
+        private final long start;
+        /** Index of the route that is given green after the start time */
+        private final int anchorPhase;
+        /** The duration of each route's turn in this plan */
+        private final int duration;
+        /** The number of incoming routes this plan cycles through */
+        private final int size;
+
+        /**
+         * Creates a new timing plan.
+         * @param anchor the time at which the plan takes effect
+         * @param start the time from which the cycle is counted
+         * @param anchorPhase index of the route given green after the start
+         * @param duration the duration of each route's turn
+         * @param size the number of incoming routes the plan cycles through
+         */
+        private TimingPlan(long anchor, long start, int anchorPhase,
+                           int duration, int size) {
+            this.anchor = anchor;
+            this.start = start;
+            this.anchorPhase = anchorPhase;
+            this.duration = duration;
+            this.size = size;
         }
 
-        if (secondsPassed == (duration - getYellowTime())) {
-            connections.get(currentRoute).setSignal
-                    (TrafficSignal.YELLOW);
+        /**
+         * Returns the index of the route whose turn it is at the given time,
+         * which must not be before the start time. A route's turn ends on
+         * the all red second, so at that time the next route is returned.
+         * @param time the time to find the route for, in seconds
+         * @return index of the route whose turn it is
+         */
+        private int currentRoute(long time) {
+            return (int) ((anchorPhase + (time - start) / duration) % size);
         }
     }
 
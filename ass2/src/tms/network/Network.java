@@ -1,8 +1,11 @@
 package tms.network;
 
 import tms.intersection.Intersection;
+import tms.intersection.IntersectionLights;
 import tms.route.Route;
 import tms.sensors.Sensor;
+import tms.util.ChangeBus;
+import tms.util.ChangeType;
 import tms.util.DuplicateSensorException;
 import tms.util.IntersectionNotFoundException;
 import tms.util.InvalidOrderException;
@@ -17,8 +20,9 @@ import java.util.*;
  */
 
 public class Network {
-    /** The list of intersections that make up the network*/
-    private ArrayList<Intersection> network;
+    /** The intersections that make up the network, keyed by their ID and kept
+     * in the order in which they were created*/
+    private LinkedHashMap<String, Intersection> network;
     /** The default value of time for traffic lights to be yellow if not specified
      * by the network file*/
     private int yellowTime = 1;
@@ -29,7 +33,7 @@ public class Network {
 
     public Network() {
 
-        network = new ArrayList<Intersection>();
+        network = new LinkedHashMap<String, Intersection>();
     }
 
     /**
@@ -74,15 +78,14 @@ public class Network {
 
     public void createIntersection(String id) throws IllegalArgumentException {
 
-        for (Intersection intersections : network) {
-            if (intersections.getId().equals(id)) {
-                throw new IllegalArgumentException();
-            }
+        if (network.containsKey(id)) {
+            throw new IllegalArgumentException();
         }
         if (id.contains(":") || id.isBlank()) {
             throw new IllegalArgumentException();
         }
-        network.add(new Intersection(id));
+        network.put(id, new Intersection(id));
+        ChangeBus.publish(ChangeType.STRUCTURE, this);
     }
 
     /**
@@ -271,7 +274,7 @@ public class Network {
 
     public List<Intersection> getIntersections() {
 
-        return new ArrayList<>(this.network);
+        return new ArrayList<>(this.network.values());
     }
 
     /**
@@ -286,12 +289,12 @@ public class Network {
     public Intersection findIntersection(String id) throws
             IntersectionNotFoundException {
 
-        for (Intersection intersection : network) {
-            if (intersection.getId().equals(id)) {
-                return intersection;
-            }
+        Intersection intersection = network.get(id);
+
+        if (intersection == null) {
+            throw new IntersectionNotFoundException();
         }
-        throw new IntersectionNotFoundException();
+        return intersection;
     }
 
     /**
@@ -317,6 +320,66 @@ public class Network {
         }
     }
 
+    /**
+     * Coordinates the traffic lights along a corridor so that a platoon of
+     * vehicles leaving the first intersection and travelling at the speed
+     * limit of each route meets consecutive green lights (a green wave).
+     *
+     * Each intersection after the first that has traffic lights has its cycle
+     * shifted such that the green of the route arriving from the previous
+     * intersection begins when the platoon arrives. The platoon leaves the
+     * first intersection on the next second of each set of lights, so the
+     * offsets are computed on each light's own clock even if the clocks
+     * differ. Later platoons also get a green wave if all lights share the
+     * same cycle length.
+     * @param path IDs of the intersections along the corridor, in order
+     * @return the number of seconds after leaving the first intersection at
+     * which the platoon arrives at each intersection, rounded to the nearest
+     * second
+     * @throws IntersectionNotFoundException if no intersection exists with
+     * one of the given IDs
+     * @throws RouteNotFoundException if consecutive intersections in the path
+     * are not connected by a route
+     * @throws IllegalArgumentException if the path has fewer than two
+     * intersections, or a route on it has a speed limit of zero
+     * @throws IllegalStateException if an intersection after the first has
+     * adaptive traffic lights, in which case no lights are changed
+     */
+
+    public int[] coordinateCorridor(List<String> path) throws
+            IntersectionNotFoundException, RouteNotFoundException {
+
+        if (path.size() < 2) {
+            throw new IllegalArgumentException();
+        }
+        Route[] routes = new Route[path.size()];
+        for (int i = 1; i < path.size(); i++) {
+            routes[i] = getConnection(path.get(i - 1), path.get(i));
+            if (routes[i].getSpeed() == 0) {
+                throw new IllegalArgumentException();
+            }
+            Intersection intersection = findIntersection(path.get(i));
+            if (intersection.hasTrafficLights() && intersection
+                    .getTrafficLights().getAdaptiveTiming() != null) {
+                throw new IllegalStateException();
+            }
+        }
+
+        int[] arrivals = new int[path.size()];
+        double travelled = 0;
+        for (int i = 1; i < path.size(); i++) {
+            travelled += routes[i].getTravelTime();
+            arrivals[i] = (int) Math.round(travelled);
+            Intersection intersection = findIntersection(path.get(i));
+            if (intersection.hasTrafficLights()) {
+                IntersectionLights lights = intersection.getTrafficLights();
+                lights.setGreenStart(routes[i],
+                        lights.getTime() + 1 + arrivals[i]);
+            }
+        }
+        return arrivals;
+    }
+
     /**
      * Returns true if and only if this network is equal to the other given network.
      *
@@ -353,7 +416,8 @@ public class Network {
      * The format of the string to return is identical to that described in
      * NetworkInitialiser.loadNetwork(String). All intersections in the network,
      * including all connecting routes with their respective sensors, are
-     * included in the returned string.
+     * included in the returned string, followed by the positions of any
+     * intersections that have one.
      * @return string representation of this network
      */
 
@@ -361,32 +425,84 @@ public class Network {
     public String toString() {
 
         StringBuilder builder = new StringBuilder();
-        List<String> routesTemp = new ArrayList<>();
-        List<String> intersectionsTemp = new ArrayList<>();
-        int i = 0;
-
-        builder.append(network.size()).append(System.lineSeparator());
+        List<Intersection> intersections = new ArrayList<>(network.values());
+        List<Route> routes = new ArrayList<>();
 
-        for (Intersection intersection : network) {
-            for (Route route : intersection.getConnections()) {
-                i++;
-                routesTemp.add(route.toString());
-            }
+        for (Intersection intersection : intersections) {
+            routes.addAll(intersection.getConnections());
         }
-        builder.append(i).append(System.lineSeparator());
+        builder.append(network.size()).append(System.lineSeparator());
+        builder.append(routes.size()).append(System.lineSeparator());
         builder.append(getYellowTime()).append(System.lineSeparator());
 
-        for (Intersection intersection : network) {
-            intersectionsTemp.add(intersection.toString());
+        intersections.sort((a, b) -> compareLines(a.getId(),
+                a.hasTrafficLights(), b.getId(), b.hasTrafficLights()));
+        for (Intersection intersection : intersections) {
+            builder.append(intersection).append(System.lineSeparator());
         }
-        Collections.sort(intersectionsTemp);
-        for (String string : intersectionsTemp) {
-            builder.append(string).append(System.lineSeparator());
+        routes.sort((a, b) -> compareLines(a.getId(), true, b.getId(), true));
+        for (Route route : routes) {
+            route.appendTo(builder);
+            builder.append(System.lineSeparator());
         }
-        Collections.sort(routesTemp);
-        for (String string : routesTemp) {
-            builder.append(string).append(System.lineSeparator());
+        for (Intersection intersection : intersections) {
+            if (intersection.hasPosition()) {
+                builder.append(intersection.getId())
+                        .append(NetworkInitialiser.LINE_INFO_SEPARATOR)
+                        .append(intersection.getX())
+                        .append(NetworkInitialiser.LINE_INFO_SEPARATOR)
+                        .append(intersection.getY())
+                        .append(System.lineSeparator());
+            }
         }
         return String.valueOf(builder);
     }
+
+    /**
+     * Compares two lines of a network file that begin with distinct IDs, in
+     * the same order as comparing the full lines as strings would, without
+     * creating the lines.
+     * <p>
+     * Only the IDs and whether each is followed by a separator are needed: the
+     * lines first differ either within the IDs or where one ID ends.
+     * @param a ID beginning the first line
+     * @param aContinues whether the first ID is followed by a separator
+     * @param b ID beginning the second line
+     * @param bContinues whether the second ID is followed by a separator
+     * @return negative, zero or positive as the first line is less than, equal
+     * to or greater than the second
+     */
+
+    private static int compareLines(String a, boolean aContinues, String b,
+                                    boolean bContinues) {
+
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(i);
+            if (ca != cb) {
+                return ca - cb;
+            }
+        }
+        return charAfter(a, length, aContinues)
+                - charAfter(b, length, bContinues);
+    }
+
+    /**
+     * Returns the character at the given index of a line beginning with the
+     * given ID, or -1 if the line ends before it.
+     * @param id ID beginning the line
+     * @param index index within the line, at least the shorter ID's length
+     * @param continues whether the ID is followed by a separator
+     * @return the character at that index, or -1
+     */
+
+    private static int charAfter(String id, int index, boolean continues) {
+
+        if (index < id.length()) {
+            return id.charAt(index);
+        }
+        return continues ? NetworkInitialiser.LINE_INFO_SEPARATOR.charAt(0)
+                : -1;
+    }
 }
\ No newline at end of file
@@ -3,20 +3,29 @@ package tms.network;
 import tms.sensors.DemoPressurePad;
 import tms.sensors.DemoSpeedCamera;
 import tms.sensors.DemoVehicleCount;
+import tms.sensors.Sensor;
+import tms.sensors.SensorData;
 import tms.util.*;
 
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Helper class responsible for loading and initialising a saved network from a
  * file.
+ * <p>
+ * The file is read in a single pass, one line at a time, and the network is
+ * built up as each line is read. Only the traffic light orders are held back
+ * until every route has been created.
+ * <p>
+ * The route section may optionally be followed by intersection positions,
+ * one per line in the form "id:x:y" where x and y are decimal map
+ * coordinates. Intersections without a position line have no position.
  */
 
 public class NetworkInitialiser {
@@ -26,6 +35,10 @@ public class NetworkInitialiser {
     /** Delimiter used to separate individual elements in a variable-length list
      *  on a single line*/
     public static final String LINE_LIST_SEPARATOR = ",";
+    /** Lines beginning with this string are comments and are ignored */
+    private static final String COMMENT_PREFIX = ";";
+    /** Size of the character buffer used when reading network files */
+    private static final int READ_BUFFER_SIZE = 1 << 16;
 
     /**
      * Default Constructor of the NetworkInitialiser Class
@@ -47,213 +60,512 @@ public class NetworkInitialiser {
     public static Network loadNetwork(String filename) throws IOException,
             InvalidNetworkException {
 
-        Network network = new Network();
-        List<String> networkFile;
-
+        Reader file;
         try {
+            file = new FileReader(filename);
+        } catch (FileNotFoundException e) {
+            throw new InvalidNetworkException("File not found: " + filename);
+        }
+        try (file) {
+            return loadNetwork(file);
+        }
+    }
 
-            BufferedReader in = new BufferedReader(new FileReader(filename));
+    /**
+     * Loads a saved Network from the given character stream, which must be in
+     * the same format as a network file.
+     * <p>
+     * The stream is read exactly once and is not closed by this method.
+     * @param reader stream from which to read the network
+     * @return the Network loaded from the stream
+     * @throws IOException if reading from the stream fails or if a numeric
+     * value in the stream is not a valid integer
+     * @throws InvalidNetworkException if the format of the stream is invalid
+     */
 
-            networkFile = in.lines().collect(Collectors.toList());
-            networkFile.removeIf(string -> string.startsWith(";"));
-            if (networkFile.contains("")) {
-                throw new InvalidNetworkException();
-            }
-            checkNewLines(networkFile);
-            network.setYellowTime(Integer.parseInt(networkFile.get(2)));
-            createIntersections(networkFile, network);
-            createRoutes(networkFile, network);
-            createTrafficLights(networkFile, network);
+    public static Network loadNetwork(Reader reader) throws IOException,
+            InvalidNetworkException {
 
-        } catch (FileNotFoundException e) {
-            throw new InvalidNetworkException();
-        } catch (NumberFormatException e) {
-            throw new IOException();
+        Network network = new Network();
+        LineCursor cursor = new LineCursor(reader instanceof BufferedReader
+                ? (BufferedReader) reader
+                : new BufferedReader(reader, READ_BUFFER_SIZE));
+
+        int numberOfIntersections = cursor.nextLine().nextInt();
+        int numberOfRoutes = cursor.nextLine().nextInt();
+        cursor.nextLine();
+        try {
+            network.setYellowTime(cursor.nextInt());
+        } catch (IllegalArgumentException e) {
+            throw cursor.invalid("yellow time must be at least 1");
+        }
+
+        List<LightsEntry> lights = new ArrayList<>();
+        for (int i = 0; i < numberOfIntersections; i++) {
+            createIntersection(cursor.nextLine(), network, lights);
+        }
+        SensorData.Pool sensorData = new SensorData.Pool();
+        for (int i = 0; i < numberOfRoutes; i++) {
+            createRoute(cursor.nextLine(), network, sensorData);
+        }
+        for (LightsEntry entry : lights) {
+            entry.addTo(network);
+        }
+        while (cursor.nextLineIfPresent()) {
+            setPosition(cursor, network);
         }
         return network;
     }
 
     /**
-     * A helper method to turn an array of strings into an array of integers
-     * @param string The string series of values to turn into an int array
-     * @return the converted integer array
+     * Sets the position of an intersection from the current line of the
+     * cursor.
+     * @param cursor cursor positioned at a position line
+     * @param network network containing the intersection
+     * @throws InvalidNetworkException if the intersection does not exist or
+     * the line is malformed
+     * @throws IOException if a coordinate is not a finite decimal number
      */
 
-    private static int[] stringToIntArray(String string) {
+    private static void setPosition(LineCursor cursor, Network network)
+            throws InvalidNetworkException, IOException {
+
+        String id = cursor.next();
+        double x = cursor.nextDouble();
+        double y = cursor.nextDouble();
+        try {
+            network.findIntersection(id).setPosition(x, y);
+        } catch (IntersectionNotFoundException e) {
+            throw cursor.invalid("position given for missing intersection \""
+                    + id + "\"");
+        }
+    }
+
+    /**
+     * Creates an intersection from the current line of the cursor, remembering
+     * its traffic lights (if any) to be added once all routes exist.
+     * @param cursor cursor positioned at an intersection line
+     * @param network network to add the intersection to
+     * @param lights list to which any traffic light information is added
+     * @throws InvalidNetworkException if the intersection ID is invalid or
+     * duplicated, or if the traffic light information is malformed
+     * @throws IOException if the traffic light duration is not an integer
+     */
 
-        String[] stringArray = string.split(LINE_LIST_SEPARATOR);
-        int size = stringArray.length;
-        int[] intArray = new int[size];
+    private static void createIntersection(LineCursor cursor, Network network,
+            List<LightsEntry> lights) throws InvalidNetworkException,
+            IOException {
 
-        for (int i = 0; i < size; i++) {
-            intArray[i] = Integer.parseInt(stringArray[i]);
+        String id = cursor.next();
+        try {
+            network.createIntersection(id);
+        } catch (IllegalArgumentException e) {
+            throw cursor.invalid("invalid or duplicate intersection \"" + id
+                    + "\"");
+        }
+        if (cursor.hasNext()) {
+            int duration = cursor.nextInt();
+            List<String> order = cursor.nextList();
+            lights.add(new LightsEntry(id, duration, order,
+                    cursor.getLineNumber()));
         }
-        return intArray;
     }
 
     /**
-     * Creates the intersections within the network using information passed from
-     * the network file
-     * @param networkFile A list of Strings wherein each entry represents a line
-     *                    of the network file
-     * @param network The initialised network this TMS is using
-     * @throws InvalidNetworkException if the intersection ID in the file does
-     * not exist when attempting to add it to the current network
+     * Creates a route, along with its speed sign and sensors, from the current
+     * line of the cursor. The lines describing the route's sensors are read
+     * from the cursor as well.
+     * @param cursor cursor positioned at a route line
+     * @param network network to add the route to
+     * @param sensorData pool sharing identical sensor data between sensors
+     * @throws InvalidNetworkException if the route refers to a missing
+     * intersection, duplicates an existing route, or has an invalid sensor
+     * @throws IOException if a numeric value is not an integer or the stream
+     * cannot be read
      */
 
-    private static void createIntersections(List<String> networkFile, Network
-            network) throws InvalidNetworkException {
+    private static void createRoute(LineCursor cursor, Network network,
+            SensorData.Pool sensorData) throws InvalidNetworkException,
+            IOException {
 
-        int numberOfIntersections = Integer.parseInt(networkFile.get(0));
-        int intersection = 3;
+        String from = cursor.next();
+        String to = cursor.next();
+        int defaultSpeed = cursor.nextInt();
+        int numberOfSensors = cursor.nextInt();
 
-        for (int i = 0; i < numberOfIntersections; i++) {
+        try {
+            network.connectIntersections(from, to, defaultSpeed);
+            if (cursor.hasNext()) {
+                network.addSpeedSign(from, to, cursor.nextInt());
+            }
+        } catch (IntersectionNotFoundException | RouteNotFoundException e) {
+            throw cursor.invalid("route refers to a missing intersection");
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw cursor.invalid("invalid route \"" + from
+                    + LINE_INFO_SEPARATOR + to + "\"");
+        }
 
+        for (int i = 0; i < numberOfSensors; i++) {
+            cursor.nextLine();
+            String type = cursor.next();
+            int threshold = cursor.nextInt();
+            SensorData data = sensorData.intern(cursor.nextIntList());
+            Sensor sensor;
+            switch (type) {
+                case "PP":
+                    sensor = new DemoPressurePad(data, threshold);
+                    break;
+                case "VC":
+                    sensor = new DemoVehicleCount(data, threshold);
+                    break;
+                case "SC":
+                    sensor = new DemoSpeedCamera(data, threshold);
+                    break;
+                default:
+                    throw cursor.invalid("invalid sensor type \"" + type
+                            + "\"");
+            }
             try {
-                String[] intersectionInformation = networkFile.get(intersection).split
-                        (LINE_INFO_SEPARATOR);
-                network.createIntersection(intersectionInformation[0]);
-                intersection++;
-            } catch (IllegalArgumentException e) {
-                throw new InvalidNetworkException();
+                network.addSensor(from, to, sensor);
+            } catch (DuplicateSensorException e) {
+                throw cursor.invalid("duplicate sensor of type \"" + type
+                        + "\"");
+            } catch (IntersectionNotFoundException | RouteNotFoundException e) {
+                throw cursor.invalid("sensor added to a missing route");
             }
         }
     }
 
     /**
-     * Creates the routes within the network using the information relevant to
-     * route creation from the network file
-     * @param networkFile A list of Strings wherein each entry represents a line
-     *                    of the network file
-     * @param network The initialised network this TMS is using
-     * @throws InvalidNetworkException if a sensor within the file is not one of
-     * the three outlined OR if there is a duplicate sensor on the same route OR
-     * if the route attempting to be added does not exist when trying to add
-     * a sensor to it
+     * Traffic light information read from an intersection line, held until
+     * every route in the network has been created.
      */
 
-    private static void createRoutes(List<String> networkFile, Network network)
-            throws InvalidNetworkException {
+    private static class LightsEntry {
+        /** ID of the intersection the lights belong to */
+        private final String intersectionId;
+        /** Duration of each green-yellow cycle */
+        private final int duration;
+        /** Origin intersection IDs, in the order the lights turn green */
+        private final List<String> order;
+        /** Line of the file on which the lights were described */
+        private final int lineNumber;
+
+        /**
+         * Creates a new record of traffic light information.
+         * @param intersectionId ID of the intersection the lights belong to
+         * @param duration duration of each green-yellow cycle
+         * @param order origin intersection IDs in traffic light order
+         * @param lineNumber line of the file that described the lights
+         */
+
+        private LightsEntry(String intersectionId, int duration,
+                            List<String> order, int lineNumber) {
+
+            this.intersectionId = intersectionId;
+            this.duration = duration;
+            this.order = order;
+            this.lineNumber = lineNumber;
+        }
 
-        int numberOfRoutes = Integer.parseInt(networkFile.get(1));
-        int route = 3 + Integer.parseInt(networkFile.get(0));
+        /**
+         * Adds these traffic lights to the given network.
+         * @param network network containing the lights' intersection
+         * @throws InvalidNetworkException if the order or duration is invalid
+         */
 
-        for (int i = 0; i < numberOfRoutes; i++) {
+        private void addTo(Network network) throws InvalidNetworkException {
 
-            String[] routeInformation = networkFile.get(route).split
-                    (LINE_INFO_SEPARATOR);
             try {
-                network.connectIntersections(routeInformation[0],
-                        routeInformation[1], Integer.parseInt
-                                (routeInformation[2]));
-                boolean invalidSensor = true;
-
-                for (int x = 0; x < Integer.parseInt(routeInformation[3]);
-                     x++) {
-                    int y = 1;
-
-                    String[] sensorInformation = networkFile.get(route + y).split
-                            (LINE_INFO_SEPARATOR);
-                    int[] array = stringToIntArray(sensorInformation[2]);
-                    if (sensorInformation[0].equals("PP")) {
-                        network.addSensor(routeInformation[0],
-                                routeInformation[1], new DemoPressurePad
-                                        (array, Integer.parseInt
-                                                (sensorInformation[1])));
-                        route++;
-                        invalidSensor = false;
-                    }
-                    if (sensorInformation[0].equals("VC")) {
-                        network.addSensor(routeInformation[0],
-                                routeInformation[1], new DemoVehicleCount
-                                        (array, Integer.parseInt
-                                                (sensorInformation[1])));
-                        route++;
-                        invalidSensor = false;
-                    }
-                    if (sensorInformation[0].equals("SC")) {
-                        network.addSensor(routeInformation[0],
-                                routeInformation[1], new DemoSpeedCamera
-                                        (array, Integer.parseInt
-                                                (sensorInformation[1])));
-                        route++;
-                        invalidSensor = false;
-                    }
-                    y++;
-                    if (invalidSensor) throw new InvalidNetworkException();
-                }
-
-            } catch (IntersectionNotFoundException | DuplicateSensorException |
-                    RouteNotFoundException e) {
-                throw new InvalidNetworkException();
+                network.addLights(intersectionId, duration, order);
+            } catch (IntersectionNotFoundException | InvalidOrderException
+                    | IllegalArgumentException e) {
+                throw new InvalidNetworkException("line " + lineNumber
+                        + ": invalid traffic lights for intersection \""
+                        + intersectionId + "\"");
             }
-            route++;
         }
     }
 
     /**
-     * Creates the traffic lights within the network using the information
-     * relevant to the intersections that have them in the network file
-     * @param networkFile A list of Strings wherein each entry represents a line
-     *                    of the network file
-     * @param network The initialised network this TMS is using
-     * @throws InvalidNetworkException if the intersection of origin or of
-     * destination does not exist when attempting to add a traffic light to it
+     * Reads the lines of a network file one at a time, skipping comments, and
+     * splits each line into its fields without using regular expressions.
      */
 
-    private static void createTrafficLights(List<String> networkFile, Network network)
-            throws InvalidNetworkException{
+    private static class LineCursor {
+        /** Source of the lines */
+        private final BufferedReader in;
+        /** Line currently being read */
+        private String line;
+        /** Line number of the current line within the file, starting at 1 */
+        private int lineNumber;
+        /** Index within the current line of the next field to read */
+        private int position;
 
-        int numberOfIntersections = Integer.parseInt(networkFile.get(0));
-        int intersection = 3;
+        /**
+         * Creates a cursor over the given reader.
+         * @param in source of the lines to read
+         */
 
-        try {
-            for (int i = 0; i < numberOfIntersections; i++) {
-                String[] trafficLightInfo = networkFile.get(intersection)
-                        .split(LINE_INFO_SEPARATOR);
-
-                if (trafficLightInfo.length > 1) {
-                    String[] routesArray = trafficLightInfo[2].split
-                            (LINE_LIST_SEPARATOR);
-                    ArrayList<String> routes = new ArrayList<>
-                            (Arrays.asList(routesArray));
-                    ArrayList<String> updatedRoutes = new ArrayList<>();
-                    for (String route : routes) {
-                        route += ":" + trafficLightInfo[0];
-                        updatedRoutes.add(route);
-                    }
-                    List<String> intersectionIds = new ArrayList<>();
-                    routes = updatedRoutes;
-                    for (String route : routes) {
-                        String[] intersections = route.split(LINE_INFO_SEPARATOR);
-                        intersectionIds.add(intersections[0]);
-                    }
-                    network.addLights(trafficLightInfo[0], Integer.parseInt
-                            (trafficLightInfo[1]), intersectionIds);
+        private LineCursor(BufferedReader in) {
+
+            this.in = in;
+        }
+
+        /**
+         * Returns the line number of the line currently being read.
+         * @return current line number
+         */
+
+        private int getLineNumber() {
+
+            return lineNumber;
+        }
+
+        /**
+         * Moves to the next line that is not a comment.
+         * @return this cursor
+         * @throws IOException if the stream cannot be read
+         * @throws InvalidNetworkException if the stream ends or the next line
+         * is empty
+         */
+
+        private LineCursor nextLine() throws IOException,
+                InvalidNetworkException {
+
+            do {
+                line = in.readLine();
+                lineNumber++;
+                if (line == null) {
+                    throw invalid("unexpected end of file");
                 }
-                intersection++;
+            } while (line.startsWith(COMMENT_PREFIX));
+            if (line.isEmpty()) {
+                throw invalid("empty line");
             }
+            position = 0;
+            return this;
+        }
 
-        } catch (IntersectionNotFoundException | InvalidOrderException e) {
-            throw new InvalidNetworkException();
+        /**
+         * Moves to the next line that is not a comment, if there is one.
+         * @return true if the cursor moved to another line, false if the
+         * stream has ended
+         * @throws IOException if the stream cannot be read
+         * @throws InvalidNetworkException if the next line is empty, even at
+         * the end of the stream
+         */
+
+        private boolean nextLineIfPresent() throws IOException,
+                InvalidNetworkException {
+
+            do {
+                line = in.readLine();
+                lineNumber++;
+                if (line == null) {
+                    return false;
+                }
+            } while (line.startsWith(COMMENT_PREFIX));
+            if (line.isEmpty()) {
+                throw invalid("empty line");
+            }
+            position = 0;
+            return true;
         }
-    }
 
-    /**
-     * Checks the end of the network file to ensure there are NOT two or more
-     * new empty lines ("\n")
-     * @param networkFile A list of Strings wherein each entry represents a line
-     *                    of the network file
-     * @throws InvalidNetworkException if there are two or more empty lines at
-     * the end of the network file
-     */
+        /**
+         * Returns true if the current line has fields left to read.
+         * @return whether another field can be read from the current line
+         */
 
-    private static void checkNewLines(List<String> networkFile) throws
-            InvalidNetworkException {
+        private boolean hasNext() {
+
+            return position <= line.length();
+        }
+
+        /**
+         * Returns the end index of the field starting at the current position.
+         * @return index of the next info separator, or the line length
+         * @throws InvalidNetworkException if there are no fields left
+         */
+
+        private int fieldEnd() throws InvalidNetworkException {
+
+            if (!hasNext()) {
+                throw invalid("missing field");
+            }
+            int end = line.indexOf(LINE_INFO_SEPARATOR.charAt(0), position);
+            return end < 0 ? line.length() : end;
+        }
+
+        /**
+         * Reads the next field of the current line as a string.
+         * @return the next field
+         * @throws InvalidNetworkException if there are no fields left
+         */
+
+        private String next() throws InvalidNetworkException {
+
+            int end = fieldEnd();
+            String field = line.substring(position, end);
+            position = end + 1;
+            return field;
+        }
+
+        /**
+         * Reads the next field of the current line as an integer.
+         * @return the parsed integer
+         * @throws InvalidNetworkException if there are no fields left
+         * @throws IOException if the field is not a valid integer
+         */
+
+        private int nextInt() throws InvalidNetworkException, IOException {
+
+            int end = fieldEnd();
+            int value = parseInt(position, end);
+            position = end + 1;
+            return value;
+        }
+
+        /**
+         * Reads the next field of the current line as a finite decimal number.
+         * @return the parsed number
+         * @throws InvalidNetworkException if there are no fields left
+         * @throws IOException if the field is not a finite decimal number
+         */
+
+        private double nextDouble() throws InvalidNetworkException,
+                IOException {
+
+            int end = fieldEnd();
+            String field = line.substring(position, end);
+            double value;
+            try {
+                value = Double.parseDouble(field);
+            } catch (NumberFormatException e) {
+                value = Double.NaN;
+            }
+            if (!Double.isFinite(value)) {
+                throw new IOException("line " + lineNumber + ": \"" + field
+                        + "\" is not a number");
+            }
+            position = end + 1;
+            return value;
+        }
+
+        /**
+         * Reads the next field of the current line as a list of strings.
+         * @return the list elements
+         * @throws InvalidNetworkException if there are no fields left
+         */
+
+        private List<String> nextList() throws InvalidNetworkException {
+
+            int end = fieldEnd();
+            List<String> values = new ArrayList<>();
+            char separator = LINE_LIST_SEPARATOR.charAt(0);
+            int start = position;
+            while (start <= end) {
+                int next = line.indexOf(separator, start);
+                if (next < 0 || next > end) {
+                    next = end;
+                }
+                values.add(line.substring(start, next));
+                start = next + 1;
+            }
+            position = end + 1;
+            return values;
+        }
+
+        /**
+         * Reads the next field of the current line as a list of integers.
+         * @return the parsed integers
+         * @throws InvalidNetworkException if there are no fields left
+         * @throws IOException if an element is not a valid integer
+         */
+
+        private int[] nextIntList() throws InvalidNetworkException,
+                IOException {
+
+            int end = fieldEnd();
+            char separator = LINE_LIST_SEPARATOR.charAt(0);
+            int count = 1;
+            for (int i = position; i < end; i++) {
+                if (line.charAt(i) == separator) {
+                    count++;
+                }
+            }
+            int[] values = new int[count];
+            int start = position;
+            for (int i = 0; i < count; i++) {
+                int next = line.indexOf(separator, start);
+                if (next < 0 || next > end) {
+                    next = end;
+                }
+                values[i] = parseInt(start, next);
+                start = next + 1;
+            }
+            position = end + 1;
+            return values;
+        }
+
+        /**
+         * Parses the characters of the current line between the given indices
+         * as a decimal integer.
+         * @param start index of the first character
+         * @param end index after the last character
+         * @return the parsed integer
+         * @throws IOException if the characters are not a valid integer
+         */
+
+        private int parseInt(int start, int end) throws IOException {
+
+            boolean negative = start < end && line.charAt(start) == '-';
+            int i = negative ? start + 1 : start;
+            if (i >= end) {
+                throw notANumber(start, end);
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = line.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw notANumber(start, end);
+                }
+                value = value * 10 + digit;
+                if (value > (long) Integer.MAX_VALUE + 1) {
+                    throw notANumber(start, end);
+                }
+            }
+            value = negative ? -value : value;
+            if (value > Integer.MAX_VALUE) {
+                throw notANumber(start, end);
+            }
+            return (int) value;
+        }
+
+        /**
+         * Creates the exception thrown when a field is not a valid integer.
+         * @param start index of the first character of the field
+         * @param end index after the last character of the field
+         * @return exception describing the error and where it occurred
+         */
+
+        private IOException notANumber(int start, int end) {
+
+            return new IOException("line " + lineNumber + ": \""
+                    + line.substring(start, end) + "\" is not an integer");
+        }
+
+        /**
+         * Creates an exception describing a format error on the current line.
+         * @param message description of the error
+         * @return exception describing the error and where it occurred
+         */
+
+        private InvalidNetworkException invalid(String message) {
 
-        if (networkFile.get(networkFile.size() - 1).equals("\n") &&
-                networkFile.get(networkFile.size() - 2).equals("\n")){
-            throw new InvalidNetworkException();
+            return new InvalidNetworkException("line " + lineNumber + ": "
+                    + message);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,402 @@
+package tms.network;
+
+import tms.intersection.Intersection;
+import tms.intersection.IntersectionLights;
+import tms.route.Route;
+import tms.sensors.DemoPressurePad;
+import tms.sensors.DemoSensor;
+import tms.sensors.DemoSpeedCamera;
+import tms.sensors.DemoVehicleCount;
+import tms.sensors.Sensor;
+import tms.sensors.SensorData;
+import tms.util.DuplicateSensorException;
+import tms.util.IntersectionNotFoundException;
+import tms.util.InvalidNetworkException;
+import tms.util.InvalidOrderException;
+import tms.util.RouteNotFoundException;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves and loads networks in a compact binary snapshot format.
+ * <p>
+ * A snapshot stores each intersection ID once in a string table, and every
+ * route and sensor as rows of primitive int columns that refer to
+ * intersections by their index in that table. All sensor data values are
+ * packed into a single int array. Snapshots are read and written through a
+ * memory-mapped {@link FileChannel}, so loading one involves no text parsing.
+ * <p>
+ * Since version 2, the int columns are followed by the map position of each
+ * intersection as a pair of doubles, NaN for intersections without a
+ * position. Version 1 snapshots, which have no positions, can still be
+ * loaded.
+ * <p>
+ * The text format read by {@link NetworkInitialiser} and written by
+ * {@link Network#toString()} remains the import/export format; snapshots are
+ * intended for quickly restarting a simulation.
+ */
+
+public class NetworkSnapshot {
+
+    /** File name extension used for binary network snapshots */
+    public static final String FILE_EXTENSION = ".tmsb";
+    /** Value of the first int of every snapshot ("TMSB") */
+    private static final int MAGIC = 0x544D5342;
+    /** Version of the snapshot format written by this class */
+    private static final int VERSION = 2;
+    /** Oldest version of the snapshot format that can still be loaded */
+    private static final int MIN_VERSION = 1;
+    /** First version in which intersection positions are stored */
+    private static final int POSITIONS_VERSION = 2;
+    /** Number of ints in the snapshot header */
+    private static final int HEADER_INTS = 8;
+    /** Route column value meaning the route has no speed sign */
+    private static final int NO_SPEED_SIGN = -1;
+    /** Sensor type code of a pressure pad */
+    private static final int PRESSURE_PAD = 0;
+    /** Sensor type code of a speed camera */
+    private static final int SPEED_CAMERA = 1;
+    /** Sensor type code of a vehicle count */
+    private static final int VEHICLE_COUNT = 2;
+
+    /**
+     * Snapshots are only created through the static methods of this class.
+     */
+
+    private NetworkSnapshot() {
+    }
+
+    /**
+     * Returns true if the given filename names a binary network snapshot.
+     * @param filename name of the file
+     * @return whether the file has the snapshot file extension
+     */
+
+    public static boolean isSnapshot(String filename) {
+
+        return filename.endsWith(FILE_EXTENSION);
+    }
+
+    /**
+     * Writes a binary snapshot of the given network to the given file,
+     * replacing the file if it already exists.
+     * @param network network to save
+     * @param filename name of the file to write
+     * @throws IOException if the file cannot be written, or if the network
+     * contains a sensor that is not one of the demo sensor types
+     */
+
+    public static void save(Network network, String filename)
+            throws IOException {
+
+        List<Intersection> intersections = network.getIntersections();
+        int intersectionCount = intersections.size();
+        Map<Intersection, Integer> indices = new IdentityHashMap<>();
+        byte[][] ids = new byte[intersectionCount][];
+        int stringBytes = 0;
+        for (int i = 0; i < intersectionCount; i++) {
+            indices.put(intersections.get(i), i);
+            ids[i] = intersections.get(i).getId()
+                    .getBytes(StandardCharsets.UTF_8);
+            stringBytes += ids[i].length;
+        }
+
+        List<Route> routes = new ArrayList<>();
+        int[] lightDurations = new int[intersectionCount];
+        int[] lightYellowTimes = new int[intersectionCount];
+        for (int i = 0; i < intersectionCount; i++) {
+            Intersection intersection = intersections.get(i);
+            routes.addAll(intersection.getConnections());
+            IntersectionLights lights = intersection.getTrafficLights();
+            if (lights != null) {
+                lightDurations[i] = lights.getDuration();
+                lightYellowTimes[i] = lights.getYellowTime();
+            }
+        }
+
+        int routeCount = routes.size();
+        int[] routeFrom = new int[routeCount];
+        int[] routeTo = new int[routeCount];
+        int[] routeSpeed = new int[routeCount];
+        int[] routeSign = new int[routeCount];
+        int[] routeSensorEnd = new int[routeCount];
+        List<Sensor> sensors = new ArrayList<>();
+        int dataLength = 0;
+        for (int i = 0; i < routeCount; i++) {
+            Route route = routes.get(i);
+            routeFrom[i] = indices.get(route.getFrom());
+            routeTo[i] = indices.get(route.getTo());
+            routeSpeed[i] = route.getDefaultSpeed();
+            routeSign[i] = route.hasSpeedSign() ? route.getSpeed()
+                    : NO_SPEED_SIGN;
+            for (Sensor sensor : route.getSensors()) {
+                typeOf(sensor);
+                sensors.add(sensor);
+                dataLength += ((DemoSensor) sensor).getSensorData().length();
+            }
+            routeSensorEnd[i] = sensors.size();
+        }
+
+        int sensorCount = sensors.size();
+        int intCount = HEADER_INTS + (intersectionCount + 1)
+                + 2 * intersectionCount + 5 * routeCount + 3 * sensorCount
+                + dataLength;
+
+        try (FileChannel channel = FileChannel.open(Path.of(filename),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                    0, 4L * intCount + 16L * intersectionCount + stringBytes);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            IntBuffer ints = buffer.asIntBuffer();
+
+            ints.put(MAGIC).put(VERSION).put(network.getYellowTime())
+                    .put(intersectionCount).put(routeCount).put(sensorCount)
+                    .put(dataLength).put(stringBytes);
+
+            int offset = 0;
+            ints.put(offset);
+            for (byte[] id : ids) {
+                offset += id.length;
+                ints.put(offset);
+            }
+            ints.put(lightDurations).put(lightYellowTimes);
+            ints.put(routeFrom).put(routeTo).put(routeSpeed).put(routeSign)
+                    .put(routeSensorEnd);
+
+            for (Sensor sensor : sensors) {
+                ints.put(typeOf(sensor));
+            }
+            for (Sensor sensor : sensors) {
+                ints.put(sensor.getThreshold());
+            }
+            for (Sensor sensor : sensors) {
+                ints.put(((DemoSensor) sensor).getSensorData().length());
+            }
+            for (Sensor sensor : sensors) {
+                ((DemoSensor) sensor).getSensorData().writeTo(ints);
+            }
+
+            buffer.position(4 * intCount);
+            for (Intersection intersection : intersections) {
+                buffer.putDouble(intersection.getX());
+            }
+            for (Intersection intersection : intersections) {
+                buffer.putDouble(intersection.getY());
+            }
+            for (byte[] id : ids) {
+                buffer.put(id);
+            }
+            buffer.force();
+        }
+    }
+
+    /**
+     * Loads a network from the binary snapshot in the given file.
+     * @param filename name of the snapshot file to load
+     * @return the network stored in the snapshot
+     * @throws IOException if the file cannot be read
+     * @throws InvalidNetworkException if the file is not a valid snapshot
+     */
+
+    public static Network load(String filename) throws IOException,
+            InvalidNetworkException {
+
+        try (FileChannel channel = FileChannel.open(Path.of(filename),
+                StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return read(buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                | IllegalArgumentException e) {
+            throw new InvalidNetworkException("Corrupt network snapshot: "
+                    + filename);
+        }
+    }
+
+    /**
+     * Builds a network from the contents of a mapped snapshot.
+     * @param buffer the snapshot contents, positioned at the start
+     * @return the network stored in the snapshot
+     * @throws InvalidNetworkException if the snapshot is not valid
+     */
+
+    private static Network read(MappedByteBuffer buffer)
+            throws InvalidNetworkException {
+
+        IntBuffer ints = buffer.asIntBuffer();
+        if (ints.get() != MAGIC) {
+            throw new InvalidNetworkException("Not a network snapshot");
+        }
+        int version = ints.get();
+        if (version < MIN_VERSION || version > VERSION) {
+            throw new InvalidNetworkException("Unsupported snapshot version "
+                    + version);
+        }
+        int yellowTime = ints.get();
+        int intersectionCount = ints.get();
+        int routeCount = ints.get();
+        int sensorCount = ints.get();
+        int dataLength = ints.get();
+        int stringBytes = ints.get();
+
+        int[] idOffsets = read(ints, intersectionCount + 1);
+        int[] lightDurations = read(ints, intersectionCount);
+        int[] lightYellowTimes = read(ints, intersectionCount);
+        int[] routeFrom = read(ints, routeCount);
+        int[] routeTo = read(ints, routeCount);
+        int[] routeSpeed = read(ints, routeCount);
+        int[] routeSign = read(ints, routeCount);
+        int[] routeSensorEnd = read(ints, routeCount);
+        int[] sensorType = read(ints, sensorCount);
+        int[] sensorThreshold = read(ints, sensorCount);
+        int[] sensorLength = read(ints, sensorCount);
+        int[] data = read(ints, dataLength);
+
+        buffer.position(4 * ints.position());
+        double[] x = new double[intersectionCount];
+        double[] y = new double[intersectionCount];
+        Arrays.fill(x, Double.NaN);
+        if (version >= POSITIONS_VERSION) {
+            buffer.asDoubleBuffer().get(x).get(y);
+            buffer.position(buffer.position() + 16 * intersectionCount);
+        }
+        if (stringBytes < 0 || stringBytes > buffer.remaining()) {
+            throw new InvalidNetworkException("Corrupt network snapshot");
+        }
+        byte[] strings = new byte[stringBytes];
+        buffer.get(strings);
+
+        Network network = new Network();
+        network.setYellowTime(yellowTime);
+        String[] ids = new String[intersectionCount];
+        Intersection[] intersections = new Intersection[intersectionCount];
+        try {
+            for (int i = 0; i < intersectionCount; i++) {
+                ids[i] = new String(strings, idOffsets[i],
+                        idOffsets[i + 1] - idOffsets[i],
+                        StandardCharsets.UTF_8);
+                network.createIntersection(ids[i]);
+                intersections[i] = network.findIntersection(ids[i]);
+                if (!Double.isNaN(x[i])) {
+                    intersections[i].setPosition(x[i], y[i]);
+                }
+            }
+
+            SensorData.Pool sensorData = new SensorData.Pool();
+            int sensor = 0;
+            int dataStart = 0;
+            for (int i = 0; i < routeCount; i++) {
+                intersections[routeTo[i]].addConnection(
+                        intersections[routeFrom[i]], routeSpeed[i]);
+                Route route = intersections[routeTo[i]].getConnection(
+                        intersections[routeFrom[i]]);
+                if (routeSign[i] != NO_SPEED_SIGN) {
+                    route.addSpeedSign(routeSign[i]);
+                }
+                for (; sensor < routeSensorEnd[i]; sensor++) {
+                    int[] values = Arrays.copyOfRange(data, dataStart,
+                            dataStart + sensorLength[sensor]);
+                    dataStart += sensorLength[sensor];
+                    route.addSensor(createSensor(sensorType[sensor],
+                            sensorData.intern(values),
+                            sensorThreshold[sensor]));
+                }
+            }
+
+            for (int i = 0; i < intersectionCount; i++) {
+                if (lightDurations[i] > 0) {
+                    intersections[i].addTrafficLights(
+                            intersections[i].getConnections(),
+                            lightYellowTimes[i], lightDurations[i]);
+                }
+            }
+        } catch (IntersectionNotFoundException | RouteNotFoundException
+                | DuplicateSensorException | InvalidOrderException
+                | IllegalStateException e) {
+            throw new InvalidNetworkException("Inconsistent network snapshot");
+        }
+        return network;
+    }
+
+    /**
+     * Reads the next column of ints from the given buffer.
+     * @param ints buffer to read from
+     * @param length number of ints in the column
+     * @return the column values
+     * @throws InvalidNetworkException if the length is negative or more than
+     * the ints left in the buffer
+     */
+
+    private static int[] read(IntBuffer ints, int length)
+            throws InvalidNetworkException {
+
+        if (length < 0 || length > ints.remaining()) {
+            throw new InvalidNetworkException("Corrupt network snapshot");
+        }
+        int[] column = new int[length];
+        ints.get(column);
+        return column;
+    }
+
+    /**
+     * Returns the snapshot type code of the given sensor.
+     * @param sensor sensor to be saved
+     * @return snapshot sensor type code
+     * @throws IOException if the sensor is not one of the demo sensor types
+     */
+
+    private static int typeOf(Sensor sensor) throws IOException {
+
+        if (sensor instanceof DemoPressurePad) {
+            return PRESSURE_PAD;
+        } else if (sensor instanceof DemoSpeedCamera) {
+            return SPEED_CAMERA;
+        } else if (sensor instanceof DemoVehicleCount) {
+            return VEHICLE_COUNT;
+        }
+        throw new IOException("Cannot save sensor of type \""
+                + sensor.getClass().getSimpleName() + "\"");
+    }
+
+    /**
+     * Creates a demo sensor of the given snapshot type code.
+     * @param type snapshot sensor type code
+     * @param data the sensor's data values
+     * @param threshold the sensor's threshold
+     * @return the created sensor
+     * @throws InvalidNetworkException if the type code is unknown
+     */
+
+    private static Sensor createSensor(int type, SensorData data,
+                                       int threshold)
+            throws InvalidNetworkException {
+
+        switch (type) {
+            case PRESSURE_PAD:
+                return new DemoPressurePad(data, threshold);
+            case SPEED_CAMERA:
+                return new DemoSpeedCamera(data, threshold);
+            case VEHICLE_COUNT:
+                return new DemoVehicleCount(data, threshold);
+            default:
+                throw new InvalidNetworkException("Unknown sensor type "
+                        + type);
+        }
+    }
+}
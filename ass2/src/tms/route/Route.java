@@ -5,12 +5,18 @@ import tms.congestion.CongestionCalculator;
 import tms.intersection.Intersection;
 import tms.network.NetworkInitialiser;
 import tms.sensors.DemoPressurePad;
+import tms.sensors.DemoSensor;
 import tms.sensors.Sensor;
+import tms.util.ChangeBus;
+import tms.util.ChangeType;
 import tms.util.DuplicateSensorException;
+import tms.util.TimedItem;
+import tms.util.TimedItemManager;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
 
 /**
  * Represents a one-way connection between two intersections.
@@ -25,8 +31,12 @@ public class Route {
     private String id;
     /** Intersection at which this route begins. */
     private Intersection from;
+    /** Intersection at which this route ends, null if it was not given. */
+    private Intersection to;
     /** List of sensors on this route, limited to up to one of each type. */
     private List<Sensor> sensors;
+    /** The same sensors, in the order their lines appear in a network file */
+    private List<Sensor> sensorsInFileOrder;
     /** Electronic speed sign on this route, null if none exists. */
     private SpeedSign speedSign;
     /** Traffic light signal on this route, null if none exists. */
@@ -35,6 +45,11 @@ public class Route {
     private int defaultSpeed;
     /** The calculator that returns the current congestion on this route*/
     private CongestionCalculator congestionCalculator;
+    /** Length in metres assumed for routes whose ends have no position */
+    public static final double DEFAULT_LENGTH = 200;
+    /** Publishes a congestion change whenever one of our sensors changes */
+    private final Runnable congestionChanged =
+            () -> ChangeBus.publish(ChangeType.CONGESTION, this);
 
     /**
      * Creates a new route with the given ID, origin intersection and default
@@ -51,9 +66,34 @@ public class Route {
         this.from = from;
         this.defaultSpeed = defaultSpeed;
         sensors = new ArrayList<>();
+        sensorsInFileOrder = new ArrayList<>();
         congestionCalculator = new AveragingCongestionCalculator(sensors);
     }
 
+    /**
+     * Creates a new route with the given ID, origin and destination
+     * intersections and default speed.
+     *
+     * @param id the identifier string to represent the route
+     * @param from the intersection from which this route originates
+     * @param to the intersection at which this route terminates
+     * @param defaultSpeed the default speed limit for vehicles on this route
+     */
+    public Route(String id, Intersection from, Intersection to,
+                 int defaultSpeed) {
+        this(id, from, defaultSpeed);
+        this.to = to;
+    }
+
+    /**
+     * Returns the identifier string of this route, of the form "from:to".
+     *
+     * @return the ID of this route
+     */
+    public String getId() {
+        return this.id;
+    }
+
     /**
      * Returns the intersection at which this route begins.
      *
@@ -64,6 +104,40 @@ public class Route {
         return this.from;
     }
 
+    /**
+     * Returns the intersection at which this route ends, or null if the route
+     * was created without a destination.
+     *
+     * @return the intersection this route goes to
+     */
+    public Intersection getTo() {
+        return this.to;
+    }
+
+    /**
+     * Returns the length of this route in metres, which is the distance
+     * between the positions of its two intersections. If either end has no
+     * position, {@link Route#DEFAULT_LENGTH} is returned.
+     *
+     * @return the length of the route in metres
+     */
+    public double getLength() {
+        if (to == null || !from.hasPosition() || !to.hasPosition()) {
+            return DEFAULT_LENGTH;
+        }
+        return Math.hypot(to.getX() - from.getX(), to.getY() - from.getY());
+    }
+
+    /**
+     * Returns the time in seconds a vehicle travelling at the current speed
+     * limit (in km/h) takes to travel the length of this route.
+     *
+     * @return the travel time of the route, infinite if the speed is zero
+     */
+    public double getTravelTime() {
+        return getLength() * 3.6 / getSpeed();
+    }
+
     /**
      * Returns the traffic light signal on the route, or null if none exists.
      *
@@ -74,6 +148,15 @@ public class Route {
         return this.trafficLight;
     }
 
+    /**
+     * Returns the electronic speed sign on the route, or null if none exists.
+     *
+     * @return the SpeedSign instance deployed on the route
+     */
+    public SpeedSign getSpeedSign() {
+        return this.speedSign;
+    }
+
     /**
      * Get the congestion level reported by sensors on this route.
      * @return the congestion level on this route as returned by the calculator
@@ -84,6 +167,40 @@ public class Route {
         return congestionCalculator.calculateCongestion();
     }
 
+    /**
+     * Replaces the calculator used to combine this route's sensor readings
+     * into its congestion level.
+     * <p>
+     * The factory is given this route's live list of sensors, so sensors added
+     * later are also seen by the new calculator. If the previous calculator was
+     * a timed item, it is removed from the {@link TimedItemManager}, and it is
+     * closed so its sensors release it.
+     *
+     * @param factory creates the new calculator from this route's sensors, e.g.
+     *               {@code sensors -> new SlidingWindowCongestionCalculator(
+     *               sensors, 30)}
+     */
+    public void setCongestionCalculator(
+            Function<List<Sensor>, CongestionCalculator> factory) {
+        CongestionCalculator previous = congestionCalculator;
+        congestionCalculator = factory.apply(sensors);
+        if (previous instanceof TimedItem) {
+            TimedItemManager.getTimedItemManager().removeTimedItem(
+                    (TimedItem) previous);
+        }
+        previous.close();
+        ChangeBus.publish(ChangeType.CONGESTION, this);
+    }
+
+    /**
+     * Returns the calculator used to determine this route's congestion.
+     *
+     * @return this route's congestion calculator
+     */
+    public CongestionCalculator getCongestionCalculator() {
+        return this.congestionCalculator;
+    }
+
     /**
      * Returns a new list containing all the sensors on this route.
      * <p>
@@ -123,6 +240,16 @@ public class Route {
         return this.speedSign.getCurrentSpeed();
     }
 
+    /**
+     * Returns the speed limit of this route when no electronic speed sign is
+     * present, regardless of whether one is.
+     *
+     * @return the default speed limit of the route
+     */
+    public int getDefaultSpeed() {
+        return this.defaultSpeed;
+    }
+
     /**
      * Sets the traffic signal if there is a traffic light controlling traffic
      * flow on this route.
@@ -144,6 +271,7 @@ public class Route {
      */
     public void addTrafficLight() {
         trafficLight = new TrafficLight();
+        ChangeBus.publish(ChangeType.ROUTE_EQUIPMENT, this);
     }
 
     /**
@@ -161,6 +289,7 @@ public class Route {
             throw new IllegalArgumentException("Speed sign speed must be >= 0");
         }
         this.speedSign = new SpeedSign(initialSpeed);
+        ChangeBus.publish(ChangeType.ROUTE_EQUIPMENT, this);
     }
 
     /**
@@ -205,6 +334,34 @@ public class Route {
             }
         }
         sensors.add(sensor);
+
+        String key = fileOrderKey(sensor);
+        int index = 0;
+        while (index < sensorsInFileOrder.size() && key.compareTo(
+                fileOrderKey(sensorsInFileOrder.get(index))) > 0) {
+            index++;
+        }
+        sensorsInFileOrder.add(index, sensor);
+
+        if (sensor instanceof DemoSensor) {
+            ((DemoSensor) sensor).addChangeListener(congestionChanged);
+        }
+        ChangeBus.publish(ChangeType.ROUTE_EQUIPMENT, this);
+    }
+
+    /**
+     * Returns the string by which a sensor's line is ordered among the other
+     * sensor lines of a route, which for demo sensors is just their type code
+     * as a route has at most one sensor of each type.
+     *
+     * @param sensor sensor on this route
+     * @return the sensor's ordering key
+     */
+    private static String fileOrderKey(Sensor sensor) {
+        if (sensor instanceof DemoSensor) {
+            return ((DemoSensor) sensor).getTypeCode();
+        }
+        return sensor.toString();
     }
 
     /**
@@ -268,21 +425,40 @@ public class Route {
      */
     @Override
     public String toString() {
-        String str = String.format("%s%s%d%s%d",
-                this.id, NetworkInitialiser.LINE_INFO_SEPARATOR,
-                this.defaultSpeed, NetworkInitialiser.LINE_INFO_SEPARATOR,
-                this.sensors.size());
+        StringBuilder builder = new StringBuilder();
+        appendTo(builder);
+        return builder.toString();
+    }
+
+    /**
+     * Appends the string representation of this route, as returned by
+     * {@link Route#toString()}, to the given builder.
+     * <p>
+     * Demo sensors write their lines straight into the builder, so a network
+     * can be written out without creating a string for every route and
+     * sensor.
+     *
+     * @param builder builder to append to
+     */
+    public void appendTo(StringBuilder builder) {
+        builder.append(this.id).append(NetworkInitialiser.LINE_INFO_SEPARATOR)
+                .append(this.defaultSpeed)
+                .append(NetworkInitialiser.LINE_INFO_SEPARATOR)
+                .append(this.sensors.size());
 
         if (this.speedSign != null) {
-            str += NetworkInitialiser.LINE_INFO_SEPARATOR
-                    + this.speedSign.getCurrentSpeed();
+            builder.append(NetworkInitialiser.LINE_INFO_SEPARATOR)
+                    .append(this.speedSign.getCurrentSpeed());
         }
 
-        String[] sensorLines = this.sensors.stream().map(Object::toString)
-                .sorted().toArray(String[]::new);
-        for (String sensorLine : sensorLines) {
-            str += System.lineSeparator() + sensorLine;
+        for (int i = 0; i < sensorsInFileOrder.size(); i++) {
+            Sensor sensor = sensorsInFileOrder.get(i);
+            builder.append(System.lineSeparator());
+            if (sensor instanceof DemoSensor) {
+                ((DemoSensor) sensor).appendTo(builder);
+            } else {
+                builder.append(sensor);
+            }
         }
-        return str;
     }
 }
\ No newline at end of file
@@ -1,5 +1,8 @@
 package tms.route;
 
+import tms.util.ChangeBus;
+import tms.util.ChangeType;
+
 /**
  * Represents an electronic speed sign, indicating a dynamic speed limit on a
  * route.
@@ -32,11 +35,16 @@ public class SpeedSign {
 
     /**
      * Sets the speed limit displayed.
+     * <p>
+     * If the speed changes, a {@link ChangeType#SPEED} change is published.
      *
      * @param speed the new speed limit to display
      * @ass1
      */
     public void setCurrentSpeed(int speed) {
-        this.currentSpeed = speed;
+        if (speed != this.currentSpeed) {
+            this.currentSpeed = speed;
+            ChangeBus.publish(ChangeType.SPEED, this);
+        }
     }
 }
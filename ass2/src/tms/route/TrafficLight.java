@@ -1,5 +1,8 @@
 package tms.route;
 
+import tms.util.ChangeBus;
+import tms.util.ChangeType;
+
 /**
  * Represents a traffic light signal on a route, indicating whether vehicles
  * can proceed past the route's destination intersection.
@@ -33,11 +36,16 @@ public class TrafficLight {
      * <p>
      * Note: this method has no logic and as such will allow changing a red
      * light to green immediately.
+     * <p>
+     * If the signal changes, a {@link ChangeType#SIGNAL} change is published.
      *
      * @param signal the new traffic light signal
      * @ass1
      */
     public void setSignal(TrafficSignal signal) {
-        this.signal = signal;
+        if (signal != this.signal) {
+            this.signal = signal;
+            ChangeBus.publish(ChangeType.SIGNAL, this);
+        }
     }
 }
@@ -0,0 +1,1318 @@
+package tms.routing;
+
+import tms.intersection.Intersection;
+import tms.network.Network;
+import tms.route.Route;
+import tms.route.SpeedSign;
+import tms.util.ChangeBus;
+import tms.util.ChangeListener;
+import tms.util.ChangeType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index over a network that answers fastest path queries many times
+ * faster than searching the network, for workloads with many queries between
+ * changes to the network.
+ * <p>
+ * The index is a customizable contraction hierarchy. Intersections are
+ * ranked by nested dissection of the network, ignoring the direction and
+ * cost of routes: each part of the network is split in two by a small set of
+ * separating intersections, which are ranked above both halves. Contracting
+ * the intersections in rank order adds shortcut arcs between the
+ * intersections each one connects, so that every arc joins an intersection
+ * to a higher ranked one. A separate customization pass then gives every arc
+ * the cost of the fastest path between its ends in each direction, and
+ * leaves out of queries the arcs that a path through a higher ranked
+ * intersection is as fast as.
+ * <p>
+ * A query only looks at the intersections ranked above the origin and the
+ * destination that are reachable upwards, which are found by walking up a
+ * tree rather than with a priority queue, and meets in the middle.
+ * <p>
+ * The index listens for changes to the network, and brings itself up to date
+ * on the next query. When the speed sign or other equipment of a few routes
+ * changes, only the cost of those routes is read again, and only the arcs
+ * ranked above them in the tree are customized again, through lower ranked
+ * intersections only. Queries then search every arc with those costs, which
+ * is correct but slower, until the next full customization. When many routes
+ * change at once, the whole index is customized again. When routes are
+ * added, the contraction is kept if every new route joins intersections that
+ * were already connected, as happens when a route is made two-way, and
+ * otherwise redone. Costs are taken from a {@link RoutingGraph}, so
+ * congestion is included as of the last time each route was read; call
+ * {@link #refresh()} to take in the current congestion of every route and
+ * customize the whole index.
+ */
+
+public class ContractionHierarchy {
+
+    /** Largest part of the network that is not split further */
+    private static final int LEAF_SIZE = 8;
+    /** Marks a missing arc, edge or tree parent */
+    private static final int NONE = -1;
+    /** Relative difference in cost below which two paths are taken as equal
+     * when leaving arcs out of the query graph */
+    private static final double TOLERANCE = 1e-9;
+    /** Most changed routes and speed signs between queries for which only
+     * the arcs above them are customized again */
+    private static final int PARTIAL_LIMIT = 64;
+    /** Cost of looking up the triangle through one lower rank of an arc,
+     * relative to visiting a triangle when a whole rank is customized */
+    private static final int SEARCH_COST = 4;
+
+    /** The network the index is over */
+    private final Network network;
+    /** Marks the index as out of date when the network changes */
+    private final ChangeListener listener = this::changed;
+    /** Whether routes or intersections may have been added */
+    private volatile boolean structureChanged;
+    /** Whether route costs may have changed */
+    private volatile boolean costsChanged;
+    /** Routes and speed signs changed since the last update, null if the
+     * whole index must be customized again */
+    private List<Object> changedSources = new ArrayList<>();
+    /** Guards changedSources, which changes are published to from any
+     * thread */
+    private final Object sourcesLock = new Object();
+    /** Route of each speed sign in the network, by identity */
+    private final Map<SpeedSign, Route> signRoutes = new IdentityHashMap<>();
+
+    /** The graph of the network that costs are read from */
+    private RoutingGraph graph;
+    /** Rank of each node of the graph */
+    private int[] rank;
+    /** Node of each rank */
+    private int[] node;
+    /** First arc of each rank, followed by the total number of arcs */
+    private int[] arcStart;
+    /** Higher rank each arc leads to, ascending within each lower rank */
+    private int[] arcHead;
+    /** First arc up to each rank in lowerArc, followed by the number of
+     * arcs */
+    private int[] lowerStart;
+    /** Arcs up to each higher rank, ascending by lower rank within each */
+    private int[] lowerArc;
+    /** Lower rank of each arc in lowerArc */
+    private int[] lowerTail;
+    /** Lowest rank reachable upwards from each rank, NONE for a root */
+    private int[] parent;
+    /** Cost of the fastest direct route up each arc */
+    private double[] upBase;
+    /** Cost of the fastest direct route down each arc */
+    private double[] downBase;
+    /** Graph edge of the fastest direct route up each arc, NONE if none */
+    private int[] upEdge;
+    /** Graph edge of the fastest direct route down each arc, NONE if none */
+    private int[] downEdge;
+    /** Cost of the fastest path up each arc through lower ranks only */
+    private double[] upLowerCost;
+    /** Cost of the fastest path down each arc through lower ranks only */
+    private double[] downLowerCost;
+    /** Rank passed through going up each arc for its lower cost, NONE for a
+     * direct route */
+    private int[] upLowerMiddle;
+    /** Rank passed through going down each arc for its lower cost, NONE for
+     * a direct route */
+    private int[] downLowerMiddle;
+    /** Customized cost of travelling up each arc, the lower cost after a
+     * partial customization */
+    private double[] upCost;
+    /** Customized cost of travelling down each arc, the lower cost after a
+     * partial customization */
+    private double[] downCost;
+    /** Rank passed through going up each arc, NONE for a direct route */
+    private int[] upMiddle;
+    /** Rank passed through going down each arc, NONE for a direct route */
+    private int[] downMiddle;
+    /** First query arc up from each rank, followed by the number of arcs */
+    private int[] upStart;
+    /** Higher rank each query arc up leads to */
+    private int[] upHead;
+    /** Cost of each query arc up */
+    private double[] upQueryCost;
+    /** First query arc down to each rank, followed by the number of arcs */
+    private int[] downStart;
+    /** Higher rank each query arc down comes from */
+    private int[] downHead;
+    /** Cost of each query arc down */
+    private double[] downQueryCost;
+    /** Number of times the contraction has been done */
+    private int contractions;
+    /** Number of arcs customized again by the last customization */
+    private int customizedArcs;
+    /** Arcs whose lower cost may be out of date during a partial
+     * customization, all false between customizations */
+    private boolean[] stale;
+
+    /** Time from the origin of the current query to each rank */
+    private double[] forwardTime;
+    /** Time from each rank to the destination of the current query */
+    private double[] backwardTime;
+    /** Rank from which each rank was reached from the origin */
+    private int[] forwardPrevious;
+    /** Rank through which the destination is reached from each rank */
+    private int[] backwardNext;
+
+    /**
+     * Builds an index over the given network and starts listening for
+     * changes to it.
+     * @param network the network to answer queries on
+     */
+
+    public ContractionHierarchy(Network network) {
+
+        this.network = network;
+        graph = new RoutingGraph(network);
+        findSigns();
+        contract();
+        customize();
+        ChangeBus.getChangeBus().subscribe(listener);
+    }
+
+    /**
+     * Stops listening for changes to the network. The index keeps answering
+     * queries, but is no longer brought up to date.
+     */
+
+    public void close() {
+
+        ChangeBus.getChangeBus().unsubscribe(listener);
+    }
+
+    /**
+     * Re-reads the cost of every route, including its current congestion, and
+     * customizes the index with them.
+     */
+
+    public void refresh() {
+
+        changed(ChangeType.SPEED, null);
+        update();
+    }
+
+    /**
+     * Returns the number of arcs in the index, including the arcs of the
+     * routes themselves.
+     * @return the number of arcs
+     */
+
+    public int getArcCount() {
+
+        update();
+        return arcHead.length;
+    }
+
+    /**
+     * Returns the time taken to travel the fastest path between two
+     * intersections.
+     * @param from the intersection to start at
+     * @param to the intersection to finish at
+     * @return the travel time in seconds, infinite if the destination cannot
+     * be reached
+     * @throws IllegalArgumentException if either intersection is not in the
+     * network
+     */
+
+    public double getTravelTime(Intersection from, Intersection to) {
+
+        update();
+        int meeting = search(rank[graph.getNode(from)],
+                rank[graph.getNode(to)]);
+        return meeting == NONE ? Double.POSITIVE_INFINITY
+                : forwardTime[meeting] + backwardTime[meeting];
+    }
+
+    /**
+     * Finds the fastest path between two intersections.
+     * @param from the intersection to start at
+     * @param to the intersection to finish at
+     * @return the fastest path, or null if the destination cannot be reached
+     * @throws IllegalArgumentException if either intersection is not in the
+     * network
+     */
+
+    public Path findPath(Intersection from, Intersection to) {
+
+        update();
+        int origin = rank[graph.getNode(from)];
+        int destination = rank[graph.getNode(to)];
+        int meeting = search(origin, destination);
+        if (meeting == NONE) {
+            return null;
+        }
+        List<Integer> climb = new ArrayList<>();
+        for (int at = meeting; at != origin; at = forwardPrevious[at]) {
+            climb.add(at);
+        }
+        climb.add(origin);
+        Collections.reverse(climb);
+        List<Route> routes = new ArrayList<>();
+        for (int i = 1; i < climb.size(); i++) {
+            unpack(climb.get(i - 1), climb.get(i), routes);
+        }
+        for (int at = meeting; at != destination; at = backwardNext[at]) {
+            unpack(at, backwardNext[at], routes);
+        }
+        return new Path(from, routes,
+                forwardTime[meeting] + backwardTime[meeting]);
+    }
+
+    /**
+     * Returns the number of times the intersections have been contracted.
+     * @return the number of contractions
+     */
+
+    int getContractionCount() {
+
+        return contractions;
+    }
+
+    /**
+     * Returns the number of arcs whose costs were worked out again by the
+     * last customization.
+     * @return the number of arcs customized
+     */
+
+    int getCustomizedArcCount() {
+
+        update();
+        return customizedArcs;
+    }
+
+    /**
+     * Notes a change to the network that may make the index out of date. The
+     * route or speed sign that changed is recorded, so that only the arcs
+     * above it need to be customized again.
+     * @param type the type of change
+     * @param source the object that changed
+     */
+
+    private void changed(ChangeType type, Object source) {
+
+        switch (type) {
+            case STRUCTURE:
+                structureChanged = true;
+                break;
+            case SPEED:
+            case ROUTE_EQUIPMENT:
+                synchronized (sourcesLock) {
+                    if (changedSources != null
+                            && changedSources.size() < PARTIAL_LIMIT
+                            && (source instanceof Route
+                            || source instanceof SpeedSign)) {
+                        changedSources.add(source);
+                    } else {
+                        changedSources = null;
+                    }
+                }
+                costsChanged = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Returns the routes and speed signs changed since the last call, and
+     * starts recording afresh.
+     * @return the changed objects in the order they changed, or null if the
+     * whole index must be customized again
+     */
+
+    private List<Object> takeChangedSources() {
+
+        synchronized (sourcesLock) {
+            List<Object> sources = changedSources;
+            changedSources = new ArrayList<>();
+            return sources;
+        }
+    }
+
+    /**
+     * Brings the index up to date with any changes to the network.
+     */
+
+    private void update() {
+
+        if (structureChanged) {
+            structureChanged = false;
+            costsChanged = false;
+            takeChangedSources();
+            RoutingGraph previous = graph;
+            graph = new RoutingGraph(network);
+            findSigns();
+            if (!sameNodes(previous) || !assignEdges()) {
+                contract();
+            }
+            customize();
+        } else if (costsChanged) {
+            costsChanged = false;
+            List<Object> sources = takeChangedSources();
+            if (sources != null) {
+                customizeAbove(sources);
+            } else {
+                graph.refreshCosts();
+                findSigns();
+                assignEdges();
+                customize();
+            }
+        }
+    }
+
+    /**
+     * Records the route of every speed sign in the network.
+     */
+
+    private void findSigns() {
+
+        signRoutes.clear();
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            Route route = graph.getRoute(e);
+            if (route.hasSpeedSign()) {
+                signRoutes.put(route.getSpeedSign(), route);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the current graph has the same intersections, in the
+     * same order, as the given graph.
+     * @param previous the graph the index was last built from
+     * @return whether the nodes are unchanged
+     */
+
+    private boolean sameNodes(RoutingGraph previous) {
+
+        if (previous.getNodeCount() != graph.getNodeCount()) {
+            return false;
+        }
+        for (int v = 0; v < graph.getNodeCount(); v++) {
+            if (previous.getIntersection(v) != graph.getIntersection(v)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ranks the intersections by nested dissection and adds the shortcut arcs
+     * that contracting them in rank order requires.
+     */
+
+    private void contract() {
+
+        int nodes = graph.getNodeCount();
+        int[][] neighbours = undirectedNeighbours();
+        int[] order = new int[nodes];
+        int[] placed = {0};
+        int[] mark = new int[nodes];
+        int[] stamp = {0};
+        int[] all = new int[nodes];
+        for (int v = 0; v < nodes; v++) {
+            all[v] = v;
+        }
+        dissect(all, neighbours, order, placed, mark, stamp);
+        node = order;
+        rank = new int[nodes];
+        for (int r = 0; r < nodes; r++) {
+            rank[node[r]] = r;
+        }
+
+        int[][] up = new int[nodes][];
+        for (int r = 0; r < nodes; r++) {
+            int[] adjacent = neighbours[node[r]];
+            int count = 0;
+            int[] higher = new int[adjacent.length];
+            for (int v : adjacent) {
+                if (rank[v] > r) {
+                    higher[count++] = rank[v];
+                }
+            }
+            higher = Arrays.copyOf(higher, count);
+            Arrays.sort(higher);
+            up[r] = higher;
+        }
+        parent = new int[nodes];
+        int arcs = 0;
+        for (int r = 0; r < nodes; r++) {
+            if (up[r].length == 0) {
+                parent[r] = NONE;
+                continue;
+            }
+            parent[r] = up[r][0];
+            arcs += up[r].length;
+            int p = up[r][0];
+            up[p] = merge(up[p], up[r], 1);
+        }
+        arcStart = new int[nodes + 1];
+        arcHead = new int[arcs];
+        lowerStart = new int[nodes + 1];
+        for (int r = 0; r < nodes; r++) {
+            arcStart[r + 1] = arcStart[r] + up[r].length;
+            System.arraycopy(up[r], 0, arcHead, arcStart[r], up[r].length);
+            for (int high : up[r]) {
+                lowerStart[high + 1]++;
+            }
+        }
+        for (int r = 0; r < nodes; r++) {
+            lowerStart[r + 1] += lowerStart[r];
+        }
+        lowerArc = new int[arcs];
+        lowerTail = new int[arcs];
+        int[] filled = Arrays.copyOf(lowerStart, nodes);
+        for (int r = 0; r < nodes; r++) {
+            for (int arc = arcStart[r]; arc < arcStart[r + 1]; arc++) {
+                int slot = filled[arcHead[arc]]++;
+                lowerArc[slot] = arc;
+                lowerTail[slot] = r;
+            }
+        }
+
+        upBase = new double[arcs];
+        downBase = new double[arcs];
+        upEdge = new int[arcs];
+        downEdge = new int[arcs];
+        upLowerCost = new double[arcs];
+        downLowerCost = new double[arcs];
+        upLowerMiddle = new int[arcs];
+        downLowerMiddle = new int[arcs];
+        stale = new boolean[arcs];
+        forwardTime = new double[nodes];
+        backwardTime = new double[nodes];
+        forwardPrevious = new int[nodes];
+        backwardNext = new int[nodes];
+        assignEdges();
+        contractions++;
+    }
+
+    /**
+     * Returns the nodes joined to each node by a route in either direction.
+     * @return the sorted neighbours of each node
+     */
+
+    private int[][] undirectedNeighbours() {
+
+        int nodes = graph.getNodeCount();
+        int[] degree = new int[nodes];
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            degree[graph.getFrom(e)]++;
+            degree[graph.getTo(e)]++;
+        }
+        int[][] neighbours = new int[nodes][];
+        for (int v = 0; v < nodes; v++) {
+            neighbours[v] = new int[degree[v]];
+            degree[v] = 0;
+        }
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            int from = graph.getFrom(e);
+            int to = graph.getTo(e);
+            if (from != to) {
+                neighbours[from][degree[from]++] = to;
+                neighbours[to][degree[to]++] = from;
+            }
+        }
+        for (int v = 0; v < nodes; v++) {
+            int[] sorted = Arrays.copyOf(neighbours[v], degree[v]);
+            Arrays.sort(sorted);
+            int unique = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[unique++] = sorted[i];
+                }
+            }
+            neighbours[v] = Arrays.copyOf(sorted, unique);
+        }
+        return neighbours;
+    }
+
+    /**
+     * Appends the given part of the network to the rank order, splitting it
+     * in two halves. If every intersection has a position, the halves are
+     * split across the longer side of the part; otherwise they are the first
+     * and second half of the nodes found by breadth-first search from an
+     * outlying node. The nodes of the second half next to the first half
+     * separate it from the rest. Both sides are ranked before the separator,
+     * which is ranked in order along its length when it has positions, so
+     * that a query can follow it rather than jump across it.
+     * @param part the nodes of the part
+     * @param neighbours the neighbours of each node
+     * @param order the rank order being built
+     * @param placed the number of nodes in the rank order, in a box
+     * @param mark the stamp each node was last marked with
+     * @param stamp the last stamp used, in a box
+     */
+
+    private void dissect(int[] part, int[][] neighbours, int[] order,
+                         int[] placed, int[] mark, int[] stamp) {
+
+        if (part.length <= LEAF_SIZE) {
+            for (int v : part) {
+                order[placed[0]++] = v;
+            }
+            return;
+        }
+        int[] visit;
+        boolean acrossX = false;
+        if (graph.isPositioned()) {
+            acrossX = extent(part, true) >= extent(part, false);
+            visit = sortByPosition(part, acrossX);
+        } else {
+            int inPart = ++stamp[0];
+            for (int v : part) {
+                mark[v] = inPart;
+            }
+            visit = breadthFirst(part[0], part, neighbours, mark, inPart,
+                    stamp);
+            for (int v : part) {
+                mark[v] = inPart;
+            }
+            visit = breadthFirst(visit[visit.length - 1], part, neighbours,
+                    mark, inPart, stamp);
+        }
+
+        int half = part.length / 2;
+        int first = ++stamp[0];
+        for (int i = 0; i < half; i++) {
+            mark[visit[i]] = first;
+        }
+        int[] separator = new int[part.length - half];
+        int[] rest = new int[part.length - half];
+        int separators = 0;
+        int others = 0;
+        for (int i = half; i < visit.length; i++) {
+            int v = visit[i];
+            boolean touches = false;
+            for (int w : neighbours[v]) {
+                if (mark[w] == first) {
+                    touches = true;
+                    break;
+                }
+            }
+            if (touches) {
+                separator[separators++] = v;
+            } else {
+                rest[others++] = v;
+            }
+        }
+        dissect(Arrays.copyOf(visit, half), neighbours, order, placed, mark,
+                stamp);
+        dissect(Arrays.copyOf(rest, others), neighbours, order, placed, mark,
+                stamp);
+        if (graph.isPositioned()) {
+            separator = sortByPosition(Arrays.copyOf(separator, separators),
+                    !acrossX);
+        }
+        for (int i = 0; i < separators; i++) {
+            order[placed[0]++] = separator[i];
+        }
+    }
+
+    /**
+     * Returns the distance between the furthest apart nodes of a part along
+     * one axis.
+     * @param part the nodes of the part
+     * @param alongX true for the x axis, false for the y axis
+     * @return the extent of the part along the axis
+     */
+
+    private double extent(int[] part, boolean alongX) {
+
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int v : part) {
+            double position = position(v, alongX);
+            min = Math.min(min, position);
+            max = Math.max(max, position);
+        }
+        return max - min;
+    }
+
+    /**
+     * Returns the nodes of a part sorted by their position along one axis.
+     * @param part the nodes of the part
+     * @param alongX true for the x axis, false for the y axis
+     * @return the sorted nodes
+     */
+
+    private int[] sortByPosition(int[] part, boolean alongX) {
+
+        Integer[] sorted = new Integer[part.length];
+        for (int i = 0; i < part.length; i++) {
+            sorted[i] = part[i];
+        }
+        Arrays.sort(sorted, Comparator.comparingDouble(
+                v -> position(v, alongX)));
+        int[] nodes = new int[part.length];
+        for (int i = 0; i < part.length; i++) {
+            nodes[i] = sorted[i];
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the position of a node along one axis.
+     * @param v the node
+     * @param alongX true for the x axis, false for the y axis
+     * @return the coordinate of the node's intersection
+     */
+
+    private double position(int v, boolean alongX) {
+
+        Intersection intersection = graph.getIntersection(v);
+        return alongX ? intersection.getX() : intersection.getY();
+    }
+
+    /**
+     * Visits every node of a part breadth first, starting from the given node
+     * and continuing from an unvisited node whenever the nodes connected to
+     * those visited so far run out.
+     * @param start the node to start from
+     * @param part the nodes of the part
+     * @param neighbours the neighbours of each node
+     * @param mark the stamp each node was last marked with; the nodes of the
+     *             part are marked with inPart and are marked visited
+     * @param inPart the stamp the nodes of the part are marked with
+     * @param stamp the last stamp used, in a box
+     * @return the nodes of the part in the order they were visited
+     */
+
+    private int[] breadthFirst(int start, int[] part, int[][] neighbours,
+                               int[] mark, int inPart, int[] stamp) {
+
+        int visited = ++stamp[0];
+        int[] queue = new int[part.length];
+        int head = 0;
+        int tail = 0;
+        int next = 0;
+        queue[tail++] = start;
+        mark[start] = visited;
+        while (head < part.length) {
+            if (head == tail) {
+                while (mark[part[next]] != inPart) {
+                    next++;
+                }
+                queue[tail++] = part[next];
+                mark[part[next]] = visited;
+            }
+            int v = queue[head++];
+            for (int w : neighbours[v]) {
+                if (mark[w] == inPart) {
+                    mark[w] = visited;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Merges two ascending arrays of ranks, leaving out duplicates and the
+     * first entries of the second array.
+     * @param a an ascending array
+     * @param b an ascending array
+     * @param from the first entry of b to merge
+     * @return the ascending union of the arrays
+     */
+
+    private static int[] merge(int[] a, int[] b, int from) {
+
+        int[] merged = new int[a.length + b.length - from];
+        int i = 0;
+        int j = from;
+        int count = 0;
+        while (i < a.length || j < b.length) {
+            int next;
+            if (j == b.length || (i < a.length && a[i] <= b[j])) {
+                next = a[i++];
+            } else {
+                next = b[j++];
+            }
+            if (count == 0 || merged[count - 1] != next) {
+                merged[count++] = next;
+            }
+        }
+        return Arrays.copyOf(merged, count);
+    }
+
+    /**
+     * Gives each arc the cost and edge of the fastest direct route in each
+     * direction between its ends.
+     * @return false if a route joins two intersections that have no arc
+     * between them, in which case the contraction must be redone
+     */
+
+    private boolean assignEdges() {
+
+        Arrays.fill(upBase, Double.POSITIVE_INFINITY);
+        Arrays.fill(downBase, Double.POSITIVE_INFINITY);
+        Arrays.fill(upEdge, NONE);
+        Arrays.fill(downEdge, NONE);
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            int from = rank[graph.getFrom(e)];
+            int to = rank[graph.getTo(e)];
+            if (from == to) {
+                continue;
+            }
+            int arc = findArc(Math.min(from, to), Math.max(from, to));
+            if (arc == NONE) {
+                return false;
+            }
+            double cost = graph.getCost(e);
+            if (from < to && cost < upBase[arc]) {
+                upBase[arc] = cost;
+                upEdge[arc] = e;
+            } else if (from > to && cost < downBase[arc]) {
+                downBase[arc] = cost;
+                downEdge[arc] = e;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gives the arc between two ranks the cost and edge of the fastest direct
+     * route in each direction between its ends, after the costs of routes
+     * between them have changed.
+     * @param low the lower rank
+     * @param high the higher rank, joined to low by an arc
+     * @return the arc
+     */
+
+    private int assignArc(int low, int high) {
+
+        int arc = findArc(low, high);
+        upBase[arc] = Double.POSITIVE_INFINITY;
+        downBase[arc] = Double.POSITIVE_INFINITY;
+        upEdge[arc] = NONE;
+        downEdge[arc] = NONE;
+        int[] outEdges = graph.getOutEdges();
+        for (int i = graph.getOutStart(node[low]);
+             i < graph.getOutStart(node[low] + 1); i++) {
+            int e = outEdges[i];
+            if (rank[graph.getTo(e)] == high
+                    && graph.getCost(e) < upBase[arc]) {
+                upBase[arc] = graph.getCost(e);
+                upEdge[arc] = e;
+            }
+        }
+        for (int i = graph.getOutStart(node[high]);
+             i < graph.getOutStart(node[high] + 1); i++) {
+            int e = outEdges[i];
+            if (rank[graph.getTo(e)] == low
+                    && graph.getCost(e) < downBase[arc]) {
+                downBase[arc] = graph.getCost(e);
+                downEdge[arc] = e;
+            }
+        }
+        return arc;
+    }
+
+    /**
+     * Gives every arc the cost of the fastest path between its ends in each
+     * direction, and builds the query graph from the arcs that are needed.
+     */
+
+    private void customize() {
+
+        for (int r = 0; r < node.length; r++) {
+            customizeLower(r);
+        }
+        upCost = upLowerCost.clone();
+        downCost = downLowerCost.clone();
+        upMiddle = upLowerMiddle.clone();
+        downMiddle = downLowerMiddle.clone();
+        customizeUpper();
+        buildQueryGraph();
+        customizedArcs = arcHead.length;
+    }
+
+    /**
+     * Reads the costs of the given changed routes again, and customizes only
+     * the arcs whose lower cost may depend on them. The arc of each route is
+     * customized again, and whenever an arc's lower cost changes, so are the
+     * arcs it forms a triangle with as the lowest arc. These all lead up
+     * from the lower end of a route's arc or from a rank above it in the
+     * tree, which are visited in ascending order so that the arcs of each
+     * triangle are final by the time it is used. If any lower cost changed,
+     * queries then search every arc by its lower cost, which finds the same
+     * fastest paths as the full customization; otherwise the full
+     * customization still holds.
+     * @param sources the routes and speed signs that changed, in order
+     */
+
+    private void customizeAbove(List<Object> sources) {
+
+        boolean[] affected = new boolean[node.length];
+        int[] ranks = new int[16];
+        int count = 0;
+        for (Object source : sources) {
+            Route route = source instanceof SpeedSign
+                    ? signRoutes.get(source) : (Route) source;
+            if (route == null || !graph.contains(route)) {
+                continue;
+            }
+            if (route.hasSpeedSign()) {
+                signRoutes.put(route.getSpeedSign(), route);
+            }
+            int edge = graph.getEdge(route);
+            graph.refreshCost(edge);
+            int from = rank[graph.getFrom(edge)];
+            int to = rank[graph.getTo(edge)];
+            if (from == to) {
+                continue;
+            }
+            stale[assignArc(Math.min(from, to), Math.max(from, to))] = true;
+            for (int at = Math.min(from, to); at != NONE && !affected[at];
+                 at = parent[at]) {
+                affected[at] = true;
+                if (count == ranks.length) {
+                    ranks = Arrays.copyOf(ranks, 2 * count);
+                }
+                ranks[count++] = at;
+            }
+        }
+        Arrays.sort(ranks, 0, count);
+        customizedArcs = 0;
+        boolean lowerChanged = false;
+        for (int i = 0; i < count; i++) {
+            lowerChanged |= customizeStale(ranks[i]);
+        }
+        if (!lowerChanged) {
+            return;
+        }
+
+        upCost = upLowerCost;
+        downCost = downLowerCost;
+        upMiddle = upLowerMiddle;
+        downMiddle = downLowerMiddle;
+        upStart = arcStart;
+        upHead = arcHead;
+        upQueryCost = upLowerCost;
+        downStart = arcStart;
+        downHead = arcHead;
+        downQueryCost = downLowerCost;
+    }
+
+    /**
+     * Customizes the stale arcs up from a rank, and marks as stale the arcs
+     * above each one whose lower cost changed. Arcs are customized one by
+     * one if there are few of them, otherwise all arcs of the rank are
+     * customized together, which visits each triangle once rather than
+     * searching for the triangles of each arc.
+     * @param low the rank whose stale arcs to customize
+     * @return true if the lower cost of any arc changed
+     */
+
+    private boolean customizeStale(int low) {
+
+        int first = arcStart[low];
+        int end = arcStart[low + 1];
+        int stales = 0;
+        for (int arc = first; arc < end; arc++) {
+            stales += stale[arc] ? 1 : 0;
+        }
+        if (stales == 0) {
+            return false;
+        }
+        long triangles = 0;
+        for (int t = lowerStart[low]; t < lowerStart[low + 1]; t++) {
+            triangles += arcStart[lowerTail[t] + 1] - lowerArc[t] - 1;
+        }
+        long searches = (long) stales * (lowerStart[low + 1] - lowerStart[low]);
+        boolean changed = false;
+        if (SEARCH_COST * searches < triangles) {
+            for (int arc = first; arc < end; arc++) {
+                if (stale[arc]) {
+                    stale[arc] = false;
+                    customizedArcs++;
+                    if (customizeLowerArc(low, arc)) {
+                        markAbove(low, arc);
+                        changed = true;
+                    }
+                }
+            }
+            return changed;
+        }
+        double[] up = Arrays.copyOfRange(upLowerCost, first, end);
+        double[] down = Arrays.copyOfRange(downLowerCost, first, end);
+        customizeLower(low);
+        customizedArcs += end - first;
+        for (int arc = first; arc < end; arc++) {
+            stale[arc] = false;
+            if (up[arc - first] != upLowerCost[arc]
+                    || down[arc - first] != downLowerCost[arc]) {
+                markAbove(low, arc);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Gives an arc the cost of the fastest path it stands for through lower
+     * ranked intersections in each direction, relaxing it through every
+     * lower ranked intersection it forms a triangle with, lowest first.
+     * @param low the lower rank of the arc
+     * @param arc the arc
+     * @return true if the lower cost of the arc changed in either direction
+     */
+
+    private boolean customizeLowerArc(int low, int arc) {
+
+        int high = arcHead[arc];
+        double up = upBase[arc];
+        double down = downBase[arc];
+        int upVia = NONE;
+        int downVia = NONE;
+        for (int t = lowerStart[low]; t < lowerStart[low + 1]; t++) {
+            int v = lowerTail[t];
+            int j = findArc(v, high);
+            if (j == NONE) {
+                continue;
+            }
+            int i = lowerArc[t];
+            if (downLowerCost[i] + upLowerCost[j] < up) {
+                up = downLowerCost[i] + upLowerCost[j];
+                upVia = v;
+            }
+            if (downLowerCost[j] + upLowerCost[i] < down) {
+                down = downLowerCost[j] + upLowerCost[i];
+                downVia = v;
+            }
+        }
+        boolean changed = up != upLowerCost[arc] || down != downLowerCost[arc];
+        upLowerCost[arc] = up;
+        downLowerCost[arc] = down;
+        upLowerMiddle[arc] = upVia;
+        downLowerMiddle[arc] = downVia;
+        return changed;
+    }
+
+    /**
+     * Marks as stale every arc that forms a triangle with the given arc as
+     * its lowest arc: the arc between the higher end of the given arc and
+     * the higher end of each other arc up from the same rank.
+     * @param low the lower rank of the arc
+     * @param arc the arc whose lower cost changed
+     */
+
+    private void markAbove(int low, int arc) {
+
+        int high = arcHead[arc];
+        for (int j = arcStart[low]; j < arcStart[low + 1]; j++) {
+            int other = arcHead[j];
+            if (other < high) {
+                stale[findArc(other, high)] = true;
+            } else if (other > high) {
+                stale[findArc(high, other)] = true;
+            }
+        }
+    }
+
+    /**
+     * Gives the arcs up from a rank the cost of the fastest path each stands
+     * for through lower ranked intersections in each direction. Each arc is
+     * relaxed through every lower ranked intersection it forms a triangle
+     * with, lowest first. The arcs of the triangles lead up from lower ranks,
+     * so they are final if ranks are customized in ascending order.
+     * @param low the rank whose arcs to customize
+     */
+
+    private void customizeLower(int low) {
+
+        int first = arcStart[low];
+        int end = arcStart[low + 1];
+        System.arraycopy(upBase, first, upLowerCost, first, end - first);
+        System.arraycopy(downBase, first, downLowerCost, first, end - first);
+        Arrays.fill(upLowerMiddle, first, end, NONE);
+        Arrays.fill(downLowerMiddle, first, end, NONE);
+        for (int t = lowerStart[low]; t < lowerStart[low + 1]; t++) {
+            int i = lowerArc[t];
+            int v = lowerTail[t];
+            int k = first;
+            for (int j = i + 1; j < arcStart[v + 1]; j++) {
+                int high = arcHead[j];
+                while (arcHead[k] != high) {
+                    k++;
+                }
+                double up = downLowerCost[i] + upLowerCost[j];
+                if (up < upLowerCost[k]) {
+                    upLowerCost[k] = up;
+                    upLowerMiddle[k] = v;
+                }
+                double down = downLowerCost[j] + upLowerCost[i];
+                if (down < downLowerCost[k]) {
+                    downLowerCost[k] = down;
+                    downLowerMiddle[k] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Lowers the cost of every arc to that of the fastest path between its
+     * ends through any intersections. Arcs are relaxed through each higher
+     * ranked intersection both their ends lead up to, highest lower end
+     * first, so the arc between the two higher ends is final by the time it
+     * is used.
+     */
+
+    private void customizeUpper() {
+
+        for (int v = node.length - 1; v >= 0; v--) {
+            int end = arcStart[v + 1];
+            for (int i = arcStart[v]; i < end; i++) {
+                int low = arcHead[i];
+                int k = arcStart[low];
+                for (int j = i + 1; j < end; j++) {
+                    int high = arcHead[j];
+                    while (arcHead[k] != high) {
+                        k++;
+                    }
+                    if (upCost[j] + downCost[k] < upCost[i]) {
+                        upCost[i] = upCost[j] + downCost[k];
+                        upMiddle[i] = high;
+                    }
+                    if (upCost[k] + downCost[j] < downCost[i]) {
+                        downCost[i] = upCost[k] + downCost[j];
+                        downMiddle[i] = high;
+                    }
+                    if (upCost[i] + upCost[k] < upCost[j]) {
+                        upCost[j] = upCost[i] + upCost[k];
+                        upMiddle[j] = low;
+                    }
+                    if (downCost[k] + downCost[i] < downCost[j]) {
+                        downCost[j] = downCost[k] + downCost[i];
+                        downMiddle[j] = low;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the arcs searched by queries in each direction, leaving out
+     * every arc that cannot be travelled and every arc that is no faster than
+     * going through an intersection ranked above its lower end. Replacing
+     * such an arc on a fastest path gives a path just as fast through a
+     * higher ranked intersection, and as paths can only be raised so far, a
+     * fastest path that a query can find remains.
+     */
+
+    private void buildQueryGraph() {
+
+        int arcs = arcHead.length;
+        boolean[] upNeeded = new boolean[arcs];
+        boolean[] downNeeded = new boolean[arcs];
+        for (int arc = 0; arc < arcs; arc++) {
+            upNeeded[arc] = upCost[arc] < Double.POSITIVE_INFINITY;
+            downNeeded[arc] = downCost[arc] < Double.POSITIVE_INFINITY;
+        }
+        for (int v = 0; v < node.length; v++) {
+            int end = arcStart[v + 1];
+            for (int i = arcStart[v]; i < end; i++) {
+                int low = arcHead[i];
+                int k = arcStart[low];
+                for (int j = i + 1; j < end; j++) {
+                    int high = arcHead[j];
+                    while (arcHead[k] != high) {
+                        k++;
+                    }
+                    upNeeded[i] &= !reaches(upCost[j] + downCost[k],
+                            upCost[i]);
+                    downNeeded[i] &= !reaches(upCost[k] + downCost[j],
+                            downCost[i]);
+                    upNeeded[j] &= !reaches(upCost[i] + upCost[k],
+                            upCost[j]);
+                    downNeeded[j] &= !reaches(downCost[k] + downCost[i],
+                            downCost[j]);
+                }
+            }
+        }
+
+        upStart = new int[node.length + 1];
+        downStart = new int[node.length + 1];
+        for (int v = 0; v < node.length; v++) {
+            upStart[v + 1] = upStart[v];
+            downStart[v + 1] = downStart[v];
+            for (int arc = arcStart[v]; arc < arcStart[v + 1]; arc++) {
+                upStart[v + 1] += upNeeded[arc] ? 1 : 0;
+                downStart[v + 1] += downNeeded[arc] ? 1 : 0;
+            }
+        }
+        upHead = new int[upStart[node.length]];
+        upQueryCost = new double[upHead.length];
+        downHead = new int[downStart[node.length]];
+        downQueryCost = new double[downHead.length];
+        int ups = 0;
+        int downs = 0;
+        for (int arc = 0; arc < arcs; arc++) {
+            if (upNeeded[arc]) {
+                upHead[ups] = arcHead[arc];
+                upQueryCost[ups++] = upCost[arc];
+            }
+            if (downNeeded[arc]) {
+                downHead[downs] = arcHead[arc];
+                downQueryCost[downs++] = downCost[arc];
+            }
+        }
+    }
+
+    /**
+     * Returns true if a path is as fast as an arc, allowing for rounding.
+     * @param path the cost of the path
+     * @param arc the cost of the arc
+     * @return whether the arc can be left out in favour of the path
+     */
+
+    private static boolean reaches(double path, double arc) {
+
+        return path <= arc * (1 + TOLERANCE);
+    }
+
+    /**
+     * Searches upwards from the origin and the destination and finds the
+     * rank at which the fastest path between them turns from going up to
+     * going down. Both searches walk up the tree together, lowest rank first,
+     * and stop relaxing arcs from ranks that cannot lead to a faster path
+     * than the fastest found where they have met.
+     * @param origin the rank of the origin
+     * @param destination the rank of the destination
+     * @return the rank at which the searches meet, NONE if the destination
+     * cannot be reached
+     */
+
+    private int search(int origin, int destination) {
+
+        for (int at = origin; at != NONE; at = parent[at]) {
+            forwardTime[at] = Double.POSITIVE_INFINITY;
+        }
+        for (int at = destination; at != NONE; at = parent[at]) {
+            backwardTime[at] = Double.POSITIVE_INFINITY;
+        }
+        forwardTime[origin] = 0;
+        backwardTime[destination] = 0;
+        double best = Double.POSITIVE_INFINITY;
+        int meeting = NONE;
+        int up = origin;
+        int down = destination;
+        while (up != NONE || down != NONE) {
+            boolean forward = down == NONE || (up != NONE && up <= down);
+            boolean backward = up == NONE || (down != NONE && down <= up);
+            if (forward && backward
+                    && forwardTime[up] + backwardTime[up] < best) {
+                best = forwardTime[up] + backwardTime[up];
+                meeting = up;
+            }
+            if (forward) {
+                relaxUp(up, best);
+                up = parent[up];
+            }
+            if (backward) {
+                relaxDown(down, best);
+                down = parent[down];
+            }
+        }
+        return meeting;
+    }
+
+    /**
+     * Relaxes the query arcs up from a rank reached from the origin, unless
+     * it is reached too late to lead to a faster path.
+     * @param at the rank
+     * @param best the time of the fastest path found so far
+     */
+
+    private void relaxUp(int at, double best) {
+
+        double time = forwardTime[at];
+        if (time >= best) {
+            return;
+        }
+        for (int arc = upStart[at]; arc < upStart[at + 1]; arc++) {
+            int head = upHead[arc];
+            if (time + upQueryCost[arc] < forwardTime[head]) {
+                forwardTime[head] = time + upQueryCost[arc];
+                forwardPrevious[head] = at;
+            }
+        }
+    }
+
+    /**
+     * Relaxes the query arcs down to a rank from which the destination is
+     * reached, unless it is reached too late to lead to a faster path.
+     * @param at the rank
+     * @param best the time of the fastest path found so far
+     */
+
+    private void relaxDown(int at, double best) {
+
+        double time = backwardTime[at];
+        if (time >= best) {
+            return;
+        }
+        for (int arc = downStart[at]; arc < downStart[at + 1]; arc++) {
+            int head = downHead[arc];
+            if (time + downQueryCost[arc] < backwardTime[head]) {
+                backwardTime[head] = time + downQueryCost[arc];
+                backwardNext[head] = at;
+            }
+        }
+    }
+
+    /**
+     * Appends the routes of the fastest path from one end of an arc to the
+     * other, expanding shortcuts into the arcs they stand for.
+     * @param from the rank the path starts at
+     * @param to the rank the path ends at, joined to from by an arc
+     * @param routes the list to append the routes to
+     */
+
+    private void unpack(int from, int to, List<Route> routes) {
+
+        int[] stack = new int[64];
+        int size = 0;
+        stack[size++] = from;
+        stack[size++] = to;
+        while (size > 0) {
+            int end = stack[--size];
+            int start = stack[--size];
+            boolean up = start < end;
+            int arc = up ? findArc(start, end) : findArc(end, start);
+            int middle = up ? upMiddle[arc] : downMiddle[arc];
+            if (middle == NONE) {
+                routes.add(graph.getRoute(up ? upEdge[arc] : downEdge[arc]));
+                continue;
+            }
+            if (size + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            }
+            // the second half is pushed first so the first is expanded first
+            stack[size++] = middle;
+            stack[size++] = end;
+            stack[size++] = start;
+            stack[size++] = middle;
+        }
+    }
+
+    /**
+     * Finds the arc between two ranks.
+     * @param low the lower rank
+     * @param high the higher rank
+     * @return the arc, NONE if there is none
+     */
+
+    private int findArc(int low, int high) {
+
+        int index = Arrays.binarySearch(arcHead, arcStart[low],
+                arcStart[low + 1], high);
+        return index < 0 ? NONE : index;
+    }
+}
@@ -0,0 +1,193 @@
+package tms.routing;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of the ints zero up to a fixed capacity, each with a
+ * double key, that supports lowering the key of an int already in the heap.
+ * <p>
+ * The heap is stored in primitive arrays, with the position of each int in
+ * the heap recorded so that its key can be lowered in logarithmic time
+ * without searching or boxing.
+ */
+
+public class IndexedMinHeap {
+
+    /** Position of an int that is not in the heap */
+    private static final int ABSENT = -1;
+
+    /** The ints in the heap, in heap order */
+    private final int[] heap;
+    /** Key of each int in the heap, by heap position */
+    private final double[] keys;
+    /** Heap position of each int, ABSENT if it is not in the heap */
+    private final int[] positions;
+    /** Number of ints in the heap */
+    private int size;
+
+    /**
+     * Creates a new empty heap that can hold the ints from zero up to one
+     * less than the given capacity.
+     * @param capacity one more than the largest int the heap can hold
+     */
+
+    public IndexedMinHeap(int capacity) {
+
+        heap = new int[capacity];
+        keys = new double[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, ABSENT);
+    }
+
+    /**
+     * Returns true if the heap holds no ints.
+     * @return whether the heap is empty
+     */
+
+    public boolean isEmpty() {
+
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of ints in the heap.
+     * @return the size of the heap
+     */
+
+    public int size() {
+
+        return size;
+    }
+
+    /**
+     * Returns true if the given int is in the heap.
+     * @param item an int less than the capacity
+     * @return whether the int is in the heap
+     */
+
+    public boolean contains(int item) {
+
+        return positions[item] != ABSENT;
+    }
+
+    /**
+     * Returns the smallest key in the heap.
+     * @return the smallest key, infinite if the heap is empty
+     */
+
+    public double peekKey() {
+
+        return size == 0 ? Double.POSITIVE_INFINITY : keys[0];
+    }
+
+    /**
+     * Adds the given int with the given key, or lowers its key if it is
+     * already in the heap with a larger key.
+     * @param item an int less than the capacity
+     * @param key the key of the int
+     */
+
+    public void offer(int item, double key) {
+
+        int position = positions[item];
+        if (position == ABSENT) {
+            position = size++;
+        } else if (key >= keys[position]) {
+            return;
+        }
+        siftUp(position, item, key);
+    }
+
+    /**
+     * Removes and returns the int with the smallest key.
+     * @return the int with the smallest key
+     * @throws IllegalStateException if the heap is empty
+     */
+
+    public int poll() {
+
+        if (size == 0) {
+            throw new IllegalStateException();
+        }
+        int top = heap[0];
+        positions[top] = ABSENT;
+        size--;
+        if (size > 0) {
+            siftDown(heap[size], keys[size]);
+        }
+        return top;
+    }
+
+    /**
+     * Removes every int from the heap, in time proportional to the number of
+     * ints in it.
+     */
+
+    public void clear() {
+
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = ABSENT;
+        }
+        size = 0;
+    }
+
+    /**
+     * Moves an int with the given key up from the given position until its
+     * parent's key is no larger.
+     * @param position the position to start from
+     * @param item the int
+     * @param key the key of the int
+     */
+
+    private void siftUp(int position, int item, double key) {
+
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            place(position, heap[parent], keys[parent]);
+            position = parent;
+        }
+        place(position, item, key);
+    }
+
+    /**
+     * Places an int with the given key at the root and moves it down until
+     * neither child's key is smaller.
+     * @param item the int
+     * @param key the key of the int
+     */
+
+    private void siftDown(int item, double key) {
+
+        int position = 0;
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            place(position, heap[child], keys[child]);
+            position = child;
+        }
+        place(position, item, key);
+    }
+
+    /**
+     * Stores an int and its key at the given heap position.
+     * @param position the heap position
+     * @param item the int
+     * @param key the key of the int
+     */
+
+    private void place(int position, int item, double key) {
+
+        heap[position] = item;
+        keys[position] = key;
+        positions[item] = position;
+    }
+}
@@ -0,0 +1,92 @@
+package tms.routing;
+
+import tms.intersection.Intersection;
+import tms.route.Route;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A path through a network: the routes taken from an origin intersection to a
+ * destination intersection, and the time taken to travel them.
+ */
+
+public class Path {
+
+    /** The intersections along the path, from origin to destination */
+    private final List<Intersection> intersections;
+    /** The routes along the path, in order */
+    private final List<Route> routes;
+    /** The time in seconds to travel the path */
+    private final double travelTime;
+
+    /**
+     * Creates a new path along the given routes.
+     * @param origin the intersection the path starts at
+     * @param routes the routes along the path, in order
+     * @param travelTime the time in seconds to travel the path
+     */
+
+    public Path(Intersection origin, List<Route> routes, double travelTime) {
+
+        List<Intersection> along = new ArrayList<>(routes.size() + 1);
+        along.add(origin);
+        for (Route route : routes) {
+            along.add(route.getTo());
+        }
+        this.intersections = Collections.unmodifiableList(along);
+        this.routes = Collections.unmodifiableList(new ArrayList<>(routes));
+        this.travelTime = travelTime;
+    }
+
+    /**
+     * Returns the intersections along this path, from origin to destination.
+     * @return an unmodifiable list of the intersections
+     */
+
+    public List<Intersection> getIntersections() {
+
+        return intersections;
+    }
+
+    /**
+     * Returns the routes along this path, in order.
+     * @return an unmodifiable list of the routes
+     */
+
+    public List<Route> getRoutes() {
+
+        return routes;
+    }
+
+    /**
+     * Returns the time taken to travel this path, from the edge costs of the
+     * routing graph it was found in.
+     * @return the travel time in seconds
+     */
+
+    public double getTravelTime() {
+
+        return travelTime;
+    }
+
+    /**
+     * Returns the string representation of this path.
+     * @return the IDs of the intersections along the path, separated by
+     * commas
+     */
+
+    @Override
+    public String toString() {
+
+        StringBuilder builder = new StringBuilder();
+        for (Intersection intersection : intersections) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(intersection.getId());
+        }
+        return builder.toString();
+    }
+}
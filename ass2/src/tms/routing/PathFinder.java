@@ -0,0 +1,311 @@
+package tms.routing;
+
+import tms.intersection.Intersection;
+import tms.route.Route;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the fastest paths between intersections of a {@link RoutingGraph}.
+ * <p>
+ * Three searches are offered: plain Dijkstra, bidirectional Dijkstra, which
+ * searches forwards from the origin and backwards from the destination until
+ * the two meet, and A*, which is guided towards the destination by
+ * straight-line distance when every intersection has a position. All three
+ * find paths of the same travel time.
+ * <p>
+ * The search state is kept in arrays sized by node and reused between
+ * queries; instead of clearing them, each entry is stamped with the query
+ * that last wrote it, so a query only touches the nodes it reaches. A path
+ * finder is therefore not safe to use from several threads at once.
+ */
+
+public class PathFinder {
+
+    /** The graph paths are found in */
+    private final RoutingGraph graph;
+    /** Nodes waiting to be settled by the forward search */
+    private final IndexedMinHeap forwardQueue;
+    /** Nodes waiting to be settled by the backward search */
+    private final IndexedMinHeap backwardQueue;
+    /** Time from the origin to each node reached forwards */
+    private final double[] forwardTime;
+    /** Time from each node reached backwards to the destination */
+    private final double[] backwardTime;
+    /** Edge by which each node was reached forwards */
+    private final int[] forwardEdge;
+    /** Edge by which each node was reached backwards */
+    private final int[] backwardEdge;
+    /** Query that last reached each node forwards */
+    private final int[] forwardStamp;
+    /** Query that last reached each node backwards */
+    private final int[] backwardStamp;
+    /** Number of the current query */
+    private int query;
+    /** Node the forward search is guided towards, -1 if it is not guided */
+    private int target;
+
+    /**
+     * Creates a path finder for the given graph.
+     * @param graph the graph to find paths in
+     */
+
+    public PathFinder(RoutingGraph graph) {
+
+        this.graph = graph;
+        int nodes = graph.getNodeCount();
+        forwardQueue = new IndexedMinHeap(nodes);
+        backwardQueue = new IndexedMinHeap(nodes);
+        forwardTime = new double[nodes];
+        backwardTime = new double[nodes];
+        forwardEdge = new int[nodes];
+        backwardEdge = new int[nodes];
+        forwardStamp = new int[nodes];
+        backwardStamp = new int[nodes];
+    }
+
+    /**
+     * Returns the graph paths are found in.
+     * @return the routing graph
+     */
+
+    public RoutingGraph getGraph() {
+
+        return graph;
+    }
+
+    /**
+     * Finds the fastest path between two intersections, with A* if every
+     * intersection has a position and bidirectional Dijkstra otherwise.
+     * @param from the intersection to start at
+     * @param to the intersection to finish at
+     * @return the fastest path, or null if the destination cannot be reached
+     * @throws IllegalArgumentException if either intersection is not in the
+     * graph
+     */
+
+    public Path findPath(Intersection from, Intersection to) {
+
+        if (graph.isPositioned()) {
+            return findPathAStar(from, to);
+        }
+        return findPathBidirectional(from, to);
+    }
+
+    /**
+     * Finds the fastest path between two intersections with Dijkstra's
+     * algorithm, settling nodes in order of time from the origin.
+     * @param from the intersection to start at
+     * @param to the intersection to finish at
+     * @return the fastest path, or null if the destination cannot be reached
+     * @throws IllegalArgumentException if either intersection is not in the
+     * graph
+     */
+
+    public Path findPathDijkstra(Intersection from, Intersection to) {
+
+        return forwardSearch(graph.getNode(from), graph.getNode(to), false);
+    }
+
+    /**
+     * Finds the fastest path between two intersections with A*, settling
+     * nodes in order of time from the origin plus a lower bound on the time
+     * to the destination. If not every intersection has a position, no bound
+     * is used and this is the same as Dijkstra's algorithm.
+     * @param from the intersection to start at
+     * @param to the intersection to finish at
+     * @return the fastest path, or null if the destination cannot be reached
+     * @throws IllegalArgumentException if either intersection is not in the
+     * graph
+     */
+
+    public Path findPathAStar(Intersection from, Intersection to) {
+
+        return forwardSearch(graph.getNode(from), graph.getNode(to),
+                graph.isPositioned());
+    }
+
+    /**
+     * Finds the fastest path between two intersections with bidirectional
+     * Dijkstra, alternately settling the nearest node of a forward search
+     * from the origin and of a backward search from the destination, until
+     * no path through a node yet to be settled can be faster than the best
+     * path found where the searches meet.
+     * @param from the intersection to start at
+     * @param to the intersection to finish at
+     * @return the fastest path, or null if the destination cannot be reached
+     * @throws IllegalArgumentException if either intersection is not in the
+     * graph
+     */
+
+    public Path findPathBidirectional(Intersection from, Intersection to) {
+
+        int origin = graph.getNode(from);
+        int destination = graph.getNode(to);
+        startQuery();
+        reachForwards(origin, 0, -1);
+        reachBackwards(destination, 0, -1);
+        double best = origin == destination ? 0 : Double.POSITIVE_INFINITY;
+        int meeting = origin == destination ? origin : -1;
+        int[] outEdges = graph.getOutEdges();
+        int[] inEdges = graph.getInEdges();
+
+        while (forwardQueue.peekKey() + backwardQueue.peekKey() < best) {
+            if (forwardQueue.peekKey() <= backwardQueue.peekKey()) {
+                int node = forwardQueue.poll();
+                double time = forwardTime[node];
+                for (int i = graph.getOutStart(node);
+                     i < graph.getOutStart(node + 1); i++) {
+                    int edge = outEdges[i];
+                    int next = graph.getTo(edge);
+                    double arrival = time + graph.getCost(edge);
+                    if (reachForwards(next, arrival, edge)
+                            && backwardStamp[next] == query
+                            && arrival + backwardTime[next] < best) {
+                        best = arrival + backwardTime[next];
+                        meeting = next;
+                    }
+                }
+            } else {
+                int node = backwardQueue.poll();
+                double time = backwardTime[node];
+                for (int i = graph.getInStart(node);
+                     i < graph.getInStart(node + 1); i++) {
+                    int edge = inEdges[i];
+                    int previous = graph.getFrom(edge);
+                    double departure = time + graph.getCost(edge);
+                    if (reachBackwards(previous, departure, edge)
+                            && forwardStamp[previous] == query
+                            && departure + forwardTime[previous] < best) {
+                        best = departure + forwardTime[previous];
+                        meeting = previous;
+                    }
+                }
+            }
+        }
+        if (meeting < 0) {
+            return null;
+        }
+
+        List<Route> routes = forwardRoutes(meeting);
+        for (int node = meeting; node != destination; ) {
+            int edge = backwardEdge[node];
+            routes.add(graph.getRoute(edge));
+            node = graph.getTo(edge);
+        }
+        return new Path(from, routes, best);
+    }
+
+    /**
+     * Searches forwards from the origin until the destination is settled.
+     * @param origin the node to start at
+     * @param destination the node to finish at
+     * @param guided whether to order nodes by a lower bound on the total time
+     * @return the fastest path, or null if the destination cannot be reached
+     */
+
+    private Path forwardSearch(int origin, int destination, boolean guided) {
+
+        startQuery();
+        target = guided ? destination : -1;
+        reachForwards(origin, 0, -1);
+        int[] outEdges = graph.getOutEdges();
+        while (!forwardQueue.isEmpty()) {
+            int node = forwardQueue.poll();
+            if (node == destination) {
+                return new Path(graph.getIntersection(origin),
+                        forwardRoutes(destination), forwardTime[destination]);
+            }
+            double time = forwardTime[node];
+            for (int i = graph.getOutStart(node);
+                 i < graph.getOutStart(node + 1); i++) {
+                int edge = outEdges[i];
+                int next = graph.getTo(edge);
+                double arrival = time + graph.getCost(edge);
+                reachForwards(next, arrival, edge);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Begins a new query, invalidating the search state of the last one.
+     */
+
+    private void startQuery() {
+
+        forwardQueue.clear();
+        backwardQueue.clear();
+        target = -1;
+        query++;
+    }
+
+    /**
+     * Records that a node can be reached from the origin in the given time,
+     * if that is faster than any time found so far in this query, and queues
+     * it to be settled by that time, plus a lower bound on the time to the
+     * target if the search is guided.
+     * @param node the node reached
+     * @param time the time from the origin
+     * @param edge the edge by which the node is reached, -1 for the origin
+     * @return true if the time was recorded
+     */
+
+    private boolean reachForwards(int node, double time, int edge) {
+
+        if (time == Double.POSITIVE_INFINITY || (forwardStamp[node] == query
+                && forwardTime[node] <= time)) {
+            return false;
+        }
+        forwardStamp[node] = query;
+        forwardTime[node] = time;
+        forwardEdge[node] = edge;
+        forwardQueue.offer(node, target < 0 ? time
+                : time + graph.lowerBound(node, target));
+        return true;
+    }
+
+    /**
+     * Records that the destination can be reached from a node in the given
+     * time, if that is faster than any time found so far in this query, and
+     * queues it to be settled by that time.
+     * @param node the node reached
+     * @param time the time to the destination
+     * @param edge the edge leaving the node towards the destination, -1 for
+     *             the destination
+     * @return true if the time was recorded
+     */
+
+    private boolean reachBackwards(int node, double time, int edge) {
+
+        if (time == Double.POSITIVE_INFINITY || (backwardStamp[node] == query
+                && backwardTime[node] <= time)) {
+            return false;
+        }
+        backwardStamp[node] = query;
+        backwardTime[node] = time;
+        backwardEdge[node] = edge;
+        backwardQueue.offer(node, time);
+        return true;
+    }
+
+    /**
+     * Returns the routes by which the forward search reached the given node,
+     * from the origin.
+     * @param node a node reached forwards in this query
+     * @return a modifiable list of the routes, in order
+     */
+
+    private List<Route> forwardRoutes(int node) {
+
+        List<Route> routes = new ArrayList<>();
+        while (forwardEdge[node] >= 0) {
+            routes.add(graph.getRoute(forwardEdge[node]));
+            node = graph.getFrom(forwardEdge[node]);
+        }
+        Collections.reverse(routes);
+        return routes;
+    }
+}
@@ -0,0 +1,366 @@
+package tms.routing;
+
+import tms.intersection.Intersection;
+import tms.network.Network;
+import tms.route.Route;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact copy of the structure of a network for finding paths.
+ * <p>
+ * Intersections are numbered as nodes and routes as edges. The edges leaving
+ * and entering each node are stored in compressed sparse row form: the
+ * edges of node {@code v} are entries {@code start[v]} to
+ * {@code start[v + 1] - 1} of flat arrays, so walking the edges of a node
+ * touches only a few consecutive ints.
+ * <p>
+ * The cost of each edge is the time in seconds to travel its route at the
+ * speed limit, increased by up to {@link #CONGESTION_FACTOR} times when the
+ * route is fully congested. Costs are read from the routes when the graph is
+ * built and whenever {@link #refreshCosts()} is called. The structure of the
+ * network is read when the graph is built; later changes to it are not seen.
+ */
+
+public class RoutingGraph {
+
+    /** Extra travel time on a fully congested route, as a multiple of the
+     * travel time on an empty route */
+    public static final double CONGESTION_FACTOR = 3;
+
+    /** The intersections of the network, indexed by node */
+    private final Intersection[] nodes;
+    /** Node of each intersection, by identity */
+    private final Map<Intersection, Integer> nodeIndex;
+    /** The routes of the network, indexed by edge */
+    private final Route[] routes;
+    /** Edge of each route, by identity */
+    private final Map<Route, Integer> edgeIndex;
+    /** Node each edge begins at */
+    private final int[] edgeFrom;
+    /** Node each edge ends at */
+    private final int[] edgeTo;
+    /** First entry of each node's outgoing edges, followed by the edge count */
+    private final int[] outStart;
+    /** Edges leaving each node, grouped by node */
+    private final int[] outEdges;
+    /** First entry of each node's incoming edges, followed by the edge count */
+    private final int[] inStart;
+    /** Edges entering each node, grouped by node */
+    private final int[] inEdges;
+    /** Current cost of each edge in seconds */
+    private final double[] cost;
+    /** Position of each node, NaN if the intersection has none */
+    private final double[] x;
+    /** Position of each node, NaN if the intersection has none */
+    private final double[] y;
+    /** Whether every node has a position */
+    private final boolean positioned;
+    /** Fastest speed in metres per second of any edge at the last refresh */
+    private double maxSpeed;
+
+    /**
+     * Builds a routing graph of the given network.
+     * @param network the network to find paths through
+     */
+
+    public RoutingGraph(Network network) {
+
+        List<Intersection> intersections = network.getIntersections();
+        nodes = intersections.toArray(new Intersection[0]);
+        nodeIndex = new IdentityHashMap<>();
+        for (Intersection intersection : nodes) {
+            nodeIndex.put(intersection, nodeIndex.size());
+        }
+
+        int edgeCount = 0;
+        inStart = new int[nodes.length + 1];
+        for (int v = 0; v < nodes.length; v++) {
+            for (Route route : nodes[v].getConnections()) {
+                if (nodeIndex.containsKey(route.getFrom())) {
+                    edgeCount++;
+                }
+            }
+            inStart[v + 1] = edgeCount;
+        }
+        routes = new Route[edgeCount];
+        edgeIndex = new IdentityHashMap<>();
+        edgeFrom = new int[edgeCount];
+        edgeTo = new int[edgeCount];
+        inEdges = new int[edgeCount];
+        outStart = new int[nodes.length + 1];
+        int edge = 0;
+        for (int v = 0; v < nodes.length; v++) {
+            for (Route route : nodes[v].getConnections()) {
+                Integer from = nodeIndex.get(route.getFrom());
+                if (from == null) {
+                    continue;
+                }
+                routes[edge] = route;
+                edgeIndex.put(route, edge);
+                edgeFrom[edge] = from;
+                edgeTo[edge] = v;
+                inEdges[edge] = edge;
+                outStart[from + 1]++;
+                edge++;
+            }
+        }
+        for (int v = 0; v < nodes.length; v++) {
+            outStart[v + 1] += outStart[v];
+        }
+        outEdges = new int[edgeCount];
+        int[] filled = new int[nodes.length];
+        for (int e = 0; e < edgeCount; e++) {
+            int from = edgeFrom[e];
+            outEdges[outStart[from] + filled[from]++] = e;
+        }
+
+        x = new double[nodes.length];
+        y = new double[nodes.length];
+        boolean allPositioned = true;
+        for (int v = 0; v < nodes.length; v++) {
+            x[v] = nodes[v].getX();
+            y[v] = nodes[v].getY();
+            allPositioned &= nodes[v].hasPosition();
+        }
+        positioned = allPositioned;
+        cost = new double[edgeCount];
+        refreshCosts();
+    }
+
+    /**
+     * Reads the current speed limit and congestion of every route and
+     * updates the cost of its edge.
+     */
+
+    public void refreshCosts() {
+
+        double fastest = 0;
+        for (int e = 0; e < routes.length; e++) {
+            fastest = Math.max(fastest, readCost(e));
+        }
+        maxSpeed = fastest;
+    }
+
+    /**
+     * Reads the current speed limit and congestion of the route of the given
+     * edge and updates its cost. The fastest speed used for lower bounds is
+     * only ever raised, so that they remain lower bounds.
+     * @param edge an edge number
+     */
+
+    public void refreshCost(int edge) {
+
+        maxSpeed = Math.max(maxSpeed, readCost(edge));
+    }
+
+    /**
+     * Updates the cost of an edge from its route.
+     * @param edge an edge number
+     * @return the speed of the route in metres per second, zero if its speed
+     * limit is zero
+     */
+
+    private double readCost(int edge) {
+
+        Route route = routes[edge];
+        double freeFlow = route.getTravelTime();
+        cost[edge] = freeFlow * (1 + CONGESTION_FACTOR
+                * route.getCongestion() / 100.0);
+        return freeFlow > 0 ? route.getLength() / freeFlow : 0;
+    }
+
+    /**
+     * Returns the number of nodes in this graph.
+     * @return the number of intersections
+     */
+
+    public int getNodeCount() {
+
+        return nodes.length;
+    }
+
+    /**
+     * Returns the number of edges in this graph.
+     * @return the number of routes
+     */
+
+    public int getEdgeCount() {
+
+        return routes.length;
+    }
+
+    /**
+     * Returns the node of the given intersection.
+     * @param intersection an intersection of the network
+     * @return the node number
+     * @throws IllegalArgumentException if the intersection is not in the graph
+     */
+
+    public int getNode(Intersection intersection) {
+
+        Integer node = nodeIndex.get(intersection);
+        if (node == null) {
+            throw new IllegalArgumentException();
+        }
+        return node;
+    }
+
+    /**
+     * Returns the intersection of the given node.
+     * @param node a node number
+     * @return the intersection
+     */
+
+    public Intersection getIntersection(int node) {
+
+        return nodes[node];
+    }
+
+    /**
+     * Returns true if the given route is an edge of this graph.
+     * @param route a route
+     * @return whether the route was in the network when the graph was built
+     */
+
+    public boolean contains(Route route) {
+
+        return edgeIndex.containsKey(route);
+    }
+
+    /**
+     * Returns the edge of the given route.
+     * @param route a route of the network
+     * @return the edge number
+     * @throws IllegalArgumentException if the route is not in the graph
+     */
+
+    public int getEdge(Route route) {
+
+        Integer edge = edgeIndex.get(route);
+        if (edge == null) {
+            throw new IllegalArgumentException();
+        }
+        return edge;
+    }
+
+    /**
+     * Returns the route of the given edge.
+     * @param edge an edge number
+     * @return the route
+     */
+
+    public Route getRoute(int edge) {
+
+        return routes[edge];
+    }
+
+    /**
+     * Returns the node the given edge begins at.
+     * @param edge an edge number
+     * @return the origin node
+     */
+
+    public int getFrom(int edge) {
+
+        return edgeFrom[edge];
+    }
+
+    /**
+     * Returns the node the given edge ends at.
+     * @param edge an edge number
+     * @return the destination node
+     */
+
+    public int getTo(int edge) {
+
+        return edgeTo[edge];
+    }
+
+    /**
+     * Returns the cost of the given edge at the last refresh.
+     * @param edge an edge number
+     * @return the travel time of the edge in seconds, infinite if its speed
+     * limit is zero
+     */
+
+    public double getCost(int edge) {
+
+        return cost[edge];
+    }
+
+    /**
+     * Returns the index in {@link #getOutEdges()} of the first edge leaving
+     * the given node. The node's edges end where the next node's begin.
+     * @param node a node number, or the node count for the end of the array
+     * @return the start of the node's outgoing edges
+     */
+
+    public int getOutStart(int node) {
+
+        return outStart[node];
+    }
+
+    /**
+     * Returns the edges leaving every node, grouped by node in node order.
+     * The array is shared and must not be modified.
+     * @return the outgoing edges
+     */
+
+    public int[] getOutEdges() {
+
+        return outEdges;
+    }
+
+    /**
+     * Returns the index in {@link #getInEdges()} of the first edge entering
+     * the given node. The node's edges end where the next node's begin.
+     * @param node a node number, or the node count for the end of the array
+     * @return the start of the node's incoming edges
+     */
+
+    public int getInStart(int node) {
+
+        return inStart[node];
+    }
+
+    /**
+     * Returns the edges entering every node, grouped by node in node order.
+     * The array is shared and must not be modified.
+     * @return the incoming edges
+     */
+
+    public int[] getInEdges() {
+
+        return inEdges;
+    }
+
+    /**
+     * Returns true if every intersection of the network has a position, so
+     * that straight-line distances can guide searches.
+     * @return whether every node has a position
+     */
+
+    public boolean isPositioned() {
+
+        return positioned;
+    }
+
+    /**
+     * Returns a lower bound on the time in seconds to travel between two
+     * nodes: their straight-line distance at the fastest speed of any edge.
+     * @param from a node number
+     * @param to a node number
+     * @return the lower bound, zero if either node has no position
+     */
+
+    public double lowerBound(int from, int to) {
+
+        if (maxSpeed == 0 || Double.isNaN(x[from]) || Double.isNaN(x[to])) {
+            return 0;
+        }
+        return Math.hypot(x[to] - x[from], y[to] - y[from]) / maxSpeed;
+    }
+}
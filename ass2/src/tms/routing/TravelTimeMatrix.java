@@ -0,0 +1,381 @@
+package tms.routing;
+
+import tms.intersection.Intersection;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Computes the fastest travel times from a list of origin intersections to a
+ * list of destination intersections of a {@link RoutingGraph}.
+ * <p>
+ * The times form a matrix with a row for each origin and a column for each
+ * destination, stored row by row in a flat array of floats, infinite where a
+ * destination cannot be reached. Each row is found by a single Dijkstra
+ * search from its origin, which stops once every destination is settled. The
+ * rows are computed in parallel on a {@link ForkJoinPool}, one origin per
+ * task, with the search state of each thread reused between its rows.
+ * <p>
+ * Matrices too large to hold in memory can be written straight into a
+ * memory-mapped file of little-endian floats in the same order.
+ */
+
+public class TravelTimeMatrix {
+
+    /** Largest number of bytes of a file mapped at once */
+    private static final long MAX_MAPPING = 1L << 30;
+
+    /** The graph travel times are found in */
+    private final RoutingGraph graph;
+    /** Node of each origin */
+    private final int[] origins;
+    /** Number of destinations */
+    private final int destinations;
+    /** Column of each node in the matrix, -1 if it is not a destination */
+    private final int[] column;
+    /** Search state of each thread computing rows */
+    private final ThreadLocal<Search> searches;
+    /** Maximum number of threads used to compute rows */
+    private int parallelism;
+    /** Pool that computes rows, created when first needed */
+    private ForkJoinPool pool;
+
+    /**
+     * Creates a travel time matrix between every pair of intersections of a
+     * graph.
+     * @param graph the graph to find travel times in
+     */
+
+    public TravelTimeMatrix(RoutingGraph graph) {
+
+        this(graph, allIntersections(graph), allIntersections(graph));
+    }
+
+    /**
+     * Creates a travel time matrix from each of the given origins to each of
+     * the given destinations.
+     * @param graph the graph to find travel times in
+     * @param origins the intersections of the rows, in order
+     * @param destinations the intersections of the columns, in order
+     * @throws IllegalArgumentException if an intersection is not in the graph
+     * or a destination is given more than once
+     */
+
+    public TravelTimeMatrix(RoutingGraph graph, List<Intersection> origins,
+                            List<Intersection> destinations) {
+
+        this.graph = graph;
+        this.origins = new int[origins.size()];
+        for (int i = 0; i < this.origins.length; i++) {
+            this.origins[i] = graph.getNode(origins.get(i));
+        }
+        this.destinations = destinations.size();
+        column = new int[graph.getNodeCount()];
+        Arrays.fill(column, -1);
+        for (int i = 0; i < this.destinations; i++) {
+            int node = graph.getNode(destinations.get(i));
+            if (column[node] >= 0) {
+                throw new IllegalArgumentException();
+            }
+            column[node] = i;
+        }
+        searches = ThreadLocal.withInitial(() -> new Search(
+                graph.getNodeCount(), this.destinations));
+        parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Returns the number of rows of the matrix.
+     * @return the number of origins
+     */
+
+    public int getOriginCount() {
+
+        return origins.length;
+    }
+
+    /**
+     * Returns the number of columns of the matrix.
+     * @return the number of destinations
+     */
+
+    public int getDestinationCount() {
+
+        return destinations;
+    }
+
+    /**
+     * Returns the maximum number of threads used to compute rows.
+     * @return the parallelism
+     */
+
+    public int getParallelism() {
+
+        return parallelism;
+    }
+
+    /**
+     * Sets the maximum number of threads used to compute rows. A value of one
+     * computes every row on the calling thread.
+     * @param parallelism the number of threads to compute rows on
+     * @throws IllegalArgumentException if parallelism is less than one
+     */
+
+    public void setParallelism(int parallelism) {
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException();
+        }
+        if (pool != null && parallelism != this.parallelism) {
+            pool.shutdown();
+            pool = null;
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Computes the matrix into a new array.
+     * @return the travel times in seconds, row by row
+     * @throws IllegalStateException if the matrix has too many entries to fit
+     * in an array
+     */
+
+    public float[] compute() {
+
+        long size = (long) origins.length * destinations;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException();
+        }
+        float[] matrix = new float[(int) size];
+        compute(matrix);
+        return matrix;
+    }
+
+    /**
+     * Computes the matrix into the given array.
+     * @param matrix the array to fill with travel times in seconds, row by row
+     * @throws IllegalArgumentException if the array is not the size of the
+     * matrix
+     */
+
+    public void compute(float[] matrix) {
+
+        if (matrix.length != (long) origins.length * destinations) {
+            throw new IllegalArgumentException();
+        }
+        computeRows((row, origin) -> System.arraycopy(row, 0, matrix,
+                origin * destinations, destinations));
+    }
+
+    /**
+     * Computes the matrix into the given file, which is replaced if it
+     * already exists. The file holds the travel times in seconds as
+     * little-endian floats, row by row, and nothing else.
+     * @param filename name of the file to write
+     * @throws IOException if the file cannot be written
+     */
+
+    public void compute(String filename) throws IOException {
+
+        long rowBytes = 4L * destinations;
+        int rowsPerMapping = (int) Math.max(1, Math.min(origins.length,
+                MAX_MAPPING / Math.max(1, rowBytes)));
+        int mappings = (origins.length + rowsPerMapping - 1) / rowsPerMapping;
+        MappedByteBuffer[] buffers = new MappedByteBuffer[mappings];
+        FloatBuffer[] floats = new FloatBuffer[mappings];
+        try (FileChannel channel = FileChannel.open(
+                java.nio.file.Path.of(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < mappings; i++) {
+                int rows = Math.min(rowsPerMapping,
+                        origins.length - i * rowsPerMapping);
+                buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                        i * rowsPerMapping * rowBytes, rows * rowBytes);
+                buffers[i].order(ByteOrder.LITTLE_ENDIAN);
+                floats[i] = buffers[i].asFloatBuffer();
+            }
+            computeRows((row, origin) -> floats[origin / rowsPerMapping].put(
+                    origin % rowsPerMapping * destinations, row));
+            for (MappedByteBuffer buffer : buffers) {
+                buffer.force();
+            }
+        }
+    }
+
+    /**
+     * Computes every row and passes each to the given sink, in parallel if
+     * allowed and there is more than one row.
+     * @param sink receives each row, which it must copy before returning, and
+     *             the number of its origin
+     */
+
+    private void computeRows(ObjIntConsumer<float[]> sink) {
+
+        if (parallelism == 1 || origins.length < 2) {
+            for (int i = 0; i < origins.length; i++) {
+                computeRow(i, sink);
+            }
+            return;
+        }
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        pool.invoke(new Rows(this, sink, 0, origins.length));
+    }
+
+    /**
+     * Finds the travel time from one origin to every destination with
+     * Dijkstra's algorithm and passes the row to the given sink.
+     * @param origin the number of the origin
+     * @param sink receives the row and the number of its origin
+     */
+
+    private void computeRow(int origin, ObjIntConsumer<float[]> sink) {
+
+        Search search = searches.get();
+        float[] row = search.row;
+        Arrays.fill(row, Float.POSITIVE_INFINITY);
+        search.start();
+        search.reach(origins[origin], 0);
+        int[] outEdges = graph.getOutEdges();
+        int remaining = destinations;
+        while (remaining > 0 && !search.queue.isEmpty()) {
+            int node = search.queue.poll();
+            double time = search.time[node];
+            if (column[node] >= 0) {
+                row[column[node]] = (float) time;
+                remaining--;
+            }
+            for (int i = graph.getOutStart(node);
+                 i < graph.getOutStart(node + 1); i++) {
+                int edge = outEdges[i];
+                search.reach(graph.getTo(edge), time + graph.getCost(edge));
+            }
+        }
+        sink.accept(row, origin);
+    }
+
+    /**
+     * Returns every intersection of a graph in node order.
+     * @param graph the graph
+     * @return the intersections
+     */
+
+    private static List<Intersection> allIntersections(RoutingGraph graph) {
+
+        Intersection[] intersections = new Intersection[graph.getNodeCount()];
+        for (int v = 0; v < intersections.length; v++) {
+            intersections[v] = graph.getIntersection(v);
+        }
+        return Arrays.asList(intersections);
+    }
+
+    /**
+     * The state of a single-source search, reused between the rows computed
+     * by one thread.
+     */
+    private static class Search {
+        /** Nodes waiting to be settled */
+        private final IndexedMinHeap queue;
+        /** Time from the origin to each node reached */
+        private final double[] time;
+        /** Search that last reached each node */
+        private final int[] stamp;
+        /** The row being computed */
+        private final float[] row;
+        /** Number of the current search */
+        private int current;
+
+        /**
+         * Creates the search state for a graph.
+         * @param nodes the number of nodes in the graph
+         * @param destinations the number of columns of the matrix
+         */
+        private Search(int nodes, int destinations) {
+            queue = new IndexedMinHeap(nodes);
+            time = new double[nodes];
+            stamp = new int[nodes];
+            row = new float[destinations];
+        }
+
+        /**
+         * Begins a new search, invalidating the state of the last one.
+         */
+        private void start() {
+            queue.clear();
+            current++;
+        }
+
+        /**
+         * Records that a node can be reached in the given time, if that is
+         * faster than any time found so far in this search, and queues it.
+         * @param node the node reached
+         * @param arrival the time from the origin
+         */
+        private void reach(int node, double arrival) {
+            if (arrival == Double.POSITIVE_INFINITY
+                    || (stamp[node] == current && time[node] <= arrival)) {
+                return;
+            }
+            stamp[node] = current;
+            time[node] = arrival;
+            queue.offer(node, arrival);
+        }
+    }
+
+    /**
+     * A range of consecutive rows, split in half until each part is a single
+     * row.
+     */
+    private static class Rows extends RecursiveAction {
+        /** Version of the serialised form */
+        private static final long serialVersionUID = 1L;
+        /** The matrix the rows belong to */
+        private final TravelTimeMatrix matrix;
+        /** Receives each row computed */
+        private final ObjIntConsumer<float[]> sink;
+        /** The first row in this range */
+        private final int start;
+        /** The row after the last in this range */
+        private final int end;
+
+        /**
+         * Creates a range of rows.
+         * @param matrix the matrix the rows belong to
+         * @param sink receives each row computed
+         * @param start the first row in the range
+         * @param end the row after the last in the range
+         */
+        private Rows(TravelTimeMatrix matrix, ObjIntConsumer<float[]> sink,
+                     int start, int end) {
+            this.matrix = matrix;
+            this.sink = sink;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Computes the row of this range if it has one, otherwise splits it.
+         */
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                matrix.computeRow(start, sink);
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new Rows(matrix, sink, start, middle),
+                    new Rows(matrix, sink, middle, end));
+        }
+    }
+}
@@ -19,6 +19,27 @@ public class DemoPressurePad extends DemoSensor implements PressurePad {
         super(data, threshold);
     }
 
+    /**
+     * Creates a new sensor with the given threshold and shared data values.
+     *
+     * @see DemoSensor#DemoSensor(SensorData, int)
+     * @param data non-empty data values
+     * @param threshold a threshold value that indicates which values represent
+     *                  high congestion
+     */
+    public DemoPressurePad(SensorData data, int threshold) {
+        super(data, threshold);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @return "PP"
+     */
+    @Override
+    public String getTypeCode() {
+        return "PP";
+    }
+
     /**
      * {@inheritDoc}
      * @ass1
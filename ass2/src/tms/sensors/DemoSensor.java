@@ -13,14 +13,16 @@ import java.util.Objects;
  */
 public abstract class DemoSensor implements TimedItem {
 
-    /** Array of observed data values */
-    private int[] data;
+    /** Observed data values, possibly shared with other sensors */
+    private SensorData data;
     /** Threshold data value for determining congestion */
     private int threshold;
     /** Internal count of seconds passed for setting the current data value */
     private int secondsPassed;
     /** Current data value indicated by the sensor */
     private int currentValue;
+    /** Listeners run whenever the current data value changes */
+    private Runnable[] changeListeners = new Runnable[0];
 
     /**
      * Creates a new sensor, using the given list of data values and threshold.
@@ -38,6 +40,19 @@ public abstract class DemoSensor implements TimedItem {
      * @ass1
      */
     protected DemoSensor(int[] data, int threshold) {
+        this(SensorData.of(data), threshold);
+    }
+
+    /**
+     * Creates a new sensor that cycles through the given, possibly shared,
+     * data values.
+     *
+     * @see DemoSensor#DemoSensor(int[], int)
+     * @param data non-empty data values
+     * @param threshold a threshold value that indicated what value is high
+     *                  congestion
+     */
+    protected DemoSensor(SensorData data, int threshold) {
         this.addData(data);
         this.threshold = threshold;
         this.secondsPassed = 0;
@@ -46,14 +61,14 @@ public abstract class DemoSensor implements TimedItem {
     }
 
     /**
-     * Sets this sensor's data array to the given array.
+     * Sets this sensor's data to the given values.
      *
-     * @param data the array of sensor values to have the sensor use
+     * @param data the sensor values to have the sensor use
      * @ass1
      */
-    private void addData(int[] data) {
+    private void addData(SensorData data) {
         this.data = data;
-        this.currentValue = data[0];
+        this.currentValue = data.get(0);
     }
 
     /**
@@ -66,6 +81,82 @@ public abstract class DemoSensor implements TimedItem {
         return currentValue;
     }
 
+    /**
+     * Registers a listener to be run whenever this sensor's current data value
+     * changes, for example by a congestion calculator caching the sensor's
+     * congestion.
+     * <p>
+     * Listeners are run from {@link DemoSensor#oneSecond()}, which may be
+     * called on a timed item worker thread, so they should do no more than
+     * record that a change has occurred.
+     *
+     * @param listener the listener to run on change
+     */
+    public void addChangeListener(Runnable listener) {
+        Runnable[] listeners = Arrays.copyOf(changeListeners,
+                changeListeners.length + 1);
+        listeners[changeListeners.length] = listener;
+        changeListeners = listeners;
+    }
+
+    /**
+     * Removes a listener registered with
+     * {@link DemoSensor#addChangeListener(Runnable)}, so that it is no longer
+     * run or kept alive by this sensor. Does nothing if the listener is not
+     * registered.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeChangeListener(Runnable listener) {
+        for (int i = 0; i < changeListeners.length; i++) {
+            if (changeListeners[i] == listener) {
+                Runnable[] listeners =
+                        new Runnable[changeListeners.length - 1];
+                System.arraycopy(changeListeners, 0, listeners, 0, i);
+                System.arraycopy(changeListeners, i + 1, listeners, i,
+                        listeners.length - i);
+                changeListeners = listeners;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of listeners registered for changes.
+     *
+     * @return the number of change listeners
+     */
+    int getChangeListenerCount() {
+        return changeListeners.length;
+    }
+
+    /**
+     * Returns a copy of the observed data values this sensor cycles through.
+     *
+     * @return this sensor's data values
+     */
+    public int[] getData() {
+        return data.toArray();
+    }
+
+    /**
+     * Returns the read-only data values this sensor cycles through, which may
+     * be shared with other sensors.
+     *
+     * @return this sensor's data values
+     */
+    public SensorData getSensorData() {
+        return data;
+    }
+
+    /**
+     * Returns the two letter code identifying this type of sensor in network
+     * files, e.g. "PP" for a pressure pad.
+     *
+     * @return this sensor's type code
+     */
+    public abstract String getTypeCode();
+
     /**
      * Returns the threshold data value.
      *
@@ -88,8 +179,14 @@ public abstract class DemoSensor implements TimedItem {
     @Override
     public void oneSecond() {
         secondsPassed++;
-        int secs = secondsPassed % data.length;
-        currentValue = data[secs];
+        int secs = secondsPassed % data.length();
+        int previousValue = currentValue;
+        currentValue = data.get(secs);
+        if (currentValue != previousValue) {
+            for (Runnable listener : changeListeners) {
+                listener.run();
+            }
+        }
     }
 
     /**
@@ -104,7 +201,7 @@ public abstract class DemoSensor implements TimedItem {
         if (o == null || getClass() != o.getClass()) return false;
         DemoSensor that = (DemoSensor) o;
         return threshold == that.threshold &&
-                Arrays.equals(data, that.data);
+                data.equals(that.data);
     }
 
     /**
@@ -115,7 +212,7 @@ public abstract class DemoSensor implements TimedItem {
     @Override
     public int hashCode() {
         int result = Objects.hash(threshold);
-        result = 31 * result + Arrays.hashCode(data);
+        result = 31 * result + data.hashCode();
         return result;
     }
 
@@ -129,11 +226,23 @@ public abstract class DemoSensor implements TimedItem {
 
     @Override
     public String toString() {
-        return String.format("%s%s%s",
-                this.threshold,
-                ":",
-                String.join(",",
-                        Arrays.stream(this.data).mapToObj(String::valueOf)
-                                .toArray(String[]::new)));
+        StringBuilder builder = new StringBuilder();
+        builder.append(this.threshold).append(':');
+        data.appendTo(builder);
+        return builder.toString();
+    }
+
+    /**
+     * Appends this sensor's line of a network file to the given builder, in
+     * the same form as the subclass's {@code toString()}, e.g.
+     * "PP:threshold:list,of,data,values", without creating intermediate
+     * strings.
+     *
+     * @param builder builder to append to
+     */
+    public void appendTo(StringBuilder builder) {
+        builder.append(getTypeCode()).append(':').append(this.threshold)
+                .append(':');
+        data.appendTo(builder);
     }
 }
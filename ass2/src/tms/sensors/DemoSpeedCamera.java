@@ -19,6 +19,27 @@ public class DemoSpeedCamera extends DemoSensor implements SpeedCamera {
         super(data, threshold);
     }
 
+    /**
+     * Creates a new sensor with the given threshold and shared data values.
+     *
+     * @see DemoSensor#DemoSensor(SensorData, int)
+     * @param data non-empty data values
+     * @param threshold a threshold value that indicates which values represent
+     *                  high congestion
+     */
+    public DemoSpeedCamera(SensorData data, int threshold) {
+        super(data, threshold);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @return "SC"
+     */
+    @Override
+    public String getTypeCode() {
+        return "SC";
+    }
+
     /**
      * {@inheritDoc}
      * @ass1
@@ -18,6 +18,30 @@ public class DemoVehicleCount extends DemoSensor implements VehicleCount{
         super(data, threshold);
     }
 
+    /**
+     * Creates a new vehicle count sensor with the given threshold and shared
+     * data values.
+     * @param data non-empty data values
+     * @param threshold a threshold value that indicates which values represent
+     * high congestion
+     */
+
+    public DemoVehicleCount(SensorData data, int threshold) {
+
+        super(data, threshold);
+    }
+
+    /**
+     * Returns the type code of vehicle count sensors.
+     * @return "VC"
+     */
+
+    @Override
+    public String getTypeCode() {
+
+        return "VC";
+    }
+
     /**
      * Returns the observed rate of vehicles travelling past this sensor in
      * vehicles per minute.
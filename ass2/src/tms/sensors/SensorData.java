@@ -0,0 +1,168 @@
+package tms.sensors;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A read-only sequence of observed data values that demo sensors cycle
+ * through.
+ * <p>
+ * Sensor data is never modified once created, so a single instance can be
+ * shared by any number of sensors with identical data. Networks commonly load
+ * many sensors with the same trace; a {@link Pool} can be used while loading
+ * to give all of them the same instance.
+ */
+public final class SensorData {
+    /** Observed data values, never modified */
+    private final int[] values;
+    /** Hash code of the values, computed once */
+    private final int hash;
+
+    /**
+     * Creates sensor data holding the given values.
+     * @param values the data values, which must not be modified afterwards
+     */
+
+    private SensorData(int[] values) {
+
+        this.values = values;
+        this.hash = Arrays.hashCode(values);
+    }
+
+    /**
+     * Returns sensor data holding a copy of the given values.
+     *
+     * @requires values.length &gt; 0
+     * @param values a non-empty array of data values
+     * @return sensor data holding the given values
+     */
+
+    public static SensorData of(int[] values) {
+
+        return new SensorData(values.clone());
+    }
+
+    /**
+     * Returns the number of data values.
+     * @return number of values
+     */
+
+    public int length() {
+
+        return values.length;
+    }
+
+    /**
+     * Returns the data value at the given index.
+     * @param index index of the value, from 0 to length() - 1
+     * @return the value at that index
+     */
+
+    public int get(int index) {
+
+        return values[index];
+    }
+
+    /**
+     * Returns a new array containing the data values.
+     * @return copy of the values
+     */
+
+    public int[] toArray() {
+
+        return values.clone();
+    }
+
+    /**
+     * Writes the data values into the given buffer at its current position.
+     * @param buffer buffer to write to
+     */
+
+    public void writeTo(IntBuffer buffer) {
+
+        buffer.put(values);
+    }
+
+    /**
+     * Appends the data values to the given builder as a comma separated list,
+     * e.g. "1,2,3", without creating any intermediate strings.
+     * @param builder builder to append to
+     */
+
+    public void appendTo(StringBuilder builder) {
+
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(values[i]);
+        }
+    }
+
+    /**
+     * Returns true if and only if the other object is sensor data holding the
+     * same values in the same order.
+     * @param o other object to compare equality
+     * @return true if equal, false otherwise
+     */
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SensorData that = (SensorData) o;
+        return hash == that.hash && Arrays.equals(values, that.values);
+    }
+
+    /**
+     * Returns the hash code of the data values.
+     * @return hash code
+     */
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Returns the data values as a comma separated list.
+     * @return "list,of,data,values"
+     */
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        appendTo(builder);
+        return builder.toString();
+    }
+
+    /**
+     * Hands out a single shared instance for each distinct sequence of data
+     * values, so that sensors loaded with identical data share it.
+     */
+    public static class Pool {
+        /** Shared instances, keyed by themselves */
+        private final Map<SensorData, SensorData> shared = new HashMap<>();
+
+        /**
+         * Returns the shared sensor data holding the given values, creating it
+         * if no data with these values has been requested from this pool.
+         * <p>
+         * The array is kept if it is not already shared, so it must not be
+         * modified afterwards.
+         *
+         * @requires values.length &gt; 0
+         * @param values a non-empty array of data values
+         * @return shared sensor data holding the given values
+         */
+
+        public SensorData intern(int[] values) {
+
+            SensorData data = new SensorData(values);
+            SensorData existing = shared.putIfAbsent(data, data);
+            return existing == null ? data : existing;
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package tms.simulation;
+
+import tms.intersection.Intersection;
+import tms.network.Network;
+import tms.route.Route;
+import tms.route.TrafficLight;
+import tms.route.TrafficSignal;
+import tms.util.TimedItem;
+import tms.util.TimedItemManager;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Simulates traffic on a network as a flow rather than as individual
+ * vehicles, using the cell transmission model.
+ * <p>
+ * Each route is divided into cells as long as the distance travelled in one
+ * second at the route's speed limit. Each second, every cell sends as many
+ * vehicles to the next as it can, limited by the vehicles it holds, the
+ * capacity of a lane and the space left in the next cell. Vehicles at the end
+ * of a route only leave while the route's light is green, and are split
+ * evenly between the routes leaving the intersection, other than the route
+ * straight back. Vehicles reaching an intersection with no way on leave the
+ * network.
+ * <p>
+ * Vehicle numbers and flows are kept in flat arrays of doubles indexed by
+ * cell, so the work per tick is proportional to the number of cells. Each
+ * tick is done in three passes, over routes, then intersections, then routes
+ * again; none of them writes to data another item in the same pass writes to,
+ * so large networks are split into ranges that run in parallel.
+ * <p>
+ * The model registers itself as a sampler with the {@link TimedItemManager}.
+ * The routes and intersections of the network are read when the model is
+ * created; later changes to the structure of the network are not seen.
+ */
+
+public class CellTransmissionModel implements TimedItem {
+
+    /** Vehicles per second that can cross a cell boundary */
+    public static final double CAPACITY = 0.5;
+    /** Vehicles per metre of a route in a traffic jam */
+    public static final double JAM_DENSITY = 0.15;
+    /** Speed in metres per second at which a jam spreads backwards */
+    public static final double WAVE_SPEED = 5;
+
+    /** Number of routes or intersections each parallel task handles */
+    private static final int CHUNK = 512;
+
+    /** The routes of the network, indexed by route number */
+    private final Route[] routes;
+    /** Number of each route, by identity */
+    private final Map<Route, Integer> routeIndex;
+    /** Index in the cell arrays of each route's first cell, by route number,
+     * followed by the total number of cells */
+    private final int[] cellStart;
+    /** Length in metres of the cells of each route */
+    private final double[] cellLength;
+    /** Routes ending at each intersection, by intersection number */
+    private final int[][] incoming;
+    /** Routes vehicles at the end of each route are split between */
+    private final int[][] targets;
+
+    /** Number of vehicles in each cell */
+    private final double[] vehicles;
+    /** Vehicles that left each cell in the last tick */
+    private final double[] flow;
+    /** Vehicles the last cell of each route can send this tick */
+    private final double[] sending;
+    /** Vehicles the first cell of each route can receive this tick */
+    private final double[] receiving;
+    /** Vehicles offered to the start of each route this tick */
+    private final double[] demand;
+    /** Vehicles entering the start of each route this tick */
+    private final double[] inflow;
+    /** Vehicles per second entering each route from outside the network */
+    private final double[] sourceRate;
+    /** Vehicles waiting to enter each route from outside the network */
+    private final double[] backlog;
+    /** Vehicles that left the network at the end of each route last tick */
+    private final double[] exits;
+    /** Total vehicles that have left the network */
+    private double exited;
+    /** Whether large networks are advanced in parallel */
+    private boolean parallel = true;
+
+    /**
+     * Creates a model of the flow on the given network, initially with no
+     * vehicles, and registers it with the {@link TimedItemManager}.
+     * @param network the network whose routes vehicles travel along
+     */
+
+    public CellTransmissionModel(Network network) {
+
+        List<Intersection> intersections = network.getIntersections();
+        Map<Intersection, Integer> intersectionIndex = new IdentityHashMap<>();
+        for (Intersection intersection : intersections) {
+            intersectionIndex.put(intersection, intersectionIndex.size());
+        }
+        routeIndex = new IdentityHashMap<>();
+        List<Route> allRoutes = new ArrayList<>();
+        incoming = new int[intersections.size()][];
+        for (int i = 0; i < intersections.size(); i++) {
+            int first = allRoutes.size();
+            for (Route route : intersections.get(i).getConnections()) {
+                if (intersectionIndex.containsKey(route.getFrom())) {
+                    routeIndex.put(route, allRoutes.size());
+                    allRoutes.add(route);
+                }
+            }
+            incoming[i] = new int[allRoutes.size() - first];
+            for (int r = first; r < allRoutes.size(); r++) {
+                incoming[i][r - first] = r;
+            }
+        }
+        routes = allRoutes.toArray(new Route[0]);
+
+        cellStart = new int[routes.length + 1];
+        cellLength = new double[routes.length];
+        for (int r = 0; r < routes.length; r++) {
+            double length = routes[r].getLength();
+            double metresPerSecond = Math.max(routes[r].getSpeed() / 3.6, 1);
+            int cells = (int) Math.max(1, Math.round(length / metresPerSecond));
+            cellLength[r] = length / cells;
+            cellStart[r + 1] = cellStart[r] + cells;
+        }
+
+        targets = new int[routes.length][];
+        for (int i = 0; i < intersections.size(); i++) {
+            for (int r : incoming[i]) {
+                Intersection origin = routes[r].getFrom();
+                List<Integer> onward = new ArrayList<>();
+                List<Integer> back = new ArrayList<>();
+                for (Route out : intersections.get(i).getOutgoingConnections()) {
+                    Integer number = routeIndex.get(out);
+                    if (number == null) {
+                        continue;
+                    }
+                    (out.getTo() == origin ? back : onward).add(number);
+                }
+                if (onward.isEmpty()) {
+                    onward = back;
+                }
+                targets[r] = onward.stream().mapToInt(Integer::intValue)
+                        .toArray();
+            }
+        }
+
+        vehicles = new double[cellStart[routes.length]];
+        flow = new double[vehicles.length];
+        sending = new double[routes.length];
+        receiving = new double[routes.length];
+        demand = new double[routes.length];
+        inflow = new double[routes.length];
+        sourceRate = new double[routes.length];
+        backlog = new double[routes.length];
+        exits = new double[routes.length];
+        TimedItemManager.getTimedItemManager().registerSampler(this);
+    }
+
+    /**
+     * Removes the model from the {@link TimedItemManager}, so it no longer
+     * moves the flow on each tick. The flow can still be moved by calling
+     * oneSecond() directly.
+     */
+
+    public void close() {
+
+        TimedItemManager.getTimedItemManager().removeTimedItem(this);
+    }
+
+    /**
+     * Sets whether large networks are advanced in parallel. The result of
+     * each tick is the same either way.
+     * @param parallel true to advance large networks in parallel
+     */
+
+    public void setParallel(boolean parallel) {
+
+        this.parallel = parallel;
+    }
+
+    /**
+     * Sets the rate at which vehicles enter the start of the given route from
+     * outside the network. Vehicles that cannot enter because the start of
+     * the route is full wait until there is room.
+     * @param route a route of the network
+     * @param vehiclesPerSecond the rate at which vehicles enter
+     * @throws IllegalArgumentException if the route is not in the network or
+     * the rate is negative
+     */
+
+    public void setInflow(Route route, double vehiclesPerSecond) {
+
+        if (vehiclesPerSecond < 0) {
+            throw new IllegalArgumentException();
+        }
+        sourceRate[routeNumber(route)] = vehiclesPerSecond;
+    }
+
+    /**
+     * Adds vehicles spread evenly along the given route, as far as there is
+     * room for them.
+     * @param route a route of the network
+     * @param count the number of vehicles to add
+     * @throws IllegalArgumentException if the route is not in the network or
+     * the count is negative
+     */
+
+    public void addVehicles(Route route, double count) {
+
+        int r = routeNumber(route);
+        if (count < 0) {
+            throw new IllegalArgumentException();
+        }
+        double jam = JAM_DENSITY * cellLength[r];
+        double each = count / (cellStart[r + 1] - cellStart[r]);
+        for (int cell = cellStart[r]; cell < cellStart[r + 1]; cell++) {
+            vehicles[cell] = Math.min(jam, vehicles[cell] + each);
+        }
+    }
+
+    /**
+     * Returns the number of vehicles on the given route.
+     * @param route a route of the network
+     * @return the number of vehicles on the route
+     * @throws IllegalArgumentException if the route is not in the network
+     */
+
+    public double getVehicleCount(Route route) {
+
+        int r = routeNumber(route);
+        double count = 0;
+        for (int cell = cellStart[r]; cell < cellStart[r + 1]; cell++) {
+            count += vehicles[cell];
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of cells the given route is divided into.
+     * @param route a route of the network
+     * @return the number of cells of the route
+     * @throws IllegalArgumentException if the route is not in the network
+     */
+
+    public int getCellCount(Route route) {
+
+        int r = routeNumber(route);
+        return cellStart[r + 1] - cellStart[r];
+    }
+
+    /**
+     * Returns the density of vehicles in one cell of the given route.
+     * @param route a route of the network
+     * @param cell the cell, counting from the start of the route
+     * @return the density in vehicles per kilometre
+     * @throws IllegalArgumentException if the route is not in the network
+     * @throws IndexOutOfBoundsException if the route has no such cell
+     */
+
+    public double getDensity(Route route, int cell) {
+
+        int r = routeNumber(route);
+        if (cell < 0 || cell >= cellStart[r + 1] - cellStart[r]) {
+            throw new IndexOutOfBoundsException();
+        }
+        return 1000 * vehicles[cellStart[r] + cell] / cellLength[r];
+    }
+
+    /**
+     * Returns the number of vehicles that left the end of the given route in
+     * the last tick.
+     * @param route a route of the network
+     * @return the flow out of the route in vehicles per second
+     * @throws IllegalArgumentException if the route is not in the network
+     */
+
+    public double getOutflow(Route route) {
+
+        int r = routeNumber(route);
+        return flow[cellStart[r + 1] - 1];
+    }
+
+    /**
+     * Returns the number of vehicles in the network.
+     * @return the total number of vehicles on all routes
+     */
+
+    public double getTotalVehicles() {
+
+        double total = 0;
+        for (double count : vehicles) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of vehicles that have left the network at
+     * intersections with no way on.
+     * @return the total number of vehicles that have left
+     */
+
+    public double getExitedCount() {
+
+        return exited;
+    }
+
+    /**
+     * Moves the flow on every route forward by one second.
+     */
+
+    @Override
+    public void oneSecond() {
+
+        forEach(routes.length, this::sendWithinRoute);
+        forEach(incoming.length, this::crossIntersection);
+        forEach(routes.length, this::updateCells);
+        for (double vehiclesLeaving : exits) {
+            exited += vehiclesLeaving;
+        }
+    }
+
+    /**
+     * Works out the flows between the cells of a route, and how many vehicles
+     * the route can send from its end and receive at its start.
+     * @param r the route number
+     */
+
+    private void sendWithinRoute(int r) {
+
+        double length = cellLength[r];
+        double freeFraction = Math.min(1, routes[r].getSpeed() / 3.6 / length);
+        double waveFraction = Math.min(1, WAVE_SPEED / length);
+        double jam = JAM_DENSITY * length;
+        int first = cellStart[r];
+        int last = cellStart[r + 1] - 1;
+        for (int cell = first; cell < last; cell++) {
+            double send = Math.min(freeFraction * vehicles[cell], CAPACITY);
+            double receive = Math.min(CAPACITY,
+                    waveFraction * (jam - vehicles[cell + 1]));
+            flow[cell] = Math.max(0, Math.min(send, receive));
+        }
+        TrafficLight light = routes[r].getTrafficLight();
+        boolean green = light == null
+                || light.getSignal() == TrafficSignal.GREEN;
+        sending[r] = green
+                ? Math.min(freeFraction * vehicles[last], CAPACITY) : 0;
+        receiving[r] = Math.max(0, Math.min(CAPACITY,
+                waveFraction * (jam - vehicles[first])));
+    }
+
+    /**
+     * Works out the vehicles that cross an intersection, from the ends of its
+     * incoming routes to the starts of its outgoing routes. Each route's
+     * vehicles only leave as fast as the fullest of the routes they are split
+     * between allows.
+     * @param i the intersection number
+     */
+
+    private void crossIntersection(int i) {
+
+        for (int r : incoming[i]) {
+            for (int out : targets[r]) {
+                demand[out] = 0;
+                inflow[out] = 0;
+            }
+        }
+        for (int r : incoming[i]) {
+            for (int out : targets[r]) {
+                demand[out] += sending[r] / targets[r].length;
+            }
+        }
+        for (int r : incoming[i]) {
+            int last = cellStart[r + 1] - 1;
+            if (targets[r].length == 0) {
+                flow[last] = sending[r];
+                exits[r] = sending[r];
+                continue;
+            }
+            double fraction = 1;
+            for (int out : targets[r]) {
+                if (demand[out] > receiving[out]) {
+                    fraction = Math.min(fraction, receiving[out] / demand[out]);
+                }
+            }
+            flow[last] = fraction * sending[r];
+            exits[r] = 0;
+            for (int out : targets[r]) {
+                inflow[out] += flow[last] / targets[r].length;
+            }
+        }
+    }
+
+    /**
+     * Moves the vehicles of a route between its cells, and lets vehicles from
+     * outside the network enter its start if there is room.
+     * @param r the route number
+     */
+
+    private void updateCells(int r) {
+
+        int first = cellStart[r];
+        double entering = inflow[r];
+        inflow[r] = 0;
+        backlog[r] += sourceRate[r];
+        double fromOutside = Math.min(backlog[r],
+                Math.max(0, receiving[r] - entering));
+        backlog[r] -= fromOutside;
+        entering += fromOutside;
+        for (int cell = first; cell < cellStart[r + 1]; cell++) {
+            vehicles[cell] += entering - flow[cell];
+            entering = flow[cell];
+        }
+    }
+
+    /**
+     * Runs the given pass for each number from zero up to the given count,
+     * in parallel ranges if there are enough numbers.
+     * @param count the number of items in the pass
+     * @param pass the work for a single item
+     */
+
+    private void forEach(int count, IntConsumer pass) {
+
+        if (!parallel || count < 2 * CHUNK) {
+            for (int i = 0; i < count; i++) {
+                pass.accept(i);
+            }
+            return;
+        }
+        ForkJoinPool.commonPool().invoke(new Range(pass, 0, count));
+    }
+
+    /**
+     * Returns the number of the given route.
+     * @param route a route of the network
+     * @return the route number
+     * @throws IllegalArgumentException if the route is not in the network
+     */
+
+    private int routeNumber(Route route) {
+
+        Integer number = routeIndex.get(route);
+        if (number == null) {
+            throw new IllegalArgumentException();
+        }
+        return number;
+    }
+
+    /**
+     * A range of items of a pass, split in half until each part is no larger
+     * than {@link CellTransmissionModel#CHUNK}.
+     */
+    private static class Range extends RecursiveAction {
+        /** Version of the serialised form */
+        private static final long serialVersionUID = 1L;
+        /** The work for a single item */
+        private final IntConsumer pass;
+        /** The first item in this range */
+        private final int start;
+        /** The item after the last in this range */
+        private final int end;
+
+        /**
+         * Creates a range of items of a pass.
+         * @param pass the work for a single item
+         * @param start the first item in the range
+         * @param end the item after the last in the range
+         */
+        private Range(IntConsumer pass, int start, int end) {
+            this.pass = pass;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Runs the pass for every item in this range, splitting it first if
+         * it is too large.
+         */
+        @Override
+        protected void compute() {
+            if (end - start <= CHUNK) {
+                for (int i = start; i < end; i++) {
+                    pass.accept(i);
+                }
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new Range(pass, start, middle),
+                    new Range(pass, middle, end));
+        }
+    }
+}
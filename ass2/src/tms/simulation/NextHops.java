@@ -0,0 +1,79 @@
+package tms.simulation;
+
+/**
+ * The route a {@link VehicleSimulation} sends vehicles along from each
+ * intersection towards one destination, with the travel time to the
+ * destination from each intersection by which the routes were chosen.
+ * <p>
+ * A table is never changed once computed; vehicles are rerouted by replacing
+ * the whole table, so tables can be read by a background computation while
+ * the simulation runs.
+ */
+
+class NextHops {
+
+    /** Next route number from each intersection number, -1 if none */
+    private final int[] routes;
+    /** Time in seconds from each intersection number to the destination */
+    private final double[] times;
+
+    /**
+     * Creates a table of next routes.
+     * @param routes the next route number from each intersection number, -1
+     *               if the destination cannot be reached
+     * @param times the time from each intersection number to the destination,
+     *              infinite if it cannot be reached
+     */
+
+    NextHops(int[] routes, double[] times) {
+
+        this.routes = routes;
+        this.times = times;
+    }
+
+    /**
+     * Returns the route to take from the given intersection.
+     * @param intersection an intersection number
+     * @return the route number, -1 if the destination cannot be reached
+     */
+
+    int getRoute(int intersection) {
+
+        return routes[intersection];
+    }
+
+    /**
+     * Returns the time from the given intersection to the destination by
+     * which the routes were chosen.
+     * @param intersection an intersection number
+     * @return the time in seconds, infinite if the destination cannot be
+     * reached
+     */
+
+    double getTime(int intersection) {
+
+        return times[intersection];
+    }
+
+    /**
+     * Returns a table that takes the routes of this table, except from
+     * intersections this table cannot reach the destination from, which keep
+     * their route in the given table.
+     * @param previous the table this one replaces
+     * @return the merged table, this table if nothing needed to be kept
+     */
+
+    NextHops keeping(NextHops previous) {
+
+        int[] merged = null;
+        for (int i = 0; i < routes.length; i++) {
+            if (routes[i] == -1 && previous.routes[i] != -1) {
+                if (merged == null) {
+                    merged = routes.clone();
+                }
+                merged[i] = previous.routes[i];
+            }
+        }
+        return merged == null ? this : new NextHops(merged, times);
+    }
+}
@@ -0,0 +1,247 @@
+package tms.simulation;
+
+import tms.routing.RoutingGraph;
+import tms.util.TimedItem;
+import tms.util.TimedItemManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Periodically reroutes the vehicles of a {@link VehicleSimulation} by the
+ * current congestion of the routes of its network.
+ * <p>
+ * Every few ticks the rerouter reads the cost of every route, its travel time
+ * increased by its congestion as in a {@link RoutingGraph}, and starts a
+ * batch in the background. The batch only recomputes the routes towards
+ * destinations whose routes the new costs could change: those where the cost
+ * of a route taken has changed significantly, or a route not taken has
+ * become significantly faster. Destinations that no vehicle is heading to
+ * are dropped instead, to be recomputed by congestion when next used.
+ * <p>
+ * The tick never waits for a batch. A finished batch is applied at the next
+ * tick boundary, after the simulation has moved its vehicles, and a batch
+ * that is due while the last one is still running is skipped. The rerouter
+ * registers itself as a sampler with the {@link TimedItemManager}, so it
+ * must be created after the simulation it reroutes.
+ */
+
+public class Rerouter implements TimedItem {
+
+    /** Smallest fraction by which a cost must change to reroute */
+    public static final double SIGNIFICANT_CHANGE = 0.05;
+
+    /** The simulation whose vehicles are rerouted */
+    private final VehicleSimulation simulation;
+    /** Number of ticks between batches */
+    private final int interval;
+    /** Runs batches in the background */
+    private final Executor executor;
+    /** Number of times oneSecond() has been called */
+    private long ticks;
+    /** Destinations of the running batch */
+    private int[] destinations;
+    /** Tables of the destinations when the running batch started */
+    private NextHops[] tables;
+    /** The running batch, null if there is none */
+    private CompletableFuture<NextHops[]> batch;
+    /** Number of batches started */
+    private int batches;
+    /** Number of batches skipped because the last was still running */
+    private int skipped;
+    /** Number of destinations whose routes have been recomputed */
+    private long recomputed;
+
+    /**
+     * Creates a rerouter that runs its batches on the common fork-join pool,
+     * and registers it with the {@link TimedItemManager}.
+     * @param simulation the simulation whose vehicles are rerouted
+     * @param interval the number of ticks between batches
+     * @throws IllegalArgumentException if interval is less than one
+     */
+
+    public Rerouter(VehicleSimulation simulation, int interval) {
+
+        this(simulation, interval, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a rerouter that runs its batches with the given executor, and
+     * registers it with the {@link TimedItemManager}.
+     * @param simulation the simulation whose vehicles are rerouted
+     * @param interval the number of ticks between batches
+     * @param executor runs each batch
+     * @throws IllegalArgumentException if interval is less than one
+     */
+
+    public Rerouter(VehicleSimulation simulation, int interval,
+                    Executor executor) {
+
+        if (interval < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.simulation = simulation;
+        this.interval = interval;
+        this.executor = executor;
+        simulation.setCongestionFactor(RoutingGraph.CONGESTION_FACTOR);
+        TimedItemManager.getTimedItemManager().registerSampler(this);
+    }
+
+    /**
+     * Returns the number of ticks between batches.
+     * @return the interval in seconds
+     */
+
+    public int getInterval() {
+
+        return interval;
+    }
+
+    /**
+     * Returns the number of batches started.
+     * @return the number of batches
+     */
+
+    public int getBatchCount() {
+
+        return batches;
+    }
+
+    /**
+     * Returns the number of batches skipped because the last batch was still
+     * running when they were due.
+     * @return the number of skipped batches
+     */
+
+    public int getSkippedCount() {
+
+        return skipped;
+    }
+
+    /**
+     * Returns the number of times the routes towards a destination have been
+     * recomputed and applied.
+     * @return the number of recomputed destinations
+     */
+
+    public long getRecomputedCount() {
+
+        return recomputed;
+    }
+
+    /**
+     * Returns true if a batch is running or waiting to be applied.
+     * @return whether a batch is in progress
+     */
+
+    public boolean isBusy() {
+
+        return batch != null;
+    }
+
+    /**
+     * Removes the rerouter from the {@link TimedItemManager}, so it no longer
+     * starts or applies batches on each tick. A batch already running still
+     * finishes, but is only applied by calling oneSecond() directly.
+     */
+
+    public void close() {
+
+        TimedItemManager.getTimedItemManager().removeTimedItem(this);
+    }
+
+    /**
+     * Applies the last batch if it has finished, and starts a new batch if
+     * one is due.
+     */
+
+    @Override
+    public void oneSecond() {
+
+        ticks++;
+        if (batch != null && batch.isDone()) {
+            apply(batch.join());
+        }
+        if (ticks % interval != 0) {
+            return;
+        }
+        if (batch != null) {
+            skipped++;
+            return;
+        }
+        start();
+    }
+
+    /**
+     * Reads the current route costs and routing tables and starts a batch
+     * with them in the background.
+     */
+
+    private void start() {
+
+        double[] cost = simulation.currentCosts(
+                RoutingGraph.CONGESTION_FACTOR);
+        int[] routed = simulation.getRoutedDestinations();
+        NextHops[] current = new NextHops[routed.length];
+        boolean[] used = new boolean[routed.length];
+        for (int i = 0; i < routed.length; i++) {
+            current[i] = simulation.getNextHops(routed[i]);
+            used[i] = simulation.getHeadingCount(routed[i]) > 0;
+        }
+        destinations = routed;
+        tables = current;
+        batches++;
+        batch = CompletableFuture.supplyAsync(
+                () -> recompute(routed, current, used, cost), executor);
+    }
+
+    /**
+     * Recomputes the routes towards every destination whose routes the given
+     * costs could change. Only reads the structure of the network and the
+     * given arrays, so it can run in the background.
+     * @param routed the destinations
+     * @param current the table of each destination
+     * @param used whether any vehicle is heading to each destination
+     * @param cost the cost in seconds of each route number
+     * @return the new table of each destination, the current table if it is
+     * unchanged, or null if it should be dropped
+     */
+
+    private NextHops[] recompute(int[] routed, NextHops[] current,
+                                 boolean[] used, double[] cost) {
+
+        NextHops[] results = current.clone();
+        for (int i = 0; i < routed.length; i++) {
+            if (!simulation.isStale(current[i], cost, SIGNIFICANT_CHANGE)) {
+                continue;
+            }
+            results[i] = used[i]
+                    ? simulation.computeNextHops(routed[i], cost) : null;
+        }
+        return results;
+    }
+
+    /**
+     * Replaces the tables the finished batch has changed, unless they were
+     * replaced since the batch started.
+     * @param results the result of the batch
+     */
+
+    private void apply(NextHops[] results) {
+
+        for (int i = 0; i < destinations.length; i++) {
+            if (results[i] == tables[i] || simulation.getNextHops(
+                    destinations[i]) != tables[i]) {
+                continue;
+            }
+            if (simulation.replaceNextHops(destinations[i], results[i])
+                    && results[i] != null) {
+                recomputed++;
+            }
+        }
+        batch = null;
+        destinations = null;
+        tables = null;
+    }
+}
@@ -0,0 +1,83 @@
+package tms.simulation;
+
+import tms.route.Route;
+import tms.sensors.PressurePad;
+
+/**
+ * A pressure pad that counts the vehicles a {@link VehicleSimulation} has on
+ * a route, rather than replaying recorded data.
+ */
+
+public class SimulatedPressurePad implements PressurePad {
+
+    /** The simulation whose vehicles are counted */
+    private final VehicleSimulation simulation;
+    /** The route the pad is on */
+    private final Route route;
+    /** The number of vehicles that represents full congestion */
+    private final int threshold;
+
+    /**
+     * Creates a new pressure pad counting the vehicles on the given route.
+     * @param simulation the simulation whose vehicles are counted
+     * @param route the route the pad is on
+     * @param threshold the number of vehicles that represents full congestion
+     * @throws IllegalArgumentException if threshold is not positive
+     */
+
+    SimulatedPressurePad(VehicleSimulation simulation, Route route,
+                         int threshold) {
+
+        if (threshold < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.simulation = simulation;
+        this.route = route;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the number of vehicles currently on the route.
+     * @return the number of vehicles on the route, including queued vehicles
+     */
+
+    @Override
+    public int countTraffic() {
+
+        return simulation.getVehicleCount(route);
+    }
+
+    /**
+     * Returns the number of vehicles on the route as a percentage of the
+     * threshold, rounded to the nearest integer and at most 100.
+     * @return the congestion rate between 0 and 100 inclusive
+     */
+
+    @Override
+    public int getCongestion() {
+
+        return Math.min(Math.round(100f * countTraffic() / threshold), 100);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    @Override
+    public int getThreshold() {
+
+        return threshold;
+    }
+
+    /**
+     * Returns the string representation of this sensor, in the format of a
+     * recorded pressure pad whose only data value is the current count.
+     * @return "PP:threshold:count"
+     */
+
+    @Override
+    public String toString() {
+
+        return "PP:" + threshold + ":" + countTraffic();
+    }
+}
@@ -0,0 +1,262 @@
+package tms.simulation;
+
+import tms.util.TimedItem;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Advances a simulation on its own thread, independently of any display.
+ * <p>
+ * The simulation (usually the {@link tms.util.TimedItemManager}) is ticked at
+ * a configurable speed, given in simulated seconds per real second, from
+ * {@link #REAL_TIME} up to {@link #AS_FAST_AS_POSSIBLE}. Readers such as the
+ * GUI take consistent samples of the simulation's state through
+ * {@link #sample(Runnable)}, which never runs while a tick is in progress.
+ * <p>
+ * Ticks can also be run synchronously on the calling thread with
+ * {@link #step()} and {@link #runTicks(long)}, for example by headless batch
+ * runs.
+ */
+
+public class SimulationRunner {
+
+    /** Speed at which one simulated second passes per real second */
+    public static final double REAL_TIME = 1;
+    /** Speed at which ticks are run back to back without waiting */
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+    /** Longest the runner falls behind schedule before it stops catching up */
+    private static final long MAX_LAG_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** The simulation being advanced */
+    private final TimedItem simulation;
+    /** Held while ticking or sampling; fair so samples are not starved */
+    private final ReentrantLock lock = new ReentrantLock(true);
+    /** Signalled when the runner is unpaused, sped up or stopped */
+    private final Condition wakeUp = lock.newCondition();
+    /** Simulated seconds per real second */
+    private volatile double speed;
+    /** Whether the runner thread is currently paused */
+    private volatile boolean paused;
+    /** Whether the runner thread has been asked to stop */
+    private volatile boolean stopped;
+    /** Number of ticks run so far */
+    private volatile long ticks;
+    /** Thread ticking the simulation, null if it has not been started */
+    private Thread thread;
+
+    /**
+     * Creates a runner for the given simulation at the given speed. The
+     * runner does nothing until {@link #start()} is called.
+     * @param simulation the simulation to advance
+     * @param speed simulated seconds to run per real second
+     * @throws IllegalArgumentException if speed is not positive
+     */
+
+    public SimulationRunner(TimedItem simulation, double speed) {
+
+        this.simulation = simulation;
+        setSpeed(speed);
+    }
+
+    /**
+     * Starts ticking the simulation on a new background thread. Calling this
+     * more than once has no further effect.
+     */
+
+    public synchronized void start() {
+
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::run, "tms-simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the background thread and waits for it to finish its current
+     * tick.
+     * @throws InterruptedException if interrupted while waiting
+     */
+
+    public synchronized void stop() throws InterruptedException {
+
+        stopped = true;
+        signal();
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Returns the speed of the simulation in simulated seconds per real second.
+     * @return current speed
+     */
+
+    public double getSpeed() {
+
+        return speed;
+    }
+
+    /**
+     * Sets the speed of the simulation in simulated seconds per real second.
+     * @param speed new speed, at most {@link #AS_FAST_AS_POSSIBLE}
+     * @throws IllegalArgumentException if speed is not positive
+     */
+
+    public void setSpeed(double speed) {
+
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException();
+        }
+        this.speed = speed;
+        signal();
+    }
+
+    /**
+     * Returns true if the background thread is paused.
+     * @return whether the runner is paused
+     */
+
+    public boolean isPaused() {
+
+        return paused;
+    }
+
+    /**
+     * Pauses or resumes the background thread. Synchronous calls to
+     * {@link #step()} and {@link #runTicks(long)} are not affected.
+     * @param paused true to pause the runner, false to resume it
+     */
+
+    public void setPaused(boolean paused) {
+
+        this.paused = paused;
+        signal();
+    }
+
+    /**
+     * Returns the number of ticks that have been run.
+     * @return ticks run so far
+     */
+
+    public long getTicks() {
+
+        return ticks;
+    }
+
+    /**
+     * Runs a single tick of the simulation on the calling thread.
+     */
+
+    public void step() {
+
+        lock.lock();
+        try {
+            simulation.oneSecond();
+            ticks++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the given number of ticks on the calling thread, as fast as
+     * possible.
+     * @param count number of ticks to run
+     */
+
+    public void runTicks(long count) {
+
+        for (long i = 0; i < count; i++) {
+            step();
+        }
+    }
+
+    /**
+     * Runs the given action while no tick is in progress, so that it sees
+     * (and may change) a consistent state of the simulation.
+     * @param action the action to run
+     */
+
+    public void sample(Runnable action) {
+
+        lock.lock();
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes the background thread so that it notices a change of state.
+     */
+
+    private void signal() {
+
+        lock.lock();
+        try {
+            wakeUp.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Body of the background thread: ticks the simulation at the current
+     * speed until stopped.
+     */
+
+    private void run() {
+
+        long next = System.nanoTime();
+        while (!stopped) {
+            try {
+                if (paused) {
+                    awaitWakeUp(Long.MAX_VALUE, true);
+                    next = System.nanoTime();
+                    continue;
+                }
+                step();
+                double currentSpeed = speed;
+                if (currentSpeed == AS_FAST_AS_POSSIBLE) {
+                    next = System.nanoTime();
+                    continue;
+                }
+                next += (long) (TimeUnit.SECONDS.toNanos(1) / currentSpeed);
+                long delay = next - System.nanoTime();
+                if (delay > 0) {
+                    awaitWakeUp(delay, false);
+                } else if (delay < -MAX_LAG_NANOS) {
+                    next = System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until signalled or until the given time has passed.
+     * @param nanos longest time to wait, in nanoseconds
+     * @param untilUnpaused true to return immediately if the runner is no
+     *                      longer paused
+     * @throws InterruptedException if the thread is interrupted
+     */
+
+    private void awaitWakeUp(long nanos, boolean untilUnpaused)
+            throws InterruptedException {
+
+        lock.lock();
+        try {
+            if (!stopped && !(untilUnpaused && !paused)) {
+                wakeUp.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,683 @@
+package tms.simulation;
+
+import tms.intersection.Intersection;
+import tms.network.Network;
+import tms.route.Route;
+import tms.route.TrafficLight;
+import tms.route.TrafficSignal;
+import tms.util.ChangeBus;
+import tms.util.ChangeType;
+import tms.util.DuplicateSensorException;
+import tms.util.TimedItem;
+import tms.util.TimedItemManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Moves individual vehicles through the routes of a network.
+ * <p>
+ * Each vehicle travels from its origin towards its destination along the
+ * quickest routes at the speed limit, found when the vehicle's destination is
+ * first used. Vehicles leave the end of a route no faster than the
+ * saturation flow, and only while its light is green. A vehicle that reaches
+ * the end of a route when it cannot leave, or behind other waiting vehicles,
+ * joins the route's queue.
+ * <p>
+ * A {@link Rerouter} can later replace the routes towards a destination with
+ * routes chosen by current congestion; vehicles already travelling take the
+ * new routes from the next intersection they reach, and routes towards new
+ * destinations are then also chosen by congestion.
+ * <p>
+ * Vehicles are stored as parallel arrays of primitives indexed by vehicle
+ * number rather than as objects, so each tick is a pass over a few arrays
+ * and millions of vehicles can be moved per tick. Vehicle numbers are reused
+ * once a vehicle has reached its destination.
+ * <p>
+ * The simulation registers itself as a sampler with the
+ * {@link TimedItemManager}, so each tick it sees the traffic lights as they
+ * are at the end of that tick. The routes and intersections of the network
+ * are read when the simulation is created; later changes to the structure of
+ * the network are not seen.
+ */
+
+public class VehicleSimulation implements TimedItem {
+
+    /** Vehicles per second that leave a queue at a green light */
+    public static final double SATURATION_FLOW = 0.5;
+
+    /** State of a vehicle number that is not in use */
+    private static final byte FREE = 0;
+    /** State of a vehicle driving along its route */
+    private static final byte MOVING = 1;
+    /** State of a vehicle waiting in the queue at the end of its route */
+    private static final byte QUEUED = 2;
+    /** Marks the end of a queue, or a missing route */
+    private static final int NONE = -1;
+
+    /** The routes of the network, indexed by route number */
+    private final Route[] routes;
+    /** Intersection number at which each route ends */
+    private final int[] routeTo;
+    /** Length of each route in metres */
+    private final float[] routeLength;
+    /** Number of each intersection, by identity */
+    private final Map<Intersection, Integer> intersectionIndex;
+    /** Number of each route, by identity */
+    private final Map<Route, Integer> routeIndex;
+    /** Routes ending at each intersection, as route numbers */
+    private final int[][] incoming;
+    /** Intersection number at which each route begins */
+    private final int[] routeFrom;
+    /** Next route towards each destination number from each intersection */
+    private final Map<Integer, NextHops> nextHops = new HashMap<>();
+    /** Number of travelling vehicles heading to each intersection */
+    private final int[] heading;
+    /** Extra travel time on a fully congested route when choosing routes, as
+     * a multiple of the travel time */
+    private double congestionFactor;
+
+    /** Metres each route's vehicles travel this tick */
+    private final float[] step;
+    /** Whether each route may currently be left */
+    private final boolean[] green;
+    /** First vehicle in each route's queue */
+    private final int[] queueHead;
+    /** Last vehicle in each route's queue */
+    private final int[] queueTail;
+    /** Number of vehicles in each route's queue */
+    private final int[] queueLength;
+    /** Vehicles that may leave each route, accumulated while green */
+    private final double[] dischargeCredit;
+    /** Number of vehicles on each route, including queued vehicles */
+    private final int[] onRoute;
+    /** Number of vehicles that have left each route */
+    private final long[] passed;
+    /** Whether congestion changes are published for each route */
+    private final boolean[] sensed;
+    /** Vehicles on each sensed route when changes were last published */
+    private final int[] publishedCount;
+
+    /** State of each vehicle number */
+    private byte[] state = new byte[0];
+    /** Route each vehicle is on */
+    private int[] vehicleRoute = new int[0];
+    /** Metres each vehicle has travelled along its route */
+    private float[] position = new float[0];
+    /** Intersection number of each vehicle's destination */
+    private int[] destination = new int[0];
+    /** Vehicle behind each queued vehicle */
+    private int[] nextInQueue = new int[0];
+    /** Vehicle numbers that are free to be reused */
+    private int[] freeNumbers = new int[0];
+    /** Number of entries in freeNumbers */
+    private int freeCount;
+    /** One more than the highest vehicle number used so far */
+    private int used;
+    /** Number of vehicles currently travelling */
+    private int active;
+    /** Number of vehicles that have reached their destination */
+    private long finished;
+
+    /**
+     * Creates a simulation of the vehicles on the given network, initially
+     * with no vehicles, and registers it with the {@link TimedItemManager}.
+     * @param network the network whose routes vehicles travel along
+     */
+
+    public VehicleSimulation(Network network) {
+
+        List<Intersection> intersections = network.getIntersections();
+        intersectionIndex = new IdentityHashMap<>();
+        for (Intersection intersection : intersections) {
+            intersectionIndex.put(intersection, intersectionIndex.size());
+        }
+        routeIndex = new IdentityHashMap<>();
+        List<Route> allRoutes = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        incoming = new int[intersections.size()][];
+        for (int i = 0; i < intersections.size(); i++) {
+            int first = allRoutes.size();
+            for (Route route : intersections.get(i).getConnections()) {
+                if (intersectionIndex.containsKey(route.getFrom())) {
+                    routeIndex.put(route, allRoutes.size());
+                    allRoutes.add(route);
+                    ends.add(i);
+                }
+            }
+            incoming[i] = new int[allRoutes.size() - first];
+            for (int r = first; r < allRoutes.size(); r++) {
+                incoming[i][r - first] = r;
+            }
+        }
+        heading = new int[intersections.size()];
+        routes = allRoutes.toArray(new Route[0]);
+        int routeCount = routes.length;
+        routeFrom = new int[routeCount];
+        routeTo = new int[routeCount];
+        routeLength = new float[routeCount];
+        for (int r = 0; r < routeCount; r++) {
+            routeFrom[r] = intersectionIndex.get(routes[r].getFrom());
+            routeTo[r] = ends.get(r);
+            routeLength[r] = (float) routes[r].getLength();
+        }
+
+        step = new float[routeCount];
+        green = new boolean[routeCount];
+        queueHead = new int[routeCount];
+        queueTail = new int[routeCount];
+        Arrays.fill(queueHead, NONE);
+        Arrays.fill(queueTail, NONE);
+        queueLength = new int[routeCount];
+        dischargeCredit = new double[routeCount];
+        onRoute = new int[routeCount];
+        passed = new long[routeCount];
+        sensed = new boolean[routeCount];
+        publishedCount = new int[routeCount];
+        TimedItemManager.getTimedItemManager().registerSampler(this);
+    }
+
+    /**
+     * Removes the simulation from the {@link TimedItemManager}, so it no
+     * longer moves vehicles on each tick. The vehicles can still be moved
+     * by calling oneSecond() directly.
+     */
+
+    public void close() {
+
+        TimedItemManager.getTimedItemManager().removeTimedItem(this);
+    }
+
+    /**
+     * Adds a vehicle at the start of the first route from its origin towards
+     * its destination.
+     * @param origin the intersection the vehicle starts at
+     * @param destination the intersection the vehicle travels to
+     * @return the number of the new vehicle
+     * @throws IllegalArgumentException if either intersection is not in the
+     * network, the two are the same, or the destination cannot be reached from
+     * the origin
+     */
+
+    public int addVehicle(Intersection origin, Intersection destination) {
+
+        int from = indexOf(origin);
+        int to = indexOf(destination);
+        if (from == to) {
+            throw new IllegalArgumentException();
+        }
+        int route = nextHops(to).getRoute(from);
+        if (route == NONE) {
+            throw new IllegalArgumentException();
+        }
+
+        int vehicle;
+        if (freeCount > 0) {
+            vehicle = freeNumbers[--freeCount];
+        } else {
+            if (used == state.length) {
+                grow();
+            }
+            vehicle = used++;
+        }
+        state[vehicle] = MOVING;
+        vehicleRoute[vehicle] = route;
+        position[vehicle] = 0;
+        this.destination[vehicle] = to;
+        heading[to]++;
+        onRoute[route]++;
+        active++;
+        return vehicle;
+    }
+
+    /**
+     * Returns the number of vehicles currently travelling.
+     * @return the number of vehicles that have not reached their destination
+     */
+
+    public int getVehicleCount() {
+
+        return active;
+    }
+
+    /**
+     * Returns the number of vehicles that have reached their destination.
+     * @return the number of finished vehicles
+     */
+
+    public long getFinishedCount() {
+
+        return finished;
+    }
+
+    /**
+     * Returns the number of vehicles on the given route, including those
+     * waiting in its queue.
+     * @param route a route of the network
+     * @return the number of vehicles on the route
+     * @throws IllegalArgumentException if the route is not in the network
+     */
+
+    public int getVehicleCount(Route route) {
+
+        return onRoute[routeNumber(route)];
+    }
+
+    /**
+     * Returns the number of vehicles waiting in the queue at the end of the
+     * given route.
+     * @param route a route of the network
+     * @return the length of the route's queue
+     * @throws IllegalArgumentException if the route is not in the network
+     */
+
+    public int getQueueLength(Route route) {
+
+        return queueLength[routeNumber(route)];
+    }
+
+    /**
+     * Returns the number of vehicles that have left the given route, either
+     * onto another route or at their destination.
+     * @param route a route of the network
+     * @return the number of vehicles that have passed along the route
+     * @throws IllegalArgumentException if the route is not in the network
+     */
+
+    public long getPassedCount(Route route) {
+
+        return passed[routeNumber(route)];
+    }
+
+    /**
+     * Returns the route the given vehicle is on, or null if the vehicle has
+     * reached its destination.
+     * @param vehicle a vehicle number returned by addVehicle
+     * @return the route the vehicle is on
+     */
+
+    public Route getRoute(int vehicle) {
+
+        if (vehicle < 0 || vehicle >= used || state[vehicle] == FREE) {
+            return null;
+        }
+        return routes[vehicleRoute[vehicle]];
+    }
+
+    /**
+     * Adds a pressure pad to the given route that counts the vehicles this
+     * simulation has on the route. Congestion changes on the route are
+     * published at the end of each tick in which its count changes.
+     * @param route a route of the network
+     * @param threshold the number of vehicles that represents full congestion
+     * @return the new pressure pad
+     * @throws DuplicateSensorException if the route already has a simulated
+     * pressure pad
+     * @throws IllegalArgumentException if the route is not in the network
+     */
+
+    public SimulatedPressurePad addPressurePad(Route route, int threshold)
+            throws DuplicateSensorException {
+
+        int number = routeNumber(route);
+        SimulatedPressurePad pad = new SimulatedPressurePad(this, route,
+                threshold);
+        route.addSensor(pad);
+        sensed[number] = true;
+        publishedCount[number] = onRoute[number];
+        return pad;
+    }
+
+    /**
+     * Moves every vehicle forward by one second. Queues at green lights are
+     * discharged first, then the remaining vehicles drive on at their route's
+     * speed limit. Each route's departures, from its queue or on arrival,
+     * share the route's saturation flow; a route that is green with no
+     * vehicles leaving saves up at most the departure of one vehicle.
+     */
+
+    @Override
+    public void oneSecond() {
+
+        for (int r = 0; r < routes.length; r++) {
+            step[r] = routes[r].getSpeed() / 3.6f;
+            TrafficLight light = routes[r].getTrafficLight();
+            green[r] = light == null
+                    || light.getSignal() == TrafficSignal.GREEN;
+            if (!green[r]) {
+                dischargeCredit[r] = 0;
+                continue;
+            }
+            dischargeCredit[r] = Math.min(dischargeCredit[r]
+                    + SATURATION_FLOW, Math.max(1, SATURATION_FLOW));
+            while (dischargeCredit[r] >= 1 && queueHead[r] != NONE) {
+                dischargeCredit[r] -= 1;
+                int vehicle = queueHead[r];
+                queueHead[r] = nextInQueue[vehicle];
+                if (queueHead[r] == NONE) {
+                    queueTail[r] = NONE;
+                }
+                queueLength[r]--;
+                leave(vehicle, 0);
+            }
+        }
+
+        for (int vehicle = 0; vehicle < used; vehicle++) {
+            if (state[vehicle] != MOVING) {
+                continue;
+            }
+            int route = vehicleRoute[vehicle];
+            float travelled = position[vehicle] + step[route];
+            if (travelled < routeLength[route]) {
+                position[vehicle] = travelled;
+            } else {
+                arrive(vehicle, route, travelled - routeLength[route]);
+            }
+        }
+
+        for (int r = 0; r < routes.length; r++) {
+            if (sensed[r] && publishedCount[r] != onRoute[r]) {
+                publishedCount[r] = onRoute[r];
+                ChangeBus.publish(ChangeType.CONGESTION, routes[r]);
+            }
+        }
+    }
+
+    /**
+     * Handles a moving vehicle reaching the end of its route.
+     * @param vehicle the vehicle
+     * @param route the route the vehicle is on
+     * @param overshoot metres the vehicle would have travelled past the end
+     */
+
+    private void arrive(int vehicle, int route, float overshoot) {
+
+        if (routeTo[route] == destination[vehicle]) {
+            onRoute[route]--;
+            passed[route]++;
+            state[vehicle] = FREE;
+            if (freeCount == freeNumbers.length) {
+                freeNumbers = Arrays.copyOf(freeNumbers,
+                        Math.max(16, 2 * freeCount));
+            }
+            freeNumbers[freeCount++] = vehicle;
+            heading[destination[vehicle]]--;
+            active--;
+            finished++;
+        } else if (green[route] && queueHead[route] == NONE
+                && dischargeCredit[route] >= 1) {
+            dischargeCredit[route] -= 1;
+            leave(vehicle, overshoot);
+        } else {
+            state[vehicle] = QUEUED;
+            position[vehicle] = routeLength[route];
+            nextInQueue[vehicle] = NONE;
+            if (queueTail[route] == NONE) {
+                queueHead[route] = vehicle;
+            } else {
+                nextInQueue[queueTail[route]] = vehicle;
+            }
+            queueTail[route] = vehicle;
+            queueLength[route]++;
+        }
+    }
+
+    /**
+     * Moves a vehicle from the end of its route onto the next route towards
+     * its destination.
+     * @param vehicle the vehicle
+     * @param overshoot metres the vehicle has already travelled on the next
+     *                  route
+     */
+
+    private void leave(int vehicle, float overshoot) {
+
+        int route = vehicleRoute[vehicle];
+        int next = nextHops(destination[vehicle]).getRoute(routeTo[route]);
+        onRoute[route]--;
+        passed[route]++;
+        onRoute[next]++;
+        vehicleRoute[vehicle] = next;
+        position[vehicle] = Math.min(overshoot, routeLength[next]);
+        state[vehicle] = MOVING;
+    }
+
+    /**
+     * Returns the table of the next route to take from each intersection
+     * towards the given destination, computing it on first use from the
+     * current costs of the routes.
+     * @param destination the destination intersection number
+     * @return the next routes towards the destination
+     */
+
+    private NextHops nextHops(int destination) {
+
+        NextHops table = nextHops.get(destination);
+        if (table == null) {
+            table = computeNextHops(destination,
+                    currentCosts(congestionFactor));
+            nextHops.put(destination, table);
+        }
+        return table;
+    }
+
+    /**
+     * Sets how much congestion adds to the cost of a route when routes
+     * towards new destinations are chosen. It is zero until a rerouter is
+     * attached, so that routes are chosen at the speed limit.
+     * @param congestionFactor the extra travel time on a fully congested
+     *                         route, as a multiple of the travel time
+     */
+
+    void setCongestionFactor(double congestionFactor) {
+
+        this.congestionFactor = congestionFactor;
+    }
+
+    /**
+     * Returns the current cost of travelling each route: its travel time at
+     * the speed limit, increased by the given multiple when the route is
+     * fully congested.
+     * @param congestionFactor the extra travel time on a fully congested
+     *                         route, as a multiple of the travel time
+     * @return the cost in seconds of each route number
+     */
+
+    double[] currentCosts(double congestionFactor) {
+
+        double[] cost = new double[routes.length];
+        for (int r = 0; r < routes.length; r++) {
+            cost[r] = routes[r].getTravelTime() * (1 + congestionFactor
+                    * routes[r].getCongestion() / 100.0);
+        }
+        return cost;
+    }
+
+    /**
+     * Computes the quickest route to take from each intersection towards the
+     * given destination with the given route costs, by Dijkstra's algorithm
+     * backwards from the destination. Only reads the structure of the
+     * network, so it may be called from any thread.
+     * @param destination the destination intersection number
+     * @param cost the cost in seconds of each route number
+     * @return the next routes towards the destination
+     */
+
+    NextHops computeNextHops(int destination, double[] cost) {
+
+        int[] table = new int[incoming.length];
+        Arrays.fill(table, NONE);
+        double[] time = new double[incoming.length];
+        Arrays.fill(time, Double.POSITIVE_INFINITY);
+        time[destination] = 0;
+        PriorityQueue<double[]> frontier = new PriorityQueue<>(
+                (a, b) -> Double.compare(a[0], b[0]));
+        frontier.add(new double[]{0, destination});
+        while (!frontier.isEmpty()) {
+            double[] entry = frontier.poll();
+            int at = (int) entry[1];
+            if (entry[0] > time[at]) {
+                continue;
+            }
+            for (int route : incoming[at]) {
+                int from = routeFrom[route];
+                double arrival = time[at] + cost[route];
+                if (arrival < time[from]) {
+                    time[from] = arrival;
+                    table[from] = route;
+                    frontier.add(new double[]{arrival, from});
+                }
+            }
+        }
+        return new NextHops(table, time);
+    }
+
+    /**
+     * Returns true if the given route costs could change the routes of the
+     * given table: the cost of a route the table takes has changed by more
+     * than the given fraction, or a route the table does not take is faster
+     * by more than that fraction. Only reads the structure of the network, so
+     * it may be called from any thread.
+     * @param table the next routes towards a destination
+     * @param cost the cost in seconds of each route number
+     * @param tolerance the smallest fraction of change that is significant
+     * @return whether the table should be recomputed
+     */
+
+    boolean isStale(NextHops table, double[] cost, double tolerance) {
+
+        for (int r = 0; r < routeFrom.length; r++) {
+            double after = table.getTime(routeTo[r]);
+            if (after == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            double before = table.getTime(routeFrom[r]);
+            if (table.getRoute(routeFrom[r]) == r) {
+                double chosen = before - after;
+                if (Math.abs(cost[r] - chosen) > tolerance * chosen) {
+                    return true;
+                }
+            } else if (cost[r] + after < before * (1 - tolerance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the destination intersection numbers that have a table of next
+     * routes.
+     * @return the destinations routed to so far
+     */
+
+    int[] getRoutedDestinations() {
+
+        int[] destinations = new int[nextHops.size()];
+        int i = 0;
+        for (int destination : nextHops.keySet()) {
+            destinations[i++] = destination;
+        }
+        return destinations;
+    }
+
+    /**
+     * Returns the table of next routes towards the given destination.
+     * @param destination the destination intersection number
+     * @return the table, null if the destination has not been routed to
+     */
+
+    NextHops getNextHops(int destination) {
+
+        return nextHops.get(destination);
+    }
+
+    /**
+     * Replaces the table of next routes towards the given destination.
+     * Intersections that the new table cannot reach the destination from keep
+     * their old route, so no travelling vehicle is left without one. A null
+     * table is only accepted if no vehicle is heading to the destination, and
+     * removes its table so that it is computed afresh when next used.
+     * @param destination the destination intersection number
+     * @param table the new table, or null
+     * @return true if the table was replaced
+     */
+
+    boolean replaceNextHops(int destination, NextHops table) {
+
+        NextHops previous = nextHops.get(destination);
+        if (table == null) {
+            if (heading[destination] > 0) {
+                return false;
+            }
+            nextHops.remove(destination);
+            return true;
+        }
+        nextHops.put(destination, previous == null ? table
+                : table.keeping(previous));
+        return true;
+    }
+
+    /**
+     * Returns the number of travelling vehicles heading to the given
+     * intersection.
+     * @param destination the destination intersection number
+     * @return the number of vehicles
+     */
+
+    int getHeadingCount(int destination) {
+
+        return heading[destination];
+    }
+
+    /**
+     * Returns the number of the given intersection.
+     * @param intersection an intersection of the network
+     * @return the intersection number
+     * @throws IllegalArgumentException if the intersection is not in the
+     * network
+     */
+
+    private int indexOf(Intersection intersection) {
+
+        Integer index = intersectionIndex.get(intersection);
+        if (index == null) {
+            throw new IllegalArgumentException();
+        }
+        return index;
+    }
+
+    /**
+     * Returns the number of the given route.
+     * @param route a route of the network
+     * @return the route number
+     * @throws IllegalArgumentException if the route is not in the network
+     */
+
+    private int routeNumber(Route route) {
+
+        Integer number = routeIndex.get(route);
+        if (number == null) {
+            throw new IllegalArgumentException();
+        }
+        return number;
+    }
+
+    /**
+     * Doubles the capacity of the vehicle arrays.
+     */
+
+    private void grow() {
+
+        int capacity = Math.max(1024, 2 * state.length);
+        state = Arrays.copyOf(state, capacity);
+        vehicleRoute = Arrays.copyOf(vehicleRoute, capacity);
+        position = Arrays.copyOf(position, capacity);
+        destination = Arrays.copyOf(destination, capacity);
+        nextInQueue = Arrays.copyOf(nextInQueue, capacity);
+    }
+}
@@ -0,0 +1,76 @@
+package tms.util;
+
+import java.util.Arrays;
+
+/**
+ * Announces changes to the state of the simulation, such as traffic lights
+ * changing signal, to any interested listeners.
+ * <p>
+ * This lets views redraw only when something they show has changed, rather
+ * than polling the whole network every frame. Model classes publish a change
+ * only when a value actually changes, and publishing with no listeners costs
+ * no more than reading a field.
+ * <p>
+ * This is a singleton class, like {@link TimedItemManager}.
+ */
+public class ChangeBus {
+    private static final ChangeBus bus = new ChangeBus();
+    /** Subscribed listeners, replaced rather than modified on subscription */
+    private volatile ChangeListener[] listeners = new ChangeListener[0];
+
+    /**
+     * Creates the change bus, see {@link ChangeBus#getChangeBus()}.
+     */
+    private ChangeBus() {
+    }
+
+    /**
+     * Gets the singleton instance of the ChangeBus. The instance is created
+     * eagerly, as changes are published from several threads at once.
+     * @return the singleton instance of the ChangeBus
+     */
+    public static ChangeBus getChangeBus() {
+        return bus;
+    }
+
+    /**
+     * Publishes a change to every subscribed listener.
+     * @param type the kind of change
+     * @param source the object that changed
+     */
+    public static void publish(ChangeType type, Object source) {
+        for (ChangeListener listener : bus.listeners) {
+            listener.changed(type, source);
+        }
+    }
+
+    /**
+     * Subscribes a listener to all changes published from now on.
+     * @param listener the listener to subscribe
+     */
+    public synchronized void subscribe(ChangeListener listener) {
+        ChangeListener[] updated = Arrays.copyOf(listeners,
+                listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Unsubscribes a listener so that it receives no further changes. Does
+     * nothing if the listener is not subscribed.
+     * @param listener the listener to unsubscribe
+     */
+    public synchronized void unsubscribe(ChangeListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                ChangeListener[] updated = new ChangeListener[
+                        listeners.length - 1];
+                System.arraycopy(listeners, 0, updated, 0, i);
+                System.arraycopy(listeners, i + 1, updated, i,
+                        updated.length - i);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+}
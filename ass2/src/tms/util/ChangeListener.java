@@ -0,0 +1,19 @@
+package tms.util;
+
+/**
+ * Receives the changes announced through the {@link ChangeBus}.
+ */
+public interface ChangeListener {
+    /**
+     * Called whenever a change is published.
+     * <p>
+     * Changes made during a tick are published from the thread advancing the
+     * changed item, which may be one of several timed item worker threads, so
+     * this method must be thread safe and should do no more than record that
+     * the change occurred.
+     *
+     * @param type the kind of change
+     * @param source the object that changed, see {@link ChangeType}
+     */
+    void changed(ChangeType type, Object source);
+}
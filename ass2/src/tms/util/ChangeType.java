@@ -0,0 +1,26 @@
+package tms.util;
+
+/**
+ * The kinds of change announced through the {@link ChangeBus}.
+ */
+public enum ChangeType {
+    /** A traffic light changed its signal; the source is the TrafficLight */
+    SIGNAL,
+    /** A speed sign changed its displayed speed; the source is the SpeedSign */
+    SPEED,
+    /**
+     * A route's congestion may have changed; the source is the Route, or the
+     * CongestionCalculator if the calculator changed its result by itself
+     */
+    CONGESTION,
+    /** A sensor, speed sign or traffic light was added to a route; the source
+     * is the Route */
+    ROUTE_EQUIPMENT,
+    /** Traffic light timing changed; the source is the IntersectionLights */
+    LIGHT_TIMING,
+    /**
+     * Intersections or routes were added, or an intersection's routes were
+     * reordered; the source is the Network or Intersection
+     */
+    STRUCTURE
+}
@@ -10,4 +10,12 @@ public class InvalidNetworkException extends Exception {
      * cause.
      */
     public InvalidNetworkException() { super(); }
+
+    /**
+     * Constructs an InvalidNetworkException that contains a message detailing
+     * where and why the network was found to be invalid.
+     *
+     * @param message detail message
+     */
+    public InvalidNetworkException(String message) { super(message); }
 }
@@ -2,6 +2,8 @@ package tms.util;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Manages timed items for the simulation. All timed items in the simulation
@@ -16,6 +18,19 @@ import java.util.List;
  * <p>
  * In order to ensure correct singleton behaviour, there should <b>not</b>
  * be a public constructor.
+ * <p>
+ * When many items are registered, each call to {@code oneSecond()} splits the
+ * items into shards of consecutive registrations and advances the shards in
+ * parallel on a fork-join pool, returning only once every item has been
+ * advanced. Timed items must therefore only change their own state from
+ * {@code oneSecond()}, as the built-in sensors and traffic lights do; the
+ * state after each tick is then the same as if the items had been called one
+ * after another.
+ * <p>
+ * Items that observe the state of others, such as smoothing congestion
+ * calculators, are registered as samplers instead. Samplers are called once
+ * every other item has been advanced in that tick, so they always see the
+ * state at the end of the tick.
  *
  * @see <a href = "https://refactoring.guru/design-patterns/singleton">
  *                 https://refactoring.guru/design-patterns/singleton</a> and
@@ -26,6 +41,20 @@ import java.util.List;
 public class TimedItemManager implements TimedItem {
     private static TimedItemManager manager;
     private List<TimedItem> timedItems;
+    /** Items called after all other items have been advanced in each tick */
+    private List<TimedItem> samplers;
+    /** Number of items each parallel shard advances */
+    private static final int SHARD_SIZE = 1024;
+    /** Registered items as an array, null if registrations have changed */
+    private TimedItem[] tickOrder;
+    /** Registered samplers as an array, null if registrations have changed */
+    private TimedItem[] sampleOrder;
+    /** Maximum number of threads used to advance items */
+    private int parallelism;
+    /** Pool that advances shards, created when first needed */
+    private ForkJoinPool pool;
+    /** Number of times oneSecond() has been called */
+    private long ticks;
 
     /**
      * Creates the timed item manager that stores all the {@link TimedItem}s
@@ -34,6 +63,8 @@ public class TimedItemManager implements TimedItem {
      */
     private TimedItemManager() {
         timedItems = new ArrayList<TimedItem>();
+        samplers = new ArrayList<TimedItem>();
+        parallelism = Runtime.getRuntime().availableProcessors();
     }
 
     /**
@@ -45,6 +76,76 @@ public class TimedItemManager implements TimedItem {
      */
     public void registerTimedItem(TimedItem timedItem) {
         timedItems.add(timedItem);
+        tickOrder = null;
+    }
+
+    /**
+     * Register a TimedItem that samples the state of other items, such that it
+     * is called on {@link TimedItemManager#oneSecond()} after every item
+     * registered with {@link TimedItemManager#registerTimedItem(TimedItem)}
+     * has been advanced.
+     *
+     * @param sampler a TimedItem to register with the manager
+     */
+    public void registerSampler(TimedItem sampler) {
+        samplers.add(sampler);
+        sampleOrder = null;
+    }
+
+    /**
+     * Removes a previously registered TimedItem or sampler so that it is no
+     * longer called on {@link TimedItemManager#oneSecond()}. Does nothing if
+     * the item is not registered.
+     *
+     * @param timedItem the TimedItem to remove
+     */
+    public void removeTimedItem(TimedItem timedItem) {
+        if (timedItems.remove(timedItem)) {
+            tickOrder = null;
+        }
+        if (samplers.remove(timedItem)) {
+            sampleOrder = null;
+        }
+    }
+
+    /**
+     * Returns the maximum number of threads used to advance timed items.
+     * @return the number of threads items are advanced on
+     */
+
+    public int getParallelism() {
+
+        return parallelism;
+    }
+
+    /**
+     * Sets the maximum number of threads used to advance timed items. A value
+     * of one advances every item on the calling thread.
+     * @param parallelism the number of threads to advance items on
+     * @throws IllegalArgumentException if parallelism is less than one
+     */
+
+    public void setParallelism(int parallelism) {
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException();
+        }
+        if (pool != null && parallelism != this.parallelism) {
+            pool.shutdown();
+            pool = null;
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of seconds that have been simulated, that is, the
+     * number of times {@code oneSecond()} has been called.
+     * @return the number of ticks performed so far
+     */
+
+    public long getTicks() {
+
+        return ticks;
     }
 
     /**
@@ -61,12 +162,84 @@ public class TimedItemManager implements TimedItem {
     }
 
     /**
-     * Calls {@code oneSecond()} on each registered {@link TimedItem}.
+     * Calls {@code oneSecond()} on each registered {@link TimedItem}, and then
+     * on each registered sampler.
+     * <p>
+     * Large numbers of items are advanced in parallel shards; this method
+     * returns once all of them have been advanced.
      * @ass1
      */
     public void oneSecond() {
-        for (TimedItem timedItem : timedItems) {
-            timedItem.oneSecond();
+        ticks++;
+        if (tickOrder == null) {
+            tickOrder = timedItems.toArray(new TimedItem[0]);
+        }
+        if (sampleOrder == null) {
+            sampleOrder = samplers.toArray(new TimedItem[0]);
+        }
+        advance(tickOrder);
+        advance(sampleOrder);
+    }
+
+    /**
+     * Calls {@code oneSecond()} on each of the given items, in parallel shards
+     * if there are enough of them.
+     * @param items the items to advance
+     */
+    private void advance(TimedItem[] items) {
+        if (parallelism == 1 || items.length < 2 * SHARD_SIZE) {
+            for (TimedItem timedItem : items) {
+                timedItem.oneSecond();
+            }
+            return;
+        }
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        pool.invoke(new Shard(items, 0, items.length));
+    }
+
+    /**
+     * A range of consecutive timed items, split in half until each part is no
+     * larger than {@link TimedItemManager#SHARD_SIZE}.
+     */
+    private static class Shard extends RecursiveAction {
+        /** Version of the serialised form */
+        private static final long serialVersionUID = 1L;
+        /** All registered items */
+        private final TimedItem[] items;
+        /** Index of the first item in this shard */
+        private final int start;
+        /** Index after the last item in this shard */
+        private final int end;
+
+        /**
+         * Creates a shard covering the given range of items.
+         * @param items all registered items
+         * @param start index of the first item in the shard
+         * @param end index after the last item in the shard
+         */
+        private Shard(TimedItem[] items, int start, int end) {
+            this.items = items;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Advances every item in this shard, splitting it first if it is too
+         * large.
+         */
+        @Override
+        protected void compute() {
+            if (end - start <= SHARD_SIZE) {
+                for (int i = start; i < end; i++) {
+                    items[i].oneSecond();
+                }
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new Shard(items, start, middle),
+                    new Shard(items, middle, end));
         }
     }
 }
@@ -90,4 +90,50 @@ public class AveragingCongestionCalculatorTest {
 
         Assert.assertEquals(53, cc.calculateCongestion());
     }
+
+    @Test
+    public void calculateCongestionAfterSensorChangeTest() {
+
+        ArrayList<Sensor> s = new ArrayList<>();
+        DemoPressurePad pp = new DemoPressurePad(new int[]{30, 40, 30}, 100);
+        s.add(pp);
+
+        CongestionCalculator cc = new AveragingCongestionCalculator(s);
+
+        Assert.assertEquals(30, cc.calculateCongestion());
+        pp.oneSecond();
+        Assert.assertEquals(40, cc.calculateCongestion());
+        Assert.assertEquals(40, cc.calculateCongestion());
+    }
+
+    @Test
+    public void calculateCongestionAfterSensorAddedTest() {
+
+        ArrayList<Sensor> s = new ArrayList<>();
+        s.add(new DemoPressurePad(new int[]{30, 40, 30}, 100));
+
+        CongestionCalculator cc = new AveragingCongestionCalculator(s);
+
+        Assert.assertEquals(30, cc.calculateCongestion());
+        s.add(new DemoSpeedCamera(new int[]{60, 40}, 100));
+        Assert.assertEquals(35, cc.calculateCongestion());
+    }
+
+    @Test
+    public void calculateCongestionAfterCloseTest() {
+
+        ArrayList<Sensor> s = new ArrayList<>();
+        DemoPressurePad pp = new DemoPressurePad(new int[]{30, 40, 30}, 100);
+        s.add(pp);
+
+        AveragingCongestionCalculator cc =
+                new AveragingCongestionCalculator(s);
+
+        Assert.assertEquals(30, cc.calculateCongestion());
+        cc.close();
+        pp.oneSecond();
+        Assert.assertEquals(40, cc.calculateCongestion());
+        s.add(new DemoPressurePad(new int[]{80, 50}, 100));
+        Assert.assertEquals(60, cc.calculateCongestion());
+    }
 }
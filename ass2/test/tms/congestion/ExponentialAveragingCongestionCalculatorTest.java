@@ -0,0 +1,53 @@
+package tms.congestion;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tms.sensors.DemoPressurePad;
+import tms.sensors.Sensor;
+
+import java.util.ArrayList;
+
+public class ExponentialAveragingCongestionCalculatorTest {
+
+    private DemoPressurePad pp;
+    private ExponentialAveragingCongestionCalculator cc;
+
+    @Before
+    public void setUp() {
+
+        ArrayList<Sensor> s = new ArrayList<>();
+        pp = new DemoPressurePad(new int[]{20, 60, 100}, 100);
+        s.add(pp);
+        cc = new ExponentialAveragingCongestionCalculator(s, 0.5);
+    }
+
+    private void tick() {
+
+        pp.oneSecond();
+        cc.oneSecond();
+    }
+
+    @Test
+    public void calculateCongestionBeforeFirstSampleTest() {
+
+        Assert.assertEquals(20, cc.calculateCongestion());
+    }
+
+    @Test
+    public void calculateCongestionTest() {
+
+        tick();
+        Assert.assertEquals(60, cc.calculateCongestion());
+        tick();
+        Assert.assertEquals(80, cc.calculateCongestion());
+        tick();
+        Assert.assertEquals(50, cc.calculateCongestion());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSmoothingFactorTest() {
+
+        new ExponentialAveragingCongestionCalculator(new ArrayList<>(), 0);
+    }
+}
@@ -0,0 +1,59 @@
+package tms.congestion;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tms.sensors.DemoPressurePad;
+import tms.sensors.Sensor;
+
+import java.util.ArrayList;
+
+public class SlidingWindowCongestionCalculatorTest {
+
+    private DemoPressurePad pp;
+    private SlidingWindowCongestionCalculator cc;
+
+    @Before
+    public void setUp() {
+
+        ArrayList<Sensor> s = new ArrayList<>();
+        pp = new DemoPressurePad(new int[]{10, 20, 60, 90}, 100);
+        s.add(pp);
+        cc = new SlidingWindowCongestionCalculator(s, 2);
+    }
+
+    private void tick() {
+
+        pp.oneSecond();
+        cc.oneSecond();
+    }
+
+    @Test
+    public void calculateCongestionBeforeFirstSampleTest() {
+
+        Assert.assertEquals(10, cc.calculateCongestion());
+    }
+
+    @Test
+    public void calculateCongestionPartialWindowTest() {
+
+        tick();
+        Assert.assertEquals(20, cc.calculateCongestion());
+    }
+
+    @Test
+    public void calculateCongestionFullWindowTest() {
+
+        tick();
+        tick();
+        Assert.assertEquals(40, cc.calculateCongestion());
+        tick();
+        Assert.assertEquals(75, cc.calculateCongestion());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidWindowTest() {
+
+        new SlidingWindowCongestionCalculator(new ArrayList<>(), 0);
+    }
+}
@@ -0,0 +1,92 @@
+package tms.display;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Compares building route button styles by formatting each congestion colour, as was done for every route on
+ * every frame, with looking them up in {@link CongestionPalette}.
+ * <p>
+ * This is not a JUnit test, run it directly with its main method. The number of routes styled per frame may
+ * be given as an argument, otherwise 100000 routes are styled.
+ */
+public class CongestionPaletteBenchmark {
+
+    /** Number of frames timed for each approach, after the same number of warm-up frames */
+    private static final int FRAMES = 50;
+
+    /**
+     * Runs the benchmark.
+     * @param args optional number of routes styled per frame
+     */
+    public static void main(String[] args) {
+
+        int routes = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int[] congestion = new int[routes];
+        for (int i = 0; i < routes; i++) {
+            congestion[i] = (i * 37) % 101;
+        }
+
+        run("formatted", congestion, true);
+        run("lookup   ", congestion, false);
+    }
+
+    /**
+     * Times styling every route, reporting the time and bytes allocated per route.
+     * @param name label for the approach
+     * @param congestion congestion level of each route
+     * @param format whether to format each colour rather than look it up
+     */
+    private static void run(String name, int[] congestion, boolean format) {
+
+        long checksum = 0;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            checksum += frame(congestion, format);
+        }
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int frame = 0; frame < FRAMES; frame++) {
+            checksum += frame(congestion, format);
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        long styled = (long) FRAMES * congestion.length;
+        System.out.printf("%s: %7.1f ns/route, %7.1f bytes/route (checksum %d)%n",
+                name, (double) nanos / styled, (double) allocated / styled, checksum);
+    }
+
+    /**
+     * Styles every route once.
+     * @param congestion congestion level of each route
+     * @param format whether to format each colour rather than look it up
+     * @return sum of the style lengths, so that the work is not optimised away
+     */
+    private static long frame(int[] congestion, boolean format) {
+
+        long length = 0;
+        for (int value : congestion) {
+            String style = format
+                    ? "-fx-background-color: " + CongestionPalette.computeColor(value) + ";" +
+                            "-fx-background-insets: 0, 1, 2;" + "-fx-border-color: #000000;" +
+                            "-fx-background-radius: 5, 4, 3;"
+                    : CongestionPalette.style(value, false);
+            length += style.length();
+        }
+        return length;
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread, or 0 if this cannot be measured.
+     * @return allocated bytes
+     */
+    private static long allocatedBytes() {
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
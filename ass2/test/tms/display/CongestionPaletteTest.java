@@ -0,0 +1,33 @@
+package tms.display;
+
+import javafx.scene.paint.Color;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CongestionPaletteTest {
+
+    @Test
+    public void hexMatchesComputedColourTest() {
+
+        for (int congestion = -10; congestion <= 150; congestion++) {
+            Assert.assertEquals(CongestionPalette.computeColor(congestion),
+                    CongestionPalette.hex(congestion));
+        }
+    }
+
+    @Test
+    public void colorTest() {
+
+        Assert.assertEquals(Color.web("#00FF00"), CongestionPalette.color(0));
+        Assert.assertEquals(Color.web("#FF0000"), CongestionPalette.color(100));
+    }
+
+    @Test
+    public void styleIsSharedTest() {
+
+        Assert.assertSame(CongestionPalette.style(50, false),
+                CongestionPalette.style(50, false));
+        Assert.assertTrue(CongestionPalette.style(50, true)
+                .startsWith("-fx-background-color: " + MainViewModel.getColor(50) + ";"));
+    }
+}
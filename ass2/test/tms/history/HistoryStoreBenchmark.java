@@ -0,0 +1,149 @@
+package tms.history;
+
+import tms.intersection.Intersection;
+import tms.network.Network;
+import tms.route.Route;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the time a {@link HistoryStore} takes to record every route of a
+ * grid network each tick, the space the history takes, and the time taken to
+ * query a short range of a long history.
+ * <p>
+ * This is not a JUnit test, run it directly with its main method. The number
+ * of intersections along each side of the grid and the number of ticks may be
+ * given as arguments, otherwise a grid of about 10000 intersections is
+ * recorded for an hour. A history file may be given as a third argument.
+ */
+
+public class HistoryStoreBenchmark {
+
+    /** Number of random range queries timed */
+    private static final int QUERIES = 2000;
+    /** Number of seconds covered by each query */
+    private static final int QUERY_LENGTH = 300;
+
+    /**
+     * Runs the benchmark.
+     * @param args optional grid side, number of ticks and history file
+     * @throws Exception if the grid was built incorrectly
+     */
+
+    public static void main(String[] args) throws Exception {
+
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 3600;
+        Network network = buildGrid(side);
+        List<Route> routes = new ArrayList<>();
+        for (Intersection intersection : network.getIntersections()) {
+            routes.addAll(intersection.getConnections());
+        }
+        // congestion that drifts slowly, as a sliding window average does
+        int[] congestion = new int[routes.size()];
+        Random random = new Random(1);
+        for (int i = 0; i < routes.size(); i++) {
+            int route = i;
+            routes.get(i).setCongestionCalculator(
+                    sensors -> () -> congestion[route]);
+        }
+        HistoryStore store;
+        if (args.length > 2) {
+            File file = new File(args[2]);
+            file.deleteOnExit();
+            store = new HistoryStore(network, file.getPath());
+        } else {
+            store = new HistoryStore(network);
+        }
+
+        long start = System.nanoTime();
+        long worst = 0;
+        for (int tick = 1; tick <= ticks; tick++) {
+            for (int i = 0; i < congestion.length; i++) {
+                if (random.nextInt(10) == 0) {
+                    congestion[i] = Math.max(0, Math.min(100,
+                            congestion[i] + random.nextInt(11) - 5));
+                }
+            }
+            long tickStart = System.nanoTime();
+            store.record(tick);
+            worst = Math.max(worst, System.nanoTime() - tickStart);
+        }
+        long samples = (long) ticks * routes.size();
+        System.out.printf("%d routes, %d ticks: %.3f ms per tick "
+                        + "(worst %.1f ms)%n", routes.size(), ticks,
+                (System.nanoTime() - start) / 1e6 / ticks, worst / 1e6);
+        System.out.printf("%d bytes stored, %.2f bytes per route sample "
+                        + "(24 uncompressed)%n", store.getStoredBytes(),
+                (double) store.getStoredBytes() / samples);
+
+        for (int round = 0; round < 2; round++) {
+            start = System.nanoTime();
+            long total = 0;
+            for (int query = 0; query < QUERIES; query++) {
+                Route route = routes.get(random.nextInt(routes.size()));
+                long from = 1 + random.nextInt(Math.max(1,
+                        ticks - QUERY_LENGTH));
+                Series series = store.query(route, Metric.CONGESTION, from,
+                        from + QUERY_LENGTH - 1);
+                total += series.size();
+            }
+            long range = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int query = 0; query < QUERIES / 10; query++) {
+                Route route = routes.get(random.nextInt(routes.size()));
+                total += store.query(route, Metric.CONGESTION,
+                        Long.MIN_VALUE, Long.MAX_VALUE).size();
+            }
+            long full = System.nanoTime() - start;
+            if (round == 1) {
+                System.out.printf("%d s range %8.3f us per query, "
+                                + "whole history %8.3f us per query "
+                                + "(%d samples)%n", QUERY_LENGTH,
+                        range / 1e3 / QUERIES, full / 1e3 / (QUERIES / 10),
+                        total);
+            }
+        }
+        store.close();
+    }
+
+    /**
+     * Builds a two-way grid network, with a traffic light on one route in
+     * four.
+     * @param side number of intersections along each side
+     * @return the grid network
+     * @throws Exception if the grid was built incorrectly
+     */
+
+    private static Network buildGrid(int side) throws Exception {
+
+        Network network = new Network();
+        for (int row = 0; row < side; row++) {
+            for (int column = 0; column < side; column++) {
+                String id = row + "," + column;
+                network.createIntersection(id);
+                if (column > 0) {
+                    String left = row + "," + (column - 1);
+                    network.connectIntersections(left, id, 50);
+                    network.makeTwoWay(left, id);
+                }
+                if (row > 0) {
+                    String up = (row - 1) + "," + column;
+                    network.connectIntersections(up, id, 60);
+                    network.makeTwoWay(up, id);
+                }
+            }
+        }
+        for (Intersection intersection : network.getIntersections()) {
+            for (Route route : intersection.getConnections()) {
+                if (route.getId().hashCode() % 4 == 0) {
+                    route.addTrafficLight();
+                }
+            }
+        }
+        return network;
+    }
+}
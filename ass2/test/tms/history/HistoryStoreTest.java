@@ -0,0 +1,166 @@
+package tms.history;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tms.network.Network;
+import tms.route.Route;
+import tms.route.TrafficSignal;
+
+import java.io.File;
+import java.util.Random;
+
+public class HistoryStoreTest {
+
+    private Network network;
+    private Route route;
+    private int[] congestion;
+    private HistoryStore store;
+
+    @Before
+    public void setUp() throws Exception {
+
+        network = new Network();
+        network.createIntersection("X");
+        network.createIntersection("Y");
+        network.connectIntersections("X", "Y", 60);
+        route = network.getConnection("X", "Y");
+        congestion = new int[1];
+        route.setCongestionCalculator(sensors -> () -> congestion[0]);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void recordsEachMetricTest() throws Exception {
+
+        store = new HistoryStore(network);
+        route.addSpeedSign(50);
+        congestion[0] = 10;
+        store.record(1);
+        route.addTrafficLight();
+        route.setSignal(TrafficSignal.GREEN);
+        route.setSpeedLimit(70);
+        congestion[0] = 30;
+        store.record(2);
+
+        Series series = store.query("X", "Y", Metric.CONGESTION, 0, 5);
+        Assert.assertEquals(2, series.size());
+        Assert.assertEquals(1, series.getTime(0));
+        Assert.assertEquals(10, series.getValue(0));
+        Assert.assertEquals(2, series.getTime(1));
+        Assert.assertEquals(30, series.getValue(1));
+        series = store.query(route, Metric.SPEED, 0, 5);
+        Assert.assertEquals(50, series.getValue(0));
+        Assert.assertEquals(70, series.getValue(1));
+        series = store.query(route, Metric.SIGNAL, 0, 5);
+        Assert.assertEquals(HistoryStore.NO_SIGNAL, series.getValue(0));
+        Assert.assertEquals(TrafficSignal.GREEN.ordinal(),
+                series.getValue(1));
+    }
+
+    @Test
+    public void rangeQueryTest() throws Exception {
+
+        store = new HistoryStore(network);
+        checkRanges();
+    }
+
+    @Test
+    public void mappedRangeQueryTest() throws Exception {
+
+        File file = File.createTempFile("history", ".bin");
+        file.deleteOnExit();
+        store = new HistoryStore(network, file.getPath());
+        checkRanges();
+        Assert.assertTrue(file.length() > 0);
+    }
+
+    private void checkRanges() throws Exception {
+
+        // several chunks of noisy values with runs, recorded every 3 seconds
+        int samples = 5 * Column.CHUNK_SIZE + 100;
+        int[] expected = new int[samples];
+        Random random = new Random(1);
+        for (int i = 0; i < samples; i++) {
+            if (random.nextInt(4) == 0) {
+                congestion[0] = random.nextInt(101);
+            }
+            expected[i] = congestion[0];
+            store.record(3L * i + 7);
+        }
+        Assert.assertEquals(samples, store.getSampleCount());
+
+        for (int query = 0; query < 200; query++) {
+            long start = random.nextInt(3 * samples + 20) - 10;
+            long end = start + random.nextInt(3 * 3 * Column.CHUNK_SIZE);
+            Series series = store.query(route, Metric.CONGESTION, start, end);
+            int count = 0;
+            for (int i = 0; i < samples; i++) {
+                long time = 3L * i + 7;
+                if (time >= start && time <= end) {
+                    Assert.assertEquals(time, series.getTime(count));
+                    Assert.assertEquals(expected[i], series.getValue(count));
+                    count++;
+                }
+            }
+            Assert.assertEquals(count, series.size());
+        }
+        Assert.assertEquals(samples, store.query(route, Metric.CONGESTION,
+                Long.MIN_VALUE, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void addedRouteTest() throws Exception {
+
+        store = new HistoryStore(network);
+        store.record(1);
+        store.record(2);
+        network.connectIntersections("Y", "X", 40);
+        store.record(3);
+
+        Series series = store.query("Y", "X", Metric.SPEED, 0, 10);
+        Assert.assertEquals(1, series.size());
+        Assert.assertEquals(3, series.getTime(0));
+        Assert.assertEquals(40, series.getValue(0));
+        Assert.assertEquals(3, store.query(route, Metric.SPEED, 0, 10).size());
+    }
+
+    @Test
+    public void constantSeriesIsCompressedTest() throws Exception {
+
+        store = new HistoryStore(network);
+        congestion[0] = 42;
+        int samples = 10 * Column.CHUNK_SIZE;
+        for (int i = 0; i < samples; i++) {
+            store.record(i);
+        }
+        // four columns of eight bytes a sample if uncompressed
+        Assert.assertTrue(store.getStoredBytes() < samples / 10);
+        Series series = store.query(route, Metric.CONGESTION, 5000, 5009);
+        Assert.assertEquals(10, series.size());
+        Assert.assertEquals(42, series.getValue(9));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timeMustIncreaseTest() throws Exception {
+
+        store = new HistoryStore(network);
+        store.record(5);
+        store.record(5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unrecordedRouteTest() throws Exception {
+
+        store = new HistoryStore(network);
+        store.query(route, Metric.SPEED, 0, 10);
+    }
+}
@@ -0,0 +1,140 @@
+package tms.intersection;
+
+import tms.network.Network;
+import tms.network.NetworkInitialiser;
+import tms.route.Route;
+import tms.route.TrafficSignal;
+import tms.sensors.DemoPressurePad;
+import tms.util.TimedItemManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the average queue length and delay at the traffic lights of the
+ * demo network with fixed and with adaptive timing.
+ * <p>
+ * This is not a JUnit test, run it directly with its main method. Vehicles
+ * are modelled as a fluid that arrives at each lit route at a rate given by
+ * the route's congestion and leaves at the saturation flow while the route's
+ * light is green. Each scenario gives the incoming routes of the demo
+ * network's lights a pressure pad with the scenario's data.
+ */
+
+public class AdaptiveTimingBenchmark {
+
+    /** Arrival rate in vehicles per second at a route with 100% congestion */
+    private static final double MAX_ARRIVALS = 0.3;
+    /** Departure rate in vehicles per second of a queue at a green light */
+    private static final double SATURATION_FLOW = 0.5;
+    /** Duration in seconds of each route's turn with fixed timing */
+    private static final int DURATION = 20;
+    /** Number of seconds simulated for each scenario */
+    private static final int SECONDS = 3600;
+    /** Adaptive timing settings compared with fixed timing */
+    private static final AdaptiveTiming ADAPTIVE = new AdaptiveTiming(5, 40, 2);
+
+    /**
+     * Runs each scenario with fixed and with adaptive timing.
+     * @param args unused
+     * @throws Exception if the demo network could not be loaded
+     */
+
+    public static void main(String[] args) throws Exception {
+
+        int[][] balanced = {
+                {5, 6, 4, 5, 6, 5, 4, 6}, {6, 5, 5, 4, 5, 6, 6, 4}};
+        int[][] unbalanced = {
+                {8, 9, 8, 7, 9, 8, 9, 8}, {1, 2, 1, 1, 2, 1, 0, 1}};
+        int[][] tidal = {shift(9, 1, 600), shift(1, 9, 600)};
+        run("balanced", balanced);
+        run("unbalanced", unbalanced);
+        run("tidal", tidal);
+    }
+
+    /**
+     * Returns pressure pad data that reads one value for the given number of
+     * seconds and then another value for as long again.
+     * @param first the value read first
+     * @param second the value read after that
+     * @param period number of seconds each value is read for
+     * @return the pressure pad data
+     */
+
+    private static int[] shift(int first, int second, int period) {
+
+        int[] data = new int[2 * period];
+        Arrays.fill(data, 0, period, first);
+        Arrays.fill(data, period, 2 * period, second);
+        return data;
+    }
+
+    /**
+     * Runs a scenario with fixed and then with adaptive timing.
+     * @param name name of the scenario
+     * @param data pressure pad data for each route into a lit intersection,
+     *             in the order the routes turn green
+     * @throws Exception if the demo network could not be loaded
+     */
+
+    private static void run(String name, int[][] data) throws Exception {
+
+        System.out.println(name);
+        simulate(data, null);
+        simulate(data, ADAPTIVE);
+    }
+
+    /**
+     * Loads the demo network, gives each of its lights the given timing, then
+     * simulates the queues at the lights and prints their average length and
+     * the average delay per vehicle.
+     * @param data pressure pad data for each route into a lit intersection
+     * @param adaptive adaptive timing settings, or null for fixed timing
+     * @throws Exception if the demo network could not be loaded
+     */
+
+    private static void simulate(int[][] data, AdaptiveTiming adaptive)
+            throws Exception {
+
+        Network network = NetworkInitialiser.loadNetwork("networks/demo.txt");
+        List<Route> lit = new ArrayList<>();
+        for (Intersection intersection : network.getIntersections()) {
+            if (!intersection.hasTrafficLights()) {
+                continue;
+            }
+            List<Route> order = new ArrayList<>(intersection.getConnections());
+            for (int i = 0; i < order.size(); i++) {
+                Route route = order.get(i);
+                DemoPressurePad pad = new DemoPressurePad(
+                        data[i % data.length], 10);
+                route.setCongestionCalculator(sensors -> pad::getCongestion);
+                lit.add(route);
+            }
+            intersection.addTrafficLights(order, network.getYellowTime(),
+                    DURATION, adaptive);
+        }
+
+        TimedItemManager manager = TimedItemManager.getTimedItemManager();
+        double[] queues = new double[lit.size()];
+        double queued = 0;
+        double arrived = 0;
+        for (int second = 0; second < SECONDS; second++) {
+            manager.oneSecond();
+            for (int i = 0; i < queues.length; i++) {
+                Route route = lit.get(i);
+                double arrivals = MAX_ARRIVALS * route.getCongestion() / 100;
+                queues[i] += arrivals;
+                arrived += arrivals;
+                if (route.getTrafficLight().getSignal()
+                        == TrafficSignal.GREEN) {
+                    queues[i] = Math.max(0, queues[i] - SATURATION_FLOW);
+                }
+                queued += queues[i];
+            }
+        }
+        System.out.printf("  %-9s %6.2f vehicles queued, %6.1f s delay/vehicle%n",
+                adaptive == null ? "fixed" : "adaptive",
+                queued / SECONDS / lit.size(), queued / arrived);
+    }
+}
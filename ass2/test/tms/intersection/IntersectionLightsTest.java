@@ -3,10 +3,15 @@ package tms.intersection;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.Assert;
+import tms.network.Network;
 import tms.route.Route;
 import tms.route.TrafficSignal;
+import tms.sensors.DemoPressurePad;
+import tms.util.TimedItemManager;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 public class IntersectionLightsTest {
     private ArrayList<Route> routes;
@@ -109,6 +114,315 @@ public class IntersectionLightsTest {
                 .getSignal());
     }
 
+    @Test
+    public void advanceMatchesOneSecondTest() {
+
+        ArrayList<Route> stepped = new ArrayList<>();
+        Route a = new Route("A", intersectionTest, 60);
+        a.addTrafficLight();
+        stepped.add(a);
+        Route b = new Route("B", intersectionTest2, 60);
+        b.addTrafficLight();
+        stepped.add(b);
+        IntersectionLights steppedLights = new IntersectionLights(stepped, 4,
+                8);
+
+        for (int i = 1; i <= 50; i++) {
+            steppedLights.oneSecond();
+            lights.advance(1);
+            Assert.assertEquals(a.getTrafficLight().getSignal(),
+                    r.getTrafficLight().getSignal());
+            Assert.assertEquals(b.getTrafficLight().getSignal(),
+                    r2.getTrafficLight().getSignal());
+        }
+    }
+
+    @Test
+    public void advanceJumpsAheadTest() {
+
+        lights.advance(1000000000L * 16 + 9);
+        Assert.assertEquals(TrafficSignal.RED, r.getTrafficLight().getSignal());
+        Assert.assertEquals(TrafficSignal.GREEN,
+                r2.getTrafficLight().getSignal());
+    }
+
+    @Test
+    public void getSignalAtHistoryTest() {
+
+        long start = lights.getTime();
+        for (int i = 0; i < 20; i++) {
+            lights.oneSecond();
+        }
+        lights.setDuration(6);
+        for (int i = 0; i < 20; i++) {
+            lights.oneSecond();
+        }
+
+        Assert.assertEquals(TrafficSignal.GREEN, lights.getSignalAt(r, start));
+        Assert.assertEquals(TrafficSignal.YELLOW,
+                lights.getSignalAt(r, start + 4));
+        Assert.assertEquals(TrafficSignal.RED, lights.getSignalAt(r, start + 8));
+        Assert.assertEquals(TrafficSignal.GREEN,
+                lights.getSignalAt(r2, start + 9));
+        // after 20 seconds route W is yellow, and gets green again after the
+        // new duration was set
+        Assert.assertEquals(TrafficSignal.YELLOW,
+                lights.getSignalAt(r, start + 20));
+        Assert.assertEquals(TrafficSignal.GREEN,
+                lights.getSignalAt(r, start + 21));
+        Assert.assertEquals(TrafficSignal.YELLOW,
+                lights.getSignalAt(r, start + 23));
+        Assert.assertEquals(TrafficSignal.GREEN,
+                lights.getSignalAt(r2, start + 27));
+        Assert.assertEquals(r2.getTrafficLight().getSignal(),
+                lights.getSignalAt(r2, lights.getTime()));
+    }
+
+    @Test
+    public void connectedRouteKeepsHistoryTest() {
+
+        long start = lights.getTime();
+        lights.advance(19);
+        TrafficSignal[] history = new TrafficSignal[20];
+        for (int i = 0; i < history.length; i++) {
+            history[i] = lights.getSignalAt(r, start + i);
+        }
+        Route r3 = new Route("V", new Intersection("V"), 40);
+        r3.addTrafficLight();
+        routes.add(r3);
+        lights.advance(30);
+
+        for (int i = 0; i < history.length; i++) {
+            Assert.assertEquals(history[i], lights.getSignalAt(r, start + i));
+            Assert.assertEquals(TrafficSignal.RED,
+                    lights.getSignalAt(r3, start + i));
+        }
+        // route W's turn carries on, then the new route V follows route Y
+        Assert.assertEquals(TrafficSignal.YELLOW,
+                lights.getSignalAt(r, start + 20));
+        Assert.assertEquals(TrafficSignal.GREEN,
+                lights.getSignalAt(r2, start + 25));
+        Assert.assertEquals(TrafficSignal.GREEN,
+                lights.getSignalAt(r3, start + 33));
+        Assert.assertEquals(TrafficSignal.GREEN,
+                lights.getSignalAt(r, start + 41));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getSignalAtBeforeCreationTest() {
+
+        lights.getSignalAt(r, lights.getTime() - 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getSignalAtUnknownRouteTest() {
+
+        lights.getSignalAt(new Route("Q", intersectionTest, 60),
+                lights.getTime());
+    }
+
+    @Test
+    public void adaptiveSharesGreenByCongestionTest() throws Exception {
+
+        ArrayList<Route> adaptiveRoutes = new ArrayList<>();
+        Route a = new Route("A", intersectionTest, 60);
+        a.addTrafficLight();
+        a.addSensor(new DemoPressurePad(new int[]{9}, 10));
+        adaptiveRoutes.add(a);
+        Route b = new Route("B", intersectionTest2, 60);
+        b.addTrafficLight();
+        b.addSensor(new DemoPressurePad(new int[]{3}, 10));
+        adaptiveRoutes.add(b);
+        IntersectionLights adaptiveLights = new IntersectionLights(
+                adaptiveRoutes, 2, 10, new AdaptiveTiming(2, 20, 0));
+
+        // the 14 seconds of green per cycle are shared 11 to 3
+        adaptiveLights.advance(11);
+        Assert.assertEquals(TrafficSignal.GREEN, a.getTrafficLight()
+                .getSignal());
+        adaptiveLights.advance(1);
+        Assert.assertEquals(TrafficSignal.YELLOW, a.getTrafficLight()
+                .getSignal());
+        adaptiveLights.advance(3);
+        Assert.assertEquals(TrafficSignal.GREEN, b.getTrafficLight()
+                .getSignal());
+        adaptiveLights.advance(3);
+        Assert.assertEquals(TrafficSignal.GREEN, b.getTrafficLight()
+                .getSignal());
+        adaptiveLights.advance(1);
+        Assert.assertEquals(TrafficSignal.YELLOW, b.getTrafficLight()
+                .getSignal());
+    }
+
+    @Test
+    public void adaptiveSetDurationKeepsTurnTest() throws Exception {
+
+        ArrayList<Route> adaptiveRoutes = new ArrayList<>();
+        Route a = new Route("A", intersectionTest, 60);
+        a.addTrafficLight();
+        a.addSensor(new DemoPressurePad(new int[]{9}, 10));
+        adaptiveRoutes.add(a);
+        Route b = new Route("B", intersectionTest2, 60);
+        b.addTrafficLight();
+        b.addSensor(new DemoPressurePad(new int[]{3}, 10));
+        adaptiveRoutes.add(b);
+        IntersectionLights adaptiveLights = new IntersectionLights(
+                adaptiveRoutes, 2, 10, new AdaptiveTiming(2, 20, 0));
+        long start = adaptiveLights.getTime();
+
+        adaptiveLights.advance(5);
+        adaptiveLights.setDuration(20);
+        adaptiveLights.advance(20);
+        // route A finishes its turn of 11 seconds of green, then route B
+        // gets its share of the 34 seconds of green of the new cycle
+        Assert.assertEquals(20, adaptiveLights.getDuration());
+        Assert.assertEquals(TrafficSignal.GREEN,
+                adaptiveLights.getSignalAt(a, start + 11));
+        Assert.assertEquals(TrafficSignal.YELLOW,
+                adaptiveLights.getSignalAt(a, start + 12));
+        Assert.assertEquals(TrafficSignal.GREEN,
+                adaptiveLights.getSignalAt(b, start + 23));
+        Assert.assertEquals(TrafficSignal.YELLOW,
+                adaptiveLights.getSignalAt(b, start + 24));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void adaptiveSetGreenStartTest() throws Exception {
+
+        ArrayList<Route> adaptiveRoutes = new ArrayList<>(routes);
+        IntersectionLights adaptiveLights = new IntersectionLights(
+                adaptiveRoutes, 2, 10, new AdaptiveTiming(2, 20, 0));
+
+        adaptiveLights.setGreenStart(r2, adaptiveLights.getTime() + 5);
+    }
+
+    @Test
+    public void adaptiveHistoryIsBoundedTest() throws Exception {
+
+        ArrayList<Route> adaptiveRoutes = new ArrayList<>();
+        Route a = new Route("A", intersectionTest, 60);
+        a.addTrafficLight();
+        a.addSensor(new DemoPressurePad(new int[]{9}, 10));
+        adaptiveRoutes.add(a);
+        Route b = new Route("B", intersectionTest2, 60);
+        b.addTrafficLight();
+        b.addSensor(new DemoPressurePad(new int[]{3}, 10));
+        adaptiveRoutes.add(b);
+        IntersectionLights adaptiveLights = new IntersectionLights(
+                adaptiveRoutes, 2, 10, new AdaptiveTiming(2, 20, 0));
+        long history = IntersectionLights.SIGNAL_HISTORY;
+        TrafficSignal[] signals = new TrafficSignal[(int) history + 1];
+
+        // turns of 14 and 6 seconds, so 8 hours take almost 3000 plans
+        adaptiveLights.advance(7 * history);
+        for (int i = 0; i < signals.length; i++) {
+            signals[i] = a.getTrafficLight().getSignal();
+            adaptiveLights.advance(1);
+        }
+        Assert.assertTrue(adaptiveLights.getPlanCount()
+                < 2 * (history / 6 + 2));
+        long now = adaptiveLights.getTime();
+        Assert.assertEquals(now - history, adaptiveLights.getEarliestTime());
+        for (int i = 1; i < signals.length; i++) {
+            Assert.assertEquals(signals[i], adaptiveLights.getSignalAt(a,
+                    now - signals.length + i));
+        }
+        try {
+            adaptiveLights.getSignalAt(a, now - history - 1);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // older signals are no longer kept
+        }
+    }
+
+    @Test
+    public void adaptiveSkipsUncongestedRouteTest() throws Exception {
+
+        ArrayList<Route> adaptiveRoutes = new ArrayList<>();
+        Route a = new Route("A", intersectionTest, 60);
+        a.addTrafficLight();
+        a.addSensor(new DemoPressurePad(new int[]{5}, 10));
+        adaptiveRoutes.add(a);
+        Route b = new Route("B", intersectionTest2, 60);
+        b.addTrafficLight();
+        adaptiveRoutes.add(b);
+        IntersectionLights adaptiveLights = new IntersectionLights(
+                adaptiveRoutes, 1, 6, new AdaptiveTiming(2, 10, 1));
+        long start = adaptiveLights.getTime();
+
+        adaptiveLights.advance(21);
+
+        // route B is skipped once, then gets the minimum green time
+        Assert.assertEquals(TrafficSignal.GREEN,
+                adaptiveLights.getSignalAt(a, start + 11));
+        Assert.assertEquals(TrafficSignal.RED,
+                adaptiveLights.getSignalAt(b, start + 11));
+        Assert.assertEquals(TrafficSignal.GREEN, b.getTrafficLight()
+                .getSignal());
+        Assert.assertEquals(TrafficSignal.YELLOW,
+                adaptiveLights.getSignalAt(b, start + 23));
+    }
+
+    @Test
+    public void adaptiveParallelTickMatchesSequentialTest() throws Exception {
+
+        TimedItemManager manager = TimedItemManager.getTimedItemManager();
+        try {
+            manager.setParallelism(1);
+            TrafficSignal[][] sequential = runAdaptiveNetwork(manager);
+            manager.setParallelism(4);
+            TrafficSignal[][] parallel = runAdaptiveNetwork(manager);
+            for (int tick = 0; tick < sequential.length; tick++) {
+                Assert.assertArrayEquals(sequential[tick], parallel[tick]);
+            }
+        } finally {
+            manager.setParallelism(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    private TrafficSignal[][] runAdaptiveNetwork(TimedItemManager manager)
+            throws Exception {
+
+        // 400 adaptive lights followed by 1200 pressure pads, so that the
+        // lights and the pads they read are advanced in different shards
+        Network network = new Network();
+        List<Route> lit = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            String hub = "H" + i;
+            network.createIntersection(hub);
+            for (int j = 0; j < 3; j++) {
+                network.createIntersection(hub + "-" + j);
+                network.connectIntersections(hub + "-" + j, hub, 60);
+            }
+            Intersection intersection = network.findIntersection(hub);
+            lit.addAll(intersection.getConnections());
+            intersection.addTrafficLights(intersection.getConnections(), 1,
+                    6, new AdaptiveTiming(2, 12, 1));
+        }
+        Random random = new Random(1);
+        for (Route route : lit) {
+            int[] data = new int[5 + random.nextInt(3)];
+            for (int k = 0; k < data.length; k++) {
+                data[k] = random.nextInt(11);
+            }
+            route.addSensor(new DemoPressurePad(data, 10));
+        }
+        TrafficSignal[][] signals = new TrafficSignal[200][lit.size()];
+        for (TrafficSignal[] tick : signals) {
+            manager.oneSecond();
+            for (int i = 0; i < tick.length; i++) {
+                tick[i] = lit.get(i).getTrafficLight().getSignal();
+            }
+        }
+        return signals;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void adaptiveTimingInvalidGreenTest() {
+
+        new AdaptiveTiming(5, 4, 0);
+    }
+
     @Test
     public void toStringTest() {
 
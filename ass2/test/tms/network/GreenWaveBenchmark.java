@@ -0,0 +1,137 @@
+package tms.network;
+
+import tms.route.Route;
+import tms.route.TrafficSignal;
+import tms.util.TimedItemManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the number of stops and the delay of vehicles travelling along a
+ * corridor of traffic lights with and without a coordinated green wave.
+ * <p>
+ * This is not a JUnit test, run it directly with its main method. Vehicles
+ * leave the first intersection at a steady rate while the simulation is
+ * ticked one second at a time, and wait at any light that is not green when
+ * they arrive.
+ */
+
+public class GreenWaveBenchmark {
+
+    /** Number of intersections along the corridor */
+    private static final int LENGTH = 10;
+    /** Distance in metres between consecutive intersections */
+    private static final int SPACING = 300;
+    /** Speed limit in km/h of the corridor routes */
+    private static final int SPEED = 60;
+    /** Green and yellow time in seconds of each route at each light */
+    private static final int DURATION = 30;
+    /** Seconds between vehicles leaving the first intersection */
+    private static final int HEADWAY = 2;
+    /** Number of vehicles sent along the corridor */
+    private static final int VEHICLES = 300;
+
+    /**
+     * Runs the comparison.
+     * @param args unused
+     * @throws Exception if the corridor was built incorrectly
+     */
+
+    public static void main(String[] args) throws Exception {
+
+        run(false);
+        run(true);
+    }
+
+    /**
+     * Builds a corridor, optionally coordinates it, then sends vehicles along
+     * it and prints the average number of stops and delay per vehicle.
+     * @param coordinate whether to coordinate the corridor's lights
+     * @throws Exception if the corridor was built incorrectly
+     */
+
+    private static void run(boolean coordinate) throws Exception {
+
+        Network network = new Network();
+        network.setYellowTime(3);
+        List<String> corridor = new ArrayList<>();
+        for (int i = 0; i < LENGTH; i++) {
+            String id = "C" + i;
+            network.createIntersection(id);
+            network.findIntersection(id).setPosition(SPACING * i, 0);
+            corridor.add(id);
+            if (i > 0) {
+                String cross = "X" + i;
+                network.createIntersection(cross);
+                network.connectIntersections(corridor.get(i - 1), id, SPEED);
+                network.connectIntersections(cross, id, SPEED);
+                network.addLights(id, DURATION,
+                        Arrays.asList(cross, corridor.get(i - 1)));
+            }
+        }
+        Route[] routes = new Route[LENGTH];
+        for (int i = 1; i < LENGTH; i++) {
+            routes[i] = network.getConnection(corridor.get(i - 1),
+                    corridor.get(i));
+        }
+        if (coordinate) {
+            network.coordinateCorridor(corridor);
+        }
+
+        TimedItemManager manager = TimedItemManager.getTimedItemManager();
+        long start = manager.getTicks();
+        int[] next = new int[VEHICLES];
+        double[] arrival = new double[VEHICLES];
+        boolean[] waiting = new boolean[VEHICLES];
+        long[] departed = new long[VEHICLES];
+        long[] finished = new long[VEHICLES];
+        int stops = 0;
+        int done = 0;
+        int sent = 0;
+        while (done < VEHICLES) {
+            manager.oneSecond();
+            long now = manager.getTicks();
+            if (sent < VEHICLES && (now - start - 1) % HEADWAY == 0) {
+                next[sent] = 1;
+                departed[sent] = now;
+                arrival[sent] = now + routes[1].getTravelTime();
+                sent++;
+            }
+            for (int v = 0; v < sent; v++) {
+                while (next[v] < LENGTH && arrival[v] < now + 0.5) {
+                    Route route = routes[next[v]];
+                    if (route.getTrafficLight().getSignal()
+                            != TrafficSignal.GREEN) {
+                        if (!waiting[v]) {
+                            stops++;
+                            waiting[v] = true;
+                        }
+                        break;
+                    }
+                    waiting[v] = false;
+                    if (++next[v] == LENGTH) {
+                        finished[v] = now;
+                        done++;
+                    } else {
+                        arrival[v] = Math.max(arrival[v], now)
+                                + routes[next[v]].getTravelTime();
+                    }
+                }
+            }
+        }
+
+        double freeFlow = 0;
+        for (int i = 1; i < LENGTH; i++) {
+            freeFlow += routes[i].getTravelTime();
+        }
+        double delay = 0;
+        for (int v = 0; v < VEHICLES; v++) {
+            delay += finished[v] - departed[v] - freeFlow;
+        }
+        System.out.printf("%-13s %5.2f stops/vehicle, %6.1f s delay/vehicle%n",
+                coordinate ? "coordinated" : "uncoordinated",
+                (double) stops / VEHICLES, delay / VEHICLES);
+    }
+}
@@ -0,0 +1,85 @@
+package tms.network;
+
+import tms.util.IntersectionNotFoundException;
+
+import java.util.Random;
+
+/**
+ * Measures the time taken to build large networks and to look up
+ * intersections within them.
+ * <p>
+ * This is not a JUnit test, run it directly with its main method. The network
+ * sizes to measure may be given as arguments, otherwise 10000, 50000 and
+ * 100000 intersections are measured.
+ */
+
+public class NetworkBenchmark {
+
+    /** Number of random lookups timed for each network size */
+    private static final int LOOKUPS = 1_000_000;
+    /** Number of routes created into each intersection */
+    private static final int ROUTES_PER_INTERSECTION = 2;
+
+    /**
+     * Runs the benchmark for each network size.
+     * @param args optional list of network sizes to measure
+     * @throws IntersectionNotFoundException if the network was built
+     * incorrectly
+     */
+
+    public static void main(String[] args) throws IntersectionNotFoundException {
+
+        int[] sizes = {10_000, 50_000, 100_000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    /**
+     * Builds a ring-shaped network of the given size, then times random
+     * intersection lookups and route lookups on it.
+     * @param size number of intersections in the network
+     * @throws IntersectionNotFoundException if the network was built
+     * incorrectly
+     */
+
+    private static void run(int size) throws IntersectionNotFoundException {
+
+        String[] ids = new String[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = "I" + i;
+        }
+
+        long start = System.nanoTime();
+        Network network = new Network();
+        for (String id : ids) {
+            network.createIntersection(id);
+        }
+        for (int i = 0; i < size; i++) {
+            for (int j = 1; j <= ROUTES_PER_INTERSECTION; j++) {
+                network.connectIntersections(ids[(i + j) % size], ids[i], 60);
+            }
+        }
+        long loadNanos = System.nanoTime() - start;
+
+        Random random = new Random(size);
+        int found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (network.findIntersection(ids[random.nextInt(size)]) != null) {
+                found++;
+            }
+        }
+        long lookupNanos = System.nanoTime() - start;
+
+        System.out.printf("%7d intersections: load %8.1f ms, lookup %6.1f ns"
+                        + " (%d found)%n", size, loadNanos / 1e6,
+                (double) lookupNanos / LOOKUPS, found);
+    }
+}
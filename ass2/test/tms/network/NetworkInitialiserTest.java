@@ -9,8 +9,12 @@ import tms.sensors.DemoPressurePad;
 import tms.sensors.Sensor;
 import tms.util.DuplicateSensorException;
 import tms.util.IntersectionNotFoundException;
+import tms.util.InvalidNetworkException;
 import tms.util.RouteNotFoundException;
 
+import java.io.IOException;
+import java.io.StringReader;
+
 
 public class NetworkInitialiserTest {
 
@@ -76,4 +80,69 @@ public class NetworkInitialiserTest {
 
         network.connectIntersections("Y", "B", 60);
     }
+    @Test
+    public void checkSpeedSignLoaded() throws IntersectionNotFoundException,
+            RouteNotFoundException {
+
+        Assert.assertTrue(network.getConnection("Z", "Y").hasSpeedSign());
+        Assert.assertEquals(80, network.getConnection("Z", "Y").getSpeed());
+    }
+    @Test
+    public void checkInvalidLineNumber() throws IOException {
+
+        try {
+            NetworkInitialiser.loadNetwork(new StringReader(
+                    "; comment\n2\n1\n1\nA\nB\nA:C:60:0\n"));
+            Assert.fail();
+        } catch (InvalidNetworkException e) {
+            Assert.assertTrue(e.getMessage().startsWith("line 7:"));
+        }
+    }
+    @Test(expected = IOException.class)
+    public void checkInvalidNumber() throws IOException,
+            InvalidNetworkException {
+
+        NetworkInitialiser.loadNetwork(new StringReader(
+                "1\n0\none\nA\n"));
+    }
+    @Test(expected = InvalidNetworkException.class)
+    public void checkEmptyLine() throws IOException, InvalidNetworkException {
+
+        NetworkInitialiser.loadNetwork(new StringReader("1\n0\n1\n\nA\n"));
+    }
+    @Test(expected = InvalidNetworkException.class)
+    public void checkTrailingEmptyLine() throws IOException,
+            InvalidNetworkException {
+
+        NetworkInitialiser.loadNetwork(new StringReader(
+                "2\n1\n1\nA\nB\nA:B:60:0\n\n"));
+    }
+    @Test
+    public void checkPositionsLoaded() throws Exception {
+
+        Network positioned = NetworkInitialiser.loadNetwork(new StringReader(
+                "2\n1\n1\nA\nB\nA:B:60:0\nA:1.5:-20\n"));
+        Intersection a = positioned.findIntersection("A");
+        Assert.assertTrue(a.hasPosition());
+        Assert.assertEquals(1.5, a.getX(), 0);
+        Assert.assertEquals(-20, a.getY(), 0);
+        Assert.assertFalse(positioned.findIntersection("B").hasPosition());
+        Assert.assertFalse(network.findIntersection("X").hasPosition());
+    }
+    @Test
+    public void checkPositionsRoundTrip() throws Exception {
+
+        network.findIntersection("W").setPosition(10, 20.25);
+        Network loaded = NetworkInitialiser.loadNetwork(
+                new StringReader(network.toString()));
+        Assert.assertEquals(network.toString(), loaded.toString());
+        Assert.assertEquals(20.25, loaded.findIntersection("W").getY(), 0);
+    }
+    @Test(expected = InvalidNetworkException.class)
+    public void checkPositionOfMissingIntersection() throws IOException,
+            InvalidNetworkException {
+
+        NetworkInitialiser.loadNetwork(new StringReader(
+                "1\n0\n1\nA\nB:1:2\n"));
+    }
 }
@@ -0,0 +1,102 @@
+package tms.network;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tms.util.InvalidNetworkException;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class NetworkSnapshotTest {
+
+    private Network network;
+    private File snapshot;
+
+    @Before
+    public void setUp() throws Exception {
+
+        network = NetworkInitialiser.loadNetwork("networks/demo.txt");
+        snapshot = File.createTempFile("network",
+                NetworkSnapshot.FILE_EXTENSION);
+    }
+
+    @After
+    public void tearDown() {
+
+        snapshot.delete();
+    }
+
+    @Test
+    public void isSnapshotTest() {
+
+        Assert.assertTrue(NetworkSnapshot.isSnapshot(snapshot.getPath()));
+        Assert.assertFalse(NetworkSnapshot.isSnapshot("networks/demo.txt"));
+    }
+
+    @Test
+    public void roundTripTest() throws Exception {
+
+        NetworkSnapshot.save(network, snapshot.getPath());
+        Network loaded = NetworkSnapshot.load(snapshot.getPath());
+        Assert.assertEquals(network.toString(), loaded.toString());
+    }
+
+    @Test
+    public void roundTripKeepsPositionsTest() throws Exception {
+
+        network.findIntersection("X").setPosition(-3.5, 7);
+        NetworkSnapshot.save(network, snapshot.getPath());
+        Network loaded = NetworkSnapshot.load(snapshot.getPath());
+        Assert.assertEquals(-3.5, loaded.findIntersection("X").getX(), 0);
+        Assert.assertEquals(7, loaded.findIntersection("X").getY(), 0);
+        Assert.assertFalse(loaded.findIntersection("W").hasPosition());
+    }
+
+    @Test
+    public void roundTripKeepsLightsTest() throws Exception {
+
+        NetworkSnapshot.save(network, snapshot.getPath());
+        Network loaded = NetworkSnapshot.load(snapshot.getPath());
+        Assert.assertTrue(loaded.findIntersection("Y").hasTrafficLights());
+        Assert.assertEquals("Y:3:Z,X", loaded.findIntersection("Y")
+                .toString());
+    }
+
+    @Test(expected = InvalidNetworkException.class)
+    public void loadTextFileTest() throws IOException,
+            InvalidNetworkException {
+
+        try (FileWriter writer = new FileWriter(snapshot)) {
+            writer.write(network.toString());
+        }
+        NetworkSnapshot.load(snapshot.getPath());
+    }
+
+    @Test(expected = InvalidNetworkException.class)
+    public void negativeCountTest() throws Exception {
+
+        NetworkSnapshot.save(network, snapshot.getPath());
+        writeHeader(3, -1);
+        NetworkSnapshot.load(snapshot.getPath());
+    }
+
+    @Test(expected = InvalidNetworkException.class)
+    public void hugeCountTest() throws Exception {
+
+        NetworkSnapshot.save(network, snapshot.getPath());
+        writeHeader(4, Integer.MAX_VALUE);
+        NetworkSnapshot.load(snapshot.getPath());
+    }
+
+    private void writeHeader(int index, int value) throws IOException {
+
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.seek(4L * index);
+            file.writeInt(Integer.reverseBytes(value));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package tms.network;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tms.intersection.AdaptiveTiming;
+import tms.intersection.Intersection;
+import tms.intersection.IntersectionLights;
+import tms.route.Route;
+import tms.route.TrafficSignal;
+import tms.sensors.DemoPressurePad;
+import tms.sensors.DemoVehicleCount;
+import tms.util.IntersectionNotFoundException;
+import tms.util.RouteNotFoundException;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class NetworkTest {
+
+    private Network network;
+
+    @Before
+    public void setUp() {
+
+        network = new Network();
+        network.createIntersection("C");
+        network.createIntersection("A");
+        network.createIntersection("B");
+    }
+
+    @Test
+    public void getIntersectionsKeepsCreationOrderTest() {
+
+        List<Intersection> intersections = network.getIntersections();
+        Assert.assertEquals(3, intersections.size());
+        Assert.assertEquals("C", intersections.get(0).getId());
+        Assert.assertEquals("A", intersections.get(1).getId());
+        Assert.assertEquals("B", intersections.get(2).getId());
+    }
+
+    @Test
+    public void findIntersectionTest() throws IntersectionNotFoundException {
+
+        Assert.assertEquals("A", network.findIntersection("A").getId());
+    }
+
+    @Test(expected = IntersectionNotFoundException.class)
+    public void findMissingIntersectionTest()
+            throws IntersectionNotFoundException {
+
+        network.findIntersection("D");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createDuplicateIntersectionTest() {
+
+        network.createIntersection("B");
+    }
+
+    @Test
+    public void outgoingConnectionsTest() throws IntersectionNotFoundException {
+
+        network.connectIntersections("A", "B", 60);
+        network.connectIntersections("A", "C", 40);
+        List<Route> outgoing = network.findIntersection("A")
+                .getOutgoingConnections();
+        Assert.assertEquals(2, outgoing.size());
+        Assert.assertEquals("B", outgoing.get(0).getTo().getId());
+        Assert.assertEquals("C", outgoing.get(1).getTo().getId());
+    }
+
+    @Test
+    public void getConnectionTest() throws IntersectionNotFoundException,
+            RouteNotFoundException {
+
+        network.connectIntersections("A", "B", 60);
+        network.connectIntersections("C", "B", 40);
+        Assert.assertEquals(40, network.getConnection("C", "B").getSpeed());
+        Assert.assertEquals("A", network.getConnection("A", "B").getFrom()
+                .getId());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void connectTwiceTest() throws IntersectionNotFoundException {
+
+        network.connectIntersections("A", "B", 60);
+        network.connectIntersections("A", "B", 60);
+    }
+
+    @Test
+    public void toStringOrdersLinesAsStringsTest() throws Exception {
+
+        network.createIntersection("B0");
+        network.connectIntersections("A", "B0", 40);
+        network.connectIntersections("A", "B", 50);
+        network.addSensor("A", "B", new DemoVehicleCount(
+                new int[]{1, 2}, 10));
+        network.addSensor("A", "B", new DemoPressurePad(
+                new int[]{3}, 20));
+
+        String[] lines = network.toString().split(System.lineSeparator());
+        Assert.assertEquals("A:B0:40:0", lines[7]);
+        Assert.assertEquals("A:B:50:2", lines[8]);
+        Assert.assertEquals("PP:20:3", lines[9]);
+        Assert.assertEquals("VC:10:1,2", lines[10]);
+    }
+
+    @Test
+    public void coordinateCorridorGivesGreenOnArrivalTest() throws Exception {
+
+        network.createIntersection("D");
+        network.createIntersection("X");
+        List<String> corridor = Arrays.asList("A", "B", "C", "D");
+        for (int i = 0; i < corridor.size(); i++) {
+            network.findIntersection(corridor.get(i)).setPosition(300 * i, 0);
+        }
+        for (int i = 1; i < corridor.size(); i++) {
+            network.connectIntersections(corridor.get(i - 1), corridor.get(i),
+                    60);
+            network.connectIntersections("X", corridor.get(i), 60);
+            network.addLights(corridor.get(i), 10,
+                    Arrays.asList("X", corridor.get(i - 1)));
+        }
+
+        // the lights at C run ahead of the others
+        network.findIntersection("C").getTrafficLights().advance(7);
+        int[] arrivals = network.coordinateCorridor(corridor);
+
+        Assert.assertArrayEquals(new int[]{0, 18, 36, 54}, arrivals);
+        for (int i = 1; i < corridor.size(); i++) {
+            Route route = network.getConnection(corridor.get(i - 1),
+                    corridor.get(i));
+            IntersectionLights lights = route.getTo().getTrafficLights();
+            long departure = lights.getTime() + 1;
+            Assert.assertEquals(TrafficSignal.GREEN, lights.getSignalAt(route,
+                    departure + arrivals[i]));
+            Assert.assertEquals(TrafficSignal.RED, lights.getSignalAt(route,
+                    departure + arrivals[i] - 1));
+        }
+    }
+
+    @Test
+    public void coordinateAdaptiveCorridorTest() throws Exception {
+
+        network.connectIntersections("A", "B", 60);
+        network.connectIntersections("C", "B", 60);
+        network.connectIntersections("B", "C", 60);
+        network.connectIntersections("A", "C", 60);
+        network.addLights("B", 10, Arrays.asList("C", "A"));
+        Route ab = network.getConnection("A", "B");
+        Route ac = network.getConnection("A", "C");
+        Route bc = network.getConnection("B", "C");
+        network.findIntersection("C").addTrafficLights(Arrays.asList(ac, bc),
+                2, 10, new AdaptiveTiming(2, 20, 0));
+        IntersectionLights lights = network.findIntersection("B")
+                .getTrafficLights();
+        TrafficSignal[] signals = new TrafficSignal[lights.getCycleLength()];
+        for (int i = 0; i < signals.length; i++) {
+            signals[i] = lights.getSignalAt(ab, lights.getTime() + i);
+        }
+
+        try {
+            network.coordinateCorridor(Arrays.asList("A", "B", "C"));
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+            // the lights at B, which come first, are left unchanged
+        }
+        for (int i = 0; i < signals.length; i++) {
+            Assert.assertEquals(signals[i],
+                    lights.getSignalAt(ab, lights.getTime() + i));
+        }
+    }
+
+    @Test(expected = RouteNotFoundException.class)
+    public void coordinateDisconnectedCorridorTest() throws Exception {
+
+        network.coordinateCorridor(Arrays.asList("A", "B"));
+    }
+}
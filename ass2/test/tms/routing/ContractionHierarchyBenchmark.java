@@ -0,0 +1,97 @@
+package tms.routing;
+
+import tms.intersection.Intersection;
+import tms.network.Network;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the preprocessing time of a {@link ContractionHierarchy} on a
+ * large grid network, the time it takes to answer random queries compared to
+ * A*, and the time to bring it up to date after a speed limit changes and to
+ * answer queries until it is next fully customized.
+ * <p>
+ * This is not a JUnit test, run it directly with its main method. The number
+ * of intersections along each side of the grid may be given as an argument,
+ * otherwise a grid of about 100000 intersections is used.
+ */
+
+public class ContractionHierarchyBenchmark {
+
+    /** Number of random queries timed */
+    private static final int QUERIES = 20_000;
+    /** Number of the queries also answered with A* */
+    private static final int GUIDED_QUERIES = 200;
+
+    /**
+     * Runs the benchmark.
+     * @param args optional number of intersections along each side of the grid
+     * @throws Exception if the grid was built incorrectly
+     */
+
+    public static void main(String[] args) throws Exception {
+
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 317;
+        Network network = PathFinderBenchmark.buildGrid(side, new Random(1));
+        long start = System.nanoTime();
+        ContractionHierarchy hierarchy = new ContractionHierarchy(network);
+        System.out.printf("%d intersections, %d arcs, built in %d ms%n",
+                network.getIntersections().size(), hierarchy.getArcCount(),
+                (System.nanoTime() - start) / 1_000_000);
+
+        List<Intersection> intersections = network.getIntersections();
+        Intersection[][] queries = new Intersection[QUERIES][2];
+        Random random = new Random(2);
+        for (Intersection[] query : queries) {
+            query[0] = intersections.get(random.nextInt(intersections.size()));
+            query[1] = intersections.get(random.nextInt(intersections.size()));
+        }
+        for (int round = 0; round < 2; round++) {
+            start = System.nanoTime();
+            double total = 0;
+            for (Intersection[] query : queries) {
+                total += hierarchy.getTravelTime(query[0], query[1]);
+            }
+            if (round == 1) {
+                System.out.printf("travel time    %8.2f us per query "
+                                + "(mean %.0f s)%n",
+                        (System.nanoTime() - start) / 1e3 / QUERIES,
+                        total / QUERIES);
+            }
+        }
+        start = System.nanoTime();
+        for (Intersection[] query : queries) {
+            hierarchy.findPath(query[0], query[1]);
+        }
+        System.out.printf("path           %8.2f us per query%n",
+                (System.nanoTime() - start) / 1e3 / QUERIES);
+
+        PathFinder finder = new PathFinder(new RoutingGraph(network));
+        double difference = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < GUIDED_QUERIES; i++) {
+            difference += Math.abs(finder.findPathAStar(queries[i][0],
+                    queries[i][1]).getTravelTime()
+                    - hierarchy.getTravelTime(queries[i][0], queries[i][1]));
+        }
+        System.out.printf("a*             %8.2f us per query "
+                        + "(total difference %.6f s)%n",
+                (System.nanoTime() - start) / 1e3 / GUIDED_QUERIES,
+                difference);
+
+        network.addSpeedSign("0,0", "0,1", 60);
+        network.setSpeedLimit("0,0", "0,1", 20);
+        start = System.nanoTime();
+        hierarchy.getTravelTime(queries[0][0], queries[0][1]);
+        System.out.printf("speed change   %8d ms to customize%n",
+                (System.nanoTime() - start) / 1_000_000);
+        start = System.nanoTime();
+        for (Intersection[] query : queries) {
+            hierarchy.getTravelTime(query[0], query[1]);
+        }
+        System.out.printf("after change   %8.2f us per query%n",
+                (System.nanoTime() - start) / 1e3 / QUERIES);
+        hierarchy.close();
+    }
+}
@@ -0,0 +1,180 @@
+package tms.routing;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tms.intersection.Intersection;
+import tms.network.Network;
+import tms.route.Route;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ContractionHierarchyTest {
+
+    private Network network;
+    private ContractionHierarchy hierarchy;
+    private Random rng;
+
+    @Before
+    public void setUp() throws Exception {
+
+        network = new Network();
+        rng = new Random(11);
+        int size = 300;
+        for (int i = 0; i < size; i++) {
+            network.createIntersection("I" + i);
+            network.findIntersection("I" + i).setPosition(
+                    rng.nextInt(5000), rng.nextInt(5000));
+        }
+        for (int i = 0; i < 3 * size; i++) {
+            String from = "I" + rng.nextInt(size);
+            String to = "I" + rng.nextInt(size);
+            if (!from.equals(to) && !connected(from, to)
+                    && !connected(to, from)) {
+                network.connectIntersections(from, to, 20 + rng.nextInt(80));
+            }
+        }
+        hierarchy = new ContractionHierarchy(network);
+    }
+
+    @After
+    public void tearDown() {
+
+        hierarchy.close();
+    }
+
+    private boolean connected(String from, String to) throws Exception {
+
+        return network.findIntersection(to).getConnectedIntersections()
+                .contains(network.findIntersection(from));
+    }
+
+    private void assertMatchesDijkstra() {
+
+        PathFinder finder = new PathFinder(new RoutingGraph(network));
+        List<Intersection> intersections = network.getIntersections();
+        Random queries = new Random(5);
+        for (int i = 0; i < 300; i++) {
+            Intersection from = intersections.get(
+                    queries.nextInt(intersections.size()));
+            Intersection to = intersections.get(
+                    queries.nextInt(intersections.size()));
+            Path expected = finder.findPathDijkstra(from, to);
+            Path path = hierarchy.findPath(from, to);
+            if (expected == null) {
+                Assert.assertNull(path);
+                Assert.assertEquals(Double.POSITIVE_INFINITY,
+                        hierarchy.getTravelTime(from, to), 0);
+                continue;
+            }
+            Assert.assertEquals(expected.getTravelTime(),
+                    hierarchy.getTravelTime(from, to), 1e-6);
+            Assert.assertEquals(expected.getTravelTime(),
+                    path.getTravelTime(), 1e-6);
+            Intersection at = from;
+            for (Route route : path.getRoutes()) {
+                Assert.assertSame(at, route.getFrom());
+                at = route.getTo();
+            }
+            Assert.assertSame(to, at);
+        }
+    }
+
+    @Test
+    public void matchesDijkstraTest() {
+
+        assertMatchesDijkstra();
+        Intersection first = network.getIntersections().get(0);
+        Assert.assertEquals(0, hierarchy.getTravelTime(first, first), 0);
+        Assert.assertTrue(hierarchy.findPath(first, first).getRoutes()
+                .isEmpty());
+        Assert.assertTrue(hierarchy.getArcCount() >= 600);
+    }
+
+    @Test
+    public void speedChangeOnlyCustomizesTest() throws Exception {
+
+        int changed = 0;
+        for (Intersection intersection : network.getIntersections()) {
+            for (Route route : intersection.getConnections()) {
+                if (changed++ % 3 == 0) {
+                    String from = route.getFrom().getId();
+                    String to = route.getTo().getId();
+                    network.addSpeedSign(from, to, 60);
+                    network.setSpeedLimit(from, to, 10 + rng.nextInt(100));
+                }
+            }
+        }
+        assertMatchesDijkstra();
+        Assert.assertEquals(1, hierarchy.getContractionCount());
+    }
+
+    @Test
+    public void fewSpeedChangesCustomizeArcsAboveTest() throws Exception {
+
+        List<Route> routes = new ArrayList<>();
+        for (Intersection intersection : network.getIntersections()) {
+            routes.addAll(intersection.getConnections());
+        }
+        int[] speeds = {5, 200, 0, 60};
+        for (int speed : speeds) {
+            for (int i = 0; i < 3; i++) {
+                Route route = routes.get(rng.nextInt(routes.size()));
+                String from = route.getFrom().getId();
+                String to = route.getTo().getId();
+                if (!route.hasSpeedSign()) {
+                    network.addSpeedSign(from, to, 60);
+                }
+                network.setSpeedLimit(from, to, speed);
+            }
+            assertMatchesDijkstra();
+            Assert.assertTrue(hierarchy.getCustomizedArcCount()
+                    < hierarchy.getArcCount());
+        }
+
+        hierarchy.refresh();
+        Assert.assertEquals(hierarchy.getArcCount(),
+                hierarchy.getCustomizedArcCount());
+        assertMatchesDijkstra();
+        Assert.assertEquals(1, hierarchy.getContractionCount());
+    }
+
+    @Test
+    public void makeTwoWayOnlyCustomizesTest() throws Exception {
+
+        List<Route> routes = new ArrayList<>();
+        for (Intersection intersection : network.getIntersections()) {
+            routes.addAll(intersection.getConnections());
+        }
+        for (int i = 0; i < routes.size(); i += 2) {
+            network.makeTwoWay(routes.get(i).getFrom().getId(),
+                    routes.get(i).getTo().getId());
+        }
+        assertMatchesDijkstra();
+        Assert.assertEquals(1, hierarchy.getContractionCount());
+    }
+
+    @Test
+    public void newConnectionContractsAgainTest() throws Exception {
+
+        int arcs = hierarchy.getArcCount();
+        for (int i = 0; i < 20; i++) {
+            String from = "I" + rng.nextInt(300);
+            String to = "I" + rng.nextInt(300);
+            if (!from.equals(to) && !connected(from, to)
+                    && !connected(to, from)) {
+                network.connectIntersections(from, to, 50);
+            }
+        }
+        network.createIntersection("X");
+        network.connectIntersections("I0", "X", 50);
+        assertMatchesDijkstra();
+        Assert.assertEquals(2, hierarchy.getContractionCount());
+        Assert.assertNotEquals(arcs, hierarchy.getArcCount());
+        Assert.assertNotNull(hierarchy.findPath(
+                network.findIntersection("I0"), network.findIntersection("X")));
+    }
+}
@@ -0,0 +1,59 @@
+package tms.routing;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class IndexedMinHeapTest {
+
+    @Test
+    public void pollsInKeyOrderTest() {
+
+        IndexedMinHeap heap = new IndexedMinHeap(100);
+        Random random = new Random(3);
+        double[] keys = new double[100];
+        for (int i = 0; i < 100; i++) {
+            keys[i] = random.nextDouble();
+            heap.offer(i, keys[i]);
+        }
+        double[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        for (double key : sorted) {
+            Assert.assertEquals(key, heap.peekKey(), 0);
+            Assert.assertEquals(key, keys[heap.poll()], 0);
+        }
+        Assert.assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void offerOnlyLowersKeyTest() {
+
+        IndexedMinHeap heap = new IndexedMinHeap(3);
+        heap.offer(0, 5);
+        heap.offer(1, 3);
+        heap.offer(0, 1);
+        heap.offer(1, 9);
+        Assert.assertEquals(2, heap.size());
+        Assert.assertEquals(0, heap.poll());
+        Assert.assertEquals(3, heap.peekKey(), 0);
+        Assert.assertFalse(heap.contains(0));
+    }
+
+    @Test
+    public void clearTest() {
+
+        IndexedMinHeap heap = new IndexedMinHeap(3);
+        heap.offer(2, 1);
+        heap.clear();
+        Assert.assertFalse(heap.contains(2));
+        Assert.assertEquals(Double.POSITIVE_INFINITY, heap.peekKey(), 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void pollEmptyTest() {
+
+        new IndexedMinHeap(1).poll();
+    }
+}
@@ -0,0 +1,123 @@
+package tms.routing;
+
+import tms.intersection.Intersection;
+import tms.network.Network;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the time taken by each of the searches of a {@link PathFinder} to
+ * answer random queries on a large grid network.
+ * <p>
+ * This is not a JUnit test, run it directly with its main method. The number
+ * of intersections along each side of the grid may be given as an argument,
+ * otherwise a grid of about 100000 intersections is used.
+ */
+
+public class PathFinderBenchmark {
+
+    /** Number of random queries timed for each search */
+    private static final int QUERIES = 200;
+
+    /**
+     * Runs the benchmark.
+     * @param args optional number of intersections along each side of the grid
+     * @throws Exception if the grid was built incorrectly
+     */
+
+    public static void main(String[] args) throws Exception {
+
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 317;
+        Network network = buildGrid(side, new Random(1));
+        long start = System.nanoTime();
+        RoutingGraph graph = new RoutingGraph(network);
+        System.out.printf("%d nodes, %d edges, graph built in %d ms%n",
+                graph.getNodeCount(), graph.getEdgeCount(),
+                (System.nanoTime() - start) / 1_000_000);
+
+        PathFinder finder = new PathFinder(graph);
+        List<Intersection> intersections = network.getIntersections();
+        Intersection[][] queries = new Intersection[QUERIES][2];
+        Random random = new Random(2);
+        for (Intersection[] query : queries) {
+            query[0] = intersections.get(random.nextInt(intersections.size()));
+            query[1] = intersections.get(random.nextInt(intersections.size()));
+        }
+        String[] names = {"dijkstra", "bidirectional", "a*"};
+        for (int search = 0; search < names.length; search++) {
+            for (int round = 0; round < 2; round++) {
+                start = System.nanoTime();
+                double total = 0;
+                for (Intersection[] query : queries) {
+                    total += find(finder, search, query[0], query[1])
+                            .getTravelTime();
+                }
+                if (round == 1) {
+                    System.out.printf("%-14s %8.3f ms per query "
+                                    + "(total time %.0f s)%n", names[search],
+                            (System.nanoTime() - start) / 1e6 / QUERIES,
+                            total);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a two-way grid network with jittered positions and random speed
+     * limits.
+     * @param side number of intersections along each side
+     * @param random source of the jitter and speeds
+     * @return the grid network
+     * @throws Exception if the grid was built incorrectly
+     */
+
+    static Network buildGrid(int side, Random random) throws Exception {
+
+        Network network = new Network();
+        for (int row = 0; row < side; row++) {
+            for (int column = 0; column < side; column++) {
+                String id = row + "," + column;
+                network.createIntersection(id);
+                network.findIntersection(id).setPosition(
+                        200 * column + random.nextInt(50),
+                        200 * row + random.nextInt(50));
+                if (column > 0) {
+                    String left = row + "," + (column - 1);
+                    network.connectIntersections(left, id,
+                            40 + 10 * random.nextInt(5));
+                    network.makeTwoWay(left, id);
+                }
+                if (row > 0) {
+                    String up = (row - 1) + "," + column;
+                    network.connectIntersections(up, id,
+                            40 + 10 * random.nextInt(5));
+                    network.makeTwoWay(up, id);
+                }
+            }
+        }
+        return network;
+    }
+
+    /**
+     * Finds a path with the given search.
+     * @param finder the path finder
+     * @param search 0 for Dijkstra, 1 for bidirectional, 2 for A*
+     * @param from the origin
+     * @param to the destination
+     * @return the path found
+     */
+
+    private static Path find(PathFinder finder, int search, Intersection from,
+                             Intersection to) {
+
+        switch (search) {
+            case 0:
+                return finder.findPathDijkstra(from, to);
+            case 1:
+                return finder.findPathBidirectional(from, to);
+            default:
+                return finder.findPathAStar(from, to);
+        }
+    }
+}
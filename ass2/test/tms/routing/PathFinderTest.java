@@ -0,0 +1,135 @@
+package tms.routing;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tms.intersection.Intersection;
+import tms.network.Network;
+import tms.sensors.DemoPressurePad;
+
+import java.util.List;
+import java.util.Random;
+
+public class PathFinderTest {
+
+    private Network network;
+
+    @Before
+    public void setUp() throws Exception {
+
+        // A -> B -> D is shorter, A -> C -> D is faster
+        network = new Network();
+        network.createIntersection("A");
+        network.createIntersection("B");
+        network.createIntersection("C");
+        network.createIntersection("D");
+        network.connectIntersections("A", "B", 30);
+        network.connectIntersections("B", "D", 30);
+        network.connectIntersections("A", "C", 100);
+        network.connectIntersections("C", "D", 100);
+        network.findIntersection("A").setPosition(0, 0);
+        network.findIntersection("B").setPosition(500, 0);
+        network.findIntersection("C").setPosition(500, 600);
+        network.findIntersection("D").setPosition(1000, 0);
+    }
+
+    @Test
+    public void graphIsCompressedTest() throws Exception {
+
+        RoutingGraph graph = new RoutingGraph(network);
+        Assert.assertEquals(4, graph.getNodeCount());
+        Assert.assertEquals(4, graph.getEdgeCount());
+        int a = graph.getNode(network.findIntersection("A"));
+        Assert.assertEquals(2, graph.getOutStart(a + 1) - graph.getOutStart(a));
+        int d = graph.getNode(network.findIntersection("D"));
+        Assert.assertEquals(2, graph.getInStart(d + 1) - graph.getInStart(d));
+        Assert.assertEquals(60, graph.getCost(graph.getEdge(
+                network.getConnection("A", "B"))), 1e-9);
+    }
+
+    @Test
+    public void fastestPathTest() throws Exception {
+
+        PathFinder finder = new PathFinder(new RoutingGraph(network));
+        Intersection a = network.findIntersection("A");
+        Intersection d = network.findIntersection("D");
+        for (Path path : new Path[]{finder.findPath(a, d),
+                finder.findPathDijkstra(a, d),
+                finder.findPathBidirectional(a, d),
+                finder.findPathAStar(a, d)}) {
+            Assert.assertEquals("A,C,D", path.toString());
+            Assert.assertEquals(2 * Math.hypot(500, 600) * 3.6 / 100,
+                    path.getTravelTime(), 1e-9);
+            Assert.assertEquals(2, path.getRoutes().size());
+        }
+    }
+
+    @Test
+    public void congestionChangesPathTest() throws Exception {
+
+        RoutingGraph graph = new RoutingGraph(network);
+        PathFinder finder = new PathFinder(graph);
+        network.addSensor("A", "C", new DemoPressurePad(new int[]{10}, 10));
+        Intersection a = network.findIntersection("A");
+        Intersection d = network.findIntersection("D");
+
+        Assert.assertEquals("A,C,D", finder.findPath(a, d).toString());
+        graph.refreshCosts();
+        Assert.assertEquals("A,B,D", finder.findPath(a, d).toString());
+        Assert.assertEquals("A,B,D",
+                finder.findPathBidirectional(a, d).toString());
+    }
+
+    @Test
+    public void unreachableTest() throws Exception {
+
+        PathFinder finder = new PathFinder(new RoutingGraph(network));
+        Intersection a = network.findIntersection("A");
+        Intersection d = network.findIntersection("D");
+        Assert.assertNull(finder.findPathBidirectional(d, a));
+        Assert.assertNull(finder.findPathAStar(d, a));
+        Assert.assertEquals("A", finder.findPathBidirectional(a, a).toString());
+    }
+
+    @Test
+    public void searchesAgreeOnRandomNetworkTest() throws Exception {
+
+        Network random = new Network();
+        Random rng = new Random(7);
+        int size = 300;
+        for (int i = 0; i < size; i++) {
+            random.createIntersection("I" + i);
+            random.findIntersection("I" + i).setPosition(
+                    rng.nextInt(5000), rng.nextInt(5000));
+        }
+        for (int i = 0; i < 4 * size; i++) {
+            String from = "I" + rng.nextInt(size);
+            String to = "I" + rng.nextInt(size);
+            if (!from.equals(to) && !random.findIntersection(to)
+                    .getConnectedIntersections().contains(
+                            random.findIntersection(from))) {
+                random.connectIntersections(from, to, 20 + rng.nextInt(80));
+            }
+        }
+        PathFinder finder = new PathFinder(new RoutingGraph(random));
+        List<Intersection> intersections = random.getIntersections();
+        for (int i = 0; i < 200; i++) {
+            Intersection from = intersections.get(rng.nextInt(size));
+            Intersection to = intersections.get(rng.nextInt(size));
+            Path expected = finder.findPathDijkstra(from, to);
+            Path bidirectional = finder.findPathBidirectional(from, to);
+            Path guided = finder.findPathAStar(from, to);
+            if (expected == null) {
+                Assert.assertNull(bidirectional);
+                Assert.assertNull(guided);
+                continue;
+            }
+            Assert.assertEquals(expected.getTravelTime(),
+                    bidirectional.getTravelTime(), 1e-6);
+            Assert.assertEquals(expected.getTravelTime(),
+                    guided.getTravelTime(), 1e-6);
+            Assert.assertSame(to, bidirectional.getIntersections()
+                    .get(bidirectional.getIntersections().size() - 1));
+        }
+    }
+}
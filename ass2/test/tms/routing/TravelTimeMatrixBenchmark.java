@@ -0,0 +1,67 @@
+package tms.routing;
+
+import tms.intersection.Intersection;
+import tms.network.Network;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the time taken by a {@link TravelTimeMatrix} to compute travel
+ * times from a sample of origins to every intersection of a grid network,
+ * with increasing parallelism, and into a memory-mapped file.
+ * <p>
+ * This is not a JUnit test, run it directly with its main method. The number
+ * of intersections along each side of the grid and the number of origins may
+ * be given as arguments, otherwise a grid of 10000 intersections and 1000
+ * origins are used.
+ */
+
+public class TravelTimeMatrixBenchmark {
+
+    /**
+     * Runs the benchmark.
+     * @param args optional number of intersections along each side of the
+     *             grid, and number of origins
+     * @throws Exception if the grid was built or the file written incorrectly
+     */
+
+    public static void main(String[] args) throws Exception {
+
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int originCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        Network network = PathFinderBenchmark.buildGrid(side, new Random(1));
+        RoutingGraph graph = new RoutingGraph(network);
+        List<Intersection> intersections = network.getIntersections();
+        TravelTimeMatrix matrix = new TravelTimeMatrix(graph,
+                intersections.subList(0, originCount), intersections);
+        System.out.printf("%d origins x %d destinations, %d processors%n",
+                originCount, intersections.size(),
+                Runtime.getRuntime().availableProcessors());
+
+        matrix.compute();
+        double single = 0;
+        for (int parallelism = 1;
+             parallelism <= Runtime.getRuntime().availableProcessors();
+             parallelism *= 2) {
+            matrix.setParallelism(parallelism);
+            long start = System.nanoTime();
+            matrix.compute();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (parallelism == 1) {
+                single = seconds;
+            }
+            System.out.printf("parallelism %2d %8.2f s (%.1fx), "
+                            + "%.0f rows per second%n", parallelism, seconds,
+                    single / seconds, originCount / seconds);
+        }
+
+        File file = File.createTempFile("matrix", ".bin");
+        file.deleteOnExit();
+        long start = System.nanoTime();
+        matrix.compute(file.getPath());
+        System.out.printf("mapped file    %8.2f s, %d MB%n",
+                (System.nanoTime() - start) / 1e9, file.length() >> 20);
+    }
+}
@@ -0,0 +1,139 @@
+package tms.routing;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tms.intersection.Intersection;
+import tms.network.Network;
+
+import java.io.File;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TravelTimeMatrixTest {
+
+    private Network network;
+    private RoutingGraph graph;
+
+    @Before
+    public void setUp() throws Exception {
+
+        network = new Network();
+        Random rng = new Random(3);
+        int size = 120;
+        for (int i = 0; i < size; i++) {
+            network.createIntersection("I" + i);
+            network.findIntersection("I" + i).setPosition(
+                    rng.nextInt(3000), rng.nextInt(3000));
+        }
+        for (int i = 0; i < 3 * size; i++) {
+            String from = "I" + rng.nextInt(size);
+            String to = "I" + rng.nextInt(size);
+            if (!from.equals(to) && !network.findIntersection(to)
+                    .getConnectedIntersections().contains(
+                            network.findIntersection(from))) {
+                network.connectIntersections(from, to, 20 + rng.nextInt(80));
+            }
+        }
+        graph = new RoutingGraph(network);
+    }
+
+    @Test
+    public void matchesPathFinderTest() {
+
+        TravelTimeMatrix matrix = new TravelTimeMatrix(graph);
+        float[] times = matrix.compute();
+        List<Intersection> intersections = network.getIntersections();
+        Assert.assertEquals(intersections.size(), matrix.getOriginCount());
+        Assert.assertEquals(intersections.size() * intersections.size(),
+                times.length);
+        PathFinder finder = new PathFinder(graph);
+        int unreachable = 0;
+        for (int i = 0; i < intersections.size(); i++) {
+            for (int j = 0; j < intersections.size(); j++) {
+                Path path = finder.findPathDijkstra(intersections.get(i),
+                        intersections.get(j));
+                float time = times[i * intersections.size() + j];
+                if (path == null) {
+                    Assert.assertEquals(Float.POSITIVE_INFINITY, time, 0);
+                    unreachable++;
+                } else {
+                    Assert.assertEquals(path.getTravelTime(), time, 1e-3);
+                }
+            }
+        }
+        Assert.assertTrue(unreachable > 0);
+    }
+
+    @Test
+    public void parallelismDoesNotChangeResultTest() {
+
+        TravelTimeMatrix matrix = new TravelTimeMatrix(graph);
+        matrix.setParallelism(1);
+        float[] sequential = matrix.compute();
+        matrix.setParallelism(4);
+        Assert.assertEquals(4, matrix.getParallelism());
+        Assert.assertArrayEquals(sequential, matrix.compute(), 0);
+    }
+
+    @Test
+    public void manyToManyTest() {
+
+        List<Intersection> intersections = network.getIntersections();
+        List<Intersection> origins = intersections.subList(0, 10);
+        List<Intersection> destinations = Arrays.asList(
+                intersections.get(50), intersections.get(3),
+                intersections.get(99));
+        TravelTimeMatrix matrix = new TravelTimeMatrix(graph, origins,
+                destinations);
+        float[] all = new TravelTimeMatrix(graph).compute();
+        float[] times = new float[30];
+        matrix.compute(times);
+        int[] columns = {50, 3, 99};
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 3; j++) {
+                Assert.assertEquals(all[i * intersections.size()
+                        + columns[j]], times[i * 3 + j], 0);
+            }
+        }
+    }
+
+    @Test
+    public void fileMatchesArrayTest() throws Exception {
+
+        TravelTimeMatrix matrix = new TravelTimeMatrix(graph);
+        float[] times = matrix.compute();
+        File file = File.createTempFile("matrix", ".bin");
+        file.deleteOnExit();
+        matrix.compute(file.getPath());
+        Assert.assertEquals(4L * times.length, file.length());
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            FloatBuffer floats = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size()).order(ByteOrder.LITTLE_ENDIAN)
+                    .asFloatBuffer();
+            float[] read = new float[times.length];
+            floats.get(read);
+            Assert.assertArrayEquals(times, read, 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongSizeArrayTest() {
+
+        new TravelTimeMatrix(graph).compute(new float[10]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateDestinationTest() {
+
+        Intersection first = network.getIntersections().get(0);
+        new TravelTimeMatrix(graph, network.getIntersections(),
+                Arrays.asList(first, first));
+    }
+}
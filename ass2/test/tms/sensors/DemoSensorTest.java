@@ -0,0 +1,53 @@
+package tms.sensors;
+
+import org.junit.Assert;
+import org.junit.Test;
+import tms.congestion.SlidingWindowCongestionCalculator;
+import tms.route.Route;
+
+public class DemoSensorTest {
+
+    @Test
+    public void removedListenerIsNotRunTest() {
+
+        DemoPressurePad pp = new DemoPressurePad(new int[]{1, 2, 3}, 10);
+        int[] runs = new int[2];
+        Runnable first = () -> runs[0]++;
+        Runnable second = () -> runs[1]++;
+        pp.addChangeListener(first);
+        pp.addChangeListener(second);
+        pp.oneSecond();
+        pp.removeChangeListener(first);
+        pp.removeChangeListener(first);
+        pp.oneSecond();
+        Assert.assertEquals(1, runs[0]);
+        Assert.assertEquals(2, runs[1]);
+    }
+
+    @Test
+    public void replacedCalculatorIsReleasedTest() throws Exception {
+
+        Route route = new Route("A:B", null, 60);
+        DemoPressurePad pp = new DemoPressurePad(new int[]{1, 2, 3}, 10);
+        route.addSensor(pp);
+        route.getCongestion();
+        int before = pp.getChangeListenerCount();
+        route.setCongestionCalculator(sensors -> () -> 0);
+        Assert.assertEquals(before - 1, pp.getChangeListenerCount());
+    }
+
+    @Test
+    public void replacedSlidingWindowCalculatorIsReleasedTest()
+            throws Exception {
+
+        Route route = new Route("A:B", null, 60);
+        DemoPressurePad pp = new DemoPressurePad(new int[]{1, 2, 3}, 10);
+        route.addSensor(pp);
+        route.setCongestionCalculator(
+                sensors -> new SlidingWindowCongestionCalculator(sensors, 5));
+        route.getCongestion();
+        int before = pp.getChangeListenerCount();
+        route.setCongestionCalculator(sensors -> () -> 0);
+        Assert.assertEquals(before - 1, pp.getChangeListenerCount());
+    }
+}
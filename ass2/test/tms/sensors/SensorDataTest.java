@@ -0,0 +1,49 @@
+package tms.sensors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SensorDataTest {
+
+    @Test
+    public void poolSharesIdenticalDataTest() {
+
+        SensorData.Pool pool = new SensorData.Pool();
+        SensorData first = pool.intern(new int[]{1, 2, 3});
+        SensorData second = pool.intern(new int[]{1, 2, 3});
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, pool.intern(new int[]{3, 2, 1}));
+    }
+
+    @Test
+    public void appendToTest() {
+
+        StringBuilder builder = new StringBuilder();
+        SensorData.of(new int[]{10, -2, 300}).appendTo(builder);
+        Assert.assertEquals("10,-2,300", builder.toString());
+    }
+
+    @Test
+    public void ofCopiesValuesTest() {
+
+        int[] values = {1, 2};
+        SensorData data = SensorData.of(values);
+        values[0] = 5;
+        Assert.assertEquals(1, data.get(0));
+    }
+
+    @Test
+    public void sharedDataSensorTest() {
+
+        SensorData data = SensorData.of(new int[]{4, 8});
+        DemoPressurePad pad = new DemoPressurePad(data, 10);
+        DemoSpeedCamera camera = new DemoSpeedCamera(data, 60);
+        Assert.assertSame(pad.getSensorData(), camera.getSensorData());
+        Assert.assertEquals(new DemoPressurePad(new int[]{4, 8}, 10), pad);
+        Assert.assertEquals("PP:10:4,8", pad.toString());
+
+        StringBuilder builder = new StringBuilder();
+        camera.appendTo(builder);
+        Assert.assertEquals("SC:60:4,8", builder.toString());
+    }
+}
@@ -0,0 +1,91 @@
+package tms.simulation;
+
+import tms.network.Network;
+import tms.route.Route;
+
+/**
+ * Measures the time per tick of a {@link CellTransmissionModel} on grid
+ * networks of increasing size, advanced sequentially and in parallel.
+ * <p>
+ * This is not a JUnit test, run it directly with its main method. The grid
+ * sides to measure may be given as arguments, otherwise grids of 50, 100 and
+ * 200 intersections a side are measured.
+ */
+
+public class CellTransmissionBenchmark {
+
+    /** Number of ticks timed for each grid */
+    private static final int TICKS = 50;
+
+    /**
+     * Runs the benchmark for each grid size.
+     * @param args optional list of grid sides to measure
+     * @throws Exception if a grid was built incorrectly
+     */
+
+    public static void main(String[] args) throws Exception {
+
+        int[] sides = {50, 100, 200};
+        if (args.length > 0) {
+            sides = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sides[i] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int side : sides) {
+            run(side);
+        }
+    }
+
+    /**
+     * Builds a two-way grid with traffic entering along its top edge, then
+     * times ticks of the model sequentially and in parallel.
+     * @param side number of intersections along each side of the grid
+     * @throws Exception if the grid was built incorrectly
+     */
+
+    private static void run(int side) throws Exception {
+
+        Network network = new Network();
+        int routes = 0;
+        for (int row = 0; row < side; row++) {
+            for (int column = 0; column < side; column++) {
+                String id = row + "," + column;
+                network.createIntersection(id);
+                network.findIntersection(id).setPosition(250 * column,
+                        250 * row);
+                if (column > 0) {
+                    String left = row + "," + (column - 1);
+                    network.connectIntersections(left, id, 50);
+                    network.makeTwoWay(left, id);
+                    routes += 2;
+                }
+                if (row > 0) {
+                    String up = (row - 1) + "," + column;
+                    network.connectIntersections(up, id, 60);
+                    network.makeTwoWay(up, id);
+                    routes += 2;
+                }
+            }
+        }
+
+        CellTransmissionModel model = new CellTransmissionModel(network);
+        for (int column = 0; column < side; column++) {
+            Route route = network.getConnection("0," + column, "1," + column);
+            model.setInflow(route, 0.4);
+        }
+        for (boolean parallel : new boolean[]{false, true}) {
+            model.setParallel(parallel);
+            for (int i = 0; i < 10; i++) {
+                model.oneSecond();
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < TICKS; i++) {
+                model.oneSecond();
+            }
+            double perTick = (System.nanoTime() - start) / 1e6 / TICKS;
+            System.out.printf("%7d routes, %-10s %8.2f ms per tick%n", routes,
+                    parallel ? "parallel" : "sequential", perTick);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package tms.simulation;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tms.network.Network;
+import tms.route.Route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CellTransmissionModelTest {
+
+    private Network network;
+    private List<CellTransmissionModel> models;
+
+    @Before
+    public void setUp() throws Exception {
+
+        network = new Network();
+        for (String id : Arrays.asList("A", "X", "B", "C", "D", "Y")) {
+            network.createIntersection(id);
+        }
+        // routes from A and X merge at B, whose traffic is split between the
+        // routes to C and D; every route is 200 metres at 10 metres per
+        // second, so 20 cells
+        network.connectIntersections("A", "B", 36);
+        network.connectIntersections("X", "B", 36);
+        network.connectIntersections("B", "C", 36);
+        network.connectIntersections("B", "D", 36);
+        network.connectIntersections("Y", "D", 36);
+        models = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+
+        for (CellTransmissionModel model : models) {
+            model.close();
+        }
+    }
+
+    private CellTransmissionModel createModel(Network network) {
+
+        CellTransmissionModel model = new CellTransmissionModel(network);
+        models.add(model);
+        return model;
+    }
+
+    @Test
+    public void routesAreDividedIntoCellsTest() throws Exception {
+
+        CellTransmissionModel model = createModel(network);
+        Assert.assertEquals(20, model.getCellCount(
+                network.getConnection("A", "B")));
+    }
+
+    @Test
+    public void vehiclesAreConservedTest() throws Exception {
+
+        CellTransmissionModel model = createModel(network);
+        model.addVehicles(network.getConnection("A", "B"), 10);
+        model.addVehicles(network.getConnection("X", "B"), 6);
+        Assert.assertEquals(16, model.getTotalVehicles(), 1e-9);
+
+        for (int i = 0; i < 60; i++) {
+            model.oneSecond();
+            Assert.assertEquals(16, model.getTotalVehicles()
+                    + model.getExitedCount(), 1e-9);
+        }
+        Assert.assertTrue(model.getExitedCount() > 0);
+    }
+
+    @Test
+    public void freeFlowTravelTimeTest() throws Exception {
+
+        CellTransmissionModel model = createModel(network);
+        Route route = network.getConnection("B", "C");
+        model.setInflow(route, 0.2);
+
+        for (int i = 0; i < 20; i++) {
+            model.oneSecond();
+            Assert.assertEquals(0, model.getOutflow(route), 1e-9);
+        }
+        model.oneSecond();
+        Assert.assertEquals(0.2, model.getOutflow(route), 1e-9);
+    }
+
+    @Test
+    public void mergeAndSplitShareFlowTest() throws Exception {
+
+        CellTransmissionModel model = createModel(network);
+        Route fromA = network.getConnection("A", "B");
+        Route fromX = network.getConnection("X", "B");
+        Route toC = network.getConnection("B", "C");
+        Route toD = network.getConnection("B", "D");
+        model.setInflow(fromA, 0.3);
+        model.setInflow(fromX, 0.1);
+
+        for (int i = 0; i < 100; i++) {
+            model.oneSecond();
+        }
+        // the merged flow fits the routes out of B, and is split evenly
+        Assert.assertEquals(0.3, model.getOutflow(fromA), 1e-9);
+        Assert.assertEquals(0.1, model.getOutflow(fromX), 1e-9);
+        Assert.assertEquals(0.2, model.getOutflow(toC), 1e-9);
+        Assert.assertEquals(0.2, model.getOutflow(toD), 1e-9);
+    }
+
+    @Test
+    public void fullRouteHoldsBackSplitTest() throws Exception {
+
+        // the route from B to D stays red, so it fills up
+        network.addLights("D", 10, Arrays.asList("Y", "B"));
+        CellTransmissionModel model = createModel(network);
+        Route approach = network.getConnection("A", "B");
+        Route toC = network.getConnection("B", "C");
+        Route toD = network.getConnection("B", "D");
+        model.setInflow(approach, CellTransmissionModel.CAPACITY);
+
+        for (int i = 0; i < 400; i++) {
+            model.oneSecond();
+        }
+        // vehicles for D wait at the end of the approach, and hold back the
+        // vehicles for C behind them although the route to C is empty
+        Assert.assertEquals(1000 * CellTransmissionModel.JAM_DENSITY,
+                model.getDensity(toD, 0), 0.01);
+        Assert.assertEquals(0, model.getOutflow(approach), 1e-9);
+        Assert.assertEquals(0, model.getVehicleCount(toC), 1e-6);
+        Assert.assertEquals(1000 * CellTransmissionModel.JAM_DENSITY,
+                model.getDensity(approach, 19), 0.01);
+    }
+
+    @Test
+    public void redLightHoldsQueueTest() throws Exception {
+
+        network.addLights("B", 10, Arrays.asList("X", "A"));
+        CellTransmissionModel model = createModel(network);
+        Route approach = network.getConnection("A", "B");
+        model.setInflow(approach, CellTransmissionModel.CAPACITY);
+
+        for (int i = 0; i < 40; i++) {
+            model.oneSecond();
+        }
+        Assert.assertEquals(0, model.getOutflow(approach), 1e-9);
+        Assert.assertEquals(0, model.getVehicleCount(
+                network.getConnection("B", "C")), 1e-9);
+        // the end of the route is jammed, the start is not yet
+        Assert.assertEquals(1000 * CellTransmissionModel.JAM_DENSITY,
+                model.getDensity(approach, 19), 0.01);
+        Assert.assertTrue(model.getDensity(approach, 0) < 100);
+
+        network.findIntersection("B").getTrafficLights().advance(11);
+        model.oneSecond();
+        Assert.assertEquals(CellTransmissionModel.CAPACITY,
+                model.getOutflow(approach), 1e-9);
+    }
+
+    @Test
+    public void parallelMatchesSequentialTest() throws Exception {
+
+        Network grid = new Network();
+        int side = 40;
+        for (int row = 0; row < side; row++) {
+            for (int column = 0; column < side; column++) {
+                String id = row + "," + column;
+                grid.createIntersection(id);
+                if (column > 0) {
+                    grid.connectIntersections(row + "," + (column - 1), id, 50);
+                    grid.makeTwoWay(row + "," + (column - 1), id);
+                }
+                if (row > 0) {
+                    grid.connectIntersections((row - 1) + "," + column, id, 60);
+                }
+            }
+        }
+        CellTransmissionModel sequential = createModel(grid);
+        sequential.setParallel(false);
+        CellTransmissionModel parallel = createModel(grid);
+        for (int column = 0; column < side; column++) {
+            Route route = grid.getConnection("0," + column, "1," + column);
+            sequential.setInflow(route, 0.3);
+            parallel.setInflow(route, 0.3);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            sequential.oneSecond();
+            parallel.oneSecond();
+        }
+        Assert.assertEquals(sequential.getTotalVehicles(),
+                parallel.getTotalVehicles(), 0);
+        Assert.assertEquals(sequential.getExitedCount(),
+                parallel.getExitedCount(), 0);
+    }
+}
@@ -0,0 +1,145 @@
+package tms.simulation;
+
+import tms.intersection.Intersection;
+import tms.network.Network;
+import tms.route.Route;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the cost to the tick of rerouting vehicles by congestion with a
+ * {@link Rerouter}, with batches run in the background and on the ticking
+ * thread, compared to not rerouting.
+ * <p>
+ * This is not a JUnit test, run it directly with its main method. The number
+ * of vehicles may be given as an argument, otherwise 100000 vehicles are
+ * simulated on a grid of 10000 intersections.
+ */
+
+public class RerouterBenchmark {
+
+    /** Number of intersections along each side of the grid */
+    private static final int SIDE = 100;
+    /** Number of distinct destinations vehicles travel to */
+    private static final int DESTINATIONS = 100;
+    /** Number of vehicles on a route that fully congests it */
+    private static final int THRESHOLD = 8;
+    /** Number of ticks between rerouting batches */
+    private static final int INTERVAL = 30;
+    /** Number of ticks simulated */
+    private static final int TICKS = 600;
+
+    /**
+     * Runs the benchmark.
+     * @param args optional number of vehicles to simulate
+     * @throws Exception if the grid was built incorrectly
+     */
+
+    public static void main(String[] args) throws Exception {
+
+        int vehicles = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        for (int mode = 0; mode < 3; mode++) {
+            Network network = buildGrid();
+            VehicleSimulation simulation = new VehicleSimulation(network);
+            for (Intersection intersection : network.getIntersections()) {
+                for (Route route : intersection.getConnections()) {
+                    simulation.addPressurePad(route, THRESHOLD);
+                }
+            }
+            Rerouter rerouter = null;
+            if (mode == 1) {
+                rerouter = new Rerouter(simulation, INTERVAL);
+            } else if (mode == 2) {
+                rerouter = new Rerouter(simulation, INTERVAL, Runnable::run);
+            }
+            addVehicles(network, simulation, vehicles);
+
+            double total = 0;
+            double worst = 0;
+            for (int i = 0; i < TICKS; i++) {
+                long start = System.nanoTime();
+                simulation.oneSecond();
+                if (rerouter != null) {
+                    rerouter.oneSecond();
+                }
+                double elapsed = (System.nanoTime() - start) / 1e6;
+                total += elapsed;
+                worst = Math.max(worst, elapsed);
+            }
+            String[] names = {"no rerouting", "background", "on tick"};
+            System.out.printf("%-13s %6.2f ms per tick, worst %7.2f ms",
+                    names[mode], total / TICKS, worst);
+            if (rerouter != null) {
+                System.out.printf(", %d batches, %d skipped, "
+                                + "%d destinations recomputed",
+                        rerouter.getBatchCount(), rerouter.getSkippedCount(),
+                        rerouter.getRecomputedCount());
+            }
+            System.out.println();
+            if (rerouter != null) {
+                rerouter.close();
+            }
+            simulation.close();
+        }
+    }
+
+    /**
+     * Builds a two-way grid network.
+     * @return the grid network
+     * @throws Exception if the grid was built incorrectly
+     */
+
+    private static Network buildGrid() throws Exception {
+
+        Network network = new Network();
+        for (int row = 0; row < SIDE; row++) {
+            for (int column = 0; column < SIDE; column++) {
+                String id = row + "," + column;
+                network.createIntersection(id);
+                network.findIntersection(id).setPosition(250 * column,
+                        250 * row);
+                if (column > 0) {
+                    String left = row + "," + (column - 1);
+                    network.connectIntersections(left, id, 50);
+                    network.makeTwoWay(left, id);
+                }
+                if (row > 0) {
+                    String up = (row - 1) + "," + column;
+                    network.connectIntersections(up, id, 60);
+                    network.makeTwoWay(up, id);
+                }
+            }
+        }
+        return network;
+    }
+
+    /**
+     * Adds vehicles from random origins to a fixed set of random
+     * destinations, the same for every run.
+     * @param network the grid network
+     * @param simulation the simulation to add vehicles to
+     * @param vehicles the number of vehicles to add
+     */
+
+    private static void addVehicles(Network network,
+                                    VehicleSimulation simulation,
+                                    int vehicles) {
+
+        List<Intersection> intersections = network.getIntersections();
+        Random random = new Random(1);
+        Intersection[] destinations = new Intersection[DESTINATIONS];
+        for (int i = 0; i < DESTINATIONS; i++) {
+            destinations[i] = intersections.get(random.nextInt(
+                    intersections.size()));
+        }
+        for (int i = 0; i < vehicles; i++) {
+            Intersection destination = destinations[i % DESTINATIONS];
+            Intersection origin = intersections.get(random.nextInt(
+                    intersections.size()));
+            if (origin != destination) {
+                simulation.addVehicle(origin, destination);
+            }
+        }
+    }
+}
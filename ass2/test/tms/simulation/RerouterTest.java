@@ -0,0 +1,174 @@
+package tms.simulation;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tms.intersection.Intersection;
+import tms.network.Network;
+import tms.route.Route;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class RerouterTest {
+
+    private Network network;
+    private VehicleSimulation simulation;
+    private Intersection a;
+    private Intersection b;
+    private Intersection d;
+    private Route viaB;
+    private Route viaC;
+    private List<Rerouter> rerouters;
+
+    @Before
+    public void setUp() throws Exception {
+
+        // A -> B -> D takes 24 seconds, A -> C -> D takes 28.8 seconds
+        network = new Network();
+        network.createIntersection("A");
+        network.createIntersection("B");
+        network.createIntersection("C");
+        network.createIntersection("D");
+        network.connectIntersections("A", "B", 60);
+        network.connectIntersections("B", "D", 60);
+        network.connectIntersections("A", "C", 50);
+        network.connectIntersections("C", "D", 50);
+        simulation = new VehicleSimulation(network);
+        a = network.findIntersection("A");
+        b = network.findIntersection("B");
+        d = network.findIntersection("D");
+        viaB = network.getConnection("A", "B");
+        viaC = network.getConnection("A", "C");
+        rerouters = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+
+        for (Rerouter rerouter : rerouters) {
+            rerouter.close();
+        }
+        simulation.close();
+    }
+
+    private Rerouter createRerouter(int interval, Executor executor) {
+
+        Rerouter rerouter = new Rerouter(simulation, interval, executor);
+        rerouters.add(rerouter);
+        return rerouter;
+    }
+
+    private void tick(Rerouter rerouter) {
+
+        simulation.oneSecond();
+        rerouter.oneSecond();
+    }
+
+    @Test
+    public void congestedRouteIsAvoidedTest() throws Exception {
+
+        simulation.addPressurePad(viaB, 4);
+        Rerouter rerouter = createRerouter(5, Runnable::run);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertSame(viaB, simulation.getRoute(
+                    simulation.addVehicle(a, d)));
+        }
+        Assert.assertEquals(100, viaB.getCongestion());
+
+        for (int i = 0; i < 5; i++) {
+            tick(rerouter);
+        }
+        Assert.assertEquals(1, rerouter.getBatchCount());
+        // the finished batch is only applied at the next tick
+        Assert.assertSame(viaB, simulation.getRoute(
+                simulation.addVehicle(a, d)));
+        tick(rerouter);
+        Assert.assertEquals(1, rerouter.getRecomputedCount());
+        Assert.assertSame(viaC, simulation.getRoute(
+                simulation.addVehicle(a, d)));
+    }
+
+    @Test
+    public void tickDoesNotWaitForBatchTest() throws Exception {
+
+        simulation.addPressurePad(viaB, 2);
+        List<Runnable> pending = new ArrayList<>();
+        Rerouter rerouter = createRerouter(1, pending::add);
+        simulation.addVehicle(a, d);
+        simulation.addVehicle(a, d);
+
+        tick(rerouter);
+        tick(rerouter);
+        tick(rerouter);
+        Assert.assertTrue(rerouter.isBusy());
+        Assert.assertEquals(1, pending.size());
+        Assert.assertEquals(2, rerouter.getSkippedCount());
+        Assert.assertSame(viaB, simulation.getRoute(
+                simulation.addVehicle(a, d)));
+
+        pending.get(0).run();
+        tick(rerouter);
+        Assert.assertEquals(1, rerouter.getRecomputedCount());
+        Assert.assertEquals(2, rerouter.getBatchCount());
+        Assert.assertSame(viaC, simulation.getRoute(
+                simulation.addVehicle(a, d)));
+    }
+
+    @Test
+    public void onlyAffectedDestinationsAreRecomputedTest() throws Exception {
+
+        simulation.addPressurePad(viaC, 1);
+        simulation.addVehicle(a, d);
+        simulation.addVehicle(a, b);
+        Rerouter rerouter = createRerouter(1, Runnable::run);
+        for (int i = 0; i < 3; i++) {
+            tick(rerouter);
+        }
+        Assert.assertEquals(0, rerouter.getRecomputedCount());
+
+        // a vehicle congests A -> C, which no route towards B or D takes
+        int[] routed = simulation.getRoutedDestinations();
+        NextHops[] tables = new NextHops[routed.length];
+        for (int i = 0; i < routed.length; i++) {
+            tables[i] = simulation.getNextHops(routed[i]);
+        }
+        simulation.addVehicle(a, network.findIntersection("C"));
+        tick(rerouter);
+        tick(rerouter);
+        Assert.assertEquals(100, viaC.getCongestion());
+        Assert.assertEquals(1, rerouter.getRecomputedCount());
+        for (int i = 0; i < routed.length; i++) {
+            Assert.assertSame(tables[i], simulation.getNextHops(routed[i]));
+        }
+    }
+
+    @Test
+    public void unusedDestinationIsDroppedTest() throws Exception {
+
+        simulation.addVehicle(a, d);
+        for (int i = 0; i < 30; i++) {
+            simulation.oneSecond();
+        }
+        Assert.assertEquals(1, simulation.getFinishedCount());
+        int destination = simulation.getRoutedDestinations()[0];
+
+        simulation.addPressurePad(viaB, 1);
+        simulation.addVehicle(a, b);
+        Rerouter rerouter = createRerouter(1, Runnable::run);
+        tick(rerouter);
+        tick(rerouter);
+        Assert.assertNull(simulation.getNextHops(destination));
+        Assert.assertEquals(1, rerouter.getRecomputedCount());
+        Assert.assertSame(viaC, simulation.getRoute(
+                simulation.addVehicle(a, d)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidIntervalTest() {
+
+        new Rerouter(simulation, 0);
+    }
+}
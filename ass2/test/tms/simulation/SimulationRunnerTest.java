@@ -0,0 +1,72 @@
+package tms.simulation;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tms.util.TimedItem;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SimulationRunnerTest {
+
+    private AtomicInteger count;
+    private SimulationRunner runner;
+
+    @Before
+    public void setUp() {
+
+        count = new AtomicInteger();
+        TimedItem item = count::incrementAndGet;
+        runner = new SimulationRunner(item,
+                SimulationRunner.AS_FAST_AS_POSSIBLE);
+    }
+
+    @Test
+    public void runTicksTest() {
+
+        runner.runTicks(100);
+        Assert.assertEquals(100, count.get());
+        Assert.assertEquals(100, runner.getTicks());
+    }
+
+    @Test
+    public void backgroundThreadTest() throws InterruptedException {
+
+        runner.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (runner.getTicks() < 1000
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        runner.stop();
+        Assert.assertTrue(runner.getTicks() >= 1000);
+        Assert.assertEquals(runner.getTicks(), count.get());
+    }
+
+    @Test
+    public void pausedRunnerDoesNotTickTest() throws InterruptedException {
+
+        runner.setPaused(true);
+        runner.start();
+        Thread.sleep(50);
+        runner.stop();
+        Assert.assertEquals(0, runner.getTicks());
+    }
+
+    @Test
+    public void sampleSeesWholeTicksTest() throws InterruptedException {
+
+        runner.start();
+        for (int i = 0; i < 100; i++) {
+            runner.sample(() -> Assert.assertEquals(runner.getTicks(),
+                    count.get()));
+        }
+        runner.stop();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSpeedTest() {
+
+        runner.setSpeed(0);
+    }
+}
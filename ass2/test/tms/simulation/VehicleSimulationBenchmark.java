@@ -0,0 +1,89 @@
+package tms.simulation;
+
+import tms.intersection.Intersection;
+import tms.network.Network;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the time taken to move large numbers of vehicles through a grid
+ * network with a {@link VehicleSimulation}.
+ * <p>
+ * This is not a JUnit test, run it directly with its main method. The number
+ * of vehicles may be given as an argument, otherwise one million vehicles are
+ * simulated.
+ */
+
+public class VehicleSimulationBenchmark {
+
+    /** Number of intersections along each side of the grid */
+    private static final int SIDE = 100;
+    /** Number of distinct destinations vehicles travel to */
+    private static final int DESTINATIONS = 100;
+    /** Number of ticks timed */
+    private static final int TICKS = 50;
+
+    /**
+     * Runs the benchmark.
+     * @param args optional number of vehicles to simulate
+     * @throws Exception if the grid was built incorrectly
+     */
+
+    public static void main(String[] args) throws Exception {
+
+        int vehicles = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Network network = new Network();
+        for (int row = 0; row < SIDE; row++) {
+            for (int column = 0; column < SIDE; column++) {
+                String id = row + "," + column;
+                network.createIntersection(id);
+                network.findIntersection(id).setPosition(250 * column,
+                        250 * row);
+                if (column > 0) {
+                    String left = row + "," + (column - 1);
+                    network.connectIntersections(left, id, 50);
+                    network.makeTwoWay(left, id);
+                }
+                if (row > 0) {
+                    String up = (row - 1) + "," + column;
+                    network.connectIntersections(up, id, 60);
+                    network.makeTwoWay(up, id);
+                }
+            }
+        }
+
+        VehicleSimulation simulation = new VehicleSimulation(network);
+        List<Intersection> intersections = network.getIntersections();
+        Random random = new Random(1);
+        Intersection[] destinations = new Intersection[DESTINATIONS];
+        for (int i = 0; i < DESTINATIONS; i++) {
+            destinations[i] = intersections.get(random.nextInt(
+                    intersections.size()));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < vehicles; i++) {
+            Intersection destination = destinations[i % DESTINATIONS];
+            Intersection origin = intersections.get(random.nextInt(
+                    intersections.size()));
+            if (origin != destination) {
+                simulation.addVehicle(origin, destination);
+            }
+        }
+        System.out.printf("added %d vehicles in %d ms%n",
+                simulation.getVehicleCount(),
+                (System.nanoTime() - start) / 1_000_000);
+
+        for (int i = 0; i < 5; i++) {
+            simulation.oneSecond();
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < TICKS; i++) {
+            simulation.oneSecond();
+        }
+        double perTick = (System.nanoTime() - start) / 1e6 / TICKS;
+        System.out.printf("%.2f ms per tick, %d vehicles travelling, "
+                        + "%d finished%n", perTick,
+                simulation.getVehicleCount(), simulation.getFinishedCount());
+    }
+}
@@ -0,0 +1,156 @@
+package tms.simulation;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tms.network.Network;
+import tms.route.Route;
+
+import java.util.Arrays;
+
+public class VehicleSimulationTest {
+
+    private Network network;
+    private VehicleSimulation simulation;
+
+    @Before
+    public void setUp() throws Exception {
+
+        network = new Network();
+        network.createIntersection("A");
+        network.createIntersection("B");
+        network.createIntersection("C");
+        network.createIntersection("X");
+        // 200 metre routes at 10 metres per second
+        network.connectIntersections("A", "B", 36);
+        network.connectIntersections("X", "B", 36);
+        network.connectIntersections("B", "C", 36);
+    }
+
+    @After
+    public void tearDown() {
+
+        if (simulation != null) {
+            simulation.close();
+        }
+    }
+
+    @Test
+    public void vehicleTravelsToDestinationTest() throws Exception {
+
+        simulation = new VehicleSimulation(network);
+        int vehicle = simulation.addVehicle(network.findIntersection("A"),
+                network.findIntersection("C"));
+        Assert.assertSame(network.getConnection("A", "B"),
+                simulation.getRoute(vehicle));
+
+        for (int i = 0; i < 39; i++) {
+            simulation.oneSecond();
+        }
+        Assert.assertSame(network.getConnection("B", "C"),
+                simulation.getRoute(vehicle));
+        Assert.assertEquals(1, simulation.getPassedCount(
+                network.getConnection("A", "B")));
+
+        simulation.oneSecond();
+        Assert.assertNull(simulation.getRoute(vehicle));
+        Assert.assertEquals(0, simulation.getVehicleCount());
+        Assert.assertEquals(1, simulation.getFinishedCount());
+    }
+
+    @Test
+    public void vehicleQueuesAtRedLightTest() throws Exception {
+
+        network.addLights("B", 10, Arrays.asList("X", "A"));
+        simulation = new VehicleSimulation(network);
+        Route approach = network.getConnection("A", "B");
+        int vehicle = simulation.addVehicle(network.findIntersection("A"),
+                network.findIntersection("C"));
+
+        for (int i = 0; i < 30; i++) {
+            simulation.oneSecond();
+        }
+        Assert.assertEquals(1, simulation.getQueueLength(approach));
+        Assert.assertSame(approach, simulation.getRoute(vehicle));
+
+        // route X has its turn, then route A turns green
+        network.findIntersection("B").getTrafficLights().advance(11);
+        simulation.oneSecond();
+        simulation.oneSecond();
+        Assert.assertEquals(0, simulation.getQueueLength(approach));
+        Assert.assertSame(network.getConnection("B", "C"),
+                simulation.getRoute(vehicle));
+    }
+
+    @Test
+    public void arrivalsLeaveAtSaturationFlowTest() throws Exception {
+
+        network.addLights("B", 60, Arrays.asList("A", "X"));
+        simulation = new VehicleSimulation(network);
+        Route approach = network.getConnection("A", "B");
+        for (int i = 0; i < 10; i++) {
+            simulation.addVehicle(network.findIntersection("A"),
+                    network.findIntersection("C"));
+        }
+
+        // all ten vehicles reach the green light at once, and one leaves
+        // every two seconds
+        for (int i = 0; i < 20; i++) {
+            simulation.oneSecond();
+        }
+        Assert.assertEquals(1, simulation.getPassedCount(approach));
+        Assert.assertEquals(9, simulation.getQueueLength(approach));
+        for (int i = 0; i < 17; i++) {
+            simulation.oneSecond();
+        }
+        Assert.assertEquals(9, simulation.getPassedCount(approach));
+        simulation.oneSecond();
+        Assert.assertEquals(10, simulation.getPassedCount(approach));
+        Assert.assertEquals(0, simulation.getQueueLength(approach));
+    }
+
+    @Test
+    public void pressurePadCountsVehiclesTest() throws Exception {
+
+        simulation = new VehicleSimulation(network);
+        Route route = network.getConnection("A", "B");
+        SimulatedPressurePad pad = simulation.addPressurePad(route, 4);
+        simulation.addVehicle(network.findIntersection("A"),
+                network.findIntersection("B"));
+        simulation.addVehicle(network.findIntersection("A"),
+                network.findIntersection("C"));
+
+        Assert.assertEquals(2, pad.countTraffic());
+        Assert.assertEquals(50, route.getCongestion());
+        for (int i = 0; i < 20; i++) {
+            simulation.oneSecond();
+        }
+        Assert.assertEquals(0, route.getCongestion());
+        Assert.assertEquals("PP:4:0", pad.toString());
+    }
+
+    @Test
+    public void finishedVehicleNumberIsReusedTest() throws Exception {
+
+        simulation = new VehicleSimulation(network);
+        int first = simulation.addVehicle(network.findIntersection("A"),
+                network.findIntersection("B"));
+        for (int i = 0; i < 20; i++) {
+            simulation.oneSecond();
+        }
+        int second = simulation.addVehicle(network.findIntersection("X"),
+                network.findIntersection("C"));
+        Assert.assertEquals(first, second);
+        Assert.assertSame(network.getConnection("X", "B"),
+                simulation.getRoute(second));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unreachableDestinationTest() throws Exception {
+
+        simulation = new VehicleSimulation(network);
+        simulation.addVehicle(network.findIntersection("C"),
+                network.findIntersection("A"));
+    }
+}
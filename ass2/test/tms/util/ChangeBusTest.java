@@ -0,0 +1,66 @@
+package tms.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tms.route.SpeedSign;
+import tms.route.TrafficLight;
+import tms.route.TrafficSignal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ChangeBusTest {
+
+    private List<ChangeType> types;
+    private List<Object> sources;
+    private ChangeListener listener;
+
+    @Before
+    public void setUp() {
+
+        types = new ArrayList<>();
+        sources = new ArrayList<>();
+        listener = (type, source) -> {
+            types.add(type);
+            sources.add(source);
+        };
+        ChangeBus.getChangeBus().subscribe(listener);
+    }
+
+    @After
+    public void tearDown() {
+
+        ChangeBus.getChangeBus().unsubscribe(listener);
+    }
+
+    @Test
+    public void signalChangePublishedTest() {
+
+        TrafficLight light = new TrafficLight();
+        light.setSignal(TrafficSignal.GREEN);
+        Assert.assertEquals(List.of(ChangeType.SIGNAL), types);
+        Assert.assertSame(light, sources.get(0));
+    }
+
+    @Test
+    public void unchangedValueNotPublishedTest() {
+
+        TrafficLight light = new TrafficLight();
+        light.setSignal(TrafficSignal.RED);
+        SpeedSign sign = new SpeedSign(60);
+        sign.setCurrentSpeed(60);
+        Assert.assertTrue(types.isEmpty());
+        sign.setCurrentSpeed(50);
+        Assert.assertEquals(List.of(ChangeType.SPEED), types);
+    }
+
+    @Test
+    public void unsubscribeTest() {
+
+        ChangeBus.getChangeBus().unsubscribe(listener);
+        new TrafficLight().setSignal(TrafficSignal.GREEN);
+        Assert.assertTrue(types.isEmpty());
+    }
+}
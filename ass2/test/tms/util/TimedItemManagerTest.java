@@ -0,0 +1,82 @@
+package tms.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimedItemManagerTest {
+
+    private static class CountingItem implements TimedItem {
+        private int count;
+
+        @Override
+        public void oneSecond() {
+            count++;
+        }
+    }
+
+    private final List<CountingItem> registered = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+
+        for (CountingItem item : registered) {
+            TimedItemManager.getTimedItemManager().removeTimedItem(item);
+        }
+        TimedItemManager.getTimedItemManager().setParallelism(
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    private CountingItem[] register(int number) {
+
+        CountingItem[] items = new CountingItem[number];
+        for (int i = 0; i < number; i++) {
+            items[i] = new CountingItem();
+            TimedItemManager.getTimedItemManager().registerTimedItem(items[i]);
+            registered.add(items[i]);
+        }
+        return items;
+    }
+
+    @Test
+    public void parallelTickAdvancesEveryItemOnceTest() {
+
+        TimedItemManager.getTimedItemManager().setParallelism(4);
+        CountingItem[] items = register(20000);
+        TimedItemManager.getTimedItemManager().oneSecond();
+        TimedItemManager.getTimedItemManager().oneSecond();
+        for (CountingItem item : items) {
+            Assert.assertEquals(2, item.count);
+        }
+    }
+
+    @Test
+    public void sequentialTickTest() {
+
+        TimedItemManager.getTimedItemManager().setParallelism(1);
+        CountingItem[] items = register(10);
+        TimedItemManager.getTimedItemManager().oneSecond();
+        for (CountingItem item : items) {
+            Assert.assertEquals(1, item.count);
+        }
+    }
+
+    @Test
+    public void ticksCountCallsTest() {
+
+        TimedItemManager manager = TimedItemManager.getTimedItemManager();
+        long before = manager.getTicks();
+        manager.oneSecond();
+        manager.oneSecond();
+        Assert.assertEquals(before + 2, manager.getTicks());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidParallelismTest() {
+
+        TimedItemManager.getTimedItemManager().setParallelism(0);
+    }
+}